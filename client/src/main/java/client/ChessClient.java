@@ -15,6 +15,8 @@ import java.util.List;
 import static ui.EscapeSequences.*;
 
 import model.GameData;
+import model.AnalysisUpdate;
+import websocket.messages.AnalysisMessage;
 import websocket.messages.ErrorMessage;
 import websocket.messages.LoadGameMessage;
 import websocket.messages.NotificationMessage;
@@ -202,9 +204,34 @@ public class ChessClient implements NotificationHandler{
                 NotificationMessage notificationMessage = (NotificationMessage) message;
                 System.out.println(notificationMessage.getMessage());
             }
+            case ANALYSIS -> {
+                // The server sends one update per depth, the terminal only needs the final one
+                AnalysisUpdate analysis = ((AnalysisMessage) message).getAnalysis();
+                if (!analysis.done()) {
+                    return;
+                }
+                System.out.println(describeAnalysis(analysis));
+            }
         }
         // Print the "[GAMEPLAY] >>>"" part again
         ChessClient.printPrompt();
     }
 
+    private static String describeAnalysis(AnalysisUpdate analysis) {
+        if (analysis.bestMove() == null) {
+            return "The engine has no move to suggest, the game is over";
+        }
+        String evaluation;
+        if (analysis.mateIn() != 0) {
+            evaluation = String.format("%s mates in %d", analysis.mateIn() > 0 ? "white" : "black", Math.abs(analysis.mateIn()));
+        } else {
+            evaluation = String.format("%+.2f", analysis.score() / 100.0);
+        }
+        var move = analysis.bestMove();
+        return String.format("Engine suggests %c%d to %c%d (%s, depth %d)",
+            'a' + move.getStartPosition().getColumn() - 1, move.getStartPosition().getRow(),
+            'a' + move.getEndPosition().getColumn() - 1, move.getEndPosition().getRow(),
+            evaluation, analysis.depth());
+    }
+
 }
@@ -12,6 +12,7 @@ import chess.ChessMove;
 import chess.ChessPiece;
 import chess.ChessPosition;
 import client.websocket.WebSocketFacade;
+import serialization.Fen;
 
 public class InGameREPL {
     
@@ -35,6 +36,8 @@ public class InGameREPL {
                 case "move" -> MakeMove.move(client, params);
                 case "resign" -> resign();
                 case "highlight" -> highlightMoves(params);
+                case "analyze" -> analyze();
+                case "fen" -> Fen.format(client.getLocalGame());
                 case "yes" -> confirmResignation();
                 default -> help();
             };
@@ -82,6 +85,12 @@ public class InGameREPL {
         }
     }
 
+    private String analyze() throws ResponseException {
+        WebSocketFacade ws = client.getWebSocket();
+        ws.analyze(client.getAuthToken(), client.getLocalGameID());
+        return "Asked the engine, its suggestion will show up when it's done";
+    }
+
     private String highlightMoves(String... params) throws ResponseException {
         if (params.length !=1 || !params[0].matches("^[a-h][1-8]")) {
             throw new ResponseException(400, "Expected: highlight <START>");
@@ -112,7 +121,9 @@ public class InGameREPL {
                 SET_TEXT_COLOR_BLUE + "\n     move <[START_LETTER][START_NUM]> <[END_LETTER][END_NUM]>" + SET_TEXT_COLOR_BLACK
                                                + " - to move your piece" +
                 SET_TEXT_COLOR_BLUE + "\n     resign" + SET_TEXT_COLOR_BLACK + " - voluntarily lose the game" +
-                SET_TEXT_COLOR_BLUE + "\n     highlight <START>" + SET_TEXT_COLOR_BLACK + " - view the valid moves for a piece";
+                SET_TEXT_COLOR_BLUE + "\n     highlight <START>" + SET_TEXT_COLOR_BLACK + " - view the valid moves for a piece" +
+                SET_TEXT_COLOR_BLUE + "\n     analyze" + SET_TEXT_COLOR_BLACK + " - ask the engine for the best move" +
+                SET_TEXT_COLOR_BLUE + "\n     fen" + SET_TEXT_COLOR_BLACK + " - print the position as a FEN";
     }
 
 }
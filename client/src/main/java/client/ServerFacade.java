@@ -1,6 +1,6 @@
 package client;
 
-import com.google.gson.Gson;
+import serialization.Serializer;
 
 import java.net.*;
 import java.net.http.*;
@@ -98,7 +98,7 @@ public class ServerFacade {
 
     private BodyPublisher makeRequestBody(Object request) {
         if (request != null) {
-            return BodyPublishers.ofString(new Gson().toJson(request));
+            return BodyPublishers.ofString(Serializer.GSON.toJson(request));
         } else {
             return BodyPublishers.noBody();
         }
@@ -127,7 +127,7 @@ public class ServerFacade {
         }
 
         if (responseClass != null) {
-            return new Gson().fromJson(response.body(), responseClass);
+            return Serializer.GSON.fromJson(response.body(), responseClass);
         }
 
         return null;
@@ -143,7 +143,7 @@ public class ServerFacade {
                 return "Unknown Error";
             }
 
-            var jsonObject = new Gson().fromJson(responseBody, com.google.gson.JsonObject.class);
+            var jsonObject = Serializer.GSON.fromJson(responseBody, com.google.gson.JsonObject.class);
 
             if (jsonObject.has("message")) {
                 String errorMessage = jsonObject.get("message").getAsString();
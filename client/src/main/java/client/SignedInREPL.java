@@ -6,6 +6,7 @@ import static ui.EscapeSequences.SET_TEXT_COLOR_BLACK;
 import static ui.EscapeSequences.SET_TEXT_COLOR_BLUE;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import model.CreateGameRequest;
 import model.CreateGameResult;
@@ -42,11 +43,12 @@ public class SignedInREPL {
         } 
     }
 
-    // Matches pattern 'create <name>'
+    // Matches pattern 'create <name> [FEN]', the FEN is everything after the name
     private String createGame(String... params) throws ResponseException {
         if (params.length > 0) {
             String gameName = params[0];
-            CreateGameResult game = server.createGame(new CreateGameRequest(gameName), client.getAuthToken());
+            String fen = params.length > 1 ? String.join(" ", Arrays.copyOfRange(params, 1, params.length)) : null;
+            CreateGameResult game = server.createGame(new CreateGameRequest(gameName, fen), client.getAuthToken());
 
             return String.format("Game successfully created", game.gameID());
         }
@@ -175,7 +177,7 @@ public class SignedInREPL {
 
     // Matches pattern 'help'
     public String help() {
-        return SET_TEXT_COLOR_BLUE + "     create <NAME>" + SET_TEXT_COLOR_BLACK + " - a game" +
+        return SET_TEXT_COLOR_BLUE + "     create <NAME> [FEN]" + SET_TEXT_COLOR_BLACK + " - a game, optionally from a position" +
                 SET_TEXT_COLOR_BLUE + "\n     list -" + SET_TEXT_COLOR_BLACK + " games" +
                 SET_TEXT_COLOR_BLUE + "\n     join <ID> [WHITE|BLACK]" + SET_TEXT_COLOR_BLACK + " - a game" + 
                 SET_TEXT_COLOR_BLUE + "\n     observe <ID>" + SET_TEXT_COLOR_BLACK + " - a game" + 
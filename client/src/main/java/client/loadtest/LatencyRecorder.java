@@ -0,0 +1,52 @@
+package client.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects move-to-broadcast latencies from every simulated client. The array is sized up front from the number of
+ * games, plies and watchers, so recording is a single atomic increment and there is no locking on the hot path.
+ */
+class LatencyRecorder {
+    private final long[] samples;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+
+    LatencyRecorder(int capacity) {
+        samples = new long[capacity];
+    }
+
+    void record(long nanos) {
+        int index = next.getAndIncrement();
+        if (index < samples.length) {
+            samples[index] = nanos;
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    int count() {
+        return Math.min(next.get(), samples.length);
+    }
+
+    int dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Sorted copy of everything recorded so far, percentiles are read straight out of it
+     */
+    long[] sorted() {
+        long[] copy = Arrays.copyOf(samples, count());
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+}
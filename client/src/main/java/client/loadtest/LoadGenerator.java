@@ -0,0 +1,179 @@
+package client.loadtest;
+
+import chess.ChessGame;
+import client.ServerFacade;
+import exception.ResponseException;
+import model.AuthData;
+import model.CreateGameRequest;
+import model.JoinGameRequest;
+import model.RegisterRequest;
+import org.glassfish.tyrus.client.ClientManager;
+import org.glassfish.tyrus.client.ClientProperties;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays thousands of concurrent games against a running server and reports move throughput and
+ * move-to-broadcast latency (how long after a MAKE_MOVE is sent every player and spectator has the new board).
+ *
+ * Start the server on the memory DAOs so no database is needed, then point this at it:
+ * <pre>
+ *   java -Dchess.useSQL=false -Dchess.virtualThreads=true -jar server.jar
+ *   mvn -pl client exec:java -Dexec.mainClass=client.loadtest.LoadGenerator \
+ *       -Dexec.args="--games=2000 --spectators=2 --rate=1 --plies=40"
+ * </pre>
+ * Each game opens 2 + spectators sockets, so raise the open file limit (ulimit -n) for big runs.
+ */
+public class LoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String serverUrl = options.getOrDefault("url", "http://localhost:8080");
+        int games = Integer.parseInt(options.getOrDefault("games", "1000"));
+        int spectators = Integer.parseInt(options.getOrDefault("spectators", "2"));
+        double movesPerSecond = Double.parseDouble(options.getOrDefault("rate", "1"));
+        int plies = Integer.parseInt(options.getOrDefault("plies", "40"));
+        boolean binary = Boolean.parseBoolean(options.getOrDefault("binary", "false"));
+        int setupThreads = Integer.parseInt(options.getOrDefault("setupThreads", "32"));
+        long timeoutSeconds = Long.parseLong(options.getOrDefault("timeout", "600"));
+
+        System.out.printf("Load test: %d games, %d spectators each, %.2f moves/s per game, %d plies, %s frames, against %s%n",
+            games, spectators, movesPerSecond, plies, binary ? "binary" : "JSON", serverUrl);
+
+        ServerFacade server = new ServerFacade(serverUrl);
+
+        // One shared Tyrus container, otherwise every socket gets its own transport and worker threads
+        ClientManager container = ClientManager.createClient();
+        container.getProperties().put(ClientProperties.SHARED_CONTAINER, true);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(cores);
+        ExecutorService setupPool = Executors.newFixedThreadPool(setupThreads);
+
+        // Every socket records one sample per move
+        LatencyRecorder latencies = new LatencyRecorder((int) Math.min(Integer.MAX_VALUE - 8, (long) games * plies * (2 + spectators)));
+        CountDownLatch allGamesFinished = new CountDownLatch(games);
+        String runID = UUID.randomUUID().toString().substring(0, 8);
+
+        // Register the users, create the games and connect every socket, several games at a time
+        long setupStart = System.nanoTime();
+        List<Future<SimulatedGame>> pending = new ArrayList<>();
+        for (int i = 0; i < games; i++) {
+            String prefix = String.format("load-%s-%d", runID, i);
+            pending.add(setupPool.submit(() -> setUpGame(server, serverUrl, prefix, spectators, plies, movesPerSecond,
+                binary, container, scheduler, latencies, allGamesFinished)));
+        }
+        List<SimulatedGame> simulatedGames = new ArrayList<>();
+        for (Future<SimulatedGame> game : pending) {
+            simulatedGames.add(game.get());
+        }
+        setupPool.shutdown();
+        long setupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - setupStart);
+        int sockets = simulatedGames.stream().mapToInt(SimulatedGame::sockets).sum();
+        System.out.printf("Set up %d games with %d sockets in %d ms%n", games, sockets, setupMillis);
+
+        // Play
+        long playStart = System.nanoTime();
+        for (SimulatedGame game : simulatedGames) {
+            game.start();
+        }
+        boolean completed = allGamesFinished.await(timeoutSeconds, TimeUnit.SECONDS);
+        double playSeconds = (System.nanoTime() - playStart) / 1e9;
+
+        // Give the last broadcasts a moment to land before reading the samples
+        Thread.sleep(500);
+        scheduler.shutdownNow();
+
+        int moves = simulatedGames.stream().mapToInt(SimulatedGame::movesSent).sum();
+        int errors = simulatedGames.stream().mapToInt(SimulatedGame::errors).sum();
+        long[] sorted = latencies.sorted();
+
+        System.out.println();
+        if (!completed) {
+            System.out.printf("Timed out after %d s with %d games still playing%n", timeoutSeconds, allGamesFinished.getCount());
+        }
+        System.out.printf("Moves:        %d in %.1f s (%.0f moves/s)%n", moves, playSeconds, moves / playSeconds);
+        System.out.printf("Broadcasts:   %d boards received (%.0f/s)%n", sorted.length, sorted.length / playSeconds);
+        System.out.printf("Errors:       %d%n", errors);
+        System.out.printf("Move to broadcast latency (ms): p50 %.2f  p99 %.2f  p999 %.2f  max %.2f%n",
+            millis(LatencyRecorder.percentile(sorted, 0.50)),
+            millis(LatencyRecorder.percentile(sorted, 0.99)),
+            millis(LatencyRecorder.percentile(sorted, 0.999)),
+            millis(sorted.length == 0 ? 0 : sorted[sorted.length - 1]));
+        if (latencies.dropped() > 0) {
+            System.out.printf("(%d samples did not fit in the recorder and were dropped)%n", latencies.dropped());
+        }
+
+        for (SimulatedGame game : simulatedGames) {
+            game.close();
+        }
+        container.shutdown();
+        System.exit(0);
+    }
+
+    private static SimulatedGame setUpGame(ServerFacade server, String serverUrl, String prefix, int spectators, int plies,
+                                           double movesPerSecond, boolean binary, ClientManager container,
+                                           ScheduledExecutorService scheduler, LatencyRecorder latencies,
+                                           CountDownLatch allGamesFinished) throws ResponseException, InterruptedException {
+        AuthData white = register(server, prefix + "-white");
+        AuthData black = register(server, prefix + "-black");
+
+        int gameID = server.createGame(new CreateGameRequest(prefix), white.authToken()).gameID();
+        server.joinGame(new JoinGameRequest("WHITE", gameID), white.authToken());
+        server.joinGame(new JoinGameRequest("BLACK", gameID), black.authToken());
+
+        SimulatedGame game = new SimulatedGame(gameID, plies, movesPerSecond, spectators, scheduler, latencies, allGamesFinished);
+        game.addSeat(white.authToken(), ChessGame.TeamColor.WHITE);
+        game.addSeat(black.authToken(), ChessGame.TeamColor.BLACK);
+        for (int i = 0; i < spectators; i++) {
+            game.addSeat(register(server, prefix + "-watch" + i).authToken(), null);
+        }
+
+        if (!game.connect(serverUrl, binary, container, 30_000)) {
+            throw new ResponseException(500, "Error: game " + gameID + " never received its starting boards");
+        }
+        return game;
+    }
+
+    private static AuthData register(ServerFacade server, String username) throws ResponseException, InterruptedException {
+        RegisterRequest request = new RegisterRequest(username, "load-test", username + "@example.com");
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return server.registerUser(request);
+            } catch (ResponseException ex) {
+                // 503 means the server's password hashing queue is full, back off and try again
+                if (ex.getStatusCode() != 503 || attempt == 20) {
+                    throw ex;
+                }
+                Thread.sleep(50L * attempt);
+            }
+        }
+    }
+
+    // Options look like --games=2000
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            int split = arg.indexOf('=');
+            options.put(arg.substring(2, split), arg.substring(split + 1));
+        }
+        return options;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,208 @@
+package client.loadtest;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import client.websocket.NotificationHandler;
+import client.websocket.WebSocketFacade;
+import exception.ResponseException;
+import jakarta.websocket.WebSocketContainer;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.ServerMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * One game being played by the load generator: a white and a black player making random legal moves at a fixed
+ * rate, plus any number of spectators. Every socket in the game (the mover included) counts the LOAD_GAME broadcasts
+ * it receives, so the n-th board update it sees is the answer to the n-th move and the latency is just
+ * "now - when that move was sent".
+ */
+class SimulatedGame {
+    private final int gameID;
+    private final int maxPlies;
+    private final long moveIntervalNanos;
+    private final ScheduledExecutorService scheduler;
+    private final LatencyRecorder latencies;
+    private final CountDownLatch allGamesFinished;
+
+    // When each ply's MAKE_MOVE was sent, read by whichever socket thread receives the broadcast
+    private final AtomicLongArray sentAt;
+    private final List<Seat> seats = new ArrayList<>();
+    private final CountDownLatch seated;
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private final AtomicInteger errors = new AtomicInteger();
+    private volatile long lastMoveSent;
+
+    SimulatedGame(int gameID, int maxPlies, double movesPerSecond, int spectators, ScheduledExecutorService scheduler,
+                  LatencyRecorder latencies, CountDownLatch allGamesFinished) {
+        this.gameID = gameID;
+        this.maxPlies = maxPlies;
+        this.moveIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / movesPerSecond);
+        this.scheduler = scheduler;
+        this.latencies = latencies;
+        this.allGamesFinished = allGamesFinished;
+        this.sentAt = new AtomicLongArray(maxPlies);
+        this.seated = new CountDownLatch(2 + spectators);
+    }
+
+    void addSeat(String authToken, ChessGame.TeamColor color) {
+        seats.add(new Seat(authToken, color));
+    }
+
+    /**
+     * Opens every socket and sends CONNECT, then waits until each one has its starting board so no one misses a move
+     */
+    boolean connect(String serverUrl, boolean binary, WebSocketContainer container, long timeoutMillis)
+        throws ResponseException, InterruptedException {
+        for (Seat seat : seats) {
+            seat.socket = new WebSocketFacade(serverUrl, seat, binary, container);
+            seat.socket.connect(seat.authToken, gameID);
+        }
+        return seated.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // White moves first, everything after that is driven by the broadcasts
+    void start() {
+        for (Seat seat : seats) {
+            if (seat.color == ChessGame.TeamColor.WHITE) {
+                seat.takeTurn(ChessGame.newGame(), 0);
+            }
+        }
+    }
+
+    int movesSent() {
+        int moves = 0;
+        for (int ply = 0; ply < maxPlies; ply++) {
+            if (sentAt.get(ply) != 0) {
+                moves++;
+            }
+        }
+        return moves;
+    }
+
+    int errors() {
+        return errors.get();
+    }
+
+    int sockets() {
+        return seats.size();
+    }
+
+    void close() {
+        for (Seat seat : seats) {
+            try {
+                if (seat.socket != null) {
+                    seat.socket.close();
+                }
+            } catch (ResponseException ex) {
+                // Already closed, nothing else to clean up
+            }
+        }
+    }
+
+    private void finish() {
+        if (finished.compareAndSet(false, true)) {
+            allGamesFinished.countDown();
+        }
+    }
+
+    /**
+     * A player or spectator socket. color is null for spectators.
+     */
+    private class Seat implements NotificationHandler {
+        private final String authToken;
+        private final ChessGame.TeamColor color;
+        private final AtomicInteger boardsSeen = new AtomicInteger();
+        private WebSocketFacade socket;
+
+        Seat(String authToken, ChessGame.TeamColor color) {
+            this.authToken = authToken;
+            this.color = color;
+        }
+
+        @Override
+        public void notify(ServerMessage message) {
+            switch (message.getServerMessageType()) {
+                case LOAD_GAME -> onBoard(((LoadGameMessage) message).getGame());
+                case ERROR -> {
+                    // A rejected move would leave the game waiting forever, so count it and give up on this game
+                    errors.incrementAndGet();
+                    finish();
+                }
+                case NOTIFICATION -> {
+                    // Join and move announcements aren't measured
+                }
+            }
+        }
+
+        private void onBoard(ChessGame game) {
+            int seen = boardsSeen.getAndIncrement();
+            if (seen == 0) {
+                seated.countDown();
+                return;
+            }
+
+            // The first board is the CONNECT reply, so the n-th board after it answers ply n - 1
+            int ply = seen - 1;
+            if (ply < maxPlies && sentAt.get(ply) != 0) {
+                latencies.record(System.nanoTime() - sentAt.get(ply));
+            }
+
+            if (color != null && game.getTeamTurn() == color) {
+                takeTurn(game, seen);
+            }
+        }
+
+        private void takeTurn(ChessGame game, int ply) {
+            if (ply >= maxPlies || finished.get()) {
+                finish();
+                return;
+            }
+
+            // Pace the game to the requested move rate, measured from the previous move. Picking the move happens on
+            // the scheduler too, so the socket's delivery thread goes straight back to reading frames.
+            long delay = Math.max(0, lastMoveSent + moveIntervalNanos - System.nanoTime());
+            scheduler.schedule(() -> {
+                ChessMove move = pickMove(game);
+                if (move == null) {
+                    // Checkmate or stalemate
+                    finish();
+                    return;
+                }
+                try {
+                    long now = System.nanoTime();
+                    lastMoveSent = now;
+                    sentAt.set(ply, now);
+                    socket.move(authToken, gameID, move);
+                } catch (ResponseException ex) {
+                    errors.incrementAndGet();
+                    finish();
+                }
+            }, delay, TimeUnit.NANOSECONDS);
+        }
+
+        private ChessMove pickMove(ChessGame game) {
+            List<ChessMove> legalMoves = new ArrayList<>();
+            for (ChessPosition position : new ArrayList<>(game.getTeamPieces().get(color))) {
+                Collection<ChessMove> moves = game.validMoves(position);
+                if (moves != null) {
+                    legalMoves.addAll(moves);
+                }
+            }
+            if (legalMoves.isEmpty()) {
+                return null;
+            }
+            return legalMoves.get(ThreadLocalRandom.current().nextInt(legalMoves.size()));
+        }
+    }
+}
@@ -1,37 +1,53 @@
 package client.websocket;
 
-import com.google.gson.Gson;
+import serialization.Serializer;
 
 import chess.ChessMove;
 import exception.ResponseException;
+import websocket.messages.AnalysisMessage;
 import websocket.messages.ErrorMessage;
 import websocket.messages.LoadGameMessage;
 import websocket.messages.NotificationMessage;
 import websocket.messages.ServerMessage;
 import websocket.commands.MakeMoveCommand;
 import websocket.commands.UserGameCommand;
+import websocket.BinaryProtocol;
 
 import jakarta.websocket.*;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 
 public class WebSocketFacade extends Endpoint {
 
     Session session;
     NotificationHandler notificationHandler;
+    private final boolean binary;
 
     // This is the silent "listener"
     public WebSocketFacade(String url, NotificationHandler notificationHandler) throws ResponseException {
+        this(url, notificationHandler, false);
+    }
+
+    // Passing binary = true asks the server for the compact binary frames instead of JSON
+    public WebSocketFacade(String url, NotificationHandler notificationHandler, boolean binary) throws ResponseException {
+        this(url, notificationHandler, binary, ContainerProvider.getWebSocketContainer());
+    }
+
+    // Lets callers that open many sockets (like the load generator) share one container and its threads
+    public WebSocketFacade(String url, NotificationHandler notificationHandler, boolean binary, WebSocketContainer container)
+        throws ResponseException {
         try {
             // Crete the url
             url = url.replace("http", "ws");
-            URI socketURI = new URI(url + "/ws");
+            String query = binary ? "?" + BinaryProtocol.QUERY_PARAM + "=" + BinaryProtocol.PROTOCOL : "";
+            URI socketURI = new URI(url + "/ws" + query);
             this.notificationHandler = notificationHandler;
+            this.binary = binary;
 
             // create the WebSocket session
-            WebSocketContainer container = ContainerProvider.getWebSocketContainer();
             this.session = container.connectToServer(this, socketURI);
 
             this.session.addMessageHandler(new MessageHandler.Whole<String>() {
@@ -39,24 +55,36 @@ public class WebSocketFacade extends Endpoint {
                 public void onMessage(String message) {
                     // When we receive a message these are the things that should be done
 
-                    ServerMessage serverMessage = new Gson().fromJson(message, ServerMessage.class);
+                    ServerMessage serverMessage = Serializer.GSON.fromJson(message, ServerMessage.class);
                     
                     switch (serverMessage.getServerMessageType()) {
                         case LOAD_GAME -> {
-                            LoadGameMessage loadGameMessage = new Gson().fromJson(message, LoadGameMessage.class);
+                            LoadGameMessage loadGameMessage = Serializer.GSON.fromJson(message, LoadGameMessage.class);
                             notificationHandler.notify(loadGameMessage);
                         }
                         case NOTIFICATION -> {
-                            NotificationMessage notificationMessage = new Gson().fromJson(message, NotificationMessage.class);
+                            NotificationMessage notificationMessage = Serializer.GSON.fromJson(message, NotificationMessage.class);
                             notificationHandler.notify(notificationMessage);                            
                         }
                         case ERROR -> {
-                            ErrorMessage errorMessage = new Gson().fromJson(message, ErrorMessage.class);
+                            ErrorMessage errorMessage = Serializer.GSON.fromJson(message, ErrorMessage.class);
                             notificationHandler.notify(errorMessage);
                         }
+                        case ANALYSIS -> {
+                            AnalysisMessage analysisMessage = Serializer.GSON.fromJson(message, AnalysisMessage.class);
+                            notificationHandler.notify(analysisMessage);
+                        }
                     }
                 }
             });
+
+            this.session.addMessageHandler(new MessageHandler.Whole<ByteBuffer>() {
+                @Override
+                public void onMessage(ByteBuffer message) {
+                    // Binary frames already say which message class they are, so there is nothing to parse twice
+                    notificationHandler.notify(BinaryProtocol.decodeMessage(message));
+                }
+            });
         } catch (DeploymentException | IOException | URISyntaxException ex) {
             throw new ResponseException(400, ex.getMessage());
         }
@@ -72,7 +100,7 @@ public class WebSocketFacade extends Endpoint {
     public void connect(String authToken, int gameID) throws ResponseException {
         try {
             var command = new UserGameCommand(UserGameCommand.CommandType.CONNECT, authToken, gameID);
-            this.session.getBasicRemote().sendText(new Gson().toJson(command));
+            send(command);
         } catch (IOException ex) {
             throw new ResponseException(500, ex.getMessage());
         }
@@ -82,7 +110,7 @@ public class WebSocketFacade extends Endpoint {
     public void move(String authToken, int gameID, ChessMove move) throws ResponseException {
         try {
             var command = new MakeMoveCommand( authToken, gameID, move);
-            this.session.getBasicRemote().sendText(new Gson().toJson(command));
+            send(command);
         } catch (IOException ex) {
             throw new ResponseException(500, ex.getMessage());
         }
@@ -92,7 +120,7 @@ public class WebSocketFacade extends Endpoint {
     public void leave(String authToken, int gameID) throws ResponseException {
         try {
             var command = new UserGameCommand(UserGameCommand.CommandType.LEAVE, authToken, gameID);
-            this.session.getBasicRemote().sendText(new Gson().toJson(command));
+            send(command);
         } catch (IOException ex) {
             throw new ResponseException(500, ex.getMessage());
         }
@@ -102,12 +130,39 @@ public class WebSocketFacade extends Endpoint {
     public void resign(String authToken, int gameID) throws ResponseException {
         try {
             var command = new UserGameCommand(UserGameCommand.CommandType.RESIGN, authToken, gameID);
-            this.session.getBasicRemote().sendText(new Gson().toJson(command));
+            send(command);
+        } catch (IOException ex) {
+            throw new ResponseException(500, ex.getMessage());
+        }
+    }
+
+    // Method for ANALYZE command, the evaluations come back as ANALYSIS messages
+    public void analyze(String authToken, int gameID) throws ResponseException {
+        try {
+            var command = new UserGameCommand(UserGameCommand.CommandType.ANALYZE, authToken, gameID);
+            send(command);
+        } catch (IOException ex) {
+            throw new ResponseException(500, ex.getMessage());
+        }
+    }
+
+    // Close the socket, used when the client is done with the game
+    public void close() throws ResponseException {
+        try {
+            this.session.close();
         } catch (IOException ex) {
             throw new ResponseException(500, ex.getMessage());
         }
     }
 
+    private void send(UserGameCommand command) throws IOException {
+        if (binary) {
+            this.session.getBasicRemote().sendBinary(ByteBuffer.wrap(BinaryProtocol.encodeCommand(command)));
+        } else {
+            this.session.getBasicRemote().sendText(Serializer.GSON.toJson(command));
+        }
+    }
+
     
 
 
@@ -0,0 +1,214 @@
+package dataaccess;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import chess.ChessGame;
+import model.GameData;
+import model.GameSetup;
+import model.ListGameData;
+
+/**
+ * Moves finished games (checkmate, stalemate or resignation) out of the wrapped GameDAO and into a GameArchive,
+ * so the live store only holds games that are still being played. Callers can't tell the difference, getGame,
+ * checkGame and listGames look in both.
+ * <p>
+ * A game is archived `delay` after updateGame first sees it finished, which leaves the players time to look at
+ * the final board and leave. Archived games are read only: their seats stay as they were when the game ended.
+ * The live store has to keep its game IDs across restarts (SQL or the game log), since the archive does.
+ */
+public class ArchivingGameDAO implements GameDAO, AutoCloseable {
+    private final GameDAO live;
+    private final GameArchive archive;
+    private final long delayNanos;
+
+    // gameID -> System.nanoTime() when the game was first seen finished
+    private final ConcurrentHashMap<Integer, Long> finished = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+
+    public ArchivingGameDAO(GameDAO live, GameArchive archive, Duration delay) {
+        this.live = live;
+        this.archive = archive;
+        this.delayNanos = delay.toNanos();
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Games that finished before a restart are only found by looking
+        sweeper.execute(this::findFinishedGames);
+        long period = Math.clamp(delay.toMillis(), 1_000, 60_000);
+        sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Integer createGame(String gameName) throws DataAccessException {
+        return live.createGame(gameName);
+    }
+
+    public Integer createGame(String gameName, ChessGame game) throws DataAccessException {
+        return live.createGame(gameName, game);
+    }
+
+    public List<Integer> createGames(List<GameSetup> games) throws DataAccessException {
+        return live.createGames(games);
+    }
+
+    public List<Integer> importGames(List<GameData> games) throws DataAccessException {
+        return live.importGames(games);
+    }
+
+    public Collection<ListGameData> listGames() throws DataAccessException {
+        Collection<ListGameData> list = new ArrayList<>();
+        for (ListGameData game : live.listGames()) {
+            // Skip a game caught between being archived and being deleted from the live store
+            if (!archive.contains(game.gameID())) {
+                list.add(game);
+            }
+        }
+        list.addAll(archive.list());
+        return list;
+    }
+
+    // The live store walks its own games, the archive's are read one at a time from the mapped file
+    public void forEachGame(Consumer<GameData> action) throws DataAccessException {
+        live.forEachGame(game -> {
+            if (!archive.contains(game.gameID())) {
+                action.accept(game);
+            }
+        });
+        for (ListGameData listed : archive.list()) {
+            GameData game = archive.get(listed.gameID());
+            if (game != null) {
+                action.accept(game);
+            }
+        }
+    }
+
+    public Boolean checkGame(Integer gameID) throws DataAccessException {
+        if (gameID == null) {
+            throw new DataAccessException("Error: gameID is null");
+        }
+        return archive.contains(gameID) || live.checkGame(gameID);
+    }
+
+    public Boolean checkColor(Integer gameID, String playerColor) throws DataAccessException {
+        // Nobody can take a seat in a finished game
+        if (archive.contains(gameID)) {
+            return false;
+        }
+        return live.checkColor(gameID, playerColor);
+    }
+
+    public GameData getGame(Integer gameID) throws DataAccessException {
+        GameData game = archive.get(gameID);
+        if (game == null) {
+            game = live.getGame(gameID);
+        }
+        if (game == null) {
+            // It may have been archived between the two lookups
+            game = archive.get(gameID);
+        }
+        return game;
+    }
+
+    public void updateGame(Integer gameID, ChessGame game) throws DataAccessException {
+        if (archive.contains(gameID)) {
+            return;
+        }
+        live.updateGame(gameID, game);
+        if (Boolean.TRUE.equals(game.isGameOver())) {
+            finished.putIfAbsent(gameID, System.nanoTime());
+        }
+    }
+
+    // Synchronized with archiveGame so a player leaving can't be lost while their game is being moved
+    public synchronized void updateGameStatus(Integer gameID, String playerColor, String username) throws DataAccessException {
+        if (archive.contains(gameID)) {
+            return;
+        }
+        live.updateGameStatus(gameID, playerColor, username);
+    }
+
+    // Archived games are kept, only live ones can be deleted
+    public void deleteGame(Integer gameID) throws DataAccessException {
+        finished.remove(gameID);
+        live.deleteGame(gameID);
+    }
+
+    public synchronized void clearGames() throws DataAccessException {
+        finished.clear();
+        live.clearGames();
+        archive.clear();
+    }
+
+    public void close() {
+        sweeper.shutdownNow();
+        archive.close();
+    }
+
+    /**
+     * Archives every finished game whose delay is up
+     *
+     * @return how many games were archived
+     */
+    int sweep() {
+        int count = 0;
+        long now = System.nanoTime();
+        for (Map.Entry<Integer, Long> entry : finished.entrySet()) {
+            if (now - entry.getValue() < delayNanos) {
+                continue;
+            }
+            try {
+                if (archiveGame(entry.getKey())) {
+                    count++;
+                }
+            } catch (DataAccessException e) {
+                // Leave it in finished and try again next sweep
+                System.err.println(String.format("Archiving game %d failed: %s", entry.getKey(), e.getMessage()));
+            }
+        }
+        return count;
+    }
+
+    void findFinishedGames() {
+        try {
+            long due = System.nanoTime() - delayNanos;
+            for (ListGameData listed : live.listGames()) {
+                int gameID = listed.gameID();
+                if (archive.contains(gameID)) {
+                    // Archived but the delete never happened
+                    live.deleteGame(gameID);
+                    continue;
+                }
+                GameData game = live.getGame(gameID);
+                if (game != null && Boolean.TRUE.equals(game.game().isGameOver())) {
+                    finished.putIfAbsent(gameID, due);
+                }
+            }
+        } catch (DataAccessException e) {
+            System.err.println(String.format("Looking for finished games to archive failed: %s", e.getMessage()));
+        }
+    }
+
+    private synchronized boolean archiveGame(int gameID) throws DataAccessException {
+        GameData game = live.getGame(gameID);
+        boolean archived = false;
+        if (game != null && Boolean.TRUE.equals(game.game().isGameOver())) {
+            // Into the archive (and onto disk) before it leaves the live store, so a crash in between loses nothing
+            archive.put(game);
+            live.deleteGame(gameID);
+            archived = true;
+        }
+        finished.remove(gameID);
+        return archived;
+    }
+}
@@ -2,6 +2,9 @@ package dataaccess;
 
 import model.*;
 
+import java.util.List;
+import java.util.UUID;
+
 public interface AuthDAO {
 
     void createAuth(AuthData a) throws DataAccessException;
@@ -16,4 +19,41 @@ public interface AuthDAO {
 
     void clearAuth() throws DataAccessException;
 
+    // Makes a new token to hand to createAuth, DAOs that use a different token format override this
+    default String newAuthToken(String username) {
+        return UUID.randomUUID().toString();
+    }
+
+    /*
+     * Signed tokens (see SignedTokenAuthDAO) are never stored, but what makes one stop working is: the generation
+     * clearAuth moves on, and the tokens logged out before they expired. Both live with the stored tokens, so every
+     * server sharing this store sees them and they outlast a restart.
+     */
+
+    /**
+     * A logged out signed token, sequence numbers only go up so a server can ask for the ones it hasn't seen
+     */
+    record RevokedToken(long sequence, long nonce, long expiresAt) {}
+
+    long tokenGeneration() throws DataAccessException;
+
+    /**
+     * Moves on to a new generation, which invalidates every signed token and drops every revocation
+     *
+     * @return the new generation
+     */
+    long nextTokenGeneration() throws DataAccessException;
+
+    void revokeToken(long nonce, long expiresAt) throws DataAccessException;
+
+    /**
+     * @return the revocations with a sequence number above after, in order
+     */
+    List<RevokedToken> revokedTokens(long after) throws DataAccessException;
+
+    /**
+     * Drops the revocations of tokens that have expired by now anyway
+     */
+    void purgeRevokedTokens(long now) throws DataAccessException;
+
 }
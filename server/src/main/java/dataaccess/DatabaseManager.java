@@ -1,7 +1,16 @@
 package dataaccess;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
 
 public class DatabaseManager {
     private static String databaseName;
@@ -9,17 +18,57 @@ public class DatabaseManager {
     private static String dbPassword;
     private static String connectionUrl;
 
+    // Set when running on the embedded database file instead of MySQL
+    private static boolean embedded = false;
+
+    /*
+     * Caps how many connections can be open at once. With virtual threads there is no thread pool to limit
+     * concurrency anymore, so without this a login storm would open one MySQL connection per request.
+     */
+    private static final int DEFAULT_MAX_CONNECTIONS = 16;
+    private static final long CONNECTION_WAIT_MILLIS = 5000;
+    private static Semaphore connectionPermits = new Semaphore(DEFAULT_MAX_CONNECTIONS, true);
+
+    // How long callers queue for a permit, so pool starvation shows up separately from slow queries
+    private static final LatencyHistogram CONNECTION_WAIT = Metrics.timer("chess_db_connection_wait");
+
     /*
      * Load the database information for the db.properties file.
      */
     static {
         loadPropertiesFromResources();
+        Metrics.gauge("chess_db_connections_available", () -> connectionPermits.availablePermits());
+    }
+
+    /**
+     * Switches from MySQL to an embedded H2 database stored in the given file (H2 adds .mv.db to the name), so
+     * a single server needs no database server at all. H2 runs in MySQL mode, so the SQL DAOs work unchanged.
+     * Call this before any DAO is created.
+     */
+    static public synchronized void useEmbedded(String file) {
+        Path path = Path.of(file).toAbsolutePath();
+        embedded = true;
+        // H2 names the database after the file. The tables go in a schema of the same name, which is how MySQL
+        // lays them out, so information_schema queries filtered on DATABASE() still find them
+        databaseName = path.getFileName().toString().toUpperCase();
+        dbUsername = "sa";
+        dbPassword = "";
+        // DB_CLOSE_DELAY=-1 keeps the database open between connections instead of reopening the file every time
+        connectionUrl = String.format("jdbc:h2:file:%s;MODE=MySQL;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1;"
+            + "INIT=CREATE SCHEMA IF NOT EXISTS \"%s\"\\;SET SCHEMA \"%s\"", path, databaseName, databaseName);
     }
 
     /**
      * Creates the database if it does not already exist.
      */
     static public void createDatabase() throws DataAccessException {
+        if (connectionUrl == null) {
+            throw new DataAccessException("Error: no db.properties found, configure MySQL or use the embedded database");
+        }
+        if (embedded) {
+            // The embedded file is the database, H2 creates it on first connect
+            return;
+        }
         var statement = "CREATE DATABASE IF NOT EXISTS " + databaseName;
         try (var conn = DriverManager.getConnection(connectionUrl, dbUsername, dbPassword);
              var preparedStatement = conn.prepareStatement(statement)) {
@@ -57,6 +106,23 @@ public class DatabaseManager {
             username VARCHAR(225),
             FOREIGN KEY (username) REFERENCES user(username)
         )       
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS token_generation (
+            id INT NOT NULL PRIMARY KEY,
+            generation BIGINT NOT NULL
+        )
+        """,
+        """
+        INSERT INTO token_generation (id, generation)
+        SELECT 1, 0 FROM DUAL WHERE NOT EXISTS (SELECT 1 FROM token_generation WHERE id = 1)
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS revoked_token (
+            id BIGINT NOT NULL PRIMARY KEY AUTO_INCREMENT,
+            nonce BIGINT NOT NULL,
+            expiresAt BIGINT NOT NULL
+        )
         """
     };
     
@@ -84,22 +150,66 @@ public class DatabaseManager {
      * // execute SQL statements.
      * }
      * </code>
+     * Each open connection holds one of the db.maxConnections permits until it is closed.
      */
     static Connection getConnection() throws DataAccessException {
+        acquirePermit();
         try {
             //do not wrap the following line with a try-with-resources
             var conn = DriverManager.getConnection(connectionUrl, dbUsername, dbPassword);
-            conn.setCatalog(databaseName);
-            return conn;
+            if (!embedded) {
+                conn.setCatalog(databaseName);
+            }
+            return releaseOnClose(conn);
         } catch (SQLException ex) {
+            connectionPermits.release();
             throw new DataAccessException("failed to get connection", ex);
         }
     }
 
+    private static void acquirePermit() throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            if (!connectionPermits.tryAcquire(CONNECTION_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new DataAccessException("Error: database is busy, try again later");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Error: interrupted while waiting for a database connection", ex);
+        } finally {
+            CONNECTION_WAIT.recordSince(start);
+        }
+    }
+
+    /**
+     * Wraps the connection so that closing it (normally from a try-with-resources block) gives its permit back.
+     */
+    private static Connection releaseOnClose(Connection conn) {
+        AtomicBoolean released = new AtomicBoolean(false);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+            (proxy, method, args) -> {
+                try {
+                    return method.invoke(conn, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                } finally {
+                    if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                        connectionPermits.release();
+                    }
+                }
+            });
+    }
+
     private static void loadPropertiesFromResources() {
+        String embeddedFile = System.getProperty("chess.embeddedDb");
+        if (embeddedFile != null && !embeddedFile.isBlank()) {
+            useEmbedded(embeddedFile);
+            return;
+        }
         try (var propStream = Thread.currentThread().getContextClassLoader().getResourceAsStream("db.properties")) {
             if (propStream == null) {
-                throw new Exception("Unable to load db.properties");
+                // Fine when running on the embedded database or the memory DAOs, createDatabase reports it otherwise
+                return;
             }
             Properties props = new Properties();
             props.load(propStream);
@@ -110,12 +220,19 @@ public class DatabaseManager {
     }
 
     private static void loadProperties(Properties props) {
+        embedded = false;
         databaseName = props.getProperty("db.name");
         dbUsername = props.getProperty("db.user");
         dbPassword = props.getProperty("db.password");
 
         var host = props.getProperty("db.host");
         var port = Integer.parseInt(props.getProperty("db.port"));
-        connectionUrl = String.format("jdbc:mysql://%s:%d", host, port);
+        // Lets the driver send a batch of inserts as one multi-row INSERT
+        connectionUrl = String.format("jdbc:mysql://%s:%d?rewriteBatchedStatements=true", host, port);
+
+        var maxConnections = props.getProperty("db.maxConnections");
+        if (maxConnections != null) {
+            connectionPermits = new Semaphore(Integer.parseInt(maxConnections.trim()), true);
+        }
     }
 }
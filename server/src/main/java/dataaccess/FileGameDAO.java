@@ -0,0 +1,672 @@
+package dataaccess;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import chess.ChessGame;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import model.GameData;
+import model.GameSetup;
+import model.ListGameData;
+import serialization.PackedGame;
+
+/**
+ * Keeps every game in memory, like MemoryGameDAO, and makes each change durable by appending it to a log file in
+ * `directory` before the call returns.
+ * <p>
+ * Writers only copy their record into a shared buffer. A single committer thread writes whatever has built up and
+ * fsyncs once for all of it (group commit), so a thousand moves arriving together cost one fsync instead of a
+ * thousand. Every `snapshotEvery` records the whole state is written to games.snapshot and a new log is started,
+ * which keeps startup replay short. On startup the snapshot is loaded and the logs after it are replayed; a record
+ * that was only half written when the process died fails its checksum and is cut off.
+ * <p>
+ * Log records are framed as length, CRC32, then the body. Moves are logged as the PackedGame form of the position
+ * (33 bytes) since updateGame is handed the game after the move rather than the move itself, followed by the
+ * halfmove clock and the position keys since the last capture or pawn move, so repetition and the fifty-move rule
+ * still hold after a restart. Snapshots carry the same. Logs and snapshots written before the history was added
+ * still load, with the history starting over from each position.
+ * <p>
+ * The games in memory are only ever replaced, never changed: getGame hands out a copy and updateGame keeps one, so
+ * a caller part way through a move can't change what other readers or the snapshot see before it is logged.
+ */
+public class FileGameDAO implements GameDAO, AutoCloseable {
+    public static final int DEFAULT_SNAPSHOT_EVERY = 50_000;
+
+    private static final byte CREATE = 1;
+    private static final byte GAME = 2;
+    private static final byte SEAT = 3;
+    private static final byte CLEAR = 4;
+    private static final byte DELETE = 5;
+
+    private static final int SNAPSHOT_MAGIC = 0x43485347;
+    private static final int SNAPSHOT_MAGIC_HISTORY = 0x43485348;
+    private static final String SNAPSHOT = "games.snapshot";
+    private static final String LOG_PREFIX = "games-";
+    private static final String LOG_SUFFIX = ".wal";
+
+    private final Path directory;
+    private final int snapshotEvery;
+    private final ConcurrentHashMap<Integer, GameData> games = new ConcurrentHashMap<>();
+
+    // Guarded by this. Records are numbered as they are appended, durableSeq is the last one that has been fsynced
+    private int nextGameID = 1;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(64 * 1024);
+    private long appendedSeq = 0;
+    private long durableSeq = 0;
+    private IOException failure;
+    private boolean closed = false;
+
+    // Only used by the committer thread once the constructor is done
+    private FileChannel log;
+    private long generation;
+    private long recordsSinceSnapshot = 0;
+    private final Thread committer;
+
+    private final LatencyHistogram fsyncTimer = Metrics.timer("chess_game_log_fsync");
+    private final LongAdder recordsWritten = Metrics.counter("chess_game_log_records_total");
+    private final LongAdder syncs = Metrics.counter("chess_game_log_syncs_total");
+    private final LongAdder snapshots = Metrics.counter("chess_game_log_snapshots_total");
+
+    public FileGameDAO(Path directory) throws DataAccessException {
+        this(directory, DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    public FileGameDAO(Path directory, int snapshotEvery) throws DataAccessException {
+        if (snapshotEvery < 1) {
+            throw new IllegalArgumentException("snapshotEvery must be at least 1, got " + snapshotEvery);
+        }
+        this.directory = directory;
+        this.snapshotEvery = snapshotEvery;
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new DataAccessException(String.format("Error: Unable to open the game log in %s: %s", directory, e.getMessage()), e);
+        }
+
+        committer = new Thread(this::commitLoop, "game-log-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    public void clearGames() throws DataAccessException {
+        long seq;
+        synchronized (this) {
+            seq = append(record(CLEAR, 0));
+            games.clear();
+        }
+        awaitDurable(seq);
+    }
+
+    public Integer createGame(String gameName) throws DataAccessException {
+        if (gameName == null) {
+            throw new DataAccessException("Error: Game Name is Null");
+        }
+
+        long seq;
+        int newGameID;
+        synchronized (this) {
+            newGameID = nextGameID++;
+            seq = append(record(CREATE, newGameID, out -> out.writeUTF(gameName)));
+            games.put(newGameID, new GameData(newGameID, null, null, gameName, ChessGame.newGame()));
+        }
+        awaitDurable(seq);
+        return newGameID;
+    }
+
+    // The CREATE and GAME records go in together and share one fsync
+    public Integer createGame(String gameName, ChessGame game) throws DataAccessException {
+        if (gameName == null) {
+            throw new DataAccessException("Error: Game Name is Null");
+        }
+
+        ChessGame stored = game.copy();
+        long seq;
+        int newGameID;
+        synchronized (this) {
+            newGameID = nextGameID++;
+            append(record(CREATE, newGameID, out -> out.writeUTF(gameName)));
+            seq = append(record(GAME, newGameID, out -> writeGame(out, stored)));
+            games.put(newGameID, new GameData(newGameID, null, null, gameName, stored));
+        }
+        awaitDurable(seq);
+        return newGameID;
+    }
+
+    // Logged under one lock and waited on once, so the whole batch shares a single fsync
+    public List<Integer> createGames(List<GameSetup> setups) throws DataAccessException {
+        for (GameSetup setup : setups) {
+            if (setup.gameName() == null) {
+                throw new DataAccessException("Error: Game Name is Null");
+            }
+        }
+
+        List<Integer> gameIDs = new ArrayList<>(setups.size());
+        long seq = 0;
+        synchronized (this) {
+            for (GameSetup setup : setups) {
+                int newGameID = nextGameID++;
+                seq = append(record(CREATE, newGameID, out -> out.writeUTF(setup.gameName())));
+                games.put(newGameID, new GameData(newGameID, null, null, setup.gameName(), ChessGame.newGame()));
+                if (setup.whiteUsername() != null) {
+                    seq = append(record(SEAT, newGameID, out -> {
+                        out.writeBoolean(true);
+                        writeNullable(out, setup.whiteUsername());
+                    }));
+                    applySeat(newGameID, true, setup.whiteUsername());
+                }
+                if (setup.blackUsername() != null) {
+                    seq = append(record(SEAT, newGameID, out -> {
+                        out.writeBoolean(false);
+                        writeNullable(out, setup.blackUsername());
+                    }));
+                    applySeat(newGameID, false, setup.blackUsername());
+                }
+                gameIDs.add(newGameID);
+            }
+        }
+        awaitDurable(seq);
+        return gameIDs;
+    }
+
+    // Same single fsync as createGames, each game is a CREATE and a GAME record
+    public List<Integer> importGames(List<GameData> imports) throws DataAccessException {
+        for (GameData game : imports) {
+            if (game.gameName() == null) {
+                throw new DataAccessException("Error: Game Name is Null");
+            }
+        }
+
+        List<Integer> gameIDs = new ArrayList<>(imports.size());
+        long seq = 0;
+        synchronized (this) {
+            for (GameData game : imports) {
+                int newGameID = nextGameID++;
+                ChessGame stored = game.game().copy();
+                append(record(CREATE, newGameID, out -> out.writeUTF(game.gameName())));
+                seq = append(record(GAME, newGameID, out -> writeGame(out, stored)));
+                games.put(newGameID, new GameData(newGameID, null, null, game.gameName(), stored));
+                if (game.whiteUsername() != null) {
+                    seq = append(record(SEAT, newGameID, out -> {
+                        out.writeBoolean(true);
+                        writeNullable(out, game.whiteUsername());
+                    }));
+                    applySeat(newGameID, true, game.whiteUsername());
+                }
+                if (game.blackUsername() != null) {
+                    seq = append(record(SEAT, newGameID, out -> {
+                        out.writeBoolean(false);
+                        writeNullable(out, game.blackUsername());
+                    }));
+                    applySeat(newGameID, false, game.blackUsername());
+                }
+                gameIDs.add(newGameID);
+            }
+        }
+        awaitDurable(seq);
+        return gameIDs;
+    }
+
+    public Collection<ListGameData> listGames() {
+        Collection<ListGameData> list = new ArrayList<>();
+        for (GameData game : games.values()) {
+            list.add(new ListGameData(game.gameID(), game.whiteUsername(), game.blackUsername(), game.gameName()));
+        }
+        return list;
+    }
+
+    public Boolean checkGame(Integer gameID) throws DataAccessException {
+        if (gameID == null) {
+            throw new DataAccessException("Error: gameID is null");
+        }
+
+        return games.containsKey(gameID);
+    }
+
+    public Boolean checkColor(Integer gameID, String playerColor) {
+        GameData game = games.get(gameID);
+        if (game == null) {
+            return false;
+        }
+
+        if (playerColor.equals("WHITE")) {
+            return game.whiteUsername() == null;
+        } else if (playerColor.equals("BLACK")) {
+            return game.blackUsername() == null;
+        }
+
+        // for invalid types return false
+        return false;
+    }
+
+    // A copy, like a game read back from SQL, so the caller can make its move on it without anyone seeing
+    public GameData getGame(Integer gameID) {
+        GameData game = games.get(gameID);
+        return game == null ? null : game.updateGame(game.game().copy());
+    }
+
+    public void updateGame(Integer gameID, ChessGame game) throws DataAccessException {
+        ChessGame stored = game.copy();
+        long seq;
+        synchronized (this) {
+            if (!games.containsKey(gameID)) {
+                return;
+            }
+            seq = append(record(GAME, gameID, out -> writeGame(out, stored)));
+            games.computeIfPresent(gameID, (id, oldGame) -> oldGame.updateGame(stored));
+        }
+        awaitDurable(seq);
+    }
+
+    public void updateGameStatus(Integer gameID, String playerColor, String username) throws DataAccessException {
+        boolean white = playerColor.equals("WHITE");
+        if (!white && !playerColor.equals("BLACK")) {
+            return;
+        }
+
+        long seq;
+        synchronized (this) {
+            if (!games.containsKey(gameID)) {
+                return;
+            }
+            seq = append(record(SEAT, gameID, out -> {
+                out.writeBoolean(white);
+                writeNullable(out, username);
+            }));
+            applySeat(gameID, white, username);
+        }
+        awaitDurable(seq);
+    }
+
+    public void deleteGame(Integer gameID) throws DataAccessException {
+        long seq;
+        synchronized (this) {
+            if (!games.containsKey(gameID)) {
+                return;
+            }
+            seq = append(record(DELETE, gameID));
+            games.remove(gameID);
+        }
+        awaitDurable(seq);
+    }
+
+    /**
+     * Waits for everything already handed in to be on disk, then writes a snapshot so the next start has nothing
+     * to replay.
+     */
+    public void close() throws DataAccessException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            committer.join();
+            synchronized (this) {
+                if (failure == null) {
+                    rotate(snapshotBytes(generation + 1));
+                }
+            }
+            log.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Error: Interrupted while closing the game log", e);
+        } catch (IOException e) {
+            throw new DataAccessException(String.format("Error: Unable to close the game log: %s", e.getMessage()), e);
+        }
+    }
+
+    // Adds a framed record to the pending buffer and returns its sequence number. Caller holds the lock
+    private long append(byte[] body) throws DataAccessException {
+        if (closed) {
+            throw new DataAccessException("Error: the game log is closed");
+        }
+        if (failure != null) {
+            throw new DataAccessException(String.format("Error: the game log failed: %s", failure.getMessage()), failure);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(body.length).putInt((int) crc.getValue());
+        pending.write(header.array(), 0, 8);
+        pending.write(body, 0, body.length);
+        notifyAll();
+        return ++appendedSeq;
+    }
+
+    private synchronized void awaitDurable(long seq) throws DataAccessException {
+        try {
+            while (durableSeq < seq) {
+                if (failure != null) {
+                    throw new DataAccessException(String.format("Error: the game log failed: %s", failure.getMessage()), failure);
+                }
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Error: Interrupted while waiting for the game log", e);
+        }
+    }
+
+    private void commitLoop() {
+        while (true) {
+            byte[] batch;
+            long batchSeq;
+            byte[] snapshot = null;
+            synchronized (this) {
+                try {
+                    while (pending.size() == 0 && !closed) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending.toByteArray();
+                pending.reset();
+                batchSeq = appendedSeq;
+                recordsSinceSnapshot += batchSeq - durableSeq;
+                // Taken under the lock so the snapshot holds exactly the records up to the end of this batch
+                if (recordsSinceSnapshot >= snapshotEvery) {
+                    snapshot = snapshotBytes(generation + 1);
+                }
+            }
+
+            try {
+                long start = System.nanoTime();
+                writeFully(log, ByteBuffer.wrap(batch));
+                log.force(false);
+                fsyncTimer.recordSince(start);
+                syncs.increment();
+                recordsWritten.add(batchSeq - durableSeq);
+                if (snapshot != null) {
+                    rotate(snapshot);
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+
+            synchronized (this) {
+                durableSeq = batchSeq;
+                notifyAll();
+            }
+        }
+    }
+
+    /*
+     * Starts the next log, then swaps in the snapshot. If we die before the rename the old snapshot and every
+     * log after it are still there, so nothing is lost either way.
+     */
+    private void rotate(byte[] snapshot) throws IOException {
+        long next = generation + 1;
+        FileChannel nextLog = openLog(next);
+
+        Path tmp = directory.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, ByteBuffer.wrap(snapshot));
+            out.force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        log.close();
+        for (long old : logGenerations().keySet()) {
+            if (old < next) {
+                Files.deleteIfExists(logPath(old));
+            }
+        }
+        log = nextLog;
+        generation = next;
+        recordsSinceSnapshot = 0;
+        snapshots.increment();
+    }
+
+    // Caller holds the lock
+    private byte[] snapshotBytes(long logGeneration) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + games.size() * 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(SNAPSHOT_MAGIC_HISTORY);
+            out.writeLong(logGeneration);
+            out.writeInt(nextGameID);
+            out.writeInt(games.size());
+            for (GameData game : games.values()) {
+                out.writeInt(game.gameID());
+                out.writeUTF(game.gameName());
+                writeNullable(out, game.whiteUsername());
+                writeNullable(out, game.blackUsername());
+                writeGame(out, game.game());
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Only writing to memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void recover() throws IOException {
+        generation = 1;
+        Path snapshotPath = directory.resolve(SNAPSHOT);
+        if (Files.exists(snapshotPath)) {
+            generation = loadSnapshot(Files.readAllBytes(snapshotPath));
+        }
+
+        TreeMap<Long, Path> logs = logGenerations();
+        for (var entry : logs.tailMap(generation, true).entrySet()) {
+            recordsSinceSnapshot += replay(entry.getValue());
+            generation = entry.getKey();
+        }
+
+        log = openLog(generation);
+        log.position(log.size());
+    }
+
+    private long loadSnapshot(byte[] bytes) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int magic = bytes.length < 24 ? 0 : buffer.getInt();
+        if ((magic != SNAPSHOT_MAGIC && magic != SNAPSHOT_MAGIC_HISTORY) || buffer.getInt(bytes.length - 4) != (int) crc.getValue()) {
+            throw new IOException("games.snapshot is corrupt");
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 4, bytes.length - 8));
+        long logGeneration = in.readLong();
+        nextGameID = in.readInt();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int gameID = in.readInt();
+            String gameName = in.readUTF();
+            String white = readNullable(in);
+            String black = readNullable(in);
+            ChessGame game = readGame(in, magic == SNAPSHOT_MAGIC_HISTORY);
+            games.put(gameID, new GameData(gameID, white, black, gameName, game));
+        }
+        return logGeneration;
+    }
+
+    // Applies every intact record in the file and cuts off anything after the first one that isn't
+    private long replay(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        long applied = 0;
+        while (buffer.remaining() >= 8) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 5 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            byte[] body = new byte[length];
+            buffer.get(body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(start);
+                break;
+            }
+            apply(new DataInputStream(new ByteArrayInputStream(body)));
+            applied++;
+        }
+
+        if (buffer.position() < buffer.limit()) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(buffer.position());
+                channel.force(true);
+            }
+        }
+        return applied;
+    }
+
+    private void apply(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        int gameID = in.readInt();
+        switch (type) {
+            case CREATE -> {
+                games.put(gameID, new GameData(gameID, null, null, in.readUTF(), ChessGame.newGame()));
+                nextGameID = Math.max(nextGameID, gameID + 1);
+            }
+            case GAME -> {
+                // Records from before the history was logged end after the packed position
+                ChessGame game = readGame(in, in.available() > 0);
+                games.computeIfPresent(gameID, (id, oldGame) -> oldGame.updateGame(game));
+            }
+            case SEAT -> {
+                boolean white = in.readBoolean();
+                applySeat(gameID, white, readNullable(in));
+            }
+            case CLEAR -> games.clear();
+            case DELETE -> games.remove(gameID);
+            default -> throw new IOException("Unknown game log record type " + type);
+        }
+    }
+
+    private void applySeat(int gameID, boolean white, String username) {
+        if (white) {
+            games.computeIfPresent(gameID, (id, oldGame) -> oldGame.updateWhite(username));
+        } else {
+            games.computeIfPresent(gameID, (id, oldGame) -> oldGame.updateBlack(username));
+        }
+    }
+
+    private TreeMap<Long, Path> logGenerations() throws IOException {
+        TreeMap<Long, Path> logs = new TreeMap<>();
+        List<Path> files;
+        try (var stream = Files.list(directory)) {
+            files = stream.toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX)) {
+                try {
+                    logs.put(Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())), file);
+                } catch (NumberFormatException ignored) {
+                    // Not one of ours
+                }
+            }
+        }
+        return logs;
+    }
+
+    private Path logPath(long logGeneration) {
+        return directory.resolve(String.format("%s%010d%s", LOG_PREFIX, logGeneration, LOG_SUFFIX));
+    }
+
+    private FileChannel openLog(long logGeneration) throws IOException {
+        return FileChannel.open(logPath(logGeneration), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] record(byte type, int gameID) {
+        return record(type, gameID, out -> { });
+    }
+
+    private static byte[] record(byte type, int gameID, RecordWriter payload) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            out.writeInt(gameID);
+            payload.write(out);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Only writing to memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeGame(DataOutputStream out, ChessGame game) throws IOException {
+        out.write(PackedGame.pack(game));
+        // After a capture or pawn move the history is just the current position, which unpacking starts with anyway
+        long[] history = game.getHalfmoveClock() == 0 ? new long[0] : game.getPositionHistory();
+        out.writeInt(game.getHalfmoveClock());
+        out.writeInt(history.length);
+        for (long hash : history) {
+            out.writeLong(hash);
+        }
+    }
+
+    private static ChessGame readGame(DataInputStream in, boolean withHistory) throws IOException {
+        byte[] packed = new byte[PackedGame.SIZE];
+        in.readFully(packed);
+        ChessGame game = PackedGame.unpack(packed);
+        if (withHistory) {
+            int halfmoveClock = in.readInt();
+            long[] history = new long[in.readInt()];
+            for (int i = 0; i < history.length; i++) {
+                history[i] = in.readLong();
+            }
+            if (history.length > 0) {
+                game.restoreHistory(halfmoveClock, history);
+            }
+        }
+        return game;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,279 @@
+package dataaccess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import metrics.Metrics;
+import model.GameData;
+import model.ListGameData;
+import serialization.PackedGame;
+
+/**
+ * Finished games, kept in memory-mapped segment files that are only ever appended to. Reading a game decodes it
+ * straight out of the mapping, so there is no query, no JSON and no read() call, and the pages of games nobody
+ * looks at stay on disk instead of in the heap.
+ * <p>
+ * Each record is a fixed header followed by the names: int length, int gameID, the PackedGame form of the final
+ * position (33 bytes), then gameName, whiteUsername and blackUsername each as a short byte count (-1 for null)
+ * and UTF-8. The length goes in last, so a record cut short by a crash still reads as 0 and ends the segment.
+ * The gameID index lives in memory and is rebuilt by scanning the segments on startup.
+ */
+public class GameArchive implements AutoCloseable {
+    public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+
+    private static final int HEADER = 4 + 4 + PackedGame.SIZE;
+    private static final String PREFIX = "archive-";
+    private static final String SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int segmentBytes;
+
+    // gameID -> segment number in the high 32 bits, offset in the low 32
+    private final ConcurrentHashMap<Integer, Long> index = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+
+    // Guarded by this
+    private int current;
+    private int position;
+
+    private final LongAdder archived = Metrics.counter("chess_archive_writes_total");
+    private final LongAdder reads = Metrics.counter("chess_archive_reads_total");
+
+    public GameArchive(Path directory) throws DataAccessException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public GameArchive(Path directory, int segmentBytes) throws DataAccessException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (var stream = Files.list(directory)) {
+                files = stream.filter(file -> segmentNumber(file) > 0).sorted().toList();
+            }
+            for (Path file : files) {
+                current = segmentNumber(file);
+                segments.put(current, map(file));
+                position = scan(current);
+            }
+            if (segments.isEmpty()) {
+                startSegment(1);
+            }
+        } catch (IOException e) {
+            throw new DataAccessException(String.format("Error: Unable to open the game archive in %s: %s", directory, e.getMessage()), e);
+        }
+        Metrics.gauge("chess_archive_games", index::size);
+    }
+
+    public boolean contains(int gameID) {
+        return index.containsKey(gameID);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the archived game, or null if it was never archived
+     */
+    public GameData get(int gameID) {
+        ByteBuffer record = record(gameID);
+        if (record == null) {
+            return null;
+        }
+        reads.increment();
+        record.getInt();
+        var game = PackedGame.read(record);
+        String gameName = readString(record);
+        String white = readString(record);
+        String black = readString(record);
+        return new GameData(gameID, white, black, gameName, game);
+    }
+
+    public Collection<ListGameData> list() {
+        Collection<ListGameData> list = new ArrayList<>(index.size());
+        for (int gameID : index.keySet()) {
+            ByteBuffer record = record(gameID);
+            if (record == null) {
+                continue;
+            }
+            // The names come after the position, which a listing doesn't need
+            record.position(record.position() + 4 + PackedGame.SIZE);
+            String gameName = readString(record);
+            String white = readString(record);
+            String black = readString(record);
+            list.add(new ListGameData(gameID, white, black, gameName));
+        }
+        return list;
+    }
+
+    /**
+     * Appends the game and flushes it to disk before returning. Archiving a game twice keeps the first copy.
+     */
+    public synchronized void put(GameData game) throws DataAccessException {
+        if (index.containsKey(game.gameID())) {
+            return;
+        }
+
+        byte[] gameName = encode(game.gameName());
+        byte[] white = encode(game.whiteUsername());
+        byte[] black = encode(game.blackUsername());
+        int length = HEADER + stringBytes(gameName) + stringBytes(white) + stringBytes(black);
+        if (length > segmentBytes) {
+            throw new DataAccessException("Error: game is too large to archive");
+        }
+
+        try {
+            // Leave room for the 0 length that marks the end of the segment
+            if (position + length + 4 > segmentBytes) {
+                startSegment(current + 1);
+            }
+        } catch (IOException e) {
+            throw new DataAccessException(String.format("Error: Unable to start an archive segment: %s", e.getMessage()), e);
+        }
+
+        MappedByteBuffer segment = segments.get(current);
+        ByteBuffer out = segment.duplicate().position(position + 4);
+        out.putInt(game.gameID());
+        PackedGame.write(out, game.game());
+        writeString(out, gameName);
+        writeString(out, white);
+        writeString(out, black);
+        // Body first, then the length that makes it visible, so the disk never has a length without its record
+        segment.force(position + 4, length - 4);
+        segment.putInt(position, length);
+        segment.force(position, 4);
+
+        index.put(game.gameID(), location(current, position));
+        position += length;
+        archived.increment();
+    }
+
+    /**
+     * Forgets every archived game and deletes the segment files
+     */
+    public synchronized void clear() throws DataAccessException {
+        try {
+            index.clear();
+            List<Integer> old = new ArrayList<>(segments.keySet());
+            segments.clear();
+            for (int number : old) {
+                // The mapping itself stays valid until it is collected, so a reader that is still using it is fine
+                Files.deleteIfExists(segmentPath(number));
+            }
+            startSegment(current + 1);
+        } catch (IOException e) {
+            throw new DataAccessException(String.format("Error: Unable to clear the game archive: %s", e.getMessage()), e);
+        }
+    }
+
+    public synchronized void close() {
+        for (MappedByteBuffer segment : segments.values()) {
+            segment.force();
+        }
+    }
+
+    // A view of the record positioned just after its length, or null if the game isn't archived
+    private ByteBuffer record(int gameID) {
+        Long location = index.get(gameID);
+        if (location == null) {
+            return null;
+        }
+        MappedByteBuffer segment = segments.get((int) (location >>> 32));
+        if (segment == null) {
+            return null;
+        }
+        int offset = (int) (long) location;
+        return segment.duplicate().position(offset + 4);
+    }
+
+    // Indexes every complete record in the segment and returns where the next one goes
+    private int scan(int number) {
+        MappedByteBuffer segment = segments.get(number);
+        int offset = 0;
+        while (offset + 4 <= segmentBytes) {
+            int length = segment.getInt(offset);
+            if (length < HEADER || offset + length > segmentBytes) {
+                break;
+            }
+            index.put(segment.getInt(offset + 4), location(number, offset));
+            offset += length;
+        }
+        return offset;
+    }
+
+    private void startSegment(int number) throws IOException {
+        segments.put(number, map(segmentPath(number)));
+        current = number;
+        position = 0;
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("%s%06d%s", PREFIX, number, SUFFIX));
+    }
+
+    private static int segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long location(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringBytes(byte[] value) throws DataAccessException {
+        if (value != null && value.length > Short.MAX_VALUE) {
+            throw new DataAccessException("Error: name is too long to archive");
+        }
+        return 2 + (value == null ? 0 : value.length);
+    }
+
+    private static void writeString(ByteBuffer out, byte[] value) {
+        if (value == null) {
+            out.putShort((short) -1);
+        } else {
+            out.putShort((short) value.length);
+            out.put(value);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,16 +1,81 @@
 package dataaccess;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
 
 import chess.ChessGame;
 import model.GameData;
+import model.GameSetup;
 import model.ListGameData;
 
 public interface GameDAO {
     Integer createGame(String gameName) throws DataAccessException;
 
+    /**
+     * Creates a game that starts from the given position instead of the usual one
+     */
+    default Integer createGame(String gameName, ChessGame game) throws DataAccessException {
+        Integer gameID = createGame(gameName);
+        updateGame(gameID, game);
+        return gameID;
+    }
+
+    /**
+     * Creates every game with its players already seated and returns the new gameIDs in the same order.
+     * Stores that can do it in one round trip override this.
+     */
+    default List<Integer> createGames(List<GameSetup> games) throws DataAccessException {
+        List<Integer> gameIDs = new ArrayList<>(games.size());
+        for (GameSetup game : games) {
+            Integer gameID = createGame(game.gameName());
+            if (game.whiteUsername() != null) {
+                updateGameStatus(gameID, "WHITE", game.whiteUsername());
+            }
+            if (game.blackUsername() != null) {
+                updateGameStatus(gameID, "BLACK", game.blackUsername());
+            }
+            gameIDs.add(gameID);
+        }
+        return gameIDs;
+    }
+
+    /**
+     * Stores games that were played somewhere else (their gameIDs are ignored) and returns the new gameIDs in the
+     * same order. Stores that can do it in one round trip override this.
+     */
+    default List<Integer> importGames(List<GameData> games) throws DataAccessException {
+        List<Integer> gameIDs = new ArrayList<>(games.size());
+        for (GameData game : games) {
+            Integer gameID = createGame(game.gameName(), game.game());
+            if (game.whiteUsername() != null) {
+                updateGameStatus(gameID, "WHITE", game.whiteUsername());
+            }
+            if (game.blackUsername() != null) {
+                updateGameStatus(gameID, "BLACK", game.blackUsername());
+            }
+            gameIDs.add(gameID);
+        }
+        return gameIDs;
+    }
+
     Collection<ListGameData> listGames() throws DataAccessException;
 
+    /**
+     * Hands every stored game to action, for exports and index builds. Only a few games are held at once, so
+     * this is the way to walk a store of any size; stores that can read games in pages override it.
+     */
+    default void forEachGame(Consumer<GameData> action) throws DataAccessException {
+        for (ListGameData listed : listGames()) {
+            GameData game = getGame(listed.gameID());
+            // Deleted since it was listed
+            if (game != null) {
+                action.accept(game);
+            }
+        }
+    }
+
     Boolean checkGame(Integer gameID) throws DataAccessException;
 
     Boolean checkColor(Integer gameID, String playerColor) throws DataAccessException;
@@ -21,6 +86,8 @@ public interface GameDAO {
 
     void updateGameStatus(Integer gameID, String playerColor, String username) throws DataAccessException;
 
+    void deleteGame(Integer gameID) throws DataAccessException;
+
     void clearGames() throws DataAccessException;
 
 }
\ No newline at end of file
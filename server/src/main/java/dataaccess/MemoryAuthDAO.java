@@ -1,11 +1,23 @@
 package dataaccess;
 
 import model.AuthData;
-import java.util.HashMap;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MemoryAuthDAO implements AuthDAO {
     
-    final private HashMap<String, AuthData> auths = new HashMap<>();
+    // Concurrent because handlers (and the load generator's thousands of clients) hit this from many threads
+    final private ConcurrentHashMap<String, AuthData> auths = new ConcurrentHashMap<>();
+
+    // Starts at the time this store was made, so signed tokens from before a restart, whose users are gone with the
+    // rest of memory, don't come back
+    final private AtomicLong tokenGeneration = new AtomicLong(System.currentTimeMillis());
+    // sequence -> revocation
+    final private ConcurrentSkipListMap<Long, RevokedToken> revokedTokens = new ConcurrentSkipListMap<>();
+    final private AtomicLong revocationSequence = new AtomicLong();
 
     public void createAuth(AuthData a) throws DataAccessException {
         // Make sure that it's a valid input
@@ -59,4 +71,26 @@ public class MemoryAuthDAO implements AuthDAO {
     public String getUser(String authToken) throws DataAccessException {
         return auths.get(authToken).username();
     }
+
+    public long tokenGeneration() {
+        return tokenGeneration.get();
+    }
+
+    public synchronized long nextTokenGeneration() {
+        revokedTokens.clear();
+        return tokenGeneration.incrementAndGet();
+    }
+
+    public synchronized void revokeToken(long nonce, long expiresAt) {
+        long sequence = revocationSequence.incrementAndGet();
+        revokedTokens.put(sequence, new RevokedToken(sequence, nonce, expiresAt));
+    }
+
+    public List<RevokedToken> revokedTokens(long after) {
+        return List.copyOf(revokedTokens.tailMap(after, false).values());
+    }
+
+    public void purgeRevokedTokens(long now) {
+        revokedTokens.values().removeIf(token -> token.expiresAt() <= now);
+    }
 }
@@ -2,17 +2,19 @@ package dataaccess;
 
 import model.GameData;
 import model.ListGameData;
-import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import chess.ChessGame;
 
 public class MemoryGameDAO implements GameDAO {
     
-    final private HashMap<Integer, GameData> games = new HashMap<>();
+    // Concurrent because handlers (and the load generator's thousands of clients) hit this from many threads
+    final private ConcurrentHashMap<Integer, GameData> games = new ConcurrentHashMap<>();
 
-    Integer gameID = 1;
+    final private AtomicInteger gameID = new AtomicInteger(1);
 
     public void clearGames() {
         games.clear();
@@ -23,13 +25,12 @@ public class MemoryGameDAO implements GameDAO {
             throw new DataAccessException("Error: Game Name is Null");
         }
 
-        GameData newGame = new GameData(gameID, null, null, gameName, new ChessGame());
+        Integer newGameID = gameID.getAndIncrement();
+        GameData newGame = new GameData(newGameID, null, null, gameName, ChessGame.newGame());
 
-        games.put(gameID, newGame);
-        Integer oldGameID = gameID;
-        gameID += 1;
+        games.put(newGameID, newGame);
 
-        return oldGameID;
+        return newGameID;
     }
 
     public Collection<ListGameData> listGames() {
@@ -77,18 +78,20 @@ public class MemoryGameDAO implements GameDAO {
         return game;
     }
 
+    // computeIfPresent so a seat change and a move on the same game can't overwrite each other
     public void updateGame(Integer gameID, ChessGame game) {
-        GameData updatedGame = games.get(gameID).updateGame(game);
-        games.put(gameID, updatedGame);
+        games.computeIfPresent(gameID, (id, oldGame) -> oldGame.updateGame(game));
+    }
+
+    public void deleteGame(Integer gameID) {
+        games.remove(gameID);
     }
 
     public void updateGameStatus(Integer gameID, String playerColor, String username) throws DataAccessException {
         if (playerColor.equals("WHITE")) {
-            GameData updatedGame = games.get(gameID).updateWhite(username);
-            games.put(gameID, updatedGame);
+            games.computeIfPresent(gameID, (id, oldGame) -> oldGame.updateWhite(username));
         } else if (playerColor.equals("BLACK")) {
-            GameData updatedGame = games.get(gameID).updateBlack(username);
-            games.put(gameID, updatedGame);
+            games.computeIfPresent(gameID, (id, oldGame) -> oldGame.updateBlack(username));
         }
     }
     
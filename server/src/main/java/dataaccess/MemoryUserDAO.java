@@ -1,18 +1,30 @@
 package dataaccess;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import model.UserData;
 
 public class MemoryUserDAO implements UserDAO {
     
-    final private HashMap<String, UserData> users = new HashMap<>();
+    final private ConcurrentHashMap<String, UserData> users = new ConcurrentHashMap<>();
+    private final PasswordHasher passwordHasher;
+
+    public MemoryUserDAO() {
+        this(PasswordHasher.defaults());
+    }
+
+    public MemoryUserDAO(PasswordHasher passwordHasher) {
+        this.passwordHasher = passwordHasher;
+    }
 
     public void createUser(UserData u) throws DataAccessException {
         // First we check that the UserData doesn't have any null values, if they do then we raise the Exception
         validUserData(u);
 
+        // Store the hash like SQLUserDAO does, so login works the same way against either DAO
+        UserData hashedUser = new UserData(u.username(), passwordHasher.hash(u.password()), u.email());
+
         // Now that we know that there are no null values we can add the UserData to the local storage
-        users.put(u.username(), u);
+        users.put(u.username(), hashedUser);
     }
 
     public Boolean checkUser(String username) throws DataAccessException{
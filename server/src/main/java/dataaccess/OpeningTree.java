@@ -0,0 +1,505 @@
+package dataaccess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import chess.ChessMove;
+import chess.ChessPiece.PieceType;
+import chess.ChessPosition;
+import metrics.Metrics;
+
+/**
+ * Opening statistics: for each position (by Zobrist key), every move played from it and how the games that
+ * played it ended. Only the first MAX_PLY moves of a game count, which is the opening and keeps the tree small.
+ * <p>
+ * Positions that several games have passed through are kept for good in a concurrent map, so the common lines
+ * are read without a lock. A new position starts out in a bounded LRU tail and moves to the map once
+ * PROMOTE_AT games have gone through it; the tail is where the long run of positions only one or two games ever
+ * reached lives, and when it is full the least recently used of them are forgotten.
+ * <p>
+ * Finished games are added whole. Games being played here are followed move by move and added when they end;
+ * only the most recent MAX_OPEN_GAMES are followed, so abandoned games can't pile up.
+ * <p>
+ * Given a directory, the tree is loaded from openings.snapshot there and written back on close: the common
+ * positions, the tail from least to most recently used, then the games being followed, with a CRC32 at the end.
+ * It is written to a temp file and renamed into place. Games that end after the last close are lost if the
+ * process dies, and a snapshot that won't read is logged and the tree starts empty.
+ */
+public class OpeningTree implements AutoCloseable {
+    public static final int MAX_PLY = 30;
+    public static final int DEFAULT_TAIL_SIZE = 200_000;
+
+    static final int PROMOTE_AT = 3;
+    private static final int MAX_OPEN_GAMES = 100_000;
+
+    private static final String SNAPSHOT = "openings.snapshot";
+    private static final int SNAPSHOT_MAGIC = 0x43484f54;
+
+    /**
+     * How often a move was played from a position and how those games ended, from white's side
+     */
+    public record MoveStats(ChessMove move, long whiteWins, long draws, long blackWins) {
+        public long games() {
+            return whiteWins + draws + blackWins;
+        }
+    }
+
+    private final int tailSize;
+    // Null for a tree that only lives in memory
+    private final Path directory;
+    private volatile Table table;
+    // The table a rebuild is filling, games that finish meanwhile go into both
+    private volatile Table rebuilding;
+
+    // gameID -> the moves so far of a game being played, guarded by itself
+    private final LinkedHashMap<Integer, Line> open = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Line> eldest) {
+            return size() > MAX_OPEN_GAMES;
+        }
+    };
+
+    public OpeningTree() {
+        this(DEFAULT_TAIL_SIZE);
+    }
+
+    public OpeningTree(int tailSize) {
+        this.tailSize = tailSize;
+        this.directory = null;
+        this.table = new Table(tailSize);
+        registerGauges();
+    }
+
+    /**
+     * Opens the tree kept in directory, loading the snapshot written there by the last close
+     */
+    public OpeningTree(Path directory) throws DataAccessException {
+        this(directory, DEFAULT_TAIL_SIZE);
+    }
+
+    public OpeningTree(Path directory, int tailSize) throws DataAccessException {
+        this.tailSize = tailSize;
+        this.directory = directory;
+        this.table = new Table(tailSize);
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new DataAccessException(String.format("Error: Unable to open the opening tree in %s: %s", directory, e.getMessage()), e);
+        }
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            try {
+                load(snapshot);
+            } catch (IOException e) {
+                System.err.println(String.format("Loading opening tree FAILED %s", e.getMessage()));
+                table = new Table(tailSize);
+                synchronized (open) {
+                    open.clear();
+                }
+            }
+        }
+        registerGauges();
+    }
+
+    private void registerGauges() {
+        Metrics.gauge("chess_opening_positions", () -> table.head.size());
+        Metrics.gauge("chess_opening_tail_positions", () -> table.tailSize());
+    }
+
+    /**
+     * Follows a move of a game being played, hash being the position it was played from
+     */
+    public void recordMove(int gameID, long hash, ChessMove move) {
+        synchronized (open) {
+            Line line = open.computeIfAbsent(gameID, id -> new Line());
+            if (line.count < MAX_PLY) {
+                line.hashes[line.count] = hash;
+                line.moves[line.count] = encode(move);
+                line.count++;
+            }
+        }
+    }
+
+    /**
+     * Adds a game being played once it has ended, with its PGN result
+     */
+    public void finishGame(int gameID, String result) {
+        Line line;
+        synchronized (open) {
+            line = open.remove(gameID);
+        }
+        if (line != null) {
+            add(line.hashes, line.moves, line.count, result);
+        }
+    }
+
+    /**
+     * Adds a finished game: moves[i] was played from the position with key hashes[i]. Unfinished games ("*")
+     * are skipped.
+     */
+    public void addGame(long[] hashes, ChessMove[] moves, String result) {
+        int count = Math.min(moves.length, MAX_PLY);
+        int[] encoded = new int[count];
+        for (int i = 0; i < count; i++) {
+            encoded[i] = encode(moves[i]);
+        }
+        add(hashes, encoded, count, result);
+    }
+
+    /**
+     * @return the moves played from the position, most played first
+     */
+    public List<MoveStats> lookup(long hash) {
+        Node node = table.find(hash);
+        if (node == null) {
+            return List.of();
+        }
+        return node.stats();
+    }
+
+    /**
+     * Starts filling a new, empty tree alongside the current one. Games added to the rebuild go into the new tree
+     * only; games that finish here while it runs go into both. Nothing changes for lookups until finishRebuild.
+     */
+    public synchronized Rebuild startRebuild() {
+        if (rebuilding != null) {
+            return null;
+        }
+        rebuilding = new Table(tailSize);
+        return new Rebuild(rebuilding);
+    }
+
+    public final class Rebuild {
+        private final Table target;
+
+        private Rebuild(Table target) {
+            this.target = target;
+        }
+
+        /**
+         * Safe to call from many threads at once
+         */
+        public void addGame(long[] hashes, ChessMove[] moves, String result) {
+            int column = column(result);
+            if (column < 0) {
+                return;
+            }
+            for (int i = 0; i < Math.min(moves.length, MAX_PLY); i++) {
+                target.add(hashes[i], encode(moves[i]), column);
+            }
+        }
+
+        /**
+         * @param keep true to swap the new tree in, false to throw it away
+         */
+        public void finish(boolean keep) {
+            synchronized (OpeningTree.this) {
+                if (keep) {
+                    table = target;
+                }
+                rebuilding = null;
+            }
+        }
+    }
+
+    public synchronized void clear() throws DataAccessException {
+        table = new Table(tailSize);
+        synchronized (open) {
+            open.clear();
+        }
+        if (directory != null) {
+            try {
+                Files.deleteIfExists(directory.resolve(SNAPSHOT));
+            } catch (IOException e) {
+                throw new DataAccessException(String.format("Error: Unable to clear the opening tree: %s", e.getMessage()), e);
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot, if the tree has a directory
+     */
+    @Override
+    public synchronized void close() throws DataAccessException {
+        if (directory == null) {
+            return;
+        }
+        Path tmp = directory.resolve(SNAPSHOT + ".tmp");
+        try {
+            try (FileOutputStream file = new FileOutputStream(tmp.toFile())) {
+                CRC32 crc = new CRC32();
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc));
+                out.writeInt(SNAPSHOT_MAGIC);
+                table.write(out);
+                writeOpen(out);
+                out.writeInt((int) crc.getValue());
+                out.flush();
+                file.getChannel().force(true);
+            }
+            Files.move(tmp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new DataAccessException(String.format("Error: Unable to save the opening tree: %s", e.getMessage()), e);
+        }
+    }
+
+    private void load(Path snapshot) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16), crc))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(SNAPSHOT + " is not an opening tree");
+            }
+            table.read(in);
+            readOpen(in);
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException(SNAPSHOT + " is corrupt");
+            }
+        }
+    }
+
+    // Least recently followed first, so reading them back in order keeps the order
+    private void writeOpen(DataOutputStream out) throws IOException {
+        synchronized (open) {
+            out.writeInt(open.size());
+            for (Map.Entry<Integer, Line> entry : open.entrySet()) {
+                Line line = entry.getValue();
+                out.writeInt(entry.getKey());
+                out.writeInt(line.count);
+                for (int i = 0; i < line.count; i++) {
+                    out.writeLong(line.hashes[i]);
+                    out.writeInt(line.moves[i]);
+                }
+            }
+        }
+    }
+
+    private void readOpen(DataInputStream in) throws IOException {
+        int games = in.readInt();
+        synchronized (open) {
+            for (int game = 0; game < games; game++) {
+                int gameID = in.readInt();
+                Line line = new Line();
+                line.count = in.readInt();
+                if (line.count < 0 || line.count > MAX_PLY) {
+                    throw new IOException(SNAPSHOT + " is corrupt");
+                }
+                for (int i = 0; i < line.count; i++) {
+                    line.hashes[i] = in.readLong();
+                    line.moves[i] = in.readInt();
+                }
+                open.put(gameID, line);
+            }
+        }
+    }
+
+    private void add(long[] hashes, int[] moves, int count, String result) {
+        int column = column(result);
+        if (column < 0) {
+            return;
+        }
+        Table current = table;
+        Table next = rebuilding;
+        for (int i = 0; i < count; i++) {
+            current.add(hashes[i], moves[i], column);
+            if (next != null) {
+                next.add(hashes[i], moves[i], column);
+            }
+        }
+    }
+
+    // 0 for a white win, 1 for a draw, 2 for a black win, -1 for no result
+    private static int column(String result) {
+        return switch (result) {
+            case "1-0" -> 0;
+            case "1/2-1/2" -> 1;
+            case "0-1" -> 2;
+            default -> -1;
+        };
+    }
+
+    // from | to << 6 | promotion << 12, squares 0..63 and promotion 0 for none, else the PieceType ordinal + 1
+    private static int encode(ChessMove move) {
+        int from = (move.getStartPosition().getRow() - 1) * 8 + move.getStartPosition().getColumn() - 1;
+        int to = (move.getEndPosition().getRow() - 1) * 8 + move.getEndPosition().getColumn() - 1;
+        int promotion = move.getPromotionPiece() == null ? 0 : move.getPromotionPiece().ordinal() + 1;
+        return from | to << 6 | promotion << 12;
+    }
+
+    private static ChessMove decode(int move) {
+        int from = move & 63;
+        int to = (move >>> 6) & 63;
+        int promotion = move >>> 12;
+        return new ChessMove(new ChessPosition(from / 8 + 1, from % 8 + 1), new ChessPosition(to / 8 + 1, to % 8 + 1),
+            promotion == 0 ? null : PieceType.values()[promotion - 1]);
+    }
+
+    private static class Line {
+        final long[] hashes = new long[MAX_PLY];
+        final int[] moves = new int[MAX_PLY];
+        int count;
+    }
+
+    private static class Table {
+        final ConcurrentHashMap<Long, Node> head = new ConcurrentHashMap<>();
+        // Guarded by itself
+        final LinkedHashMap<Long, Node> tail;
+
+        Table(int tailSize) {
+            tail = new LinkedHashMap<>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Node> eldest) {
+                    return size() > tailSize;
+                }
+            };
+        }
+
+        Node find(long hash) {
+            Node node = head.get(hash);
+            if (node != null) {
+                return node;
+            }
+            synchronized (tail) {
+                return tail.get(hash);
+            }
+        }
+
+        void add(long hash, int move, int column) {
+            Node node = head.get(hash);
+            if (node != null) {
+                node.add(move, column);
+                return;
+            }
+            synchronized (tail) {
+                node = head.get(hash);
+                if (node == null) {
+                    node = tail.computeIfAbsent(hash, key -> new Node());
+                    if (node.add(move, column) >= PROMOTE_AT) {
+                        tail.remove(hash);
+                        head.put(hash, node);
+                    }
+                    return;
+                }
+            }
+            node.add(move, column);
+        }
+
+        int tailSize() {
+            synchronized (tail) {
+                return tail.size();
+            }
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeNodes(out, new ArrayList<>(head.entrySet()));
+            List<Map.Entry<Long, Node>> rare;
+            synchronized (tail) {
+                rare = new ArrayList<>(tail.entrySet());
+            }
+            writeNodes(out, rare);
+        }
+
+        void read(DataInputStream in) throws IOException {
+            int common = in.readInt();
+            for (int i = 0; i < common; i++) {
+                long hash = in.readLong();
+                head.put(hash, Node.read(in));
+            }
+            int rare = in.readInt();
+            synchronized (tail) {
+                for (int i = 0; i < rare; i++) {
+                    long hash = in.readLong();
+                    tail.put(hash, Node.read(in));
+                }
+            }
+        }
+
+        private static void writeNodes(DataOutputStream out, List<Map.Entry<Long, Node>> nodes) throws IOException {
+            out.writeInt(nodes.size());
+            for (Map.Entry<Long, Node> entry : nodes) {
+                out.writeLong(entry.getKey());
+                entry.getValue().write(out);
+            }
+        }
+    }
+
+    // The moves from one position, a handful of ints and longs rather than a map
+    private static class Node {
+        private int[] moves = new int[2];
+        // [move index * 3 + column]
+        private long[] counts = new long[6];
+        private int size;
+        private long games;
+
+        // Returns how many games have been through the position
+        synchronized long add(int move, int column) {
+            int index = 0;
+            while (index < size && moves[index] != move) {
+                index++;
+            }
+            if (index == size) {
+                if (size == moves.length) {
+                    moves = Arrays.copyOf(moves, size * 2);
+                    counts = Arrays.copyOf(counts, size * 6);
+                }
+                moves[size++] = move;
+            }
+            counts[index * 3 + column]++;
+            return ++games;
+        }
+
+        synchronized void write(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(moves[i]);
+                for (int column = 0; column < 3; column++) {
+                    out.writeLong(counts[i * 3 + column]);
+                }
+            }
+        }
+
+        static Node read(DataInputStream in) throws IOException {
+            Node node = new Node();
+            int size = in.readInt();
+            if (size < 0 || size > 1 << 16) {
+                throw new IOException(SNAPSHOT + " is corrupt");
+            }
+            node.moves = new int[Math.max(size, 2)];
+            node.counts = new long[node.moves.length * 3];
+            for (int i = 0; i < size; i++) {
+                node.moves[i] = in.readInt();
+                for (int column = 0; column < 3; column++) {
+                    node.counts[i * 3 + column] = in.readLong();
+                    node.games += node.counts[i * 3 + column];
+                }
+            }
+            node.size = size;
+            return node;
+        }
+
+        synchronized List<MoveStats> stats() {
+            List<MoveStats> stats = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                stats.add(new MoveStats(decode(moves[i]), counts[i * 3], counts[i * 3 + 1], counts[i * 3 + 2]));
+            }
+            stats.sort((a, b) -> Long.compare(b.games(), a.games()));
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package dataaccess;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+/**
+ * Runs every BCrypt hash and check on a small pool of its own. BCrypt is tens of milliseconds of pure CPU per call,
+ * so doing it on request threads lets a burst of logins starve everything else (websocket moves included).
+ * With its own pool at most `threads` cores are ever hashing, and once `queueLimit` requests are waiting new
+ * ones are turned away straight away with a ServiceUnavailableException instead of piling up.
+ */
+public class PasswordHasher {
+    public static final int DEFAULT_COST = 10;
+    public static final int DEFAULT_QUEUE_LIMIT = 64;
+
+    private static PasswordHasher defaultHasher;
+
+    private final ThreadPoolExecutor pool;
+    private final int cost;
+
+    private final LatencyHistogram hashTimer = Metrics.timer("chess_password", "operation", "hash");
+    private final LatencyHistogram verifyTimer = Metrics.timer("chess_password", "operation", "verify");
+    private final LongAdder rejections = Metrics.counter("chess_password_rejected_total");
+
+    public PasswordHasher(int threads, int queueLimit, int cost) {
+        if (cost < 4 || cost > 31) {
+            throw new IllegalArgumentException("BCrypt cost must be between 4 and 31, got " + cost);
+        }
+        this.cost = cost;
+        this.pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueLimit), daemonThreads(), new ThreadPoolExecutor.AbortPolicy());
+        // Let the threads go away when nobody is logging in
+        pool.allowCoreThreadTimeOut(true);
+        Metrics.gauge("chess_password_queue_depth", () -> pool.getQueue().size());
+    }
+
+    /**
+     * The hasher used by DAOs that were created without one, half the cores and the default cost
+     */
+    public static synchronized PasswordHasher defaults() {
+        if (defaultHasher == null) {
+            defaultHasher = new PasswordHasher(defaultThreads(), DEFAULT_QUEUE_LIMIT, DEFAULT_COST);
+        }
+        return defaultHasher;
+    }
+
+    public static int defaultThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    public String hash(String password) throws DataAccessException {
+        return run(() -> {
+            long start = System.nanoTime();
+            try {
+                return BCrypt.hashpw(password, BCrypt.gensalt(cost));
+            } finally {
+                hashTimer.recordSince(start);
+            }
+        });
+    }
+
+    public boolean verify(String password, String hashedPassword) throws DataAccessException {
+        return run(() -> {
+            long start = System.nanoTime();
+            try {
+                return BCrypt.checkpw(password, hashedPassword);
+            } finally {
+                verifyTimer.recordSince(start);
+            }
+        });
+    }
+
+    private <T> T run(Callable<T> task) throws DataAccessException {
+        Future<T> result;
+        try {
+            result = pool.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            throw new ServiceUnavailableException("Error: server is busy, try again later", e);
+        }
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Error: interrupted while checking password", e);
+        } catch (ExecutionException e) {
+            throw new DataAccessException(String.format("Error: password hashing failed: %s", e.getCause().getMessage()), e.getCause());
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, "password-hasher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
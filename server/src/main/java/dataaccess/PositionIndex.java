@@ -0,0 +1,704 @@
+package dataaccess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import chess.ChessGame;
+import metrics.Metrics;
+import model.PositionHit;
+
+/**
+ * Which stored games reached a position, and at which ply, looked up by the position's Zobrist key.
+ * <p>
+ * Entries live in sorted runs of two parallel long arrays (the key, then gameID << 32 | ply), 16 bytes an entry
+ * with no objects per entry, and a lookup is a binary search in each run. New entries go into a small buffer;
+ * when it fills it is sorted into a run of its own, and runs of about the same size are merged, so each entry is
+ * copied O(log n) times over the life of the index and there are only ever O(log n) runs to search. Merges run
+ * outside the buffer's lock, so only the move that happened to fill the buffer waits on one, never the others.
+ * <p>
+ * Given a directory, every run is also written there, once, as a file of its own: magic, count, the keys, the
+ * values, then a CRC32 of all of it, written to a temp file and renamed into place. Runs are numbered in the order
+ * they're published and a file is named by the numbers it covers, so a merge writes its result before the files it
+ * replaces are deleted, and one left behind by a crash in between is covered by the merged file and dropped when
+ * the index is opened again. Only the buffer isn't on disk until close; a crash loses it. Moves are stored games'
+ * positions whatever the index holds, so the directory should go with a store that keeps its games.
+ * <p>
+ * A game created or imported here has every ply counted from its first position, and with a directory those
+ * entries last across restarts. build fills in the rest from the store: games stored before the index was kept,
+ * or whose last moves were lost with the buffer, get their current position with the ply UNKNOWN_PLY, as it is
+ * for their later moves. Counting plies takes an entry per game being played here, dropped when the game ends;
+ * imported games are indexed whole and take none, so any moves made in them later are UNKNOWN_PLY too.
+ */
+public class PositionIndex implements AutoCloseable {
+    public static final int UNKNOWN_PLY = -1;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final int RUN_MAGIC = 0x43485049;
+    private static final String RUN_PREFIX = "positions-";
+    private static final String RUN_SUFFIX = ".run";
+
+    // first and last are the numbers of the published runs this one holds, a merge covering both of its inputs
+    private record Run(long first, long last, long[] keys, long[] values) {
+        int size() {
+            return keys.length;
+        }
+    }
+
+    private record RunFile(long first, long last, Path path) {}
+
+    private record Entry(long hash, int gameID) {}
+
+    // Null for an index that only lives in memory
+    private final Path directory;
+    // Published but not on disk yet, written by whoever holds the merge lock
+    private final Set<Run> unsaved = ConcurrentHashMap.newKeySet();
+
+    // Oldest (largest) first, only replaced whole, under runsLock
+    private volatile List<Run> runs = List.of();
+    private final Object runsLock = new Object();
+    private final ReentrantLock mergeLock = new ReentrantLock();
+
+    // Guarded by this
+    private long[] bufferKeys = new long[BUFFER_SIZE];
+    private long[] bufferValues = new long[BUFFER_SIZE];
+    private int buffered;
+    private long nextRun;
+    // Bumped by clear, so a build that read the store before the clear doesn't publish after it
+    private long generation;
+    // What was added while a build reads the store, so the build doesn't add it again; null when not building
+    private Set<Entry> addedWhileBuilding;
+
+    // gameID -> ply of the game's next move, for games being played here until finishGame
+    private final ConcurrentHashMap<Integer, Integer> nextPly = new ConcurrentHashMap<>();
+
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder merges = Metrics.counter("chess_position_index_merges_total");
+
+    public PositionIndex() {
+        this.directory = null;
+        registerGauges();
+    }
+
+    /**
+     * Opens the index kept in directory, loading the runs written there before
+     */
+    public PositionIndex(Path directory) throws DataAccessException {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            load();
+        } catch (IOException e) {
+            throw new DataAccessException(String.format("Error: Unable to open the position index in %s: %s", directory, e.getMessage()), e);
+        }
+        registerGauges();
+    }
+
+    private void registerGauges() {
+        Metrics.gauge("chess_position_index_entries", entries::sum);
+        Metrics.gauge("chess_position_index_runs", () -> runs.size());
+    }
+
+    /**
+     * Indexes the first position of a game created here, its moves are counted from it
+     */
+    public void startGame(int gameID, ChessGame game) {
+        nextPly.put(gameID, 1);
+        add(game.getPositionHash(), gameID, 0);
+    }
+
+    /**
+     * Indexes the position a game is in after a move
+     */
+    public void recordMove(int gameID, ChessGame game) {
+        Integer next = nextPly.computeIfPresent(gameID, (id, ply) -> ply + 1);
+        add(game.getPositionHash(), gameID, next == null ? UNKNOWN_PLY : next - 1);
+    }
+
+    /**
+     * Stops counting the plies of a game that has ended, its positions stay indexed
+     */
+    public void finishGame(int gameID) {
+        nextPly.remove(gameID);
+    }
+
+    /**
+     * Indexes a whole game at once, hashes[ply] being the key of the position after that many moves
+     */
+    public void addGame(int gameID, long[] hashes) {
+        boolean flushed = false;
+        synchronized (this) {
+            for (int ply = 0; ply < hashes.length; ply++) {
+                flushed |= addLocked(hashes[ply], gameID, ply);
+            }
+        }
+        if (flushed) {
+            compact();
+        }
+    }
+
+    /**
+     * Indexes the current position of every stored game that isn't already indexed there, reading the store once
+     * and sorting the lot into a single run. Meant for startup; moves made while it runs are indexed as usual and
+     * aren't added again, and if the index is cleared before it finishes nothing is added.
+     *
+     * @return how many games were indexed
+     */
+    public long build(GameDAO gameDAO) throws DataAccessException {
+        List<Run> indexed;
+        long startGeneration;
+        synchronized (this) {
+            if (addedWhileBuilding != null) {
+                throw new IllegalStateException("The position index is already being built");
+            }
+            addedWhileBuilding = new HashSet<>();
+            startGeneration = generation;
+            indexed = new ArrayList<>(runs);
+            if (buffered > 0) {
+                indexed.add(sortedRun(0, 0, bufferKeys, bufferValues, buffered));
+            }
+        }
+
+        try {
+            long[][] keys = {new long[BUFFER_SIZE]};
+            long[][] values = {new long[BUFFER_SIZE]};
+            int[] count = {0};
+            gameDAO.forEachGame(game -> {
+                long hash = game.game().getPositionHash();
+                if (contains(indexed, hash, game.gameID())) {
+                    return;
+                }
+                if (count[0] == keys[0].length) {
+                    keys[0] = Arrays.copyOf(keys[0], count[0] * 2);
+                    values[0] = Arrays.copyOf(values[0], count[0] * 2);
+                }
+                keys[0][count[0]] = hash;
+                values[0][count[0]] = value(game.gameID(), UNKNOWN_PLY);
+                count[0]++;
+            });
+            if (count[0] == 0) {
+                return 0;
+            }
+            Run found = sortedRun(0, 0, keys[0], values[0], count[0]);
+
+            int added = 0;
+            synchronized (this) {
+                if (generation != startGeneration) {
+                    return 0;
+                }
+                // Moves made since the build started are already in the buffer or a run
+                for (int i = 0; i < found.size(); i++) {
+                    if (!addedWhileBuilding.contains(new Entry(found.keys()[i], (int) (found.values()[i] >>> 32)))) {
+                        found.keys()[added] = found.keys()[i];
+                        found.values()[added] = found.values()[i];
+                        added++;
+                    }
+                }
+                if (added > 0) {
+                    long number = nextRun++;
+                    publish(new Run(number, number, Arrays.copyOf(found.keys(), added), Arrays.copyOf(found.values(), added)));
+                    entries.add(added);
+                }
+            }
+            compact();
+            return added;
+        } finally {
+            synchronized (this) {
+                if (generation == startGeneration) {
+                    addedWhileBuilding = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return up to limit of the games that reached the position, ordered by gameID then ply
+     */
+    public List<PositionHit> find(long hash, int limit) {
+        long[] found = new long[Math.min(limit, 64)];
+        int count = 0;
+        List<Run> snapshot;
+        // Runs and buffer read under the lock a flush takes, so an entry can't move from one to the other unseen
+        synchronized (this) {
+            snapshot = runs;
+            for (int i = 0; i < buffered && count < limit; i++) {
+                if (bufferKeys[i] == hash) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = bufferValues[i];
+                }
+            }
+        }
+        for (Run run : snapshot) {
+            for (int i = lowerBound(run.keys(), hash); i < run.size() && run.keys()[i] == hash && count < limit; i++) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = run.values()[i];
+            }
+        }
+
+        // Each run is in order on its own, but not across runs
+        Arrays.sort(found, 0, count);
+        List<PositionHit> hits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            hits.add(new PositionHit((int) (found[i] >>> 32), (int) found[i]));
+        }
+        return hits;
+    }
+
+    /**
+     * @return how many times any game reached the position, two binary searches per run
+     */
+    public long count(long hash) {
+        long total = 0;
+        List<Run> snapshot;
+        synchronized (this) {
+            snapshot = runs;
+            for (int i = 0; i < buffered; i++) {
+                if (bufferKeys[i] == hash) {
+                    total++;
+                }
+            }
+        }
+        for (Run run : snapshot) {
+            total += upperBound(run.keys(), hash) - lowerBound(run.keys(), hash);
+        }
+        return total;
+    }
+
+    public void clear() throws DataAccessException {
+        mergeLock.lock();
+        try {
+            synchronized (this) {
+                buffered = 0;
+                generation++;
+                addedWhileBuilding = null;
+                synchronized (runsLock) {
+                    runs = List.of();
+                }
+            }
+            unsaved.clear();
+            nextPly.clear();
+            entries.reset();
+            if (directory != null) {
+                try {
+                    deleteRunFiles(Long.MIN_VALUE, Long.MAX_VALUE, null);
+                } catch (IOException e) {
+                    throw new DataAccessException(String.format("Error: Unable to clear the position index: %s", e.getMessage()), e);
+                }
+            }
+        } finally {
+            mergeLock.unlock();
+        }
+    }
+
+    /**
+     * Sorts the buffer into a run and, with a directory, writes every run not written yet, waiting for any merge
+     * in progress to finish first
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (buffered > 0) {
+                publish(sortedRun(nextRun, nextRun, bufferKeys, bufferValues, buffered));
+                nextRun++;
+                buffered = 0;
+            }
+        }
+        mergeLock.lock();
+        try {
+            compactLocked();
+        } finally {
+            mergeLock.unlock();
+        }
+    }
+
+    public long size() {
+        return entries.sum();
+    }
+
+    private void add(long hash, int gameID, int ply) {
+        boolean flushed;
+        synchronized (this) {
+            flushed = addLocked(hash, gameID, ply);
+        }
+        if (flushed) {
+            compact();
+        }
+    }
+
+    // Sorts a full buffer into a run of its own and says so, the merging is left to compact
+    private boolean addLocked(long hash, int gameID, int ply) {
+        bufferKeys[buffered] = hash;
+        bufferValues[buffered] = value(gameID, ply);
+        buffered++;
+        entries.increment();
+        if (addedWhileBuilding != null) {
+            addedWhileBuilding.add(new Entry(hash, gameID));
+        }
+        if (buffered == BUFFER_SIZE) {
+            publish(sortedRun(nextRun, nextRun, bufferKeys, bufferValues, buffered));
+            nextRun++;
+            bufferKeys = new long[BUFFER_SIZE];
+            bufferValues = new long[BUFFER_SIZE];
+            buffered = 0;
+            return true;
+        }
+        return false;
+    }
+
+    // Caller holds the lock on this, which keeps runs in the order they're numbered
+    private void publish(Run run) {
+        if (directory != null) {
+            unsaved.add(run);
+        }
+        synchronized (runsLock) {
+            List<Run> next = new ArrayList<>(runs);
+            next.add(run);
+            runs = List.copyOf(next);
+        }
+    }
+
+    // Merges neighbouring runs while the newer one is at least half the size of the older, then writes whatever
+    // is left unwritten. Whoever gets the lock does the work, everyone else carries on.
+    private void compact() {
+        if (!mergeLock.tryLock()) {
+            return;
+        }
+        try {
+            compactLocked();
+        } finally {
+            mergeLock.unlock();
+        }
+    }
+
+    // Caller holds the merge lock
+    private void compactLocked() {
+        while (true) {
+            List<Run> current = runs;
+            int pair = -1;
+            for (int i = current.size() - 2; i >= 0; i--) {
+                if (current.get(i + 1).size() * 2 >= current.get(i).size()) {
+                    pair = i;
+                    break;
+                }
+            }
+            if (pair < 0) {
+                break;
+            }
+            Run older = current.get(pair);
+            Run newer = current.get(pair + 1);
+            Run merged = merge(older, newer);
+            merges.increment();
+            synchronized (runsLock) {
+                // Only merges take runs out and this thread holds the merge lock, so both are still there
+                List<Run> next = new ArrayList<>(runs);
+                int at = next.indexOf(older);
+                next.set(at, merged);
+                next.remove(at + 1);
+                runs = List.copyOf(next);
+            }
+            if (directory != null) {
+                // Written in place of both, their files are deleted once it is
+                unsaved.remove(older);
+                unsaved.remove(newer);
+                unsaved.add(merged);
+            }
+        }
+        saveRuns();
+    }
+
+    // Caller holds the merge lock. A run that can't be written stays in memory and is tried again next time.
+    private void saveRuns() {
+        for (Run run : runs) {
+            if (!unsaved.contains(run)) {
+                continue;
+            }
+            try {
+                save(run);
+                unsaved.remove(run);
+            } catch (IOException e) {
+                System.err.println(String.format("Saving position index run %s FAILED %s", runPath(run.first(), run.last()), e.getMessage()));
+            }
+        }
+    }
+
+    private void save(Run run) throws IOException {
+        Path path = runPath(run.first(), run.last());
+        Path tmp = directory.resolve(path.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile())) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc));
+            out.writeInt(RUN_MAGIC);
+            out.writeInt(run.size());
+            for (long key : run.keys()) {
+                out.writeLong(key);
+            }
+            for (long value : run.values()) {
+                out.writeLong(value);
+            }
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // The runs this one was merged from are in it now
+        deleteRunFiles(run.first(), run.last(), path);
+    }
+
+    // Loads the runs in order, skipping any a later merge covers: those are a merge's inputs left by a crash
+    private void load() throws IOException {
+        List<RunFile> files = runFiles();
+        files.sort(Comparator.comparingLong(RunFile::first).thenComparing(Comparator.comparingLong(RunFile::last).reversed()));
+        List<Run> loaded = new ArrayList<>();
+        long covered = Long.MIN_VALUE;
+        long total = 0;
+        for (RunFile file : files) {
+            nextRun = Math.max(nextRun, file.last() + 1);
+            if (file.first() <= covered) {
+                Files.deleteIfExists(file.path());
+                continue;
+            }
+            try {
+                Run run = readRun(file);
+                loaded.add(run);
+                covered = file.last();
+                total += run.size();
+            } catch (IOException e) {
+                // Only an index, build puts back what it can from the store
+                System.err.println(String.format("Loading position index run %s FAILED %s", file.path(), e.getMessage()));
+                Files.deleteIfExists(file.path());
+            }
+        }
+        runs = List.copyOf(loaded);
+        entries.add(total);
+    }
+
+    private static Run readRun(RunFile file) throws IOException {
+        long bytes = Files.size(file.path());
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file.path()), 1 << 16), crc))) {
+            if (bytes < 12 || in.readInt() != RUN_MAGIC) {
+                throw new IOException("not a position index run");
+            }
+            int count = in.readInt();
+            if (count < 0 || bytes != 12 + 16L * count) {
+                throw new IOException("wrong size for " + count + " entries");
+            }
+            long[] keys = new long[count];
+            long[] values = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = in.readLong();
+            }
+            for (int i = 0; i < count; i++) {
+                values[i] = in.readLong();
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("checksum mismatch");
+            }
+            return new Run(file.first(), file.last(), keys, values);
+        }
+    }
+
+    // Deletes the run files numbered within first..last other than keep, and any temp file a crash left
+    private void deleteRunFiles(long first, long last, Path keep) throws IOException {
+        for (RunFile file : runFiles()) {
+            if (file.first() >= first && file.last() <= last && !file.path().equals(keep)) {
+                Files.deleteIfExists(file.path());
+            }
+        }
+    }
+
+    private List<RunFile> runFiles() throws IOException {
+        List<Path> paths;
+        try (var stream = Files.list(directory)) {
+            paths = stream.toList();
+        }
+        List<RunFile> files = new ArrayList<>();
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            if (name.startsWith(RUN_PREFIX) && name.endsWith(RUN_SUFFIX + ".tmp")) {
+                Files.deleteIfExists(path);
+            } else if (name.startsWith(RUN_PREFIX) && name.endsWith(RUN_SUFFIX)) {
+                String[] numbers = name.substring(RUN_PREFIX.length(), name.length() - RUN_SUFFIX.length()).split("-");
+                try {
+                    files.add(new RunFile(Long.parseLong(numbers[0]), Long.parseLong(numbers[1]), path));
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException ignored) {
+                    // Not one of ours
+                }
+            }
+        }
+        return files;
+    }
+
+    private Path runPath(long first, long last) {
+        return directory.resolve(String.format("%s%010d-%010d%s", RUN_PREFIX, first, last, RUN_SUFFIX));
+    }
+
+    // Whether any of the runs has an entry for the game at the position, one binary search per run
+    private static boolean contains(List<Run> runs, long hash, int gameID) {
+        long lowest = value(gameID, 0);
+        for (Run run : runs) {
+            int i = lowerBound(run.keys(), run.values(), hash, lowest);
+            if (i < run.size() && run.keys()[i] == hash && (int) (run.values()[i] >>> 32) == gameID) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Run merge(Run a, Run b) {
+        int size = a.size() + b.size();
+        long[] keys = new long[size];
+        long[] values = new long[size];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < size; k++) {
+            boolean takeA = j == b.size()
+                || (i < a.size() && compare(a.keys()[i], a.values()[i], b.keys()[j], b.values()[j]) <= 0);
+            if (takeA) {
+                keys[k] = a.keys()[i];
+                values[k] = a.values()[i++];
+            } else {
+                keys[k] = b.keys()[j];
+                values[k] = b.values()[j++];
+            }
+        }
+        return new Run(a.first(), b.last(), keys, values);
+    }
+
+    private static Run sortedRun(long first, long last, long[] keys, long[] values, int count) {
+        long[] runKeys = Arrays.copyOf(keys, count);
+        long[] runValues = Arrays.copyOf(values, count);
+        sort(runKeys, runValues, 0, count - 1);
+        return new Run(first, last, runKeys, runValues);
+    }
+
+    // Quicksort on the pair of arrays, by key then value, recursing into the smaller half
+    private static void sort(long[] keys, long[] values, int low, int high) {
+        while (low < high) {
+            if (high - low < 16) {
+                for (int i = low + 1; i <= high; i++) {
+                    long key = keys[i];
+                    long value = values[i];
+                    int j = i - 1;
+                    while (j >= low && compare(keys[j], values[j], key, value) > 0) {
+                        keys[j + 1] = keys[j];
+                        values[j + 1] = values[j];
+                        j--;
+                    }
+                    keys[j + 1] = key;
+                    values[j + 1] = value;
+                }
+                return;
+            }
+            int middle = (low + high) >>> 1;
+            long pivotKey = keys[middle];
+            long pivotValue = values[middle];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(keys[i], values[i], pivotKey, pivotValue) < 0) {
+                    i++;
+                }
+                while (compare(keys[j], values[j], pivotKey, pivotValue) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    long key = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = key;
+                    long value = values[i];
+                    values[i] = values[j];
+                    values[j] = value;
+                    i++;
+                    j--;
+                }
+            }
+            if (j - low < high - i) {
+                sort(keys, values, low, j);
+                low = i;
+            } else {
+                sort(keys, values, i, high);
+                high = j;
+            }
+        }
+    }
+
+    private static int compare(long keyA, long valueA, long keyB, long valueB) {
+        int byKey = Long.compare(keyA, keyB);
+        return byKey != 0 ? byKey : Long.compare(valueA, valueB);
+    }
+
+    // First index whose key is >= key
+    private static int lowerBound(long[] keys, long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // First index whose key and value are >= key and value
+    private static int lowerBound(long[] keys, long[] values, long key, long value) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(keys[middle], values[middle], key, value) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // First index whose key is > key
+    private static int upperBound(long[] keys, long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long value(int gameID, int ply) {
+        return ((long) gameID << 32) | (ply & 0xFFFF_FFFFL);
+    }
+}
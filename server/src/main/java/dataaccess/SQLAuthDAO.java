@@ -1,5 +1,9 @@
 package dataaccess;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
 import model.AuthData;
 
 public class SQLAuthDAO implements AuthDAO{
@@ -100,7 +104,7 @@ public class SQLAuthDAO implements AuthDAO{
 
 
     public void clearAuth() throws DataAccessException {
-        var statement = "TRUNCATE auth";
+        var statement = "TRUNCATE TABLE auth";
         try (var conn = DatabaseManager.getConnection()) {
             try ( var preparedStatement = conn.prepareStatement(statement)) {
                 preparedStatement.executeUpdate();
@@ -109,5 +113,83 @@ public class SQLAuthDAO implements AuthDAO{
             throw new DataAccessException(String.format("Error: Unable to clear auth table: %s", e.getMessage()));
         }
     }
-    
+
+    // The single row is put there with generation 0 when the tables are made
+    public long tokenGeneration() throws DataAccessException {
+        var statement = "SELECT generation FROM token_generation WHERE id = 1";
+        try (var conn = DatabaseManager.getConnection(); var preparedStatement = conn.prepareStatement(statement)) {
+            try (var resultSet = preparedStatement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        } catch (Exception e) {
+            throw new DataAccessException(String.format("Error: Unable to read the token generation: %s", e.getMessage()));
+        }
+    }
+
+    // The bump, the read back and dropping the old revocations are one transaction, so two servers clearing at
+    // once each get their own generation
+    public long nextTokenGeneration() throws DataAccessException {
+        try (var conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (var preparedStatement = conn.prepareStatement(
+                    "UPDATE token_generation SET generation = generation + 1 WHERE id = 1")) {
+                    preparedStatement.executeUpdate();
+                }
+                long generation;
+                try (var preparedStatement = conn.prepareStatement("SELECT generation FROM token_generation WHERE id = 1");
+                     var resultSet = preparedStatement.executeQuery()) {
+                    resultSet.next();
+                    generation = resultSet.getLong(1);
+                }
+                try (var preparedStatement = conn.prepareStatement("DELETE FROM revoked_token")) {
+                    preparedStatement.executeUpdate();
+                }
+                conn.commit();
+                return generation;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (Exception e) {
+            throw new DataAccessException(String.format("Error: Unable to start a new token generation: %s", e.getMessage()));
+        }
+    }
+
+    public void revokeToken(long nonce, long expiresAt) throws DataAccessException {
+        var statement = "INSERT INTO revoked_token (nonce, expiresAt) VALUES (?, ?)";
+        try (var conn = DatabaseManager.getConnection(); var preparedStatement = conn.prepareStatement(statement)) {
+            preparedStatement.setLong(1, nonce);
+            preparedStatement.setLong(2, expiresAt);
+            preparedStatement.executeUpdate();
+        } catch (Exception e) {
+            throw new DataAccessException(String.format("Error: Unable to revoke token: %s", e.getMessage()));
+        }
+    }
+
+    public List<RevokedToken> revokedTokens(long after) throws DataAccessException {
+        List<RevokedToken> tokens = new ArrayList<>();
+        var statement = "SELECT id, nonce, expiresAt FROM revoked_token WHERE id > ? ORDER BY id";
+        try (var conn = DatabaseManager.getConnection(); var preparedStatement = conn.prepareStatement(statement)) {
+            preparedStatement.setLong(1, after);
+            try (var resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    tokens.add(new RevokedToken(resultSet.getLong(1), resultSet.getLong(2), resultSet.getLong(3)));
+                }
+            }
+        } catch (Exception e) {
+            throw new DataAccessException(String.format("Error: Unable to read revoked tokens: %s", e.getMessage()));
+        }
+        return tokens;
+    }
+
+    public void purgeRevokedTokens(long now) throws DataAccessException {
+        var statement = "DELETE FROM revoked_token WHERE expiresAt <= ?";
+        try (var conn = DatabaseManager.getConnection(); var preparedStatement = conn.prepareStatement(statement)) {
+            preparedStatement.setLong(1, now);
+            preparedStatement.executeUpdate();
+        } catch (Exception e) {
+            throw new DataAccessException(String.format("Error: Unable to purge revoked tokens: %s", e.getMessage()));
+        }
+    }
 }
@@ -1,24 +1,36 @@
 package dataaccess;
 
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
 
-import com.google.gson.Gson;
+import serialization.InitialPosition;
+import serialization.Serializer;
 
 import model.ListGameData;
 import model.GameData;
+import model.GameSetup;
 import chess.ChessGame;
 
 public class SQLGameDAO implements GameDAO {
+    // Games read per query by forEachGame
+    private static final int PAGE_SIZE = 500;
 
     public Integer createGame(String gameName) throws DataAccessException {
+        // Every new game starts from the same position, so the JSON is made once and reused
+        return insertGame(gameName, InitialPosition.JSON);
+    }
 
-        var statement = "INSERT INTO game (whiteUsername, blackUsername, gameName, game) VALUES (?, ?, ?, ?)";
-
-        ChessGame newGame = new ChessGame();
+    // One INSERT for a game set up from a FEN, rather than inserting the start position and then overwriting it
+    public Integer createGame(String gameName, ChessGame game) throws DataAccessException {
+        return insertGame(gameName, Serializer.STORAGE.toJson(game));
+    }
 
-        var gameJson = new Gson().toJson(newGame);
+    private Integer insertGame(String gameName, String gameJson) throws DataAccessException {
+        var statement = "INSERT INTO game (whiteUsername, blackUsername, gameName, game) VALUES (?, ?, ?, ?)";
 
         try (var conn = DatabaseManager.getConnection(); var preparedStatement = conn.prepareStatement(statement, Statement.RETURN_GENERATED_KEYS)){
             preparedStatement.setString(1, null);
@@ -41,6 +53,53 @@ public class SQLGameDAO implements GameDAO {
         return null;
     }
 
+    // One batched insert in one transaction, so a whole round of boards is created or none of it is
+    public List<Integer> createGames(List<GameSetup> games) throws DataAccessException {
+        List<GameData> rows = new ArrayList<>(games.size());
+        for (GameSetup game : games) {
+            rows.add(new GameData(0, game.whiteUsername(), game.blackUsername(), game.gameName(), null));
+        }
+        return insertGames(rows);
+    }
+
+    public List<Integer> importGames(List<GameData> games) throws DataAccessException {
+        return insertGames(games);
+    }
+
+    // One batched INSERT in one transaction, a null game is the starting position
+    private List<Integer> insertGames(List<GameData> games) throws DataAccessException {
+        var statement = "INSERT INTO game (whiteUsername, blackUsername, gameName, game) VALUES (?, ?, ?, ?)";
+        List<Integer> gameIDs = new ArrayList<>(games.size());
+
+        try (var conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (var preparedStatement = conn.prepareStatement(statement, Statement.RETURN_GENERATED_KEYS)) {
+                for (GameData game : games) {
+                    preparedStatement.setString(1, game.whiteUsername());
+                    preparedStatement.setString(2, game.blackUsername());
+                    preparedStatement.setString(3, game.gameName());
+                    preparedStatement.setString(4, game.game() == null ? InitialPosition.JSON : Serializer.STORAGE.toJson(game.game()));
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+
+                try (var resultSet = preparedStatement.getGeneratedKeys()) {
+                    while (resultSet.next()) {
+                        gameIDs.add(resultSet.getInt(1));
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (Exception e) {
+            throw new DataAccessException(String.format("Error: Unable to add new games: %s", e.getMessage()));
+        }
+
+        return gameIDs;
+    }
+
     public Collection<ListGameData> listGames() throws DataAccessException {
         Collection<ListGameData> list = new ArrayList<>();
         var statement = "SELECT gameID, whiteUsername, blackUsername, gameName FROM game";
@@ -59,6 +118,37 @@ public class SQLGameDAO implements GameDAO {
         }
     }
 
+    // Pages by gameID, and each page is read and its connection closed before the action runs, so a slow
+    // consumer (an export going out over the network) never holds a connection
+    public void forEachGame(Consumer<GameData> action) throws DataAccessException {
+        var statement = "SELECT gameID, whiteUsername, blackUsername, gameName, game FROM game WHERE gameID > ? ORDER BY gameID LIMIT ?";
+        int lastGameID = 0;
+        while (true) {
+            List<GameData> page = new ArrayList<>(PAGE_SIZE);
+            try (var conn = DatabaseManager.getConnection(); var preparedStatement = conn.prepareStatement(statement)) {
+                preparedStatement.setInt(1, lastGameID);
+                preparedStatement.setInt(2, PAGE_SIZE);
+                try (var resultSet = preparedStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        page.add(new GameData(resultSet.getInt("gameID"), resultSet.getString("whiteUsername"),
+                            resultSet.getString("blackUsername"), resultSet.getString("gameName"),
+                            Serializer.STORAGE.fromJson(resultSet.getString("game"), ChessGame.class)));
+                    }
+                }
+            } catch (Exception e) {
+                throw new DataAccessException(String.format("Error: Unable to read games: %s", e.getMessage()));
+            }
+
+            for (GameData game : page) {
+                action.accept(game);
+            }
+            if (page.size() < PAGE_SIZE) {
+                return;
+            }
+            lastGameID = page.get(page.size() - 1).gameID();
+        }
+    }
+
     public Boolean checkGame(Integer gameID) throws DataAccessException {
         var statement = "SELECT EXISTS(SELECT 1 FROM game WHERE gameID = ?)";
         try (var conn = DatabaseManager.getConnection(); var preparedStatement = conn.prepareStatement(statement)) {
@@ -113,7 +203,7 @@ public class SQLGameDAO implements GameDAO {
 
     public void updateGame(Integer gameID, ChessGame game) throws DataAccessException {
         var statement = "UPDATE game SET game = ? WHERE gameID = ?";
-        var gameJson = new Gson().toJson(game);
+        var gameJson = Serializer.STORAGE.toJson(game);
 
         try (var conn = DatabaseManager.getConnection(); var preparedStatement = conn.prepareStatement(statement)) {
             preparedStatement.setString(1, gameJson);
@@ -154,7 +244,7 @@ public class SQLGameDAO implements GameDAO {
                     String gameJson = resultSet.getString("game");
 
                     // Convert the Json back into a ChessGame object
-                    ChessGame chessGame = new Gson().fromJson(gameJson, ChessGame.class);
+                    ChessGame chessGame = Serializer.STORAGE.fromJson(gameJson, ChessGame.class);
 
                     // Create the GameData and return it
                     GameData game = new GameData(id, whiteUsername, blackUsername, gameName, chessGame);
@@ -171,8 +261,19 @@ public class SQLGameDAO implements GameDAO {
 
     }
 
+    public void deleteGame(Integer gameID) throws DataAccessException {
+        var statement = "DELETE FROM game WHERE gameID = ?";
+        try (var conn = DatabaseManager.getConnection(); var preparedStatement = conn.prepareStatement(statement)) {
+            preparedStatement.setInt(1, gameID);
+
+            preparedStatement.executeUpdate();
+        } catch (Exception e) {
+            throw new DataAccessException(String.format("Error: Unable to delete game: %s", e.getMessage()));
+        }
+    }
+
     public void clearGames() throws DataAccessException {
-        var statement = "TRUNCATE game";
+        var statement = "TRUNCATE TABLE game";
         try (var conn = DatabaseManager.getConnection()) {
             try (var preparedStatement = conn.prepareStatement(statement)) {
                 preparedStatement.executeUpdate();
@@ -3,21 +3,30 @@ package dataaccess;
 import model.UserData;
 
 import java.sql.*;
-
-import org.mindrot.jbcrypt.BCrypt;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import static java.sql.Statement.RETURN_GENERATED_KEYS;
 import static java.sql.Types.NULL;
 
 public class SQLUserDAO implements UserDAO {
 
+    private final PasswordHasher passwordHasher;
+
     public SQLUserDAO() throws DataAccessException {
+        this(PasswordHasher.defaults());
+    }
+
+    public SQLUserDAO(PasswordHasher passwordHasher) throws DataAccessException {
+        this.passwordHasher = passwordHasher;
         DatabaseManager.configureDatabase();
     }
 
     public void createUser(UserData u) throws DataAccessException {
-        // Hash the password
-        String hashedPassword = BCrypt.hashpw(u.password(), BCrypt.gensalt());
+        // Hash the password on the hashing pool, this throws ServiceUnavailableException if it is full
+        String hashedPassword = passwordHasher.hash(u.password());
 
         // User question marks to avoid SQL injection
         var statement = "INSERT INTO user (username, password, email) VALUES (?, ?, ?)";
@@ -52,6 +61,29 @@ public class SQLUserDAO implements UserDAO {
         }
         return false;
     }
+
+    // One query for the whole list instead of one per name
+    public Set<String> findMissing(Collection<String> usernames) throws DataAccessException {
+        Set<String> missing = new LinkedHashSet<>(usernames);
+        if (missing.isEmpty()) {
+            return missing;
+        }
+        var statement = "SELECT username FROM user WHERE username IN (" + String.join(", ", Collections.nCopies(missing.size(), "?")) + ")";
+        try (var conn = DatabaseManager.getConnection(); var preparedStatement = conn.prepareStatement(statement)) {
+            int parameter = 1;
+            for (String username : missing) {
+                preparedStatement.setString(parameter++, username);
+            }
+            try (var resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    missing.remove(resultSet.getString(1));
+                }
+            }
+        } catch (Exception e) {
+            throw new DataAccessException(String.format("Error: Unable to search for users: %s", e.getMessage()));
+        }
+        return missing;
+    }
     
     // give a username, returns the userdata for that username
     public UserData getUser(String username) throws DataAccessException {
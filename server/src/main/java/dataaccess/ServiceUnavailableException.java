@@ -0,0 +1,14 @@
+package dataaccess;
+
+/**
+ * Indicates that the server is too busy to take the request right now (for example the password hashing queue
+ * is full) and the client should try again shortly
+ */
+public class ServiceUnavailableException extends DataAccessException {
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+    public ServiceUnavailableException(String message, Throwable ex) {
+        super(message, ex);
+    }
+}
@@ -0,0 +1,194 @@
+package dataaccess;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import model.AuthData;
+
+/**
+ * Wraps the real AuthDAO so signed tokens (see TokenSigner) are checked in memory and never touch the auth table.
+ * Anything that isn't a signed token, like a UUID issued before signed tokens were turned on, goes to the wrapped DAO.
+ *
+ * Logging out can't delete a token that was never stored, so its nonce goes on a revocation list until the token
+ * would have expired anyway, and clearAuth moves every token on to a new generation. Both are kept in the wrapped
+ * DAO, so they are shared by every server using the same auth store and survive restarts. Each server holds a copy
+ * of them to check tokens against in memory and catches up with the store at most every REFRESH_MILLIS, so a
+ * logout or clear on one server reaches the others within that time.
+ */
+public class SignedTokenAuthDAO implements AuthDAO {
+    // Only sweep expired revocations once the list has grown a bit, and at most once a minute
+    private static final int PURGE_THRESHOLD = 1024;
+    private static final long PURGE_INTERVAL_MILLIS = 60_000;
+    public static final long REFRESH_MILLIS = 1000;
+
+    private final AuthDAO storedTokens;
+    private final TokenSigner signer;
+
+    // This server's copy of the store's revocations, nonce -> when that token expires
+    private final ConcurrentHashMap<Long, Long> revoked = new ConcurrentHashMap<>();
+    private final AtomicLong lastPurge = new AtomicLong();
+
+    // This server's copy of the store's generation, tokens from any other generation are no longer valid
+    private volatile long generation;
+    // The highest revocation sequence number copied so far, guarded by refreshLock
+    private long lastSequence;
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final AtomicLong lastRefresh = new AtomicLong(System.currentTimeMillis());
+
+    private final long refreshMillis;
+
+    public SignedTokenAuthDAO(AuthDAO storedTokens, TokenSigner signer) throws DataAccessException {
+        this(storedTokens, signer, REFRESH_MILLIS);
+    }
+
+    SignedTokenAuthDAO(AuthDAO storedTokens, TokenSigner signer, long refreshMillis) throws DataAccessException {
+        this.storedTokens = storedTokens;
+        this.signer = signer;
+        this.refreshMillis = refreshMillis;
+        refresh();
+    }
+
+    // Signed instead of random, and nothing is stored since the token is its own record
+    @Override
+    public String newAuthToken(String username) {
+        try {
+            refreshIfStale();
+        } catch (DataAccessException e) {
+            // Sign with the generation we have, the store will be asked again on the next check
+        }
+        return signer.issue(username, generation);
+    }
+
+    public void createAuth(AuthData a) throws DataAccessException {
+        if (a == null || a.authToken() == null || a.username() == null) {
+            throw new DataAccessException("Error: items are null");
+        }
+        if (!TokenSigner.looksSigned(a.authToken())) {
+            storedTokens.createAuth(a);
+        }
+    }
+
+    public Boolean checkAuth(String authToken) throws DataAccessException {
+        if (authToken == null) {
+            throw new DataAccessException("Error: authToken is null");
+        }
+        if (TokenSigner.looksSigned(authToken)) {
+            return validClaims(authToken) != null;
+        }
+        return storedTokens.checkAuth(authToken);
+    }
+
+    public Boolean checkUser(String username) throws DataAccessException {
+        return storedTokens.checkUser(username);
+    }
+
+    public String getUser(String authToken) throws DataAccessException {
+        if (authToken == null) {
+            throw new DataAccessException("Error: authToken is null");
+        }
+        if (TokenSigner.looksSigned(authToken)) {
+            TokenSigner.Claims claims = validClaims(authToken);
+            return claims == null ? null : claims.username();
+        }
+        return storedTokens.getUser(authToken);
+    }
+
+    public void deleteAuth(String authToken) throws DataAccessException, UnauthorizedException {
+        if (!TokenSigner.looksSigned(authToken)) {
+            storedTokens.deleteAuth(authToken);
+            return;
+        }
+
+        TokenSigner.Claims claims = validClaims(authToken);
+        if (claims == null) {
+            throw new UnauthorizedException("Error: unauthorized");
+        }
+        storedTokens.revokeToken(claims.nonce(), claims.expiresAt());
+        revoked.put(claims.nonce(), claims.expiresAt());
+        purgeExpired();
+    }
+
+    public void clearAuth() throws DataAccessException {
+        storedTokens.clearAuth();
+        long next = storedTokens.nextTokenGeneration();
+        refreshLock.lock();
+        try {
+            generation = next;
+            revoked.clear();
+            lastSequence = 0;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    public long tokenGeneration() throws DataAccessException {
+        return storedTokens.tokenGeneration();
+    }
+
+    public long nextTokenGeneration() throws DataAccessException {
+        return storedTokens.nextTokenGeneration();
+    }
+
+    public void revokeToken(long nonce, long expiresAt) throws DataAccessException {
+        storedTokens.revokeToken(nonce, expiresAt);
+    }
+
+    public List<RevokedToken> revokedTokens(long after) throws DataAccessException {
+        return storedTokens.revokedTokens(after);
+    }
+
+    public void purgeRevokedTokens(long now) throws DataAccessException {
+        storedTokens.purgeRevokedTokens(now);
+    }
+
+    private TokenSigner.Claims validClaims(String authToken) throws DataAccessException {
+        TokenSigner.Claims claims = signer.verify(authToken);
+        if (claims == null) {
+            return null;
+        }
+        refreshIfStale();
+        if (claims.generation() != generation || revoked.containsKey(claims.nonce())) {
+            return null;
+        }
+        return claims;
+    }
+
+    // Whoever finds the copy stale first catches it up, everyone else checks against it as it is
+    private void refreshIfStale() throws DataAccessException {
+        long now = System.currentTimeMillis();
+        long last = lastRefresh.get();
+        if (now - last >= refreshMillis && lastRefresh.compareAndSet(last, now)) {
+            refresh();
+        }
+    }
+
+    // Copies the store's generation and any revocations not seen yet, starting over if the generation moved on
+    private void refresh() throws DataAccessException {
+        refreshLock.lock();
+        try {
+            long current = storedTokens.tokenGeneration();
+            if (current != generation) {
+                revoked.clear();
+                lastSequence = 0;
+                generation = current;
+            }
+            for (RevokedToken token : storedTokens.revokedTokens(lastSequence)) {
+                revoked.put(token.nonce(), token.expiresAt());
+                lastSequence = token.sequence();
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private void purgeExpired() throws DataAccessException {
+        long now = System.currentTimeMillis();
+        long last = lastPurge.get();
+        if (revoked.size() > PURGE_THRESHOLD && now - last > PURGE_INTERVAL_MILLIS && lastPurge.compareAndSet(last, now)) {
+            revoked.values().removeIf(expiresAt -> expiresAt <= now);
+            storedTokens.purgeRevokedTokens(now);
+        }
+    }
+}
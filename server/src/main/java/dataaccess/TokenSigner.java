@@ -0,0 +1,123 @@
+package dataaccess;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Makes and checks self-contained auth tokens. A token looks like
+ *
+ *     v1.[base64url of "generation:expiresAtMillis:nonce:username"].[base64url of its HMAC-SHA256]
+ *
+ * so any server holding the same key can tell who it belongs to and whether it has expired without a database
+ * lookup. The nonce makes every token unique, which is what the revocation list keys on.
+ */
+public class TokenSigner {
+    public static final String PREFIX = "v1.";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+    private final SecureRandom random = new SecureRandom();
+
+    // Mac objects aren't thread safe and are slow to look up, so every thread keeps its own
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * What a valid token says about itself
+     */
+    public record Claims(String username, long expiresAt, long nonce, long generation) {}
+
+    public TokenSigner(byte[] key, long ttlMillis) {
+        if (key.length < 32) {
+            throw new IllegalArgumentException("HMAC key must be at least 32 bytes");
+        }
+        this.key = new SecretKeySpec(Arrays.copyOf(key, key.length), ALGORITHM);
+        this.ttlMillis = ttlMillis;
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * Builds a signer from the configured key, or from a random one if none was given. A random key only works for
+     * a single server, and every token stops working when it restarts.
+     */
+    public static TokenSigner fromConfig(String base64Key, long ttlMillis) {
+        byte[] key;
+        if (base64Key == null || base64Key.isBlank()) {
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+        } else {
+            key = Base64.getDecoder().decode(base64Key.trim());
+        }
+        return new TokenSigner(key, ttlMillis);
+    }
+
+    public static boolean looksSigned(String authToken) {
+        return authToken != null && authToken.startsWith(PREFIX);
+    }
+
+    public String issue(String username, long generation) {
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        String payload = generation + ":" + expiresAt + ":" + Long.toUnsignedString(random.nextLong(), 16) + ":" + username;
+        String encodedPayload = ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        return PREFIX + encodedPayload + "." + ENCODER.encodeToString(sign(encodedPayload));
+    }
+
+    /**
+     * Checks the signature and the expiry. Returns null for anything forged, malformed or expired.
+     */
+    public Claims verify(String authToken) {
+        if (!looksSigned(authToken)) {
+            return null;
+        }
+        int dot = authToken.indexOf('.', PREFIX.length());
+        if (dot < 0) {
+            return null;
+        }
+        String encodedPayload = authToken.substring(PREFIX.length(), dot);
+
+        try {
+            byte[] signature = DECODER.decode(authToken.substring(dot + 1));
+            // Constant time so the signature can't be guessed a byte at a time
+            if (!MessageDigest.isEqual(signature, sign(encodedPayload))) {
+                return null;
+            }
+
+            String payload = new String(DECODER.decode(encodedPayload), StandardCharsets.UTF_8);
+            String[] parts = payload.split(":", 4);
+            if (parts.length != 4) {
+                return null;
+            }
+            Claims claims = new Claims(parts[3], Long.parseLong(parts[1]), Long.parseUnsignedLong(parts[2], 16),
+                Long.parseLong(parts[0]));
+            return claims.expiresAt() > System.currentTimeMillis() ? claims : null;
+        } catch (IllegalArgumentException e) {
+            // Bad base64 or numbers, either way it isn't one of ours
+            return null;
+        }
+    }
+
+    private byte[] sign(String encodedPayload) {
+        Mac mac = macs.get();
+        return mac.doFinal(encodedPayload.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package dataaccess;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 import model.*;
 
 public interface UserDAO {
@@ -10,6 +14,19 @@ public interface UserDAO {
 
     UserData getUser(String username) throws DataAccessException;
 
+    /**
+     * @return the usernames in the list that have not been registered
+     */
+    default Set<String> findMissing(Collection<String> usernames) throws DataAccessException {
+        Set<String> missing = new LinkedHashSet<>();
+        for (String username : usernames) {
+            if (!checkUser(username)) {
+                missing.add(username);
+            }
+        }
+        return missing;
+    }
+
     void clearUsers() throws DataAccessException;
 
 }
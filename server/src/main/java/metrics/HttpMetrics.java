@@ -0,0 +1,53 @@
+package metrics;
+
+import io.javalin.http.Context;
+import tracing.Span;
+import tracing.Tracer;
+
+/**
+ * Javalin before/after hooks that time every route into chess_http_request{route} and count responses by status.
+ * They also open the root trace span for sampled requests.
+ */
+public final class HttpMetrics {
+
+    private static final String START_ATTRIBUTE = "metrics.start";
+    private static final String TRACE_ATTRIBUTE = "metrics.trace";
+
+    private HttpMetrics() {}
+
+    public static void before(Context ctx) {
+        ctx.attribute(START_ATTRIBUTE, System.nanoTime());
+        // The route isn't matched yet, so the root span is renamed once the request is done
+        Span trace = Tracer.startTrace("http");
+        if (trace != Span.noop()) {
+            ctx.attribute(TRACE_ATTRIBUTE, trace);
+        }
+    }
+
+    public static void after(Context ctx) {
+        Long start = ctx.attribute(START_ATTRIBUTE);
+        if (start == null) {
+            return;
+        }
+        String route = ctx.method().name() + " " + routeOf(ctx);
+        Metrics.timer("chess_http_request", "route", route).recordSince(start);
+        Metrics.counter("chess_http_responses_total", "route", route, "status", Integer.toString(ctx.statusCode()))
+            .increment();
+
+        Span trace = ctx.attribute(TRACE_ATTRIBUTE);
+        if (trace != null) {
+            trace.rename("http " + route);
+            trace.close();
+        }
+    }
+
+    // Use the route pattern rather than the raw path so ids in the path can't blow up the number of metrics
+    private static String routeOf(Context ctx) {
+        try {
+            String path = ctx.endpointHandlerPath();
+            return path.isEmpty() ? "unmatched" : path;
+        } catch (IllegalStateException e) {
+            return "unmatched";
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, lock-free latency histogram with HDR-style log-linear buckets. Every power of two is split into
+ * 32 equal buckets, so any recorded value is reported within about 3% of its real value, and recording is just
+ * a couple of bit operations and an atomic increment. Values are in nanoseconds.
+ */
+public final class LatencyHistogram {
+
+    // Values below 2^SUB_BUCKET_BITS get a bucket each, every power of two above that is split into SUB_BUCKETS
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 2^40 ns is about 18 minutes, anything slower than that is clamped
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param count number of recorded values
+     * @param sum sum of the recorded values in nanoseconds
+     * @param max largest recorded value in nanoseconds
+     * @param p50 median in nanoseconds
+     * @param p90 90th percentile in nanoseconds
+     * @param p99 99th percentile in nanoseconds
+     * @param p999 99.9th percentile in nanoseconds
+     */
+    public record Snapshot(long count, long sum, long max, long p50, long p90, long p99, long p999) {}
+
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(bucketIndex(value));
+        total.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    // Convenience for the usual "long start = System.nanoTime(); ... recordSince(start)" pattern
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public Snapshot snapshot() {
+        // Copy the buckets once so every percentile is read from the same counts
+        long[] copy = new long[BUCKET_COUNT];
+        long copiedTotal = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            copiedTotal += copy[i];
+        }
+        long largest = max.get();
+        return new Snapshot(copiedTotal, sum.sum(), largest,
+            percentile(copy, copiedTotal, 0.50, largest),
+            percentile(copy, copiedTotal, 0.90, largest),
+            percentile(copy, copiedTotal, 0.99, largest),
+            percentile(copy, copiedTotal, 0.999, largest));
+    }
+
+    private static long percentile(long[] copy, long copiedTotal, double quantile, long largest) {
+        if (copiedTotal == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * copiedTotal));
+        long seen = 0;
+        for (int i = 0; i < copy.length; i++) {
+            seen += copy[i];
+            if (seen >= rank) {
+                // Report the top of the bucket, but never more than the largest value actually recorded
+                return Math.min(bucketUpperBound(i), largest);
+            }
+        }
+        return largest;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
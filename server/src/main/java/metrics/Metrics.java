@@ -0,0 +1,113 @@
+package metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The process-wide registry of timers, counters and gauges. Metrics are identified by a name plus label pairs,
+ * e.g. timer("chess_dao_call", "dao", "game", "method", "getGame"). Looking a metric up builds a string, so hot
+ * paths should look theirs up once and keep it in a field.
+ *
+ * GET /metrics renders everything in the Prometheus text format, timers as summaries in seconds.
+ */
+public final class Metrics {
+
+    // name -> (rendered labels -> metric), sorted so the scrape output is stable
+    private static final Map<String, Map<String, LatencyHistogram>> TIMERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Map<String, LongAdder>> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Map<String, LongSupplier>> GAUGES = new ConcurrentSkipListMap<>();
+
+    private Metrics() {}
+
+    public static LatencyHistogram timer(String name, String... labels) {
+        return family(TIMERS, name).computeIfAbsent(renderLabels(labels), key -> new LatencyHistogram());
+    }
+
+    public static LongAdder counter(String name, String... labels) {
+        return family(COUNTERS, name).computeIfAbsent(renderLabels(labels), key -> new LongAdder());
+    }
+
+    // Gauges are read when scraped, so registering one again just replaces the old supplier
+    public static void gauge(String name, LongSupplier value, String... labels) {
+        family(GAUGES, name).put(renderLabels(labels), value);
+    }
+
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+
+        TIMERS.forEach((name, family) -> {
+            String metric = name + "_seconds";
+            out.append("# TYPE ").append(metric).append(" summary\n");
+            family.forEach((labels, histogram) -> {
+                LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+                appendQuantile(out, metric, labels, "0.5", snapshot.p50());
+                appendQuantile(out, metric, labels, "0.9", snapshot.p90());
+                appendQuantile(out, metric, labels, "0.99", snapshot.p99());
+                appendQuantile(out, metric, labels, "0.999", snapshot.p999());
+                appendSample(out, metric + "_count", labels, Long.toString(snapshot.count()));
+                appendSample(out, metric + "_sum", labels, seconds(snapshot.sum()));
+                appendSample(out, metric + "_max", labels, seconds(snapshot.max()));
+            });
+        });
+
+        COUNTERS.forEach((name, family) -> {
+            out.append("# TYPE ").append(name).append(" counter\n");
+            family.forEach((labels, counter) -> appendSample(out, name, labels, Long.toString(counter.sum())));
+        });
+
+        GAUGES.forEach((name, family) -> {
+            out.append("# TYPE ").append(name).append(" gauge\n");
+            family.forEach((labels, gauge) -> appendSample(out, name, labels, Long.toString(gauge.getAsLong())));
+        });
+
+        return out.toString();
+    }
+
+    private static <T> Map<String, T> family(Map<String, Map<String, T>> registry, String name) {
+        return registry.computeIfAbsent(name, key -> new ConcurrentSkipListMap<>());
+    }
+
+    // Turns ("dao", "game", "method", "getGame") into dao="game",method="getGame"
+    private static String renderLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("labels must be name/value pairs");
+        }
+        Map<String, String> sorted = new TreeMap<>();
+        for (int i = 0; i < labels.length; i += 2) {
+            sorted.put(labels[i], labels[i + 1]);
+        }
+        StringBuilder rendered = new StringBuilder();
+        sorted.forEach((key, value) -> {
+            if (!rendered.isEmpty()) {
+                rendered.append(',');
+            }
+            rendered.append(key).append("=\"").append(escape(value)).append('"');
+        });
+        return rendered.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void appendQuantile(StringBuilder out, String metric, String labels, String quantile, long nanos) {
+        String withQuantile = labels.isEmpty() ? "quantile=\"" + quantile + "\"" : labels + ",quantile=\"" + quantile + "\"";
+        appendSample(out, metric, withQuantile, seconds(nanos));
+    }
+
+    private static void appendSample(StringBuilder out, String metric, String labels, String value) {
+        out.append(metric);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+}
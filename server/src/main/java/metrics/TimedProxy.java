@@ -0,0 +1,51 @@
+package metrics;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import tracing.Span;
+import tracing.Tracer;
+
+/**
+ * Wraps a DAO so every call through its interface is timed into chess_dao_call{dao, method}, every exception
+ * is counted in chess_dao_errors_total{dao, method}, and sampled traces get a dao.[dao].[method] span. Doing it
+ * with a proxy means methods added to the interfaces later are measured without anyone having to remember to.
+ */
+public final class TimedProxy {
+
+    private TimedProxy() {}
+
+    public static <T> T wrap(Class<T> daoInterface, T target, String daoName) {
+        Map<Method, LatencyHistogram> timers = new ConcurrentHashMap<>();
+        Map<Method, LongAdder> errors = new ConcurrentHashMap<>();
+        Map<Method, String> spanNames = new ConcurrentHashMap<>();
+
+        Object proxy = Proxy.newProxyInstance(daoInterface.getClassLoader(), new Class<?>[] {daoInterface},
+            (self, method, args) -> {
+                if (method.getDeclaringClass() == Object.class) {
+                    return method.invoke(target, args);
+                }
+                LatencyHistogram timer = timers.computeIfAbsent(method,
+                    m -> Metrics.timer("chess_dao_call", "dao", daoName, "method", m.getName()));
+                long start = System.nanoTime();
+                // Sampled requests also get a trace span per DAO call, names are cached so nothing is built per call
+                Span span = Tracer.span(spanNames.computeIfAbsent(method, m -> "dao." + daoName + "." + m.getName()));
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    errors.computeIfAbsent(method,
+                        m -> Metrics.counter("chess_dao_errors_total", "dao", daoName, "method", m.getName())).increment();
+                    // Rethrow what the DAO actually threw so callers still see DataAccessException and friends
+                    throw e.getCause();
+                } finally {
+                    timer.recordSince(start);
+                    span.close();
+                }
+            });
+        return daoInterface.cast(proxy);
+    }
+}
@@ -2,22 +2,36 @@ package server;
 
 import dataaccess.AlreadyTakenException;
 import dataaccess.BadRequestException;
+import dataaccess.ServiceUnavailableException;
 import dataaccess.UnauthorizedException;
 import io.javalin.http.Context;
+import org.eclipse.jetty.server.Request;
 import service.GameService;
+import service.ImportService;
 import model.CreateGameRequest;
 import model.CreateGameResult;
+import model.CreateGamesRequest;
+import model.CreateGamesResult;
+import model.ImportResult;
+import model.ExplorerResult;
+import model.PositionSearchResult;
 import model.ListGamesResult;
 import model.JoinGameRequest;
 
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 public class GameHandler {
 
     private final GameService gameService;
+    private final ImportService importService;
 
-    public GameHandler(GameService gameService) {
+    public GameHandler(GameService gameService, ImportService importService) {
         this.gameService = gameService;
+        this.importService = importService;
     }
 
     Integer gameNumber = 1;
@@ -48,6 +62,151 @@ public class GameHandler {
         }
     }
 
+    public void createGames(Context ctx) {
+        try {
+            String authToken = ctx.header("authorization");
+
+            // The body is the list of boards, each with its name and (optionally) its players
+            CreateGamesRequest req = ctx.bodyAsClass(CreateGamesRequest.class);
+
+            CreateGamesResult res = gameService.createGames(authToken, req);
+
+            ctx.status(200);
+            ctx.json(res);
+        } catch (BadRequestException e) {
+            ctx.status(400);
+            ctx.json(Map.of("message", e.getMessage()));
+        } catch (UnauthorizedException e) {
+            ctx.status(401);
+            ctx.json(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            ctx.status(500);
+            ctx.json(Map.of("message", e.getMessage()));
+        }
+    }
+
+    public void importGames(Context ctx) {
+        try {
+            String authToken = ctx.header("authorization");
+
+            // The body is a PGN file, read as it arrives rather than buffered whole
+            var pgn = new InputStreamReader(ctx.bodyInputStream(), StandardCharsets.UTF_8);
+            ImportResult res = importService.importPgn(authToken, pgn);
+
+            ctx.status(200);
+            ctx.json(res);
+        } catch (BadRequestException e) {
+            ctx.status(400);
+            ctx.json(Map.of("message", e.getMessage()));
+        } catch (UnauthorizedException e) {
+            ctx.status(401);
+            ctx.json(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            ctx.status(500);
+            ctx.json(Map.of("message", e.getMessage()));
+        }
+    }
+
+    public void exportGames(Context ctx) {
+        boolean[] streaming = {false};
+        try {
+            String authToken = ctx.header("authorization");
+
+            // Games go out as they are read, the response is never built up in memory
+            gameService.exportGames(authToken, () -> {
+                streaming[0] = true;
+                ctx.status(200);
+                ctx.contentType("application/x-chess-pgn");
+                return new BufferedWriter(new OutputStreamWriter(ctx.outputStream(), StandardCharsets.UTF_8));
+            });
+        } catch (UnauthorizedException e) {
+            ctx.status(401);
+            ctx.json(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            if (streaming[0]) {
+                // The 200 and part of the file may already be out, so cut the connection instead of ending the
+                // body cleanly; the client then sees a failed download rather than a short file
+                System.err.println(String.format("Export FAILED part way through %s", e.getMessage()));
+                Request.getBaseRequest(ctx.req()).getHttpChannel().abort(e);
+                return;
+            }
+            ctx.status(500);
+            ctx.json(Map.of("message", e.getMessage()));
+        }
+    }
+
+    public void findPosition(Context ctx) {
+        try {
+            String authToken = ctx.header("authorization");
+
+            // GET /position?fen=...&limit=..., the FEN is URL encoded
+            String limit = ctx.queryParam("limit");
+            PositionSearchResult res = gameService.findPosition(authToken, ctx.queryParam("fen"),
+                limit == null ? 50 : Integer.parseInt(limit));
+
+            ctx.status(200);
+            ctx.json(res);
+        } catch (NumberFormatException e) {
+            ctx.status(400);
+            ctx.json(Map.of("message", "Error: limit must be a number"));
+        } catch (BadRequestException e) {
+            ctx.status(400);
+            ctx.json(Map.of("message", e.getMessage()));
+        } catch (UnauthorizedException e) {
+            ctx.status(401);
+            ctx.json(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            ctx.status(500);
+            ctx.json(Map.of("message", e.getMessage()));
+        }
+    }
+
+    public void explore(Context ctx) {
+        try {
+            String authToken = ctx.header("authorization");
+
+            // GET /explorer?fen=..., the FEN is URL encoded
+            ExplorerResult res = gameService.explore(authToken, ctx.queryParam("fen"));
+
+            ctx.status(200);
+            ctx.json(res);
+        } catch (BadRequestException e) {
+            ctx.status(400);
+            ctx.json(Map.of("message", e.getMessage()));
+        } catch (UnauthorizedException e) {
+            ctx.status(401);
+            ctx.json(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            ctx.status(500);
+            ctx.json(Map.of("message", e.getMessage()));
+        }
+    }
+
+    public void rebuildOpenings(Context ctx) {
+        try {
+            String authToken = ctx.header("authorization");
+
+            // The body is a PGN file, the games in it become the whole opening tree
+            var pgn = new InputStreamReader(ctx.bodyInputStream(), StandardCharsets.UTF_8);
+            ImportResult res = importService.rebuildOpenings(authToken, pgn);
+
+            ctx.status(200);
+            ctx.json(res);
+        } catch (BadRequestException e) {
+            ctx.status(400);
+            ctx.json(Map.of("message", e.getMessage()));
+        } catch (UnauthorizedException e) {
+            ctx.status(401);
+            ctx.json(Map.of("message", e.getMessage()));
+        } catch (ServiceUnavailableException e) {
+            ctx.status(503);
+            ctx.json(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            ctx.status(500);
+            ctx.json(Map.of("message", e.getMessage()));
+        }
+    }
+
     public void listGames(Context ctx) {
         try {
             // Per usual the header has the authtoken, we use it to call the listGames function from the service class
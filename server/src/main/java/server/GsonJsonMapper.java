@@ -1,14 +1,14 @@
 package server;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import serialization.Serializer;
 
 import io.javalin.json.JsonMapper;
 import java.lang.reflect.Type;
 
 public class GsonJsonMapper implements JsonMapper {
     // Create our new gson object
-    private final Gson gson = new GsonBuilder().serializeNulls().create();
+    private final Gson gson = Serializer.builder().serializeNulls().create();
 
     // These both accept Thpe becaue its a broad java interface that can accept any type
     // This converts a java object into a Json string when Javalin sends a response
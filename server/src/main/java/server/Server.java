@@ -3,11 +3,23 @@ package server;
 
 // Import the javalin stuff
 import io.javalin.*;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.Filter;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.websocket.core.ExtensionConfig;
+import org.eclipse.jetty.websocket.core.server.WebSocketServerComponents;
 
 // Import the services being used
 import service.*;
 
 // Import the DAOS and local storage
+import dataaccess.ArchivingGameDAO;
 import dataaccess.AuthDAO;
 import dataaccess.DataAccessException;
 import dataaccess.GameDAO;
@@ -19,8 +31,32 @@ import dataaccess.SQLAuthDAO;
 import dataaccess.SQLGameDAO;
 import dataaccess.SQLUserDAO;
 import dataaccess.DatabaseManager;
+import dataaccess.FileGameDAO;
+import dataaccess.GameArchive;
+import dataaccess.PasswordHasher;
+import dataaccess.OpeningTree;
+import dataaccess.PositionIndex;
+import dataaccess.SignedTokenAuthDAO;
+import dataaccess.TokenSigner;
+
+// Import the metrics registry
+import metrics.HttpMetrics;
+import metrics.Metrics;
+import metrics.TimedProxy;
+
+// Import the tracer
+import tracing.TraceSummary;
+import tracing.Tracer;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
 
 //import what is needed for the websocket
+import websocket.CommandDecoder;
+import websocket.CompressionStats;
+import websocket.ThresholdDeflateExtension;
 import websocket.WebSocketHandler;
 
 
@@ -29,6 +65,12 @@ public class Server {
     private UserDAO userDAO;
     private AuthDAO authDAO;
     private GameDAO gameDAO;
+    private FileGameDAO gameLog;
+    private ArchivingGameDAO archivingGameDAO;
+    private PositionIndex positionIndex;
+    private OpeningTree openingTree;
+    private AnalysisService analysisService;
+    private ImportService importService;
 
     // Initialize the Web Socket Handler
     private final WebSocketHandler webSocketHandler;
@@ -38,13 +80,22 @@ public class Server {
     
 
     public Server() {
-        boolean useSQL = true;
+        this(ServerConfig.defaults());
+    }
+
+    public Server(ServerConfig config) {
+        // BCrypt gets its own bounded pool so login storms can't take over the request threads
+        PasswordHasher passwordHasher = new PasswordHasher(config.hashThreads(), config.hashQueueLimit(), config.bcryptCost());
 
         // Initialize the DAOs
-        if (useSQL) {
+        if (config.useSQL()) {
             try {
+                // An embedded database file needs no MySQL server, handy for one node and for local perf testing
+                if (config.embeddedDb() != null) {
+                    DatabaseManager.useEmbedded(config.embeddedDb());
+                }
                 DatabaseManager.configureDatabase();
-                userDAO = new SQLUserDAO();
+                userDAO = new SQLUserDAO(passwordHasher);
                 authDAO = new SQLAuthDAO();
                 gameDAO = new SQLGameDAO();
             } catch (DataAccessException e) {
@@ -52,40 +103,210 @@ public class Server {
                 System.exit(1);
             }
         } else {
-            userDAO = new MemoryUserDAO();
+            userDAO = new MemoryUserDAO(passwordHasher);
             authDAO = new MemoryAuthDAO();
             gameDAO = new MemoryGameDAO();
         }
 
+        // Games can instead live in memory behind a local write-ahead log, whatever stores users and auth
+        if (config.gameLog() != null) {
+            try {
+                gameLog = new FileGameDAO(Path.of(config.gameLog()), config.gameSnapshotEvery());
+                gameDAO = gameLog;
+            } catch (DataAccessException e) {
+                System.err.println(String.format("Game log setup FAILED %s", e.getMessage()));
+                System.exit(1);
+            }
+        }
+
+        // Finished games move to a memory-mapped archive so the live store only holds games in progress
+        if (config.archiveDir() != null) {
+            if (config.useSQL() || gameLog != null) {
+                try {
+                    archivingGameDAO = new ArchivingGameDAO(gameDAO, new GameArchive(Path.of(config.archiveDir())),
+                        Duration.ofSeconds(config.archiveAfterSeconds()));
+                    gameDAO = archivingGameDAO;
+                } catch (DataAccessException e) {
+                    System.err.println(String.format("Game archive setup FAILED %s", e.getMessage()));
+                    System.exit(1);
+                }
+            } else {
+                // Memory game IDs start over on restart and would collide with the archived ones
+                System.err.println("chess.archiveDir needs SQL or chess.gameLog for the live games, not archiving");
+            }
+        }
+
+        // Time every DAO call, whichever storage is behind it
+        userDAO = TimedProxy.wrap(UserDAO.class, userDAO, "user");
+        authDAO = TimedProxy.wrap(AuthDAO.class, authDAO, "auth");
+        gameDAO = TimedProxy.wrap(GameDAO.class, gameDAO, "game");
+
+        // Signed tokens are checked in memory, so only old UUID tokens still reach the (timed) auth table
+        if (config.signedTokens()) {
+            if (config.authKey() == null) {
+                System.err.println("No chess.authKey set, using a random key so signed tokens won't survive a restart");
+            }
+            TokenSigner signer = TokenSigner.fromConfig(config.authKey(), config.tokenTtlMinutes() * 60_000L);
+            try {
+                authDAO = new SignedTokenAuthDAO(authDAO, signer);
+            } catch (DataAccessException e) {
+                System.err.println(String.format("Signed token setup FAILED %s", e.getMessage()));
+                System.exit(1);
+            }
+        }
+        registerCompressionGauges();
+
+        // Sampled request tracing, off unless chess.traceSampleRate is set
+        Tracer.setSampleRate(config.traceSampleRate());
+        if (config.traceFile() != null) {
+            TraceSummary.writeTo(Path.of(config.traceFile()));
+        }
+
         // Initialize the Services
         AuthService authService = new AuthService(authDAO);
-        GameService gameService = new GameService(gameDAO, authDAO);
-        UserService userService = new UserService(userDAO, authDAO);
+        // Where else each position came up, filled by moves and imports as they happen and by one pass over the
+        // stored games in the background. Opening statistics, fed by imports and by games as they finish here.
+        if (config.indexDir() != null && (config.useSQL() || gameLog != null)) {
+            try {
+                positionIndex = new PositionIndex(Path.of(config.indexDir()));
+                openingTree = new OpeningTree(Path.of(config.indexDir()));
+            } catch (DataAccessException e) {
+                System.err.println(String.format("Index setup FAILED %s", e.getMessage()));
+                System.exit(1);
+            }
+        } else {
+            if (config.indexDir() != null) {
+                // Memory game IDs start over on restart and wouldn't match the kept entries
+                System.err.println("chess.indexDir needs SQL or chess.gameLog for the games, keeping the indexes in memory");
+            }
+            positionIndex = new PositionIndex();
+            openingTree = new OpeningTree();
+        }
+        buildPositionIndex(positionIndex, gameDAO);
+        GameService gameService = new GameService(gameDAO, authDAO, userDAO, positionIndex, openingTree);
+        UserService userService = new UserService(userDAO, authDAO, passwordHasher);
+        // The engine gets its own few low priority threads so analysis never slows down moves
+        analysisService = new AnalysisService(gameDAO, authDAO, config.analysisWorkers(), config.analysisSearchThreads(),
+            config.analysisQueueLimit(), config.analysisPerUser(), Duration.ofMillis(config.analysisMillis()));
+        importService = new ImportService(gameDAO, authDAO, positionIndex, openingTree);
 
         // Initialize the Handlers
         ClearHandler clearHandler = new ClearHandler(authService, gameService, userService);
         UserHandler userHandler = new UserHandler(userService);
-        GameHandler gameHandler = new GameHandler(gameService);
+        GameHandler gameHandler = new GameHandler(gameService, importService);
 
         // Initialize the Web Socket
-        this.webSocketHandler = new WebSocketHandler(gameService, authService);
+        this.webSocketHandler = new WebSocketHandler(gameService, authService, analysisService);
 
-        javalin = Javalin.create(config -> {config.staticFiles.add("web"); config.jsonMapper(new GsonJsonMapper());})
+        javalin = Javalin.create(javalinConfig -> {
+                javalinConfig.staticFiles.add("web");
+                javalinConfig.jsonMapper(new GsonJsonMapper());
+                // Handlers block on JDBC, so on virtual threads a slow query parks the request instead of holding a pool thread
+                javalinConfig.useVirtualThreads = config.virtualThreads();
+                // Let Jetty drop oversized command frames before they are buffered and handed to the decoder
+                javalinConfig.jetty.modifyWebSocketServletFactory(factory -> {
+                    factory.setMaxTextMessageSize(CommandDecoder.MAX_MESSAGE_LENGTH);
+                    factory.setMaxBinaryMessageSize(CommandDecoder.MAX_MESSAGE_LENGTH);
+                });
+                javalinConfig.jetty.modifyServletContextHandler(handler -> configureCompression(handler, config));
+            })
+            .before(HttpMetrics::before)
+            .after(HttpMetrics::after)
             .delete("/db", clearHandler::clear)
             .post("/user", userHandler::registerUser)
             .post("/session", userHandler::login)
             .delete("/session", userHandler::logout)
             .post("/game", gameHandler::createGame)
+            .post("/game/bulk", gameHandler::createGames)
+            .post("/game/import", gameHandler::importGames)
+            .get("/game/export", gameHandler::exportGames)
+            .get("/position", gameHandler::findPosition)
+            .get("/explorer", gameHandler::explore)
+            .post("/explorer/rebuild", gameHandler::rebuildOpenings)
             .get("/game", gameHandler::listGames)
             .put("/game", gameHandler::joinGame)
+            .get("/metrics", ctx -> ctx.contentType("text/plain; version=0.0.4").result(Metrics.scrape()))
+            .get("/metrics/compression", ctx -> ctx.json(CompressionStats.snapshot()))
+            .get("/trace", ctx -> ctx.contentType("text/plain")
+                .result("collapsed".equals(ctx.queryParam("format")) ? TraceSummary.collapsed() : TraceSummary.tree()))
+            .delete("/trace", ctx -> {
+                TraceSummary.reset();
+                ctx.result("{}");
+            })
             .ws("/ws", ws -> {
                 ws.onConnect(webSocketHandler::handleConnect);
                 ws.onMessage(webSocketHandler::handleMessage);
+                ws.onBinaryMessage(webSocketHandler::handleBinaryMessage);
                 ws.onClose(webSocketHandler::handleClose);
             });
 
     }
 
+    // Swap Jetty's permessage-deflate for the one that skips small messages, or remove it entirely
+    private static void configureCompression(ServletContextHandler handler, ServerConfig config) {
+        ThresholdDeflateExtension.setThreshold(config.compressionThreshold());
+        if (config.wsCompression()) {
+            // Jetty takes the first offer it has an extension for, so offers ours can't honor are taken out of the
+            // request first, which declines them and lets a later offer or no compression be negotiated instead
+            handler.addFilter(new FilterHolder((Filter) (request, response, chain) -> {
+                declineUnsupportedOffers(Request.getBaseRequest(request));
+                chain.doFilter(request, response);
+            }), "/ws", EnumSet.of(DispatcherType.REQUEST));
+        }
+        handler.addEventListener(new ServletContextListener() {
+            @Override
+            public void contextInitialized(ServletContextEvent event) {
+                var registry = WebSocketServerComponents.ensureWebSocketComponents(handler.getServer(), event.getServletContext())
+                    .getExtensionRegistry();
+                registry.unregister(ThresholdDeflateExtension.NAME);
+                if (config.wsCompression()) {
+                    registry.register(ThresholdDeflateExtension.NAME, ThresholdDeflateExtension.class);
+                }
+            }
+        });
+    }
+
+    private static void declineUnsupportedOffers(Request request) {
+        if (request == null) {
+            return;
+        }
+        List<String> header = request.getHttpFields().getValuesList(HttpHeader.SEC_WEBSOCKET_EXTENSIONS);
+        if (header.isEmpty()) {
+            return;
+        }
+        List<ExtensionConfig> offers = ExtensionConfig.parseList(header.toArray(String[]::new));
+        List<ExtensionConfig> supported = ThresholdDeflateExtension.supportedOffers(offers);
+        if (supported.size() != offers.size()) {
+            HttpFields.Mutable fields = HttpFields.build(request.getHttpFields()).remove(HttpHeader.SEC_WEBSOCKET_EXTENSIONS);
+            if (!supported.isEmpty()) {
+                fields.put(HttpHeader.SEC_WEBSOCKET_EXTENSIONS, ExtensionConfig.toHeaderValue(supported));
+            }
+            request.setHttpFields(fields);
+        }
+    }
+
+    // Fold the compression totals into the /metrics scrape as well
+    private static void registerCompressionGauges() {
+        Metrics.gauge("chess_ws_compressed_messages", () -> CompressionStats.snapshot().compressedMessages());
+        Metrics.gauge("chess_ws_uncompressed_messages", () -> CompressionStats.snapshot().skippedMessages());
+        Metrics.gauge("chess_ws_deflate_bytes_in", () -> CompressionStats.snapshot().bytesIn());
+        Metrics.gauge("chess_ws_deflate_bytes_out", () -> CompressionStats.snapshot().bytesOut());
+        Metrics.gauge("chess_ws_deflate_nanos", () -> CompressionStats.snapshot().deflateNanos());
+    }
+
+    // Reads every stored game once on a background thread, so startup doesn't wait on it
+    private static void buildPositionIndex(PositionIndex positionIndex, GameDAO gameDAO) {
+        Thread builder = new Thread(() -> {
+            try {
+                positionIndex.build(gameDAO);
+            } catch (DataAccessException e) {
+                System.err.println(String.format("Position index build FAILED %s", e.getMessage()));
+            }
+        }, "position-index-build");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
     public int run(int desiredPort) {
         javalin.start(desiredPort);
         return javalin.port();
@@ -93,5 +314,23 @@ public class Server {
 
     public void stop() {
         javalin.stop();
+        analysisService.close();
+        importService.close();
+        positionIndex.close();
+        try {
+            openingTree.close();
+        } catch (DataAccessException e) {
+            System.err.println(e.getMessage());
+        }
+        if (archivingGameDAO != null) {
+            archivingGameDAO.close();
+        }
+        if (gameLog != null) {
+            try {
+                gameLog.close();
+            } catch (DataAccessException e) {
+                System.err.println(e.getMessage());
+            }
+        }
     }
 }
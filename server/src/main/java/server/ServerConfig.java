@@ -0,0 +1,109 @@
+package server;
+
+import dataaccess.FileGameDAO;
+import dataaccess.PasswordHasher;
+import service.AnalysisService;
+
+/**
+ * The options the server is started with. new Server() uses the defaults, which is what the passoff tests
+ * expect, and ServerMain reads everything from -D system properties so nothing has to be recompiled to change them.
+ *
+ * @param useSQL whether to store everything in a SQL database (true) or in the memory DAOs (false)
+ * @param embeddedDb file for an embedded database to use instead of MySQL, or null to use MySQL
+ * @param gameLog directory for a write-ahead logged game store that replaces the games table, or null for none
+ * @param gameSnapshotEvery how many game log records are written between snapshots
+ * @param archiveDir directory to move finished games into, or null to leave them with the live games
+ * @param archiveAfterSeconds how long after a game ends it is archived
+ * @param indexDir directory to keep the position index and opening tree in between restarts, or null to keep them
+ * in memory only
+ * @param virtualThreads whether Javalin should run the HTTP handlers and the websocket handler on virtual threads
+ * @param wsCompression whether websocket clients that offer permessage-deflate get compressed messages, off unless
+ * chess.wsCompression=true
+ * @param compressionThreshold messages smaller than this many bytes are sent uncompressed
+ * @param hashThreads how many threads may run BCrypt at once
+ * @param hashQueueLimit how many register/login requests may wait for a hashing thread before new ones get a 503
+ * @param bcryptCost the BCrypt cost factor (log2 of the rounds) for new passwords
+ * @param signedTokens whether to hand out HMAC signed auth tokens that are checked without the auth table
+ * @param authKey base64 HMAC key (at least 32 bytes) shared by every server, null makes a random one at startup
+ * @param tokenTtlMinutes how long a signed token is good for
+ * @param traceSampleRate fraction of requests (0 to 1) to trace, 0 turns tracing off
+ * @param traceFile file to append every sampled trace to in folded-stack format, or null for none
+ * @param analysisWorkers how many analysis jobs run at once, each on its own low priority thread
+ * @param analysisSearchThreads how many threads each analysis job searches with
+ * @param analysisQueueLimit how many analysis jobs may wait for a worker before new ones are turned away
+ * @param analysisPerUser how many analysis jobs one user may have waiting or running at once
+ * @param analysisMillis how long the engine thinks about each analyzed position
+ */
+public record ServerConfig(boolean useSQL, String embeddedDb, String gameLog, int gameSnapshotEvery,
+                           String archiveDir, int archiveAfterSeconds, String indexDir,
+                           boolean virtualThreads, boolean wsCompression, int compressionThreshold,
+                           int hashThreads, int hashQueueLimit, int bcryptCost,
+                           boolean signedTokens, String authKey, int tokenTtlMinutes,
+                           double traceSampleRate, String traceFile,
+                           int analysisWorkers, int analysisSearchThreads, int analysisQueueLimit, int analysisPerUser,
+                           int analysisMillis) {
+
+    public static ServerConfig defaults() {
+        return new ServerConfig(true, null, null, FileGameDAO.DEFAULT_SNAPSHOT_EVERY,
+            null, 300, null,
+            false, false, 512,
+            PasswordHasher.defaultThreads(), PasswordHasher.DEFAULT_QUEUE_LIMIT, PasswordHasher.DEFAULT_COST,
+            false, null, 12 * 60,
+            0.0, null,
+            AnalysisService.defaultWorkers(), 1, AnalysisService.DEFAULT_QUEUE_LIMIT, AnalysisService.DEFAULT_PER_USER,
+            AnalysisService.DEFAULT_MILLIS);
+    }
+
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig defaults = defaults();
+        return new ServerConfig(
+            booleanProperty("chess.useSQL", defaults.useSQL()),
+            System.getProperty("chess.embeddedDb", defaults.embeddedDb()),
+            System.getProperty("chess.gameLog", defaults.gameLog()),
+            intProperty("chess.gameSnapshotEvery", defaults.gameSnapshotEvery()),
+            System.getProperty("chess.archiveDir", defaults.archiveDir()),
+            intProperty("chess.archiveAfterSeconds", defaults.archiveAfterSeconds()),
+            System.getProperty("chess.indexDir", defaults.indexDir()),
+            booleanProperty("chess.virtualThreads", defaults.virtualThreads()),
+            booleanProperty("chess.wsCompression", defaults.wsCompression()),
+            intProperty("chess.compressionThreshold", defaults.compressionThreshold()),
+            intProperty("chess.hashThreads", defaults.hashThreads()),
+            intProperty("chess.hashQueueLimit", defaults.hashQueueLimit()),
+            intProperty("chess.bcryptCost", defaults.bcryptCost()),
+            booleanProperty("chess.signedTokens", defaults.signedTokens()),
+            System.getProperty("chess.authKey", defaults.authKey()),
+            intProperty("chess.tokenTtlMinutes", defaults.tokenTtlMinutes()),
+            doubleProperty("chess.traceSampleRate", defaults.traceSampleRate()),
+            System.getProperty("chess.traceFile", defaults.traceFile()),
+            intProperty("chess.analysisWorkers", defaults.analysisWorkers()),
+            intProperty("chess.analysisSearchThreads", defaults.analysisSearchThreads()),
+            intProperty("chess.analysisQueueLimit", defaults.analysisQueueLimit()),
+            intProperty("chess.analysisPerUser", defaults.analysisPerUser()),
+            intProperty("chess.analysisMillis", defaults.analysisMillis())
+        );
+    }
+
+    private static boolean booleanProperty(String name, boolean defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value.trim());
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Double.parseDouble(value.trim());
+    }
+}
@@ -4,7 +4,7 @@ import chess.*;
 
 public class ServerMain {
     public static void main(String[] args) {
-        Server server = new Server();
+        Server server = new Server(ServerConfig.fromSystemProperties());
         server.run(8080);
 
         System.out.println("♕ 240 Chess Server");
@@ -2,6 +2,7 @@ package server;
 
 import dataaccess.AlreadyTakenException;
 import dataaccess.BadRequestException;
+import dataaccess.ServiceUnavailableException;
 import dataaccess.UnauthorizedException;
 import io.javalin.http.Context;
 import service.UserService;
@@ -38,6 +39,8 @@ public class UserHandler {
         } catch (AlreadyTakenException e) {
             ctx.status(403);
             ctx.json(Map.of("message", e.getMessage()));
+        } catch (ServiceUnavailableException e) {
+            tooBusy(ctx, e);
         } catch (Exception e) {
             ctx.status(500);
             ctx.json(Map.of("message", e.getMessage()));
@@ -57,12 +60,21 @@ public class UserHandler {
         } catch (UnauthorizedException e) {
             ctx.status(401);
             ctx.json(Map.of("message", e.getMessage()));
+        } catch (ServiceUnavailableException e) {
+            tooBusy(ctx, e);
         } catch (Exception e) {
             ctx.status(500);
             ctx.json(Map.of("message", e.getMessage()));
         }
     }
 
+    // The hashing queue is full, tell the client to back off for a second instead of waiting in line
+    private void tooBusy(Context ctx, ServiceUnavailableException e) {
+        ctx.status(503);
+        ctx.header("Retry-After", "1");
+        ctx.json(Map.of("message", e.getMessage()));
+    }
+
     public void logout(Context ctx) {
         String authToken = ctx.header("authorization");
 
@@ -0,0 +1,257 @@
+package service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import chess.ChessBoard;
+import chess.ChessGame;
+import dataaccess.AuthDAO;
+import dataaccess.BadRequestException;
+import dataaccess.DataAccessException;
+import dataaccess.GameDAO;
+import dataaccess.ServiceUnavailableException;
+import dataaccess.UnauthorizedException;
+import engine.Engine;
+import engine.SearchResult;
+import engine.TranspositionTable;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import model.AnalysisUpdate;
+import model.GameData;
+
+/**
+ * Runs the engine over stored games for players who ask for analysis. Every job gets the position the game is
+ * in when it's asked for, searches it for a fixed time and hands back an update after each depth, so the client
+ * sees the evaluation firm up while the engine is still thinking.
+ * <p>
+ * Analysis is all CPU, so it runs on its own few low priority threads and never on the threads that handle
+ * moves, and the extra search threads of a job run on a second bounded pool of low priority threads rather than
+ * the engine's own. A job searches a copy of the position taken when it was asked for, never the stored game,
+ * which moves can change under it. Admission is decided up front: past `queueLimit` waiting jobs, or `perUser` jobs from one user waiting
+ * or running, a new job is turned away with a ServiceUnavailableException. Waiting jobs are ordered by how many
+ * jobs their user already had when they asked, so one user queueing up several can't hold everyone else back.
+ */
+public class AnalysisService {
+    public static final int DEFAULT_QUEUE_LIMIT = 64;
+    public static final int DEFAULT_PER_USER = 2;
+    public static final int DEFAULT_MILLIS = 2000;
+
+    /**
+     * Gets the updates of one job, called on the analysis thread
+     */
+    public interface Listener {
+        void onUpdate(AnalysisUpdate update);
+
+        void onError(String message);
+
+        /**
+         * Jobs whose listener has gone away (the socket closed while they waited) are skipped
+         */
+        default boolean isActive() {
+            return true;
+        }
+    }
+
+    private final GameDAO gameDAO;
+    private final AuthDAO authDAO;
+    private final ThreadPoolExecutor pool;
+    // Runs the helper searches of jobs searching with more than one thread, null when they search with one
+    private final ThreadPoolExecutor helpers;
+    private final int searchThreads;
+    private final int queueLimit;
+    private final int perUser;
+    private final Duration budget;
+    private final TranspositionTable table = TranspositionTable.shared();
+
+    // Jobs waiting or running per user, and jobs waiting in total, both only changed under the lock
+    private final Map<String, Integer> outstanding = new HashMap<>();
+    private int waiting;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LatencyHistogram waitTimer = Metrics.timer("chess_analysis_wait");
+    private final LatencyHistogram jobTimer = Metrics.timer("chess_analysis_job");
+    private final LongAdder completed = Metrics.counter("chess_analysis_jobs_total", "result", "completed");
+    private final LongAdder rejected = Metrics.counter("chess_analysis_jobs_total", "result", "rejected");
+    private final LongAdder skipped = Metrics.counter("chess_analysis_jobs_total", "result", "skipped");
+    private final LongAdder failed = Metrics.counter("chess_analysis_jobs_total", "result", "failed");
+
+    public AnalysisService(GameDAO gameDAO, AuthDAO authDAO, int workers, int searchThreads, int queueLimit,
+                           int perUser, Duration budget) {
+        if (workers < 1 || searchThreads < 1) {
+            throw new IllegalArgumentException("Analysis needs at least one worker and one search thread");
+        }
+        this.gameDAO = gameDAO;
+        this.authDAO = authDAO;
+        this.searchThreads = searchThreads;
+        this.queueLimit = queueLimit;
+        this.perUser = perUser;
+        this.budget = budget;
+        // Admission is checked before a job gets here, so the queue itself never has to say no
+        this.pool = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<>(), daemonThreads("analysis-"));
+        pool.allowCoreThreadTimeOut(true);
+        if (searchThreads > 1) {
+            // Enough for every running job's helpers at once, so a helper never waits behind another job's
+            int helperThreads = workers * (searchThreads - 1);
+            this.helpers = new ThreadPoolExecutor(helperThreads, helperThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("analysis-helper-"));
+            helpers.allowCoreThreadTimeOut(true);
+        } else {
+            this.helpers = null;
+        }
+        Metrics.gauge("chess_analysis_queue_depth", () -> pool.getQueue().size());
+        Metrics.gauge("chess_analysis_hash_hit_permille", () -> (long) (table.stats().hitRate() * 1000));
+    }
+
+    /**
+     * A quarter of the cores, so analysis can't take over a host that is also serving games
+     */
+    public static int defaultWorkers() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+    }
+
+    /**
+     * Queues analysis of the game's current position. Returns once the job is queued, the updates go to listener.
+     */
+    public void analyze(String authToken, Integer gameID, Listener listener)
+        throws UnauthorizedException, BadRequestException, DataAccessException {
+        if (authToken == null) {
+            throw new UnauthorizedException("Error: unauthorized");
+        }
+        if (gameID == null) {
+            throw new BadRequestException("Error: Game doesn't exist");
+        }
+        if (!authDAO.checkAuth(authToken)) {
+            throw new UnauthorizedException("Error: unauthorized");
+        }
+        String username = authDAO.getUser(authToken);
+        GameData gameData = gameDAO.getGame(gameID);
+        if (gameData == null) {
+            throw new BadRequestException("Error: bad request");
+        }
+
+        int priority;
+        synchronized (this) {
+            int mine = outstanding.getOrDefault(username, 0);
+            if (waiting >= queueLimit || mine >= perUser) {
+                rejected.increment();
+                throw new ServiceUnavailableException(mine >= perUser
+                    ? "Error: you already have " + mine + " analysis jobs running, wait for one to finish"
+                    : "Error: analysis is busy, try again later");
+            }
+            outstanding.put(username, mine + 1);
+            waiting++;
+            priority = mine;
+        }
+        ChessGame position = copy(gameData.game());
+        pool.execute(new Job(priority, sequence.getAndIncrement(), username, gameID, position, listener));
+    }
+
+    public void close() {
+        pool.shutdownNow();
+        if (helpers != null) {
+            helpers.shutdownNow();
+        }
+    }
+
+    // Only the board and the side to move, read square by square, so a move being made meanwhile can't throw here
+    private static ChessGame copy(ChessGame game) {
+        return new ChessGame(game.getTeamTurn(), new ChessBoard(game.getBoard()), false, null, null);
+    }
+
+    private synchronized void release(String username) {
+        outstanding.merge(username, -1, (count, change) -> count + change == 0 ? null : count + change);
+    }
+
+    private class Job implements Runnable, Comparable<Job> {
+        private final int priority;
+        private final long sequence;
+        private final String username;
+        private final int gameID;
+        private final ChessGame game;
+        private final Listener listener;
+        private final long queuedNanos = System.nanoTime();
+
+        Job(int priority, long sequence, String username, int gameID, ChessGame game, Listener listener) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.username = username;
+            this.gameID = gameID;
+            this.game = game;
+            this.listener = listener;
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public void run() {
+            synchronized (AnalysisService.this) {
+                waiting--;
+            }
+            waitTimer.recordSince(queuedNanos);
+            if (!listener.isActive()) {
+                skipped.increment();
+                release(username);
+                return;
+            }
+
+            // Scores come out for the side to move, the client wants them from white's side
+            int sign = game.getTeamTurn() == ChessGame.TeamColor.WHITE ? 1 : -1;
+            long start = System.nanoTime();
+            SearchResult result;
+            try {
+                result = searchThreads == 1
+                    ? Engine.search(game, budget, Integer.MAX_VALUE,
+                        depth -> listener.onUpdate(update(depth, sign, false)), table)
+                    : Engine.search(game, budget, Integer.MAX_VALUE,
+                        depth -> listener.onUpdate(update(depth, sign, false)), table, searchThreads, helpers);
+            } catch (RuntimeException e) {
+                System.err.println(String.format("Analysis of game %d failed: %s", gameID, e));
+                result = null;
+            } finally {
+                jobTimer.recordSince(start);
+                // Free the slot before the last update, a client that asks again straight away should get in
+                release(username);
+            }
+
+            if (result == null) {
+                failed.increment();
+                listener.onError("Error: analysis failed");
+                return;
+            }
+            completed.increment();
+            listener.onUpdate(update(result, sign, true));
+        }
+
+        private AnalysisUpdate update(SearchResult result, int sign, boolean done) {
+            return new AnalysisUpdate(gameID, result.bestMove(), result.score() * sign, result.mateIn() * sign,
+                result.depth(), result.nodes(), done);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            // Moves and logins come first whenever the cores are busy
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        };
+    }
+}
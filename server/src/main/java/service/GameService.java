@@ -2,7 +2,17 @@ package service;
 
 import dataaccess.GameDAO;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import javax.swing.event.UndoableEditEvent;
 
@@ -11,28 +21,59 @@ import chess.ChessMove;
 import chess.InvalidMoveException;
 import dataaccess.AlreadyTakenException;
 import dataaccess.AuthDAO;
+import dataaccess.UserDAO;
 import dataaccess.UnauthorizedException;
 import dataaccess.DataAccessException;
 import dataaccess.BadRequestException;
+import dataaccess.OpeningTree;
+import dataaccess.PositionIndex;
 import model.CreateGameResult;
+import model.CreateGamesRequest;
+import model.CreateGamesResult;
+import model.GameSetup;
 import model.JoinGameRequest;
 import model.CreateGameRequest;
 import model.ListGamesResult;
 import model.ConnectionResult;
 import model.GameData;
+import model.ExplorerMove;
+import model.ExplorerResult;
+import model.PositionSearchResult;
+import chess.Zobrist;
+import serialization.Fen;
+import serialization.PgnWriter;
+import serialization.San;
+import tracing.Span;
+import tracing.Tracer;
 
 public class GameService {
 
+    // Enough for a large tournament round in one request, while keeping the batch a sane size
+    public static final int MAX_BULK_GAMES = 1000;
+    public static final int MAX_POSITION_HITS = 500;
+
+    private static final ChessGame START = ChessGame.newGame();
+    private static final String START_FEN = Fen.format(START);
+
     private final GameDAO gameDAO;
     private final AuthDAO authDAO;
+    private final UserDAO userDAO;
+    private final PositionIndex positionIndex;
+    private final OpeningTree openingTree;
 
-    public GameService(GameDAO gameDAO, AuthDAO authDAO) {
+    public GameService(GameDAO gameDAO, AuthDAO authDAO, UserDAO userDAO, PositionIndex positionIndex,
+                       OpeningTree openingTree) {
         this.gameDAO = gameDAO;
         this.authDAO = authDAO;
+        this.userDAO = userDAO;
+        this.positionIndex = positionIndex;
+        this.openingTree = openingTree;
     }
 
     public void clearGames() throws DataAccessException {
         gameDAO.clearGames();
+        positionIndex.clear();
+        openingTree.clear();
     }
 
     public CreateGameResult createGame(String authToken, CreateGameRequest req)
@@ -48,13 +89,137 @@ public class GameService {
 
         if (authExists == false) {
             throw new UnauthorizedException("Error: unauthorized");
+        } else if (req.fen() != null) {
+            // Games can start from any legal position, given as a FEN
+            ChessGame game;
+            try {
+                game = Fen.parse(req.fen());
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Error: bad FEN, " + e.getMessage());
+            }
+            Integer gameID = gameDAO.createGame(req.gameName(), game);
+            positionIndex.startGame(gameID, game);
+            return new CreateGameResult(gameID);
         } else {
             Integer gameID = gameDAO.createGame(req.gameName());
+            positionIndex.startGame(gameID, START);
             return new CreateGameResult(gameID);
         }
 
     }
 
+    /**
+     * Creates a whole round of games with the players already seated: one auth check, one lookup for all the
+     * players and one batched insert
+     */
+    public CreateGamesResult createGames(String authToken, CreateGamesRequest req)
+        throws BadRequestException, UnauthorizedException, DataAccessException {
+
+        if (authToken == null || req == null || req.games() == null || req.games().isEmpty()
+            || req.games().size() > MAX_BULK_GAMES) {
+            throw new BadRequestException("Error: bad request");
+        }
+
+        if (!authDAO.checkAuth(authToken)) {
+            throw new UnauthorizedException("Error: unauthorized");
+        }
+
+        Set<String> players = new LinkedHashSet<>();
+        for (GameSetup game : req.games()) {
+            if (game == null || game.gameName() == null) {
+                throw new BadRequestException("Error: bad request");
+            }
+            if (game.whiteUsername() != null && game.whiteUsername().equals(game.blackUsername())) {
+                throw new BadRequestException("Error: a player cannot take both seats");
+            }
+            if (game.whiteUsername() != null) {
+                players.add(game.whiteUsername());
+            }
+            if (game.blackUsername() != null) {
+                players.add(game.blackUsername());
+            }
+        }
+
+        Set<String> missing = userDAO.findMissing(players);
+        if (!missing.isEmpty()) {
+            throw new BadRequestException(String.format("Error: unknown players %s", String.join(", ", missing)));
+        }
+
+        List<Integer> gameIDs = gameDAO.createGames(req.games());
+        for (Integer gameID : gameIDs) {
+            positionIndex.startGame(gameID, START);
+        }
+        return new CreateGamesResult(gameIDs);
+    }
+
+    /**
+     * Finds the games that reached the position in the FEN, from the position index rather than the stored games
+     */
+    public PositionSearchResult findPosition(String authToken, String fen, int limit)
+        throws BadRequestException, UnauthorizedException, DataAccessException {
+        if (authToken == null || !authDAO.checkAuth(authToken)) {
+            throw new UnauthorizedException("Error: unauthorized");
+        }
+        if (fen == null) {
+            throw new BadRequestException("Error: bad request");
+        }
+        long hash;
+        try {
+            hash = Zobrist.hash(Fen.parse(fen));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Error: bad FEN, " + e.getMessage());
+        }
+        int capped = Math.max(1, Math.min(limit, MAX_POSITION_HITS));
+        return new PositionSearchResult(positionIndex.count(hash), positionIndex.find(hash, capped));
+    }
+
+    /**
+     * The moves played from the position in the FEN and how those games ended, from the opening tree
+     */
+    public ExplorerResult explore(String authToken, String fen)
+        throws BadRequestException, UnauthorizedException, DataAccessException {
+        if (authToken == null || !authDAO.checkAuth(authToken)) {
+            throw new UnauthorizedException("Error: unauthorized");
+        }
+        if (fen == null) {
+            throw new BadRequestException("Error: bad request");
+        }
+        ChessGame game;
+        try {
+            game = Fen.parse(fen);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Error: bad FEN, " + e.getMessage());
+        }
+
+        long whiteWins = 0;
+        long draws = 0;
+        long blackWins = 0;
+        List<ExplorerMove> moves = new ArrayList<>();
+        for (OpeningTree.MoveStats stats : openingTree.lookup(Zobrist.hash(game))) {
+            String san;
+            try {
+                san = San.format(game, stats.move());
+            } catch (IllegalArgumentException e) {
+                // Another position with the same key, vanishingly rare but not impossible
+                continue;
+            }
+            moves.add(new ExplorerMove(san, stats.games(), stats.whiteWins(), stats.draws(), stats.blackWins()));
+            whiteWins += stats.whiteWins();
+            draws += stats.draws();
+            blackWins += stats.blackWins();
+        }
+        return new ExplorerResult(whiteWins + draws + blackWins, whiteWins, draws, blackWins, moves);
+    }
+
+    /**
+     * Records how a game ended on the board, for the opening tree and the position index. result is 1-0, 0-1 or
+     * 1/2-1/2.
+     */
+    public void recordResult(Integer gameID, String result) {
+        openingTree.finishGame(gameID, result);
+        positionIndex.finishGame(gameID);
+    }
+
     public ListGamesResult listGames(String authToken) 
         throws UnauthorizedException, DataAccessException {
         
@@ -72,6 +237,62 @@ public class GameService {
 
     }
 
+    /**
+     * Writes every stored game as PGN, one game at a time as the store hands them over. output is only asked for
+     * the writer once the token has been checked, so until then a caller can still answer with an error status,
+     * and anything thrown after that means the export stopped part way.
+     * <p>
+     * Games keep their position but not the moves that led to it, so each game is written as its current
+     * position (SetUp and FEN tags) with no moves, and the result the game ended with: mate or stalemate on the
+     * board, or the resignation, draw or imported result kept with the game.
+     */
+    public long exportGames(String authToken, Supplier<Writer> output)
+        throws UnauthorizedException, DataAccessException, IOException {
+        if (authToken == null || !authDAO.checkAuth(authToken)) {
+            throw new UnauthorizedException("Error: unauthorized");
+        }
+
+        Writer out = output.get();
+        PgnWriter pgn = new PgnWriter(out);
+        long[] count = new long[1];
+        try {
+            gameDAO.forEachGame(game -> {
+                try {
+                    writePgn(pgn, game);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+        return count[0];
+    }
+
+    private static void writePgn(PgnWriter pgn, GameData gameData) throws IOException {
+        ChessGame game = gameData.game();
+        ChessGame.TeamColor turn = game.getTeamTurn();
+        String result = game.getResult();
+
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("Event", gameData.gameName());
+        tags.put("Site", "?");
+        tags.put("Date", "????.??.??");
+        tags.put("Round", "-");
+        tags.put("White", gameData.whiteUsername() == null ? "?" : gameData.whiteUsername());
+        tags.put("Black", gameData.blackUsername() == null ? "?" : gameData.blackUsername());
+        tags.put("Result", result);
+        tags.put("GameId", Integer.toString(gameData.gameID()));
+        String fen = Fen.format(game);
+        if (!fen.equals(START_FEN)) {
+            tags.put("SetUp", "1");
+            tags.put("FEN", fen);
+        }
+        pgn.write(tags, List.of(), turn == ChessGame.TeamColor.BLACK, result);
+    }
+
     public void joinGame(String authToken, JoinGameRequest req) 
         throws BadRequestException, UnauthorizedException, AlreadyTakenException, DataAccessException {
         
@@ -184,25 +405,37 @@ public class GameService {
     }
 
     public GameData getGameData(String authToken, Integer gameID) throws UnauthorizedException, DataAccessException, BadRequestException {
-        validateAuthAndID(authToken, gameID);
+        try (Span span = Tracer.span("service.getGameData")) {
+            validateAuthAndID(authToken, gameID);
 
-        GameData gameData = gameDAO.getGame(gameID);
+            GameData gameData = gameDAO.getGame(gameID);
 
-        return gameData;
+            return gameData;
+        }
     }
 
     // Add a service method to make the move
     public ChessGame makeMove(String authToken, Integer gameID, ChessMove move) throws UnauthorizedException, 
         BadRequestException, InvalidMoveException, UnauthorizedException, DataAccessException {
-        validateAuthAndID(authToken, gameID);
-        
-        GameData gameData = gameDAO.getGame(gameID);
-        ChessGame game = gameData.game();
-
-        game.makeMove(move);
-        gameDAO.updateGame(gameID, game);
-
-        return game;
+        try (Span span = Tracer.span("service.makeMove")) {
+            validateAuthAndID(authToken, gameID);
+
+            GameData gameData = gameDAO.getGame(gameID);
+            ChessGame game = gameData.game();
+
+            long before = game.getPositionHash();
+            try (Span rules = Tracer.span("rules.makeMove")) {
+                game.makeMove(move);
+            }
+            gameDAO.updateGame(gameID, game);
+            positionIndex.recordMove(gameID, game);
+            openingTree.recordMove(gameID, before, move);
+            if (game.isGameOver() && (game.isDrawByRepetition() || game.isDrawByFiftyMoveRule())) {
+                recordResult(gameID, "1/2-1/2");
+            }
+
+            return game;
+        }
     }
 
     public String resignGame(String authToken, Integer gameID) throws UnauthorizedException,
@@ -222,8 +455,10 @@ public class GameService {
             throw new UnauthorizedException("Error: Game is already over");
         }
 
-        game.resign();
+        // The result is kept with the game, so an export can say who resigned
+        game.resign(username.equals(gameData.whiteUsername()) ? ChessGame.TeamColor.WHITE : ChessGame.TeamColor.BLACK);
         gameDAO.updateGame(gameID, game);
+        recordResult(gameID, game.getResult());
 
         return username;
     }
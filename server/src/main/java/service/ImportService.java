@@ -0,0 +1,307 @@
+package service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.InvalidMoveException;
+import dataaccess.AuthDAO;
+import dataaccess.BadRequestException;
+import dataaccess.DataAccessException;
+import dataaccess.GameDAO;
+import dataaccess.OpeningTree;
+import dataaccess.PositionIndex;
+import dataaccess.ServiceUnavailableException;
+import dataaccess.UnauthorizedException;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import model.GameData;
+import model.ImportError;
+import model.ImportResult;
+import serialization.Fen;
+import serialization.PgnReader;
+import serialization.San;
+
+/**
+ * Loads games from a PGN file into the game store.
+ * <p>
+ * The file is read as a stream by one thread, which only splits it into games and hands them out in chunks, so a
+ * file far bigger than the heap imports with a few chunks in memory at a time. Replaying the moves is the
+ * expensive part and runs on a pool with a thread per core; each chunk's good games are then written with one
+ * importGames call, so the store sees a batch per chunk rather than a round trip per game. Games that don't
+ * replay are skipped and reported with the line they start on.
+ * <p>
+ * Players in a PGN are names, not users here, so the seats are left open and the names go into the game name.
+ * Every position of every imported game goes into the position index, ply by ply, as the game is replayed,
+ * and decided games go into the opening tree.
+ * <p>
+ * The same pipeline rebuilds the opening tree from a PGN: the games are replayed as far as the tree goes and
+ * added to a new tree, which replaces the old one once the whole file is in.
+ */
+public class ImportService {
+    public static final int CHUNK_SIZE = 256;
+    public static final int MAX_ERRORS = 100;
+
+    // Longest name the game table takes
+    private static final int MAX_NAME = 225;
+
+    private final GameDAO gameDAO;
+    private final AuthDAO authDAO;
+    private final PositionIndex positionIndex;
+    private final OpeningTree openingTree;
+    private final ExecutorService pool;
+    private final int threads;
+
+    private final LatencyHistogram importTimer = Metrics.timer("chess_import");
+    private final LatencyHistogram chunkTimer = Metrics.timer("chess_import_chunk");
+    private final LongAdder importedGames = Metrics.counter("chess_import_games_total", "result", "imported");
+    private final LongAdder failedGames = Metrics.counter("chess_import_games_total", "result", "failed");
+
+    public ImportService(GameDAO gameDAO, AuthDAO authDAO, PositionIndex positionIndex, OpeningTree openingTree) {
+        this(gameDAO, authDAO, positionIndex, openingTree, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ImportService(GameDAO gameDAO, AuthDAO authDAO, PositionIndex positionIndex, OpeningTree openingTree,
+                         int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Import needs at least one thread");
+        }
+        this.gameDAO = gameDAO;
+        this.authDAO = authDAO;
+        this.positionIndex = positionIndex;
+        this.openingTree = openingTree;
+        this.threads = threads;
+        this.pool = Executors.newFixedThreadPool(threads, daemonThreads());
+    }
+
+    public ImportResult importPgn(String authToken, Reader pgn)
+        throws UnauthorizedException, BadRequestException, DataAccessException {
+        checkAuth(authToken);
+        return process(pgn, this::importChunk);
+    }
+
+    /**
+     * Replaces the opening tree with one built from the games in the PGN. The games aren't stored.
+     */
+    public ImportResult rebuildOpenings(String authToken, Reader pgn)
+        throws UnauthorizedException, BadRequestException, DataAccessException {
+        checkAuth(authToken);
+        OpeningTree.Rebuild rebuild = openingTree.startRebuild();
+        if (rebuild == null) {
+            throw new ServiceUnavailableException("Error: the opening tree is already being rebuilt");
+        }
+        boolean done = false;
+        try {
+            ImportResult result = process(pgn, (chunk, progress) -> {
+                for (PgnReader.Game game : chunk) {
+                    try {
+                        int plies = Math.min(game.moves().size(), OpeningTree.MAX_PLY);
+                        long[] hashes = new long[plies + 1];
+                        ChessMove[] moves = new ChessMove[plies];
+                        replay(game, plies, hashes, moves);
+                        rebuild.addGame(hashes, moves, game.result());
+                        progress.imported.incrementAndGet();
+                    } catch (InvalidMoveException | RuntimeException e) {
+                        progress.fail(game.line(), failure(e));
+                    }
+                }
+            });
+            done = true;
+            return result;
+        } finally {
+            rebuild.finish(done);
+        }
+    }
+
+    private void checkAuth(String authToken) throws UnauthorizedException, DataAccessException {
+        if (authToken == null || !authDAO.checkAuth(authToken)) {
+            throw new UnauthorizedException("Error: unauthorized");
+        }
+    }
+
+    private interface ChunkAction {
+        void run(List<PgnReader.Game> chunk, Progress progress);
+    }
+
+    // Reads the PGN on this thread and runs action over chunks of it on the pool, returning once all are done
+    private ImportResult process(Reader pgn, ChunkAction action) throws BadRequestException {
+        Progress progress = new Progress();
+        // Two chunks per thread in flight keeps every thread busy while the reader fills the next one
+        int inFlight = threads * 2;
+        Semaphore permits = new Semaphore(inFlight);
+        long start = System.nanoTime();
+        try (PgnReader reader = new PgnReader(pgn)) {
+            List<PgnReader.Game> chunk = new ArrayList<>(CHUNK_SIZE);
+            PgnReader.Game game;
+            while ((game = reader.next()) != null) {
+                chunk.add(game);
+                if (chunk.size() == CHUNK_SIZE) {
+                    submit(chunk, permits, progress, action);
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(chunk, permits, progress, action);
+            }
+        } catch (IOException e) {
+            throw new BadRequestException("Error: unable to read the PGN: " + e.getMessage());
+        } finally {
+            // Every permit back means every chunk is done
+            permits.acquireUninterruptibly(inFlight);
+            importTimer.recordSince(start);
+        }
+
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        long imported = progress.imported.get();
+        synchronized (progress.errors) {
+            return new ImportResult(imported, progress.failed.get(), imported / seconds, List.copyOf(progress.errors));
+        }
+    }
+
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private void submit(List<PgnReader.Game> chunk, Semaphore permits, Progress progress, ChunkAction action) {
+        permits.acquireUninterruptibly();
+        try {
+            pool.execute(() -> {
+                try {
+                    action.run(chunk, progress);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void importChunk(List<PgnReader.Game> chunk, Progress progress) {
+        long start = System.nanoTime();
+        List<GameData> games = new ArrayList<>(chunk.size());
+        List<long[]> hashes = new ArrayList<>(chunk.size());
+        List<ChessMove[]> moves = new ArrayList<>(chunk.size());
+        List<PgnReader.Game> sources = new ArrayList<>(chunk.size());
+        for (PgnReader.Game game : chunk) {
+            try {
+                int plies = game.moves().size();
+                long[] gameHashes = new long[plies + 1];
+                ChessMove[] gameMoves = new ChessMove[plies];
+                ChessGame played = replay(game, plies, gameHashes, gameMoves);
+                // A game with a result is over, however it ended, and keeps the result for export
+                if (!game.result().equals("*")) {
+                    played.setResult(game.result());
+                }
+                games.add(new GameData(0, null, null, gameName(game.tags()), played));
+                hashes.add(gameHashes);
+                moves.add(gameMoves);
+                sources.add(game);
+            } catch (InvalidMoveException | RuntimeException e) {
+                // Anything a strange game throws while replaying fails that game, not the chunk
+                progress.fail(game.line(), failure(e));
+            }
+        }
+
+        if (!games.isEmpty()) {
+            List<Integer> gameIDs;
+            try {
+                gameIDs = gameDAO.importGames(games);
+            } catch (DataAccessException | RuntimeException e) {
+                for (PgnReader.Game game : sources) {
+                    progress.fail(game.line(), failure(e));
+                }
+                failedGames.add(sources.size());
+                gameIDs = List.of();
+            }
+            progress.imported.addAndGet(gameIDs.size());
+            importedGames.add(gameIDs.size());
+
+            // The games are stored by now, so a game the index or tree can't take is logged but still imported
+            for (int i = 0; i < gameIDs.size(); i++) {
+                try {
+                    positionIndex.addGame(gameIDs.get(i), hashes.get(i));
+                    openingTree.addGame(hashes.get(i), moves.get(i), sources.get(i).result());
+                } catch (RuntimeException e) {
+                    System.err.println(String.format("Indexing imported game %d FAILED %s", gameIDs.get(i), failure(e)));
+                }
+            }
+        }
+        failedGames.add(chunk.size() - games.size());
+        chunkTimer.recordSince(start);
+    }
+
+    // Exceptions like a NullPointerException may have no message of their own
+    private static String failure(Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    // Plays the first plies moves, filling hashes[ply] with the key of each position on the way and moves[ply]
+    // with the move played from it
+    private static ChessGame replay(PgnReader.Game pgn, int plies, long[] hashes, ChessMove[] moves)
+        throws InvalidMoveException {
+        String fen = pgn.tags().get("FEN");
+        // Players may have played on past a repetition or fifty moves without claiming the draw
+        ChessGame game = fen != null ? Fen.parse(fen, false) : ChessGame.newGame();
+        game.setAutomaticDraws(false);
+        hashes[0] = game.getPositionHash();
+        for (int ply = 0; ply < plies; ply++) {
+            try {
+                moves[ply] = San.parse(game, pgn.moves().get(ply));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Move " + (ply / 2 + 1) + ": " + e.getMessage(), e);
+            }
+            game.makeMove(moves[ply]);
+            hashes[ply + 1] = game.getPositionHash();
+        }
+        return game;
+    }
+
+    private static String gameName(Map<String, String> tags) {
+        String white = tags.getOrDefault("White", "?");
+        String black = tags.getOrDefault("Black", "?");
+        String name = white + " vs " + black;
+        String event = tags.get("Event");
+        if (event != null && !event.isEmpty() && !event.equals("?")) {
+            name = name + ", " + event;
+        }
+        return name.length() > MAX_NAME ? name.substring(0, MAX_NAME) : name;
+    }
+
+    // Shared by the chunks of one import
+    private static class Progress {
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final List<ImportError> errors = new ArrayList<>();
+
+        void fail(long line, String message) {
+            failed.incrementAndGet();
+            synchronized (errors) {
+                if (errors.size() < MAX_ERRORS) {
+                    errors.add(new ImportError(line, message));
+                }
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, "pgn-import-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -5,12 +5,9 @@ import dataaccess.AuthDAO;
 import dataaccess.AlreadyTakenException;
 import dataaccess.BadRequestException;
 import dataaccess.DataAccessException;
+import dataaccess.PasswordHasher;
 import dataaccess.UnauthorizedException;
 
-import java.util.UUID;
-
-import org.mindrot.jbcrypt.BCrypt;
-
 import model.RegisterRequest;
 import model.LoginRequest;
 import model.LoginResult;
@@ -21,10 +18,16 @@ public class UserService {
 
     private final UserDAO userDAO;
     private final AuthDAO authDAO;
+    private final PasswordHasher passwordHasher;
 
     public UserService(UserDAO userDAO, AuthDAO authDAO) {
+        this(userDAO, authDAO, PasswordHasher.defaults());
+    }
+
+    public UserService(UserDAO userDAO, AuthDAO authDAO, PasswordHasher passwordHasher) {
         this.userDAO = userDAO;
         this.authDAO = authDAO;
+        this.passwordHasher = passwordHasher;
     }
 
     public void clearUsers() throws DataAccessException {
@@ -48,8 +51,8 @@ public class UserService {
         UserData newUser = new UserData(req.username(), req.password(), req.email());
         userDAO.createUser(newUser);
 
-        // Create the authToken using the given code snippet
-        String newAuthToken = UUID.randomUUID().toString();
+        // Create the authToken, a random UUID unless signed tokens are turned on
+        String newAuthToken = authDAO.newAuthToken(req.username());
         AuthData authData = new AuthData(newAuthToken, req.username());
         authDAO.createAuth(authData);
 
@@ -69,12 +72,12 @@ public class UserService {
             throw new UnauthorizedException("Error: unauthorized");
         }
 
-        // Now we make sure that the password matches the db
-        if (!BCrypt.checkpw(req.password(), userDAO.getUser(req.username()).password())) {
+        // Now we make sure that the password matches the db, the check itself runs on the hashing pool
+        if (!passwordHasher.verify(req.password(), userDAO.getUser(req.username()).password())) {
             throw new UnauthorizedException("Error: unauthorized");
         }
 
-        String newAuthToken = UUID.randomUUID().toString();
+        String newAuthToken = authDAO.newAuthToken(req.username());
         AuthData authData = new AuthData(newAuthToken, req.username());
         authDAO.createAuth(authData);
 
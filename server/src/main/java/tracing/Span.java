@@ -0,0 +1,70 @@
+package tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One timed stage of a traced request. Spans are opened with Tracer.startTrace or Tracer.span and closed with
+ * try-with-resources, and they nest on the current thread. When the request isn't sampled every call returns
+ * NOOP, which does nothing when closed.
+ */
+public class Span implements AutoCloseable {
+    static final Span NOOP = new Span("noop", null) {
+        @Override
+        public void close() {}
+
+        @Override
+        public void rename(String name) {}
+    };
+
+    private String name;
+    final Span parent;
+    final long startNanos;
+    long endNanos;
+    private List<Span> children;
+
+    Span(String name, Span parent) {
+        this.name = name;
+        this.parent = parent;
+        this.startNanos = System.nanoTime();
+        if (parent != null) {
+            parent.addChild(this);
+        }
+    }
+
+    public static Span noop() {
+        return NOOP;
+    }
+
+    // For roots whose proper name (like the matched HTTP route) is only known once the request is done
+    public void rename(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    long durationNanos() {
+        return endNanos - startNanos;
+    }
+
+    List<Span> children() {
+        return children == null ? List.of() : children;
+    }
+
+    private void addChild(Span child) {
+        if (children == null) {
+            children = new ArrayList<>(4);
+        }
+        children.add(child);
+    }
+
+    @Override
+    public void close() {
+        if (endNanos == 0) {
+            endNanos = System.nanoTime();
+            Tracer.finished(this);
+        }
+    }
+}
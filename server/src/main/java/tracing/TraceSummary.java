@@ -0,0 +1,136 @@
+package tracing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds up every finished trace by call path ("ws.MAKE_MOVE;service.makeMove;dao.game.updateGame"), so the dump
+ * shows where time goes across all sampled requests rather than in one of them.
+ *
+ * collapsed() is the folded-stack format flamegraph.pl and speedscope read directly, tree() is the same data
+ * indented for reading in a terminal. If a trace file is set, every sampled trace is also appended to it in the
+ * folded format by a background thread, so the request never waits on the disk.
+ */
+public final class TraceSummary {
+    // Sorted with ';' treated as the lowest character, so every path comes right before its own children
+    private static final Map<String, PathStats> PATHS =
+        new ConcurrentSkipListMap<>(Comparator.comparing((String path) -> path.replace(';', '\u0001')));
+
+    // Traces waiting to be written, dropped rather than block if the writer falls behind
+    private static final BlockingQueue<String> PENDING_LINES = new ArrayBlockingQueue<>(10_000);
+    private static volatile Thread writer;
+
+    private static final class PathStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAdder selfNanos = new LongAdder();
+    }
+
+    private TraceSummary() {}
+
+    static void record(Span root) {
+        List<String> lines = writer == null ? null : new ArrayList<>();
+        add(root, root.name(), lines);
+        if (lines != null) {
+            for (String line : lines) {
+                PENDING_LINES.offer(line);
+            }
+        }
+    }
+
+    private static void add(Span span, String path, List<String> lines) {
+        long childNanos = 0;
+        for (Span child : span.children()) {
+            childNanos += child.durationNanos();
+            add(child, path + ";" + child.name(), lines);
+        }
+        long selfNanos = Math.max(0, span.durationNanos() - childNanos);
+
+        PathStats stats = PATHS.computeIfAbsent(path, key -> new PathStats());
+        stats.count.increment();
+        stats.totalNanos.add(span.durationNanos());
+        stats.selfNanos.add(selfNanos);
+
+        if (lines != null) {
+            lines.add(path + " " + selfNanos / 1000);
+        }
+    }
+
+    /**
+     * Folded stacks, one "path self-microseconds" line per call path
+     */
+    public static String collapsed() {
+        StringBuilder out = new StringBuilder();
+        PATHS.forEach((path, stats) -> out.append(path).append(' ').append(stats.selfNanos.sum() / 1000).append('\n'));
+        return out.toString();
+    }
+
+    /**
+     * Indented call tree with count, total, average and self time for every stage
+     */
+    public static String tree() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-60s %8s %12s %10s %12s%n", "stage", "count", "total ms", "avg ms", "self ms"));
+        PATHS.forEach((path, stats) -> {
+            int depth = path.length() - path.replace(";", "").length();
+            String name = "  ".repeat(depth) + path.substring(path.lastIndexOf(';') + 1);
+            long count = stats.count.sum();
+            double totalMillis = stats.totalNanos.sum() / 1e6;
+            out.append(String.format("%-60s %8d %12.2f %10.3f %12.2f%n", name, count, totalMillis,
+                count == 0 ? 0.0 : totalMillis / count, stats.selfNanos.sum() / 1e6));
+        });
+        return out.toString();
+    }
+
+    public static void reset() {
+        PATHS.clear();
+    }
+
+    /**
+     * Starts appending every sampled trace to the given file
+     */
+    public static synchronized void writeTo(Path file) {
+        if (writer != null) {
+            return;
+        }
+        Thread thread = new Thread(() -> drainTo(file), "trace-writer");
+        thread.setDaemon(true);
+        thread.start();
+        writer = thread;
+    }
+
+    private static void drainTo(Path file) {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            while (true) {
+                out.write(PENDING_LINES.take());
+                out.newLine();
+                // Write out whatever else is queued, then flush once
+                String line;
+                while ((line = PENDING_LINES.poll()) != null) {
+                    out.write(line);
+                    out.newLine();
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println(String.format("Trace file writer stopped: %s", e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writer = null;
+        }
+    }
+}
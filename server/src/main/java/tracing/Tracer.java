@@ -0,0 +1,82 @@
+package tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A tiny in-process tracer. A request picks whether it is sampled when its root span starts, and every span opened
+ * on the same thread after that is recorded under it:
+ *
+ *     try (Span span = Tracer.span("dao.game.getGame")) {
+ *         ...
+ *     }
+ *
+ * When sampling is off, or this request wasn't picked, startTrace is a volatile read and span is a ThreadLocal
+ * read, and both hand back the shared no-op span.
+ */
+public final class Tracer {
+    private static volatile double sampleRate = 0.0;
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    private Tracer() {}
+
+    // 0 turns tracing off, 1 traces every request
+    public static void setSampleRate(double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("sample rate must be between 0 and 1, got " + rate);
+        }
+        sampleRate = rate;
+    }
+
+    public static double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Starts a new trace if this request is sampled. Inside a trace that is already running it is just a child span.
+     */
+    public static Span startTrace(String name) {
+        double rate = sampleRate;
+        if (rate <= 0) {
+            return Span.NOOP;
+        }
+        Span current = CURRENT.get();
+        if (current != null) {
+            return span(name);
+        }
+        if (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate) {
+            return Span.NOOP;
+        }
+        Span root = new Span(name, null);
+        CURRENT.set(root);
+        return root;
+    }
+
+    public static Span span(String name) {
+        Span parent = CURRENT.get();
+        if (parent == null) {
+            return Span.NOOP;
+        }
+        Span child = new Span(name, parent);
+        CURRENT.set(child);
+        return child;
+    }
+
+    static void finished(Span span) {
+        if (CURRENT.get() != span) {
+            // Closed out of order, leave the current span alone rather than corrupt the tree
+            return;
+        }
+        // Parents that were closed early are finished along with their last open child
+        Span parent = span.parent;
+        while (parent != null && parent.endNanos != 0) {
+            span = parent;
+            parent = parent.parent;
+        }
+        if (parent == null) {
+            CURRENT.remove();
+            TraceSummary.record(span);
+        } else {
+            CURRENT.set(parent);
+        }
+    }
+}
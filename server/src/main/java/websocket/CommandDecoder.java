@@ -0,0 +1,85 @@
+package websocket;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import chess.ChessMove;
+import dataaccess.BadRequestException;
+import serialization.Serializer;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.UserGameCommand;
+import websocket.commands.UserGameCommand.CommandType;
+
+/**
+ * Turns an incoming websocket frame into the right command in a single pass over the JSON. Every field is read
+ * as it streams by (Gson writes the move before commandType, so we can't rely on the order), and the concrete
+ * command is only built at the end, so a MAKE_MOVE is never parsed twice.
+ */
+public class CommandDecoder {
+
+    // A MAKE_MOVE with a UUID authToken is around 200 characters, anything near this is not a real command
+    public static final int MAX_MESSAGE_LENGTH = 4096;
+
+    private final TypeAdapter<ChessMove> moveAdapter = Serializer.GSON.getAdapter(ChessMove.class);
+
+    public UserGameCommand decode(String message) throws BadRequestException {
+        if (message == null || message.isEmpty()) {
+            throw new BadRequestException("Error: empty command");
+        }
+        if (message.length() > MAX_MESSAGE_LENGTH) {
+            throw new BadRequestException("Error: command is too large");
+        }
+
+        try (JsonReader in = new JsonReader(new StringReader(message))) {
+            return readCommand(in);
+        } catch (IOException | IllegalStateException | IllegalArgumentException | JsonParseException ex) {
+            // IllegalStateException is what JsonReader throws for a token of the wrong type, IllegalArgumentException
+            // is an unknown enum name
+            throw new BadRequestException("Error: malformed command", ex);
+        }
+    }
+
+    private UserGameCommand readCommand(JsonReader in) throws IOException, BadRequestException {
+        CommandType commandType = null;
+        String authToken = null;
+        Integer gameID = null;
+        ChessMove move = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "commandType" -> commandType = CommandType.valueOf(in.nextString());
+                case "authToken" -> authToken = in.nextString();
+                case "gameID" -> gameID = in.nextInt();
+                case "move" -> move = moveAdapter.read(in);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (in.peek() != JsonToken.END_DOCUMENT) {
+            throw new BadRequestException("Error: malformed command");
+        }
+        if (commandType == null) {
+            throw new BadRequestException("Error: missing commandType");
+        }
+
+        if (commandType == CommandType.MAKE_MOVE) {
+            if (move == null || move.getStartPosition() == null || move.getEndPosition() == null) {
+                throw new BadRequestException("Error: MAKE_MOVE needs a move");
+            }
+            return new MakeMoveCommand(authToken, gameID, move);
+        }
+        return new UserGameCommand(commandType, authToken, gameID);
+    }
+}
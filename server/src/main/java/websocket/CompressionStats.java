@@ -0,0 +1,59 @@
+package websocket;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals for outgoing websocket compression, shared by every connection's ThresholdDeflateExtension.
+ */
+public final class CompressionStats {
+
+    private static final LongAdder COMPRESSED_MESSAGES = new LongAdder();
+    private static final LongAdder SKIPPED_MESSAGES = new LongAdder();
+    private static final LongAdder BYTES_IN = new LongAdder();
+    private static final LongAdder BYTES_OUT = new LongAdder();
+    private static final LongAdder SKIPPED_BYTES = new LongAdder();
+    private static final LongAdder DEFLATE_NANOS = new LongAdder();
+
+    private CompressionStats() {}
+
+    /**
+     * @param compressedMessages messages that went through the deflater
+     * @param skippedMessages messages under the threshold that were sent as is
+     * @param bytesIn payload bytes handed to the deflater
+     * @param bytesOut bytes the deflater produced
+     * @param skippedBytes payload bytes of the skipped messages
+     * @param deflateNanos time spent in the deflater
+     */
+    public record Snapshot(long compressedMessages, long skippedMessages, long bytesIn, long bytesOut,
+                           long skippedBytes, long deflateNanos) {
+
+        // compressed size / original size, so lower is better
+        public double ratio() {
+            return bytesIn == 0 ? 1.0 : (double) bytesOut / bytesIn;
+        }
+
+        public double microsPerMessage() {
+            return compressedMessages == 0 ? 0.0 : deflateNanos / 1000.0 / compressedMessages;
+        }
+    }
+
+    // Called for each frame of a compressed message, the message is counted at its last frame
+    static void recordCompressed(int payloadBytes, int compressedBytes, long deflateNanos, boolean endOfMessage) {
+        if (endOfMessage) {
+            COMPRESSED_MESSAGES.increment();
+        }
+        BYTES_IN.add(payloadBytes);
+        BYTES_OUT.add(compressedBytes);
+        DEFLATE_NANOS.add(deflateNanos);
+    }
+
+    static void recordSkipped(int payloadBytes) {
+        SKIPPED_MESSAGES.increment();
+        SKIPPED_BYTES.add(payloadBytes);
+    }
+
+    public static Snapshot snapshot() {
+        return new Snapshot(COMPRESSED_MESSAGES.sum(), SKIPPED_MESSAGES.sum(), BYTES_IN.sum(), BYTES_OUT.sum(),
+            SKIPPED_BYTES.sum(), DEFLATE_NANOS.sum());
+    }
+}
@@ -5,14 +5,32 @@ import org.eclipse.jetty.websocket.api.Session;
 import chess.ChessGame;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import tracing.Span;
+import tracing.Tracer;
 import websocket.messages.LoadGameMessage;
 import websocket.messages.ServerMessage;
 
 public class ConnectionManager {
     public final ConcurrentHashMap<Session, Connection> connections = new ConcurrentHashMap<>();
 
+    // Sessions that connected with the binary sub-protocol, everyone else gets JSON
+    private final Set<Session> binarySessions = ConcurrentHashMap.newKeySet();
+
+    // Fan-out time covers encoding plus handing the frame to every recipient's socket
+    private final LatencyHistogram rootTimer = Metrics.timer("chess_ws_broadcast", "kind", "root");
+    private final LatencyHistogram gameTimer = Metrics.timer("chess_ws_broadcast", "kind", "game");
+    private final LatencyHistogram exceptRootTimer = Metrics.timer("chess_ws_broadcast", "kind", "game_except_root");
+    private final LatencyHistogram boardTimer = Metrics.timer("chess_ws_broadcast", "kind", "board");
+    private final LongAdder textSent = Metrics.counter("chess_ws_messages_sent_total", "format", "text");
+    private final LongAdder binarySent = Metrics.counter("chess_ws_messages_sent_total", "format", "binary");
+
     public void add(Connection connection) {
         connections.put(connection.session(), connection);
     }
@@ -21,48 +39,116 @@ public class ConnectionManager {
         connections.remove(session);
     }
 
+    public void useBinary(Session session) {
+        binarySessions.add(session);
+    }
+
+    public boolean isBinary(Session session) {
+        return binarySessions.contains(session);
+    }
+
+    // Called when the socket closes, so the session can be garbage collected
+    public void forget(Session session) {
+        connections.remove(session);
+        binarySessions.remove(session);
+    }
+
     // Command to broadcast to only the root client
     public void notifyRoot(Session session, ServerMessage serverMessage) throws IOException {
-        String msg = serverMessage.toString();
-        session.getRemote().sendString(msg);
+        long start = System.nanoTime();
+        try (Span span = Tracer.span("broadcast.root")) {
+            send(session, new OutgoingMessage(serverMessage));
+        } finally {
+            rootTimer.recordSince(start);
+        }
     }
 
     // Command to broadcast to a specific game
     public void notifyGame(int gameID, ServerMessage serverMessage) throws IOException {
-        String msg = serverMessage.toString();
-        for (Connection connection: connections.values()) {
-            Session session = connection.session();
-            if (connection.gameID() == gameID && session.isOpen()) {
-                session.getRemote().sendString(msg);
+        long start = System.nanoTime();
+        try (Span span = Tracer.span("broadcast.game")) {
+            OutgoingMessage msg = new OutgoingMessage(serverMessage);
+            for (Connection connection: connections.values()) {
+                Session session = connection.session();
+                if (connection.gameID() == gameID && session.isOpen()) {
+                    send(session, msg);
+                }
             }
+        } finally {
+            gameTimer.recordSince(start);
         }
     }
 
     // Command to broadcast to everyone in a specific game except the root client
     public void notifyGameExceptRoot(int gameID, Session excludeSession, ServerMessage serverMessage) throws IOException {
-        String msg = serverMessage.toString();
-        for (Connection connection : connections.values()) {
-            Session session = connection.session();
-            if (connection.gameID() == gameID && session.isOpen() && session != excludeSession) {
-                session.getRemote().sendString(msg);
+        long start = System.nanoTime();
+        try (Span span = Tracer.span("broadcast.game_except_root")) {
+            OutgoingMessage msg = new OutgoingMessage(serverMessage);
+            for (Connection connection : connections.values()) {
+                Session session = connection.session();
+                if (connection.gameID() == gameID && session.isOpen() && session != excludeSession) {
+                    send(session, msg);
+                }
             }
+        } finally {
+            exceptRootTimer.recordSince(start);
         }
-
     }
 
     // Command for notifiying everyone once the board has changed
     public void notifyGameBoardChange(int gameID, ChessGame game) throws IOException {
-        for (Connection connection : connections.values()) {
-            Session session = connection.session();
-            if (connection.gameID() == gameID && session.isOpen()) {
-                // We are going to do this so we properly show the board for each player
-                String playerColor = connection.playerColor() == null ? "WHITE" : connection.playerColor();
-                LoadGameMessage loadGameMessage = new LoadGameMessage(game, playerColor);
-                session.getRemote().sendString(loadGameMessage.toString());
+        long start = System.nanoTime();
+        try (Span span = Tracer.span("broadcast.board")) {
+            // There are only two versions of the message (white's view and black's view), so each one is encoded once
+            OutgoingMessage whiteView = new OutgoingMessage(new LoadGameMessage(game, "WHITE"));
+            OutgoingMessage blackView = new OutgoingMessage(new LoadGameMessage(game, "BLACK"));
+
+            for (Connection connection : connections.values()) {
+                Session session = connection.session();
+                if (connection.gameID() == gameID && session.isOpen()) {
+                    // We are going to do this so we properly show the board for each player, observers see white's view
+                    send(session, "BLACK".equals(connection.playerColor()) ? blackView : whiteView);
+                }
             }
+        } finally {
+            boardTimer.recordSince(start);
         }
     }
- 
 
-    
+    private void send(Session session, OutgoingMessage msg) throws IOException {
+        if (binarySessions.contains(session)) {
+            session.getRemote().sendBytes(ByteBuffer.wrap(msg.binary()));
+            binarySent.increment();
+        } else {
+            session.getRemote().sendString(msg.text());
+            textSent.increment();
+        }
+    }
+
+    /**
+     * A message being sent to several sessions, encoded at most once per wire format
+     */
+    private static class OutgoingMessage {
+        private final ServerMessage message;
+        private String text;
+        private byte[] binary;
+
+        OutgoingMessage(ServerMessage message) {
+            this.message = message;
+        }
+
+        String text() {
+            if (text == null) {
+                text = message.toString();
+            }
+            return text;
+        }
+
+        byte[] binary() {
+            if (binary == null) {
+                binary = BinaryProtocol.encodeMessage(message);
+            }
+            return binary;
+        }
+    }
 }
@@ -0,0 +1,264 @@
+package websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.core.AbstractExtension;
+import org.eclipse.jetty.websocket.core.ExtensionConfig;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
+import org.eclipse.jetty.websocket.core.WebSocketComponents;
+import org.eclipse.jetty.websocket.core.exception.BadPayloadException;
+import org.eclipse.jetty.websocket.core.exception.MessageTooLargeException;
+
+/**
+ * permessage-deflate (RFC 7692), except that small messages are sent uncompressed. The RFC lets the sender choose
+ * per message (the RSV1 bit says whether a message is compressed), and deflating a 60 byte notification costs more
+ * CPU than it saves. LOAD_GAME boards are well over the threshold and compress very well.
+ * <p>
+ * Built on Jetty's public AbstractExtension with java.util.zip rather than on Jetty's own deflate extension, which
+ * is internal. Each frame in gives exactly one frame out in both directions, which is what Jetty expects of an
+ * extension that doesn't take part in its internal flow control. Frames are compressed as they are sent, so the
+ * deflate time recorded is the Deflater's alone, not queueing or the write.
+ * <p>
+ * java.util.zip always deflates with the largest window (15 bits), and its Inflater reads any smaller one. So an
+ * offer that limits the server's window below 15 bits can't be honored and has to be declined (RFC 7692 7.1.2.1):
+ * the server drops such offers with supportedOffers before Jetty negotiates, and one that gets here anyway is
+ * accepted without ever compressing an outgoing message. client_max_window_bits is left out of the reply.
+ * <p>
+ * Jetty creates one of these per connection by reflection, so the threshold is set once, statically, when the
+ * server starts.
+ */
+public class ThresholdDeflateExtension extends AbstractExtension {
+
+    public static final String NAME = "permessage-deflate";
+
+    // Every message ends with an empty stored block, which the sender leaves off and the receiver puts back
+    private static final byte[] TAIL = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+
+    private static volatile int threshold = 512;
+
+    private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+    private static final int MAX_WINDOW_BITS = 15;
+
+    private ExtensionConfig negotiated;
+    private boolean serverNoContextTakeover;
+    // Set if an offer with a smaller server window got through, every outgoing message is then sent as is
+    private boolean neverDeflate;
+
+    // Guarded by this: the outgoing message in progress and whether it is being compressed
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private boolean deflating;
+
+    // Only used by the reading thread
+    private final Inflater inflater = new Inflater(true);
+    private boolean inflating;
+    private byte inflatingOpCode;
+    private long inflatedBytes;
+
+    public static void setThreshold(int bytes) {
+        threshold = bytes;
+    }
+
+    public static int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return the offers, in order, without the permessage-deflate ones this extension can't honor: those limiting
+     * the server's window below 15 bits, or with a window size that isn't a number from 8 to 15
+     */
+    public static List<ExtensionConfig> supportedOffers(List<ExtensionConfig> offers) {
+        List<ExtensionConfig> supported = new ArrayList<>(offers.size());
+        for (ExtensionConfig offer : offers) {
+            if (!offer.getName().equals(NAME) || serverWindowBits(offer) == MAX_WINDOW_BITS) {
+                supported.add(offer);
+            }
+        }
+        return supported;
+    }
+
+    // 15 when the offer doesn't limit it, -1 when the value isn't valid
+    private static int serverWindowBits(ExtensionConfig offer) {
+        if (!offer.getParameterKeys().contains(SERVER_MAX_WINDOW_BITS)) {
+            return MAX_WINDOW_BITS;
+        }
+        try {
+            int bits = Integer.parseInt(offer.getParameter(SERVER_MAX_WINDOW_BITS, ""));
+            return bits >= 8 && bits <= MAX_WINDOW_BITS ? bits : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void init(ExtensionConfig offered, WebSocketComponents components) {
+        super.init(offered, components);
+        negotiated = new ExtensionConfig(NAME);
+        for (String parameter : offered.getParameterKeys()) {
+            switch (parameter) {
+                case "server_no_context_takeover" -> {
+                    serverNoContextTakeover = true;
+                    negotiated.setParameter(parameter);
+                }
+                // Keeping the inflater's window reads the client's messages whether or not it resets its own
+                case "client_no_context_takeover" -> negotiated.setParameter(parameter);
+                // The reply has to carry it once offered. Sending nothing compressed keeps within any window.
+                case SERVER_MAX_WINDOW_BITS -> {
+                    int bits = serverWindowBits(offered);
+                    neverDeflate = bits != MAX_WINDOW_BITS;
+                    negotiated.setParameter(parameter, neverDeflate ? 8 : MAX_WINDOW_BITS);
+                }
+                default -> { }
+            }
+        }
+    }
+
+    @Override
+    public ExtensionConfig getConfig() {
+        return negotiated;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isRsv1User() {
+        return true;
+    }
+
+    @Override
+    public void sendFrame(Frame frame, Callback callback, boolean batch) {
+        synchronized (this) {
+            if (!frame.isDataFrame()) {
+                nextOutgoingFrame(frame, callback, batch);
+                return;
+            }
+
+            boolean messageStart = frame.getOpCode() != OpCode.CONTINUATION;
+            if (messageStart) {
+                // Only whole, single frame messages can skip; a fragmented message has to be compressed all or nothing
+                deflating = !neverDeflate && (!frame.isFin() || frame.getPayloadLength() >= threshold);
+            }
+            if (!deflating) {
+                CompressionStats.recordSkipped(frame.getPayloadLength());
+                nextOutgoingFrame(frame, callback, batch);
+                return;
+            }
+
+            long start = System.nanoTime();
+            byte[] compressed = deflate(frame);
+            CompressionStats.recordCompressed(frame.getPayloadLength(), compressed.length, System.nanoTime() - start,
+                frame.isFin());
+
+            Frame out = new Frame(frame.getOpCode(), frame.isFin(), ByteBuffer.wrap(compressed));
+            out.setRsv1(messageStart);
+            nextOutgoingFrame(out, callback, batch);
+        }
+    }
+
+    // Caller holds the lock
+    private byte[] deflate(Frame frame) {
+        deflater.setInput(frame.hasPayload() ? frame.getPayload().slice() : ByteBuffer.allocate(0));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, frame.getPayloadLength() / 2));
+        byte[] buffer = new byte[Math.max(256, frame.getPayloadLength())];
+        int length;
+        do {
+            length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            out.write(buffer, 0, length);
+        } while (length == buffer.length);
+
+        byte[] compressed = out.toByteArray();
+        if (!frame.isFin()) {
+            return compressed;
+        }
+        if (serverNoContextTakeover) {
+            deflater.reset();
+        }
+        int end = compressed.length - TAIL.length;
+        // A message that is nothing but the tail is sent as a single empty block instead
+        return end <= 0 ? new byte[] {0x00} : Arrays.copyOf(compressed, end);
+    }
+
+    @Override
+    public void onFrame(Frame frame, Callback callback) {
+        if (!frame.isDataFrame()) {
+            nextIncomingFrame(frame, callback);
+            return;
+        }
+
+        if (frame.getOpCode() != OpCode.CONTINUATION) {
+            inflating = frame.isRsv1();
+            inflatingOpCode = frame.getOpCode();
+            inflatedBytes = 0;
+        }
+        if (!inflating) {
+            nextIncomingFrame(frame, callback);
+            return;
+        }
+
+        byte[] inflated;
+        try {
+            inflated = inflate(frame);
+        } catch (DataFormatException e) {
+            callback.failed(new BadPayloadException(e));
+            return;
+        } catch (MessageTooLargeException e) {
+            callback.failed(e);
+            return;
+        }
+        nextIncomingFrame(new Frame(frame.getOpCode(), frame.isFin(), ByteBuffer.wrap(inflated)), callback);
+    }
+
+    private byte[] inflate(Frame frame) throws DataFormatException {
+        ByteBuffer payload = frame.hasPayload() ? frame.getPayload().slice() : ByteBuffer.allocate(0);
+        if (frame.isFin()) {
+            ByteBuffer whole = ByteBuffer.allocate(payload.remaining() + TAIL.length);
+            whole.put(payload).put(TAIL).flip();
+            payload = whole;
+        }
+        inflater.setInput(payload);
+
+        long limit = inflatingOpCode == OpCode.TEXT
+            ? getCoreSession().getMaxTextMessageSize() : getCoreSession().getMaxBinaryMessageSize();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(256, frame.getPayloadLength() * 4));
+        byte[] buffer = new byte[Math.max(1024, frame.getPayloadLength() * 4)];
+        while (true) {
+            int length = inflater.inflate(buffer);
+            if (length == 0 && inflater.needsDictionary()) {
+                throw new DataFormatException("A preset dictionary isn't part of permessage-deflate");
+            }
+            if (length == 0 && (inflater.needsInput() || inflater.finished())) {
+                break;
+            }
+            inflatedBytes += length;
+            // Checked as it grows, so a small compressed message can't expand into something huge first
+            if (limit > 0 && inflatedBytes > limit) {
+                throw new MessageTooLargeException(String.format("Inflated message over %d bytes", limit));
+            }
+            out.write(buffer, 0, length);
+        }
+        if (inflater.finished()) {
+            // The client ended its deflate stream with this message, the next one starts a new stream
+            inflater.reset();
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            deflater.end();
+        }
+        inflater.end();
+    }
+}
@@ -1,6 +1,5 @@
 package websocket;
 
-import com.google.gson.Gson;
 
 import chess.ChessPosition;
 import chess.InvalidMoveException;
@@ -9,6 +8,8 @@ import dataaccess.DataAccessException;
 import dataaccess.UnauthorizedException;
 import chess.ChessGame;
 import chess.ChessMove;
+import io.javalin.websocket.WsBinaryMessageContext;
+import io.javalin.websocket.WsBinaryMessageHandler;
 import io.javalin.websocket.WsCloseContext;
 import io.javalin.websocket.WsCloseHandler;
 import io.javalin.websocket.WsConnectContext;
@@ -17,53 +18,128 @@ import io.javalin.websocket.WsMessageContext;
 import io.javalin.websocket.WsMessageHandler;
 import websocket.commands.MakeMoveCommand;
 import websocket.commands.UserGameCommand;
+import websocket.messages.AnalysisMessage;
 import websocket.messages.ErrorMessage;
 import websocket.messages.LoadGameMessage;
 import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+import model.AnalysisUpdate;
 import model.ConnectionResult;
 import model.GameData;
+import service.AnalysisService;
 import service.AuthService;
 import service.GameService;
+import serialization.San;
 
 import org.eclipse.jetty.websocket.api.Session;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import tracing.Span;
+import tracing.Tracer;
 
 // Import the commands for client to server communication
 
-public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsCloseHandler {
+public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsBinaryMessageHandler, WsCloseHandler {
 
     private final ConnectionManager connections = new ConnectionManager();
+    private final CommandDecoder commandDecoder = new CommandDecoder();
     private final GameService gameService;
     private final AuthService authService;
-
-    public WebSocketHandler(GameService gameService, AuthService authService) {
+    private final AnalysisService analysisService;
+
+    // One timer per command type, looked up once so dispatch doesn't touch the registry
+    private final Map<UserGameCommand.CommandType, LatencyHistogram> commandTimers =
+        new EnumMap<>(UserGameCommand.CommandType.class);
+    private final LongAdder textDecodeErrors = Metrics.counter("chess_ws_decode_errors_total", "format", "text");
+    private final LongAdder binaryDecodeErrors = Metrics.counter("chess_ws_decode_errors_total", "format", "binary");
+    private final LongAdder handlerErrors = Metrics.counter("chess_ws_handler_errors_total");
+    private final LongAdder connects = Metrics.counter("chess_ws_connects_total");
+    private final LongAdder closes = Metrics.counter("chess_ws_closes_total");
+
+    public WebSocketHandler(GameService gameService, AuthService authService, AnalysisService analysisService) {
         this.gameService = gameService;
         this.authService = authService;
+        this.analysisService = analysisService;
+
+        for (UserGameCommand.CommandType type : UserGameCommand.CommandType.values()) {
+            commandTimers.put(type, Metrics.timer("chess_ws_command", "command", type.name()));
+        }
+        Metrics.gauge("chess_ws_sessions_in_game", () -> connections.connections.size());
     }
 
     @Override
     public void handleConnect(WsConnectContext ctx) {
-        System.out.println("Websocket Connected");
+        connects.increment();
         ctx.enableAutomaticPings();
+
+        // Bots and mobile clients can ask for the compact binary frames instead of JSON
+        if (BinaryProtocol.PROTOCOL.equals(ctx.queryParam(BinaryProtocol.QUERY_PARAM))) {
+            connections.useBinary(ctx.session);
+        }
     }
 
     @Override
     public void handleMessage(WsMessageContext ctx) {
         try {
-            UserGameCommand command = new Gson().fromJson(ctx.message(), UserGameCommand.class);
-            switch (command.getCommandType()) {
-                case CONNECT -> connect(command, ctx.session);
-                case MAKE_MOVE -> makeMove(new Gson().fromJson(ctx.message(), MakeMoveCommand.class), ctx.session);
-                case LEAVE -> leave(command, ctx.session);
-                case RESIGN -> resign(command, ctx.session);
+            UserGameCommand command;
+            try {
+                command = commandDecoder.decode(ctx.message());
+            } catch (BadRequestException ex) {
+                textDecodeErrors.increment();
+                // Tell the client what was wrong with the frame instead of silently dropping it
+                connections.notifyRoot(ctx.session, new ErrorMessage(ex.getMessage()));
+                return;
+            }
+
+            dispatch(command, ctx.session);
+        } catch (Exception ex) {
+            handlerErrors.increment();
+            ex.printStackTrace();
+        }
+    }
+
+    @Override
+    public void handleBinaryMessage(WsBinaryMessageContext ctx) {
+        try {
+            UserGameCommand command;
+            try {
+                command = BinaryProtocol.decodeCommand(ByteBuffer.wrap(ctx.data(), ctx.offset(), ctx.length()));
+            } catch (IllegalArgumentException ex) {
+                binaryDecodeErrors.increment();
+                connections.notifyRoot(ctx.session, new ErrorMessage("Error: malformed command"));
+                return;
             }
+
+            dispatch(command, ctx.session);
         } catch (Exception ex) {
+            handlerErrors.increment();
             ex.printStackTrace();
         }
     }
 
+    private void dispatch(UserGameCommand command, Session session) throws Exception {
+        long start = System.nanoTime();
+        try (Span trace = Tracer.startTrace("ws." + command.getCommandType())) {
+            switch (command.getCommandType()) {
+                case CONNECT -> connect(command, session);
+                case MAKE_MOVE -> makeMove((MakeMoveCommand) command, session);
+                case LEAVE -> leave(command, session);
+                case RESIGN -> resign(command, session);
+                case ANALYZE -> analyze(command, session);
+            }
+        } finally {
+            commandTimers.get(command.getCommandType()).recordSince(start);
+        }
+    }
+
     private void connect(UserGameCommand command, Session session) throws IOException, DataAccessException {
         // Verify the authToken, and the gameID
         String authToken = command.getAuthToken();
@@ -143,7 +219,10 @@ public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsC
     
             // Verify that the move is valid (that it is in the list of valid moves for the starting position)
             ChessPosition startPosition = newMove.getStartPosition();
-            Collection<ChessMove> validMoves = game.validMoves(startPosition);
+            Collection<ChessMove> validMoves;
+            try (Span span = Tracer.span("rules.validMoves")) {
+                validMoves = game.validMoves(startPosition);
+            }
 
             // Throw an error if the move is invalid
             if (validMoves == null || !validMoves.contains(newMove)) {
@@ -171,7 +250,10 @@ public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsC
                 throw new InvalidMoveException("Error: must move your own pieces");
             }
 
-    
+
+            // Written out against the position before the move, check and mate are added once they are known
+            String san = San.format(game, newMove, false, false);
+
             // Update the game by making the move
             gameService.makeMove(authToken, gameID, newMove);
 
@@ -181,11 +263,6 @@ public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsC
             // send LOAD_GAME to every client
             connections.notifyGameBoardChange(gameID, game);
 
-            // Notify others of move
-            String message = buildMoveString(username, newMove);
-            NotificationMessage notificationMessage = new NotificationMessage(message);
-            connections.notifyGameExceptRoot(gameID, session, notificationMessage);
-
             // Notify other of check and checkmate
             String currentTeamTurn = switch(game.getTeamTurn()) {
                 case WHITE -> "WHITE";
@@ -195,24 +272,56 @@ public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsC
             String whiteUsername = gameData.whiteUsername();
             String blackUsername = gameData.blackUsername();
 
-            if (game.isInCheckmate(game.getTeamTurn())) {
+            // Work out check, checkmate and stalemate first (this is the expensive part) and then tell everyone
+            boolean checkmate;
+            boolean check = false;
+            boolean stalemate = false;
+            try (Span span = Tracer.span("rules.checkSweep")) {
+                checkmate = game.isInCheckmate(game.getTeamTurn());
+                if (!checkmate) {
+                    check = game.isInCheck(game.getTeamTurn());
+                    if (!check) {
+                        stalemate = game.isInStalemate(game.getTeamTurn());
+                    }
+                }
+            }
+
+            // Notify others of move
+            String message = buildMoveString(username, newMove) + " (" + san + (checkmate ? "#" : check ? "+" : "") + ")";
+            NotificationMessage notificationMessage = new NotificationMessage(message);
+            connections.notifyGameExceptRoot(gameID, session, notificationMessage);
+
+            if (checkmate) {
+                gameService.recordResult(gameID, currentTeamTurn.equals("WHITE") ? "0-1" : "1-0");
+            } else if (stalemate) {
+                gameService.recordResult(gameID, "1/2-1/2");
+            }
+
+            if (checkmate) {
                 // Make it return the username of the team that is in Checkmate
                 if (currentTeamTurn.equals("WHITE")) {
                     connections.notifyGame(gameID, new NotificationMessage(whiteUsername + " is in Checkmate!"));
                 } else if (currentTeamTurn.equals("BLACK")) {
                     connections.notifyGame(gameID, new NotificationMessage(blackUsername + "is in Checkmate!"));
                 }
-            } else if (game.isInCheck(game.getTeamTurn())) {
+            } else if (check) {
                 // Make it return the username of the team that is in Check
                 if (currentTeamTurn.equals("WHITE")) {
                     connections.notifyGame(gameID, new NotificationMessage(whiteUsername + " is in Check!"));
                 } else if (currentTeamTurn.equals("BLACK")) {
                     connections.notifyGame(gameID, new NotificationMessage(blackUsername + "is in Check!"));
                 }
-            } else if (game.isInStalemate(game.getTeamTurn())) {
+            } else if (stalemate) {
                 connections.notifyGame(gameID, new NotificationMessage("Both teams are in stalemate!"));
             }
 
+            // The move itself ends the game on a draw by repetition or fifty moves
+            if (game.isGameOver() && game.isDrawByRepetition()) {
+                connections.notifyGame(gameID, new NotificationMessage("Draw by threefold repetition!"));
+            } else if (game.isGameOver() && game.isDrawByFiftyMoveRule()) {
+                connections.notifyGame(gameID, new NotificationMessage("Draw by the fifty-move rule!"));
+            }
+
         } catch (Exception ex) {
             ErrorMessage errorMessage = new ErrorMessage(ex.getMessage());
             connections.notifyRoot(session, errorMessage);
@@ -273,10 +382,46 @@ public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsC
 
     }
 
+    private void analyze(UserGameCommand command, Session session) throws IOException {
+        try {
+            // Only queued here, the updates are sent from the analysis threads as each depth finishes
+            analysisService.analyze(command.getAuthToken(), command.getGameID(), new AnalysisService.Listener() {
+                @Override
+                public void onUpdate(AnalysisUpdate update) {
+                    sendQuietly(session, new AnalysisMessage(update));
+                }
+
+                @Override
+                public void onError(String message) {
+                    sendQuietly(session, new ErrorMessage(message));
+                }
+
+                @Override
+                public boolean isActive() {
+                    return session.isOpen();
+                }
+            });
+        } catch (Exception ex) {
+            connections.notifyRoot(session, new ErrorMessage(ex.getMessage()));
+        }
+    }
+
+    // The analysis threads have nobody to throw to, a client that has gone away just misses the update
+    private void sendQuietly(Session session, ServerMessage message) {
+        if (!session.isOpen()) {
+            return;
+        }
+        try {
+            connections.notifyRoot(session, message);
+        } catch (IOException ex) {
+            handlerErrors.increment();
+        }
+    }
 
     @Override
     public void handleClose(WsCloseContext ctx) {
-        System.out.println("Websocket Closed");
+        closes.increment();
+        connections.forget(ctx.session);
     }
 }
 
@@ -0,0 +1,115 @@
+package dataaccess;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import chess.ChessGame;
+import model.GameData;
+
+public class ArchivingGameDAOTest {
+
+    @TempDir
+    Path directory;
+
+    private MemoryGameDAO live;
+    private ArchivingGameDAO gameDAO;
+
+    @BeforeEach
+    void setup() throws DataAccessException {
+        live = new MemoryGameDAO();
+        gameDAO = new ArchivingGameDAO(live, new GameArchive(directory), Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        gameDAO.close();
+    }
+
+    private int finishedGame(String name) throws DataAccessException {
+        int id = gameDAO.createGame(name);
+        gameDAO.updateGameStatus(id, "WHITE", "white");
+        gameDAO.updateGameStatus(id, "BLACK", "black");
+        ChessGame game = gameDAO.getGame(id).game();
+        game.resign(ChessGame.TeamColor.BLACK);
+        gameDAO.updateGame(id, game);
+        return id;
+    }
+
+    @Test
+    void positiveTestFinishedGameIsArchived() throws DataAccessException {
+        int id = finishedGame("finished");
+        int playing = gameDAO.createGame("playing");
+
+        assertEquals(1, gameDAO.sweep(), "Only the finished game should be archived");
+        assertFalse(live.checkGame(id), "Archived games should leave the live store");
+        assertTrue(live.checkGame(playing), "Games in progress should stay in the live store");
+
+        GameData archived = gameDAO.getGame(id);
+        assertEquals("finished", archived.gameName(), "Archived games should still be readable");
+        assertEquals("white", archived.whiteUsername(), "Archived games should keep their players");
+        assertTrue(archived.game().isGameOver(), "Archived games should keep their final state");
+        assertTrue(gameDAO.checkGame(id), "Archived games should still exist");
+        assertEquals(2, gameDAO.listGames().size(), "Archived games should still be listed");
+    }
+
+    @Test
+    void positiveTestArchiveSurvivesReopen() throws DataAccessException {
+        int id = finishedGame("finished");
+        gameDAO.sweep();
+        gameDAO.close();
+
+        GameArchive reopened = new GameArchive(directory);
+        assertTrue(reopened.contains(id), "The index should be rebuilt from the segment files");
+        assertEquals("black", reopened.get(id).blackUsername(), "Archived games should be readable after a restart");
+        assertEquals("1-0", reopened.get(id).game().getResult(), "Archived games should keep how they ended");
+        reopened.close();
+    }
+
+    @Test
+    void positiveTestArchiveRollsOverSegments() throws DataAccessException {
+        GameArchive archive = new GameArchive(directory.resolve("small"), 256);
+        for (int id = 1; id <= 20; id++) {
+            archive.put(new GameData(id, "white", "black", "game" + id, new ChessGame()));
+        }
+        archive.close();
+
+        GameArchive reopened = new GameArchive(directory.resolve("small"), 256);
+        assertEquals(20, reopened.size(), "Every game should be found across segments");
+        assertEquals("game17", reopened.get(17).gameName(), "Games in later segments should be readable");
+        reopened.close();
+    }
+
+    @Test
+    void negativeTestArchivedGameIsReadOnly() throws DataAccessException {
+        int id = finishedGame("finished");
+        gameDAO.sweep();
+
+        assertFalse(gameDAO.checkColor(id, "WHITE"), "Seats in an archived game should not be available");
+        gameDAO.updateGameStatus(id, "WHITE", null);
+        assertEquals("white", gameDAO.getGame(id).whiteUsername(), "Archived seats should not change");
+    }
+
+    @Test
+    void negativeTestGameInProgressIsNotArchived() throws DataAccessException {
+        int id = gameDAO.createGame("playing");
+        gameDAO.updateGame(id, gameDAO.getGame(id).game());
+
+        assertEquals(0, gameDAO.sweep(), "Games in progress should not be archived");
+        assertTrue(live.checkGame(id), "Games in progress should stay in the live store");
+    }
+
+    @Test
+    void positiveTestClearEmptiesArchive() throws DataAccessException {
+        finishedGame("finished");
+        gameDAO.sweep();
+        gameDAO.clearGames();
+
+        assertEquals(0, gameDAO.listGames().size(), "Clear should remove archived games too");
+    }
+}
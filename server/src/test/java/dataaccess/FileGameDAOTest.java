@@ -0,0 +1,174 @@
+package dataaccess;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import model.GameData;
+import serialization.Fen;
+
+public class FileGameDAOTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void positiveTestRecoverAfterRestart() throws Exception {
+        FileGameDAO gameDAO = new FileGameDAO(directory);
+        int id = gameDAO.createGame("newGame");
+        gameDAO.updateGameStatus(id, "WHITE", "username");
+        ChessGame game = gameDAO.getGame(id).game();
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        gameDAO.updateGame(id, game);
+        gameDAO.close();
+
+        FileGameDAO reopened = new FileGameDAO(directory);
+        GameData recovered = reopened.getGame(id);
+        assertEquals("newGame", recovered.gameName(), "Game name should survive a restart");
+        assertEquals("username", recovered.whiteUsername(), "Seats should survive a restart");
+        assertEquals(game, recovered.game(), "The position after the move should survive a restart");
+        assertTrue(reopened.createGame("second") > id, "Game IDs should not be reused after a restart");
+        reopened.close();
+    }
+
+    @Test
+    void positiveTestGetGameReturnsCopy() throws Exception {
+        FileGameDAO gameDAO = new FileGameDAO(directory);
+        int id = gameDAO.createGame("newGame");
+        ChessGame game = gameDAO.getGame(id).game();
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+
+        assertEquals(ChessGame.newGame(), gameDAO.getGame(id).game(), "A move not yet passed to updateGame shouldn't show");
+        gameDAO.updateGame(id, game);
+        assertEquals(game, gameDAO.getGame(id).game(), "The move should show once it is stored");
+        gameDAO.close();
+    }
+
+    @Test
+    void positiveTestCreateGameFromPosition() throws Exception {
+        ChessGame start = Fen.parse("4k3/8/8/8/8/8/4P3/4K3 b - - 0 1");
+        // Never closed, so the position has to come back from the log
+        FileGameDAO gameDAO = new FileGameDAO(directory);
+        int id = gameDAO.createGame("fromFen", start);
+
+        FileGameDAO reopened = new FileGameDAO(directory);
+        assertEquals(start.getBoard(), reopened.getGame(id).game().getBoard(), "The starting position should be logged");
+        assertEquals(start.getTeamTurn(), reopened.getGame(id).game().getTeamTurn(), "The side to move should be logged");
+        reopened.close();
+    }
+
+    @Test
+    void positiveTestRecoverFromLogWithoutClose() throws Exception {
+        // Never closed, so there is no final snapshot and everything has to come back from the log
+        FileGameDAO gameDAO = new FileGameDAO(directory);
+        int id = gameDAO.createGame("newGame");
+        gameDAO.updateGameStatus(id, "BLACK", "username");
+
+        FileGameDAO reopened = new FileGameDAO(directory);
+        assertEquals("username", reopened.getGame(id).blackUsername(), "Every acknowledged change should be in the log");
+        reopened.close();
+    }
+
+    @Test
+    void positiveTestSnapshotReplacesOldLogs() throws Exception {
+        FileGameDAO gameDAO = new FileGameDAO(directory, 3);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(gameDAO.createGame("game" + i));
+        }
+        gameDAO.updateGameStatus(ids.get(4), "WHITE", "username");
+
+        FileGameDAO reopened = new FileGameDAO(directory, 3);
+        assertEquals(10, reopened.listGames().size(), "Snapshot plus log should hold every game");
+        assertEquals("username", reopened.getGame(ids.get(4)).whiteUsername(), "Snapshot plus log should hold every seat");
+        reopened.close();
+
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.filter(file -> file.toString().endsWith(".wal")).count(), "Old logs should be deleted");
+        }
+    }
+
+    @Test
+    void positiveTestRepetitionSurvivesRestart() throws Exception {
+        // Knights out and back twice, less the last move; a snapshot every 3 records puts some in each
+        int[][] moves = {{1, 7, 3, 6}, {8, 7, 6, 6}, {3, 6, 1, 7}, {6, 6, 8, 7}, {1, 7, 3, 6}, {8, 7, 6, 6}, {3, 6, 1, 7}};
+        FileGameDAO gameDAO = new FileGameDAO(directory, 3);
+        int id = gameDAO.createGame("newGame");
+        for (int[] move : moves) {
+            ChessGame game = gameDAO.getGame(id).game();
+            game.makeMove(new ChessMove(new ChessPosition(move[0], move[1]), new ChessPosition(move[2], move[3]), null));
+            gameDAO.updateGame(id, game);
+        }
+
+        FileGameDAO reopened = new FileGameDAO(directory, 3);
+        ChessGame game = reopened.getGame(id).game();
+        assertEquals(7, game.getHalfmoveClock(), "The halfmove clock should survive a restart");
+        game.makeMove(new ChessMove(new ChessPosition(6, 6), new ChessPosition(8, 7), null));
+        assertTrue(game.isDrawByRepetition(), "Repetition should still be found after a restart");
+        reopened.close();
+    }
+
+    @Test
+    void negativeTestTornRecordIsDropped() throws Exception {
+        FileGameDAO gameDAO = new FileGameDAO(directory);
+        int id = gameDAO.createGame("newGame");
+
+        // A record that was only half written when the process died
+        Path log;
+        try (var files = Files.list(directory)) {
+            log = files.filter(file -> file.toString().endsWith(".wal")).findFirst().orElseThrow();
+        }
+        Files.write(log, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        FileGameDAO reopened = new FileGameDAO(directory);
+        assertTrue(reopened.checkGame(id), "Records before the torn one should be kept");
+        int second = reopened.createGame("second");
+        reopened.close();
+
+        FileGameDAO again = new FileGameDAO(directory);
+        assertTrue(again.checkGame(second), "Writes after the truncated record should not be lost");
+        again.close();
+    }
+
+    @Test
+    void positiveTestConcurrentWritersAreAllDurable() throws Exception {
+        FileGameDAO gameDAO = new FileGameDAO(directory);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 50; i++) {
+                        gameDAO.createGame("game");
+                    }
+                } catch (DataAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        FileGameDAO reopened = new FileGameDAO(directory);
+        assertEquals(400, reopened.listGames().size(), "Every game created should be in the log");
+        reopened.close();
+    }
+
+    @Test
+    void negativeTestClosedLogRejectsWrites() throws Exception {
+        FileGameDAO gameDAO = new FileGameDAO(directory);
+        gameDAO.close();
+        assertThrows(DataAccessException.class, () -> gameDAO.createGame("newGame"), "A closed log should refuse writes");
+    }
+}
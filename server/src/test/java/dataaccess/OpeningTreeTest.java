@@ -0,0 +1,125 @@
+package dataaccess;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.Zobrist;
+
+public class OpeningTreeTest {
+
+    @TempDir
+    Path directory;
+
+    private static final long START = Zobrist.hash(ChessGame.newGame());
+    private static final ChessMove E4 = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+    private static final ChessMove D4 = new ChessMove(new ChessPosition(2, 4), new ChessPosition(4, 4), null);
+
+    @Test
+    void positiveTestCountsMovesAndResults() {
+        OpeningTree tree = new OpeningTree();
+        tree.addGame(new long[] {START}, new ChessMove[] {E4}, "1-0");
+        tree.addGame(new long[] {START}, new ChessMove[] {E4}, "1/2-1/2");
+        tree.addGame(new long[] {START}, new ChessMove[] {D4}, "0-1");
+        tree.addGame(new long[] {START}, new ChessMove[] {D4}, "*");
+
+        List<OpeningTree.MoveStats> stats = tree.lookup(START);
+        assertEquals(2, stats.size(), "Both moves should be listed");
+        assertEquals(new OpeningTree.MoveStats(E4, 1, 1, 0), stats.get(0), "The most played move should come first");
+        assertEquals(new OpeningTree.MoveStats(D4, 0, 0, 1), stats.get(1), "Unfinished games shouldn't count");
+    }
+
+    @Test
+    void positiveTestGamesBeingPlayedCountWhenTheyFinish() {
+        OpeningTree tree = new OpeningTree();
+        tree.recordMove(1, START, E4);
+        assertTrue(tree.lookup(START).isEmpty(), "A game still being played shouldn't count yet");
+
+        tree.finishGame(1, "0-1");
+        assertEquals(List.of(new OpeningTree.MoveStats(E4, 0, 0, 1)), tree.lookup(START), "A finished game should count");
+        tree.finishGame(1, "0-1");
+        assertEquals(1, tree.lookup(START).get(0).games(), "A game should only count once");
+    }
+
+    @Test
+    void positiveTestRarePositionsAreEvicted() {
+        OpeningTree tree = new OpeningTree(10);
+        for (int i = 0; i < OpeningTree.PROMOTE_AT; i++) {
+            tree.addGame(new long[] {START}, new ChessMove[] {E4}, "1-0");
+        }
+        // Far more one-off positions than the tail holds
+        for (long hash = 1; hash <= 100; hash++) {
+            tree.addGame(new long[] {hash}, new ChessMove[] {D4}, "1-0");
+        }
+
+        assertEquals(OpeningTree.PROMOTE_AT, tree.lookup(START).get(0).games(), "A common position should be kept");
+        assertTrue(tree.lookup(1).isEmpty(), "The oldest rare position should have been evicted");
+        assertEquals(1, tree.lookup(100).size(), "A recent rare position should still be there");
+    }
+
+    @Test
+    void positiveTestRebuildReplacesTree() {
+        OpeningTree tree = new OpeningTree();
+        tree.addGame(new long[] {START}, new ChessMove[] {E4}, "1-0");
+
+        OpeningTree.Rebuild rebuild = tree.startRebuild();
+        assertNull(tree.startRebuild(), "Only one rebuild at a time");
+        rebuild.addGame(new long[] {START}, new ChessMove[] {D4}, "1/2-1/2");
+        assertEquals(E4, tree.lookup(START).get(0).move(), "Lookups should see the old tree until the rebuild is done");
+
+        rebuild.finish(true);
+        assertEquals(List.of(new OpeningTree.MoveStats(D4, 0, 1, 0)), tree.lookup(START), "The new tree should replace the old");
+    }
+
+    @Test
+    void positiveTestSurvivesRestart() throws Exception {
+        OpeningTree tree = new OpeningTree(directory, 10);
+        for (int i = 0; i < OpeningTree.PROMOTE_AT; i++) {
+            tree.addGame(new long[] {START}, new ChessMove[] {E4}, "1-0");
+        }
+        tree.addGame(new long[] {START}, new ChessMove[] {D4}, "1/2-1/2");
+        for (long hash = 1; hash <= 10; hash++) {
+            tree.addGame(new long[] {hash}, new ChessMove[] {D4}, "0-1");
+        }
+        tree.recordMove(7, START, D4);
+        tree.close();
+
+        OpeningTree reopened = new OpeningTree(directory, 10);
+        assertEquals(tree.lookup(START), reopened.lookup(START), "A common position should be kept");
+        assertEquals(List.of(new OpeningTree.MoveStats(D4, 0, 0, 1)), reopened.lookup(10), "Rare positions should be kept");
+
+        reopened.finishGame(7, "0-1");
+        assertEquals(new OpeningTree.MoveStats(D4, 0, 1, 1), reopened.lookup(START).get(1),
+            "A game being played before the restart should count when it ends");
+        reopened.addGame(new long[] {11}, new ChessMove[] {E4}, "1-0");
+        assertTrue(reopened.lookup(1).isEmpty(), "The tail should keep its order, the oldest going first");
+        assertEquals(1, reopened.lookup(2).size(), "Only the oldest should go");
+        reopened.addGame(new long[] {START}, new ChessMove[] {E4}, "1-0");
+        assertEquals(new OpeningTree.MoveStats(E4, OpeningTree.PROMOTE_AT + 1, 0, 0), reopened.lookup(START).get(0),
+            "Loaded counts should carry on");
+
+        reopened.clear();
+        assertFalse(Files.exists(directory.resolve("openings.snapshot")), "Clearing should delete the snapshot");
+        assertTrue(new OpeningTree(directory).lookup(START).isEmpty(), "A cleared tree should open empty");
+    }
+
+    @Test
+    void negativeTestCorruptSnapshot() throws Exception {
+        OpeningTree tree = new OpeningTree(directory);
+        tree.addGame(new long[] {START}, new ChessMove[] {E4}, "1-0");
+        tree.close();
+        Path snapshot = directory.resolve("openings.snapshot");
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(snapshot, bytes);
+
+        assertTrue(new OpeningTree(directory).lookup(START).isEmpty(), "A damaged snapshot should be ignored");
+    }
+}
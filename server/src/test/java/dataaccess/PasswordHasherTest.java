@@ -0,0 +1,72 @@
+package dataaccess;
+
+import org.junit.jupiter.api.Test;
+import org.mindrot.jbcrypt.BCrypt;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class PasswordHasherTest {
+
+    @Test
+    void positiveTestHash() throws DataAccessException {
+        PasswordHasher hasher = new PasswordHasher(1, 4, 4);
+        String hashed = hasher.hash("password");
+        assertTrue(BCrypt.checkpw("password", hashed), "Hash should verify with plain BCrypt");
+        assertTrue(hashed.startsWith("$2a$04$"), "Hash should use the configured cost factor");
+    }
+
+    @Test
+    void positiveTestVerify() throws DataAccessException {
+        PasswordHasher hasher = new PasswordHasher(1, 4, 4);
+        String hashed = hasher.hash("password");
+        assertTrue(hasher.verify("password", hashed), "The right password should verify");
+    }
+
+    @Test
+    void negativeTestVerify() throws DataAccessException {
+        PasswordHasher hasher = new PasswordHasher(1, 4, 4);
+        String hashed = hasher.hash("password");
+        assertFalse(hasher.verify("passw0rd", hashed), "The wrong password should not verify");
+    }
+
+    @Test
+    void negativeTestCost() {
+        assertThrows(IllegalArgumentException.class, () -> new PasswordHasher(1, 4, 3),
+            "Costs outside of what BCrypt supports should be rejected");
+    }
+
+    @Test
+    void negativeTestFullQueue() throws Exception {
+        // One thread and a queue of one, so the third request at the same time has nowhere to go
+        PasswordHasher hasher = new PasswordHasher(1, 1, 12);
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        CountDownLatch ready = new CountDownLatch(3);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(callers.submit(() -> {
+                ready.countDown();
+                ready.await();
+                return hasher.hash("password");
+            }));
+        }
+
+        int rejected = 0;
+        for (Future<String> result : results) {
+            try {
+                result.get();
+            } catch (Exception e) {
+                assertInstanceOf(ServiceUnavailableException.class, e.getCause(), "Overflow should be a ServiceUnavailableException");
+                rejected++;
+            }
+        }
+        callers.shutdown();
+        assertTrue(rejected >= 1, "At least one request should be turned away when the queue is full");
+    }
+}
@@ -0,0 +1,209 @@
+package dataaccess;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.Zobrist;
+import model.GameData;
+import model.PositionHit;
+import serialization.Fen;
+
+public class PositionIndexTest {
+
+    @TempDir
+    Path directory;
+
+    private static final ChessMove E4 = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+
+    private static List<Path> runFiles(Path directory) throws Exception {
+        try (var files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    // Enough whole games to fill the buffer several times, so there are runs and merges to write
+    private static void addGames(PositionIndex index, int from, int to) {
+        for (int gameID = from; gameID <= to; gameID++) {
+            index.addGame(gameID, new long[] {gameID * 31L, gameID * 17L});
+        }
+    }
+
+    @Test
+    void positiveTestMovesAreIndexedByPly() throws Exception {
+        PositionIndex index = new PositionIndex();
+        ChessGame game = ChessGame.newGame();
+        index.startGame(7, game);
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        index.recordMove(7, game);
+
+        assertEquals(List.of(new PositionHit(7, 1)), index.find(Zobrist.hash(game), 10), "The move should be at ply 1");
+        assertEquals(List.of(new PositionHit(7, 0)), index.find(Zobrist.hash(ChessGame.newGame()), 10),
+            "The start should be at ply 0");
+
+        index.finishGame(7);
+        game.makeMove(new ChessMove(new ChessPosition(7, 5), new ChessPosition(5, 5), null));
+        index.recordMove(7, game);
+        assertEquals(List.of(new PositionHit(7, PositionIndex.UNKNOWN_PLY)), index.find(Zobrist.hash(game), 10),
+            "Plies should stop being counted once the game has finished");
+    }
+
+    @Test
+    void positiveTestFindsAcrossRuns() {
+        PositionIndex index = new PositionIndex();
+        long target = Zobrist.hash(Fen.parse("4k3/8/8/8/8/8/8/4K3 w - - 0 1"));
+        // Enough entries to fill the buffer many times over and force merges, with the target spread through them
+        for (int gameID = 1; gameID <= 50_000; gameID++) {
+            index.addGame(gameID, new long[] {gameID * 31L, gameID % 1000 == 0 ? target : gameID * 17L});
+        }
+
+        assertEquals(100_000, index.size(), "Every entry should be counted");
+        assertEquals(50, index.count(target), "Every game that reached the position should be counted");
+        List<PositionHit> hits = index.find(target, 10);
+        assertEquals(10, hits.size(), "Hits should stop at the limit");
+        for (PositionHit hit : hits) {
+            assertEquals(0, hit.gameID() % 1000, "Only games that reached the position should be found");
+            assertEquals(1, hit.ply(), "The position came after the first move");
+        }
+    }
+
+    @Test
+    void positiveTestBuildFromStore() throws DataAccessException {
+        MemoryGameDAO gameDAO = new MemoryGameDAO();
+        int gameID = gameDAO.createGame("stored", Fen.parse("4k3/8/8/8/8/8/4P3/4K3 b - - 0 1"));
+        PositionIndex index = new PositionIndex();
+
+        assertEquals(1, index.build(gameDAO), "The stored game should be read");
+        assertEquals(List.of(new PositionHit(gameID, PositionIndex.UNKNOWN_PLY)),
+            index.find(Zobrist.hash(gameDAO.getGame(gameID).game()), 10), "A stored game's ply isn't known");
+        assertEquals(0, index.count(Zobrist.hash(ChessGame.newGame())), "Positions nobody reached have no hits");
+
+        index.clear();
+        assertEquals(0, index.size(), "Clearing should empty the index");
+    }
+
+    @Test
+    void positiveTestRunsSurviveRestart() throws Exception {
+        PositionIndex index = new PositionIndex(directory);
+        ChessGame game = ChessGame.newGame();
+        index.startGame(1, game);
+        game.makeMove(E4);
+        index.recordMove(1, game);
+        addGames(index, 2, 10_000);
+        index.close();
+        assertFalse(runFiles(directory).isEmpty(), "The runs should be written to the directory");
+
+        PositionIndex reopened = new PositionIndex(directory);
+        assertEquals(index.size(), reopened.size(), "Every entry should be loaded, the buffer included");
+        assertEquals(List.of(new PositionHit(1, 1)), reopened.find(Zobrist.hash(game), 10),
+            "Plies counted before the restart should be kept");
+        assertEquals(List.of(new PositionHit(5_000, 1)), reopened.find(5_000 * 17L, 10), "Merged runs should load");
+
+        // Carries on where it left off, and a second restart still has everything
+        addGames(reopened, 10_001, 12_000);
+        reopened.close();
+        PositionIndex again = new PositionIndex(directory);
+        assertEquals(index.size() + 4_000, again.size(), "Runs written after a restart should load too");
+        assertEquals(1, again.count(11_000 * 31L), "Each entry should load once");
+
+        again.clear();
+        assertTrue(runFiles(directory).isEmpty(), "Clearing should delete the runs");
+        assertEquals(0, new PositionIndex(directory).size(), "A cleared index should open empty");
+    }
+
+    @Test
+    void positiveTestBuildSkipsIndexedGames() throws Exception {
+        MemoryGameDAO gameDAO = new MemoryGameDAO();
+        int played = gameDAO.createGame("played");
+        int stored = gameDAO.createGame("stored", Fen.parse("4k3/8/8/8/8/8/4P3/4K3 b - - 0 1"));
+        ChessGame game = ChessGame.newGame();
+        PositionIndex index = new PositionIndex(directory);
+        index.startGame(played, game);
+        game.makeMove(E4);
+        index.recordMove(played, game);
+        gameDAO.updateGame(played, game);
+        index.close();
+
+        PositionIndex reopened = new PositionIndex(directory);
+        assertEquals(1, reopened.build(gameDAO), "Only the game the index doesn't have should be added");
+        assertEquals(List.of(new PositionHit(played, 1)), reopened.find(Zobrist.hash(game), 10),
+            "A game already indexed shouldn't get a second entry");
+        assertEquals(List.of(new PositionHit(stored, PositionIndex.UNKNOWN_PLY)),
+            reopened.find(Zobrist.hash(gameDAO.getGame(stored).game()), 10), "The other game should be added");
+        assertEquals(0, reopened.build(gameDAO), "Building again should find nothing new");
+    }
+
+    @Test
+    void negativeTestCrashLeftovers() throws Exception {
+        PositionIndex index = new PositionIndex(directory);
+        addGames(index, 1, 2_048);
+        Path first = directory.resolve("positions-0000000000-0000000000.run");
+        assertTrue(Files.exists(first), "A full buffer should be written as a run");
+        byte[] firstRun = Files.readAllBytes(first);
+        addGames(index, 2_049, 4_096);
+        index.close();
+        Path merged = directory.resolve("positions-0000000000-0000000001.run");
+        assertEquals(List.of(merged), runFiles(directory), "A merge should replace the runs it was made from");
+
+        // What a crash can leave: a merge input the merged run covers, a temp file, and a damaged run
+        Files.write(first, firstRun);
+        Files.write(directory.resolve("positions-0000000002-0000000002.run.tmp"), firstRun);
+        Files.write(directory.resolve("positions-0000000002-0000000002.run"), new byte[] {1, 2, 3});
+
+        PositionIndex reopened = new PositionIndex(directory);
+        assertEquals(8_192, reopened.size(), "A run covered by a merge shouldn't be loaded twice");
+        assertEquals(List.of(merged), runFiles(directory), "The leftovers should be cleaned up");
+        addGames(reopened, 4_097, 6_144);
+        reopened.close();
+        assertEquals(List.of(directory.resolve("positions-0000000000-0000000003.run")), runFiles(directory),
+            "New runs shouldn't reuse the number of a dropped file");
+        assertEquals(12_288, new PositionIndex(directory).size(), "Every entry should still be there");
+    }
+
+    @Test
+    void negativeTestBuildDuringClear() throws Exception {
+        PositionIndex index = new PositionIndex(directory);
+        MemoryGameDAO gameDAO = new MemoryGameDAO() {
+            @Override
+            public void forEachGame(Consumer<GameData> action) throws DataAccessException {
+                super.forEachGame(action);
+                // The games are cleared after the build read them
+                index.clear();
+            }
+        };
+        gameDAO.createGame("stored");
+
+        assertEquals(0, index.build(gameDAO), "A build overlapping a clear shouldn't add anything");
+        assertEquals(0, index.size(), "Nothing from before the clear should be published after it");
+        index.close();
+        assertTrue(runFiles(directory).isEmpty(), "Nothing should be written either");
+    }
+
+    @Test
+    void negativeTestBuildDuringMoves() throws Exception {
+        PositionIndex index = new PositionIndex();
+        MemoryGameDAO gameDAO = new MemoryGameDAO() {
+            @Override
+            public void forEachGame(Consumer<GameData> action) throws DataAccessException {
+                super.forEachGame(game -> {
+                    action.accept(game);
+                    // The game is started here while the build runs, and the build read it at the same position
+                    index.startGame(game.gameID(), game.game());
+                });
+            }
+        };
+        int gameID = gameDAO.createGame("started");
+
+        assertEquals(0, index.build(gameDAO), "Positions indexed while building shouldn't be added again");
+        assertEquals(List.of(new PositionHit(gameID, 0)), index.find(Zobrist.hash(ChessGame.newGame()), 10),
+            "Only the entry with the ply should be there");
+    }
+}
@@ -18,6 +18,8 @@ public class SQLAuthDAOTest {
         authDAO = new SQLAuthDAO();
         userDAO = new SQLUserDAO();
         
+        // Games seat users too, and other test classes can leave them behind on a reused database
+        new SQLGameDAO().clearGames();
         authDAO.clearAuth();
         userDAO.clearUsers();
 
@@ -104,4 +106,22 @@ public class SQLAuthDAOTest {
     void negativeTestGetUser() {
         assertThrows(DataAccessException.class, () -> authDAO.getUser(null), "Null values throw errors");
     }
+
+    @Test
+    void positiveTestRevokeToken() throws DataAccessException {
+        long before = authDAO.revokedTokens(0).stream().mapToLong(AuthDAO.RevokedToken::sequence).max().orElse(0);
+        authDAO.revokeToken(42, Long.MAX_VALUE);
+        var revoked = authDAO.revokedTokens(before);
+        assertEquals(1, revoked.size(), "Only the new revocation should come back");
+        assertEquals(42, revoked.getFirst().nonce(), "The revocation should keep its nonce");
+    }
+
+    @Test
+    void positiveTestNextTokenGeneration() throws DataAccessException {
+        long generation = authDAO.tokenGeneration();
+        authDAO.revokeToken(42, Long.MAX_VALUE);
+        assertEquals(generation + 1, authDAO.nextTokenGeneration(), "The generation should move on by one");
+        assertEquals(generation + 1, authDAO.tokenGeneration(), "The new generation should be stored");
+        assertTrue(authDAO.revokedTokens(0).isEmpty(), "A new generation should drop the old revocations");
+    }
 }
@@ -1,24 +1,41 @@
 package dataaccess;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
+import chess.ChessGame;
+import model.GameData;
+import model.GameSetup;
 import model.ListGameData;
 import model.UserData;
+import serialization.Fen;
 
 public class SQLGameDAOTest {
     private UserDAO userDAO;
     private GameDAO gameDAO;
+    private AuthDAO authDAO;
 
     @BeforeEach
     void setup() throws DataAccessException {
         userDAO = new SQLUserDAO();
         gameDAO = new SQLGameDAO();
+        authDAO = new SQLAuthDAO();
 
+        clearTables();
+    }
+
+    // Games and auth tokens point at users, so they go first. Runs after each test as well, so the seated users
+    // don't stop the next test class from clearing the user table on a reused database.
+    @AfterEach
+    void clearTables() throws DataAccessException {
         gameDAO.clearGames();
+        authDAO.clearAuth();
         userDAO.clearUsers();
     }
 
@@ -38,6 +55,15 @@ public class SQLGameDAOTest {
 
     }
 
+    @Test
+    void positiveTestCreateGameFromPosition() throws DataAccessException {
+        ChessGame start = Fen.parse("4k3/8/8/8/8/8/4P3/4K3 b - - 0 1");
+        int id = gameDAO.createGame("endgame", start);
+        ChessGame stored = gameDAO.getGame(id).game();
+        assertEquals(start.getBoard(), stored.getBoard(), "DAO should store the position it was given");
+        assertEquals(ChessGame.TeamColor.BLACK, stored.getTeamTurn(), "DAO should store the side to move");
+    }
+
     @Test
     void positiveTestCheckGame() throws DataAccessException {
         int id = gameDAO.createGame("newGame");
@@ -71,6 +97,55 @@ public class SQLGameDAOTest {
         assertFalse(gameDAO.checkGame(5), "DAO should return false if the game doesn't exist (create game)");
     }
 
+    @Test
+    void positiveTestCreateGames() throws DataAccessException {
+        userDAO.createUser(new UserData("white", "password", "white@example.com"));
+        userDAO.createUser(new UserData("black", "password", "black@example.com"));
+        List<Integer> ids = gameDAO.createGames(List.of(
+            new GameSetup("board1", "white", "black"),
+            new GameSetup("board2", "black", "white"),
+            new GameSetup("board3", null, null)));
+
+        assertEquals(3, ids.size(), "DAO should return one id per game created");
+        assertEquals("black", gameDAO.getGame(ids.get(0)).blackUsername(), "Players should be seated when created");
+        assertEquals("board2", gameDAO.getGame(ids.get(1)).gameName(), "Ids should come back in request order");
+        assertTrue(gameDAO.checkColor(ids.get(2), "WHITE"), "Seats without a player should be open");
+    }
+
+    @Test
+    void negativeTestCreateGames() throws DataAccessException {
+        userDAO.createUser(new UserData("white", "password", "white@example.com"));
+        assertThrows(DataAccessException.class, () -> gameDAO.createGames(List.of(
+            new GameSetup("board1", "white", null),
+            new GameSetup("board2", "white", "nobody"))), "Seating a player who doesn't exist should fail");
+        assertEquals(0, gameDAO.listGames().size(), "A failed batch should not create any games");
+    }
+
+    @Test
+    void positiveTestImportGames() throws DataAccessException {
+        ChessGame played = Fen.parse("4k3/8/8/8/4P3/8/8/4K3 b - - 0 1");
+        List<Integer> ids = gameDAO.importGames(List.of(
+            new GameData(0, null, null, "imported1", played),
+            new GameData(0, null, null, "imported2", ChessGame.newGame())));
+
+        assertEquals(2, ids.size(), "DAO should return one id per game imported");
+        assertEquals(played.getBoard(), gameDAO.getGame(ids.get(0)).game().getBoard(), "Imported positions should be kept");
+        assertEquals("imported2", gameDAO.getGame(ids.get(1)).gameName(), "Ids should come back in request order");
+    }
+
+    @Test
+    void positiveTestForEachGame() throws DataAccessException {
+        List<GameData> games = new ArrayList<>();
+        for (int i = 0; i < 1201; i++) {
+            games.add(new GameData(0, null, null, "game" + i, ChessGame.newGame()));
+        }
+        List<Integer> ids = gameDAO.importGames(games);
+
+        List<Integer> seen = new ArrayList<>();
+        gameDAO.forEachGame(game -> seen.add(game.gameID()));
+        assertEquals(ids, seen, "Every game should be visited once, in gameID order, across pages");
+    }
+
     @Test
     void positiveTestListGames() throws DataAccessException {
         int id = gameDAO.createGame("newGame");
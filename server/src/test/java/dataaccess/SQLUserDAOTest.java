@@ -15,6 +15,9 @@ public class SQLUserDAOTest {
     @BeforeEach
     void setup() throws DataAccessException {
         userDAO = new SQLUserDAO();
+        // Games and auth tokens point at users, and other test classes can leave them behind on a reused database
+        new SQLGameDAO().clearGames();
+        new SQLAuthDAO().clearAuth();
         userDAO.clearUsers();
     }
     
@@ -0,0 +1,119 @@
+package dataaccess;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import model.AuthData;
+
+public class SignedTokenAuthDAOTest {
+    private static final byte[] KEY = "a test key that is at least 32 bytes long".getBytes();
+
+    private MemoryAuthDAO storedTokens;
+    private AuthDAO authDAO;
+
+    @BeforeEach
+    void setup() throws DataAccessException {
+        storedTokens = new MemoryAuthDAO();
+        authDAO = new SignedTokenAuthDAO(storedTokens, new TokenSigner(KEY, 60_000));
+    }
+
+    private String login(String username) throws DataAccessException {
+        String token = authDAO.newAuthToken(username);
+        authDAO.createAuth(new AuthData(token, username));
+        return token;
+    }
+
+    @Test
+    void positiveTestCheckAuth() throws DataAccessException {
+        String token = login("username");
+        assertTrue(authDAO.checkAuth(token), "A freshly signed token should be valid");
+        assertFalse(storedTokens.checkAuth(token), "Signed tokens should not be written to the auth table");
+    }
+
+    @Test
+    void negativeTestCheckAuth() throws DataAccessException {
+        String token = login("username");
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+        assertFalse(authDAO.checkAuth(tampered), "A token with a bad signature should be rejected");
+
+        AuthDAO otherServer = new SignedTokenAuthDAO(new MemoryAuthDAO(),
+            new TokenSigner("a completely different key, also 32+ bytes".getBytes(), 60_000));
+        assertFalse(otherServer.checkAuth(token), "A token signed with another key should be rejected");
+    }
+
+    @Test
+    void negativeTestExpiredToken() throws DataAccessException {
+        AuthDAO shortLived = new SignedTokenAuthDAO(new MemoryAuthDAO(), new TokenSigner(KEY, -1));
+        String token = shortLived.newAuthToken("username");
+        assertFalse(shortLived.checkAuth(token), "An expired token should be rejected");
+    }
+
+    @Test
+    void positiveTestGetUser() throws DataAccessException {
+        String token = login("user:with:colons");
+        assertEquals("user:with:colons", authDAO.getUser(token), "The username should come back out of the token");
+    }
+
+    @Test
+    void positiveTestDeleteAuth() throws DataAccessException, UnauthorizedException {
+        String token = login("username");
+        String otherToken = login("username");
+        authDAO.deleteAuth(token);
+        assertFalse(authDAO.checkAuth(token), "A logged out token should be revoked");
+        assertTrue(authDAO.checkAuth(otherToken), "Other tokens for the same user should still work");
+    }
+
+    @Test
+    void negativeTestDeleteAuth() throws DataAccessException, UnauthorizedException {
+        String token = login("username");
+        authDAO.deleteAuth(token);
+        assertThrows(UnauthorizedException.class, () -> authDAO.deleteAuth(token), "Logging out twice should fail");
+    }
+
+    @Test
+    void positiveTestClearAuth() throws DataAccessException {
+        String token = login("username");
+        authDAO.clearAuth();
+        assertFalse(authDAO.checkAuth(token), "Clearing should invalidate every signed token");
+        assertTrue(authDAO.checkAuth(login("username")), "Tokens issued after a clear should work");
+    }
+
+    @Test
+    void positiveTestRevocationsAreShared() throws DataAccessException, UnauthorizedException {
+        // Two servers on one auth store, catching up with it on every check
+        AuthDAO first = new SignedTokenAuthDAO(storedTokens, new TokenSigner(KEY, 60_000), 0);
+        AuthDAO second = new SignedTokenAuthDAO(storedTokens, new TokenSigner(KEY, 60_000), 0);
+        String token = first.newAuthToken("username");
+        String otherToken = first.newAuthToken("username");
+        assertTrue(second.checkAuth(token), "A token from one server should work on the other");
+
+        first.deleteAuth(token);
+        assertFalse(second.checkAuth(token), "A logout on one server should reach the other");
+
+        second.clearAuth();
+        assertFalse(first.checkAuth(otherToken), "A clear on one server should reach the other");
+        assertTrue(first.checkAuth(second.newAuthToken("username")), "Tokens issued after the clear should work");
+    }
+
+    @Test
+    void positiveTestRevocationsSurviveRestart() throws DataAccessException, UnauthorizedException {
+        String cleared = login("username");
+        authDAO.clearAuth();
+        String loggedOut = login("username");
+        String kept = login("username");
+        authDAO.deleteAuth(loggedOut);
+
+        AuthDAO restarted = new SignedTokenAuthDAO(storedTokens, new TokenSigner(KEY, 60_000));
+        assertFalse(restarted.checkAuth(cleared), "A cleared token should stay invalid after a restart");
+        assertFalse(restarted.checkAuth(loggedOut), "A logged out token should stay revoked after a restart");
+        assertTrue(restarted.checkAuth(kept), "Other tokens should still work after a restart");
+    }
+
+    @Test
+    void positiveTestUnsignedTokens() throws DataAccessException {
+        storedTokens.createAuth(new AuthData("plain-uuid-token", "username"));
+        assertTrue(authDAO.checkAuth("plain-uuid-token"), "Unsigned tokens should still be looked up in the wrapped DAO");
+        assertEquals("username", authDAO.getUser("plain-uuid-token"));
+    }
+}
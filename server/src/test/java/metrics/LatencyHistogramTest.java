@@ -0,0 +1,87 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    private static void assertWithinBucket(long expected, long actual, String message) {
+        // Every power of two is split into 32 buckets and the top of a bucket is reported
+        assertTrue(actual >= expected && actual <= expected + expected / 32, message + ": expected about "
+            + expected + " but was " + actual);
+    }
+
+    @Test
+    void positiveTestEmptySnapshot() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(new LatencyHistogram.Snapshot(0, 0, 0, 0, 0, 0, 0), snapshot, "An empty histogram should be all 0");
+    }
+
+    @Test
+    void positiveTestSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 10; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10, snapshot.count(), "Every value should be counted");
+        assertEquals(55, snapshot.sum(), "The sum should be exact");
+        assertEquals(5, snapshot.p50(), "Values under 32 each get their own bucket");
+        assertEquals(9, snapshot.p90(), "Values under 32 each get their own bucket");
+        assertEquals(10, snapshot.p99(), "The top percentiles should be the largest value");
+        assertEquals(10, snapshot.max(), "The max should be exact");
+    }
+
+    @Test
+    void positiveTestQuantiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1us to 10ms in even steps, recorded out of order
+        for (int i = 10_000; i >= 1; i--) {
+            histogram.record(i * 1_000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10_000, snapshot.count(), "Every value should be counted");
+        assertWithinBucket(5_000_000, snapshot.p50(), "p50");
+        assertWithinBucket(9_000_000, snapshot.p90(), "p90");
+        assertWithinBucket(9_900_000, snapshot.p99(), "p99");
+        assertWithinBucket(9_990_000, snapshot.p999(), "p999");
+        assertEquals(10_000_000, snapshot.max(), "The max should be exact");
+        assertTrue(snapshot.p999() <= snapshot.max(), "No percentile should be above the max");
+    }
+
+    @Test
+    void positiveTestOutlierOnlyMovesTopPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 998; i++) {
+            histogram.record(1_000_000);
+        }
+        histogram.record(2_000_000_000L);
+        histogram.record(2_000_000_000L);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertWithinBucket(1_000_000, snapshot.p50(), "Outliers shouldn't move the median");
+        assertWithinBucket(1_000_000, snapshot.p99(), "Two outliers in 1000 shouldn't move p99");
+        assertEquals(2_000_000_000L, snapshot.p999(), "p999 is the 999th of 1000 values, the first outlier");
+    }
+
+    @Test
+    void positiveTestBuckets() {
+        for (long value = 0; value < 1 << 20; value = value * 3 / 2 + 1) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(LatencyHistogram.bucketUpperBound(index) >= value, "A bucket should hold its values");
+            assertWithinBucket(value, LatencyHistogram.bucketUpperBound(index), "Bucket for " + value);
+            assertTrue(index == 0 || LatencyHistogram.bucketUpperBound(index - 1) < value,
+                "A value should go in the first bucket that holds it");
+        }
+    }
+
+    @Test
+    void negativeTestOutOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.count(), "Clamped values should still be counted");
+        assertEquals(0, snapshot.p50(), "A negative time should count as 0");
+        assertEquals((1L << 40) - 1, snapshot.max(), "A huge time should be clamped to the largest bucket");
+    }
+}
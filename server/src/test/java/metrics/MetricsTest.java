@@ -0,0 +1,63 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+public class MetricsTest {
+
+    // The registry is process-wide, so every test uses names no other code registers
+    private static List<String> linesFor(String metric) {
+        return Metrics.scrape().lines()
+            .filter(line -> line.startsWith(metric) || line.startsWith("# TYPE " + metric + " ")).toList();
+    }
+
+    @Test
+    void positiveTestTimerIsSummaryInSeconds() {
+        Metrics.timer("test_scrape_timer", "route", "/game", "method", "GET").record(1_500_000);
+
+        assertEquals(List.of(
+            "# TYPE test_scrape_timer_seconds summary",
+            "test_scrape_timer_seconds{method=\"GET\",route=\"/game\",quantile=\"0.5\"} 0.0015",
+            "test_scrape_timer_seconds{method=\"GET\",route=\"/game\",quantile=\"0.9\"} 0.0015",
+            "test_scrape_timer_seconds{method=\"GET\",route=\"/game\",quantile=\"0.99\"} 0.0015",
+            "test_scrape_timer_seconds{method=\"GET\",route=\"/game\",quantile=\"0.999\"} 0.0015",
+            "test_scrape_timer_seconds_count{method=\"GET\",route=\"/game\"} 1",
+            "test_scrape_timer_seconds_sum{method=\"GET\",route=\"/game\"} 0.0015",
+            "test_scrape_timer_seconds_max{method=\"GET\",route=\"/game\"} 0.0015"),
+            linesFor("test_scrape_timer_seconds"), "A timer should be a summary in seconds with sorted labels");
+    }
+
+    @Test
+    void positiveTestCounterAndGauge() {
+        Metrics.counter("test_scrape_counter_total", "status", "200").add(3);
+        Metrics.counter("test_scrape_counter_total", "status", "200").increment();
+        Metrics.counter("test_scrape_counter_total", "status", "404").increment();
+        Metrics.gauge("test_scrape_gauge", () -> 7);
+        Metrics.gauge("test_scrape_gauge", () -> 9);
+
+        assertEquals(List.of(
+            "# TYPE test_scrape_counter_total counter",
+            "test_scrape_counter_total{status=\"200\"} 4",
+            "test_scrape_counter_total{status=\"404\"} 1"),
+            linesFor("test_scrape_counter_total"), "Looking a counter up again should give the same counter");
+        assertEquals(List.of("# TYPE test_scrape_gauge gauge", "test_scrape_gauge 9"), linesFor("test_scrape_gauge"),
+            "Registering a gauge again should replace it");
+    }
+
+    @Test
+    void positiveTestLabelValuesAreEscaped() {
+        Metrics.counter("test_scrape_escaped_total", "name", "a \"quoted\" \\ value\n").increment();
+        assertEquals(List.of(
+            "# TYPE test_scrape_escaped_total counter",
+            "test_scrape_escaped_total{name=\"a \\\"quoted\\\" \\\\ value\\n\"} 1"),
+            linesFor("test_scrape_escaped_total"), "Quotes, backslashes and newlines should be escaped");
+    }
+
+    @Test
+    void negativeTestUnpairedLabels() {
+        assertThrows(IllegalArgumentException.class, () -> Metrics.counter("test_scrape_unpaired_total", "status"),
+            "Labels without a value should be rejected");
+    }
+}
@@ -0,0 +1,112 @@
+package service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import dataaccess.BadRequestException;
+import dataaccess.DataAccessException;
+import dataaccess.MemoryAuthDAO;
+import dataaccess.MemoryGameDAO;
+import dataaccess.ServiceUnavailableException;
+import dataaccess.UnauthorizedException;
+import model.AnalysisUpdate;
+import model.AuthData;
+
+public class AnalysisServiceTest {
+
+    private MemoryGameDAO gameDAO;
+    private MemoryAuthDAO authDAO;
+    private AnalysisService analysisService;
+    private int gameID;
+
+    @BeforeEach
+    void setup() throws DataAccessException {
+        gameDAO = new MemoryGameDAO();
+        authDAO = new MemoryAuthDAO();
+        authDAO.createAuth(new AuthData("token", "analyst"));
+        gameID = gameDAO.createGame("analyzed");
+    }
+
+    @AfterEach
+    void tearDown() {
+        analysisService.close();
+    }
+
+    private static class Recorder implements AnalysisService.Listener {
+        final List<AnalysisUpdate> updates = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void onUpdate(AnalysisUpdate update) {
+            updates.add(update);
+            if (update.done()) {
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void onError(String message) {
+            done.countDown();
+        }
+    }
+
+    @Test
+    void positiveTestStreamsUpdatesUntilDone() throws Exception {
+        analysisService = new AnalysisService(gameDAO, authDAO, 1, 1, 4, 2, Duration.ofMillis(200));
+        Recorder recorder = new Recorder();
+        analysisService.analyze("token", gameID, recorder);
+
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS), "Analysis should finish");
+        assertTrue(recorder.updates.size() > 1, "There should be an update per depth before the final one");
+        AnalysisUpdate last = recorder.updates.getLast();
+        assertTrue(last.done(), "The last update should say the job is done");
+        assertEquals(gameID, last.gameID(), "Updates should name the game");
+        assertNotNull(last.bestMove(), "The start position has moves to suggest");
+    }
+
+    @Test
+    void positiveTestSearchesWithHelperThreads() throws Exception {
+        analysisService = new AnalysisService(gameDAO, authDAO, 1, 2, 4, 2, Duration.ofMillis(200));
+        Recorder recorder = new Recorder();
+        analysisService.analyze("token", gameID, recorder);
+
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS), "Analysis should finish");
+        AnalysisUpdate last = recorder.updates.getLast();
+        assertTrue(last.done(), "A job with helper threads should finish like any other");
+        assertNotNull(last.bestMove(), "The start position has moves to suggest");
+    }
+
+    @Test
+    void negativeTestPerUserQuota() throws Exception {
+        analysisService = new AnalysisService(gameDAO, authDAO, 1, 1, 8, 2, Duration.ofMillis(300));
+        Recorder first = new Recorder();
+        analysisService.analyze("token", gameID, first);
+        analysisService.analyze("token", gameID, new Recorder());
+
+        assertThrows(ServiceUnavailableException.class, () -> analysisService.analyze("token", gameID, new Recorder()),
+            "A third job from the same user should be turned away");
+
+        // Quota comes back once a job finishes
+        assertTrue(first.done.await(5, TimeUnit.SECONDS), "The first job should finish");
+        Recorder later = new Recorder();
+        assertDoesNotThrow(() -> analysisService.analyze("token", gameID, later), "A finished job frees its slot");
+        assertTrue(later.done.await(5, TimeUnit.SECONDS), "The later job should run");
+    }
+
+    @Test
+    void negativeTestBadRequests() {
+        analysisService = new AnalysisService(gameDAO, authDAO, 1, 1, 4, 2, Duration.ofMillis(100));
+        assertThrows(UnauthorizedException.class, () -> analysisService.analyze("nope", gameID, new Recorder()),
+            "Unknown tokens can't ask for analysis");
+        assertThrows(BadRequestException.class, () -> analysisService.analyze("token", 9999, new Recorder()),
+            "Missing games can't be analyzed");
+    }
+}
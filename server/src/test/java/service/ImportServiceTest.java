@@ -0,0 +1,90 @@
+package service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringReader;
+
+import chess.Zobrist;
+import dataaccess.DataAccessException;
+import dataaccess.MemoryAuthDAO;
+import dataaccess.MemoryGameDAO;
+import dataaccess.OpeningTree;
+import dataaccess.PositionIndex;
+import dataaccess.UnauthorizedException;
+import model.AuthData;
+import model.ImportResult;
+import model.ListGameData;
+
+public class ImportServiceTest {
+
+    private MemoryGameDAO gameDAO;
+    private PositionIndex positionIndex;
+    private ImportService importService;
+
+    @BeforeEach
+    void setup() throws DataAccessException {
+        gameDAO = new MemoryGameDAO();
+        MemoryAuthDAO authDAO = new MemoryAuthDAO();
+        authDAO.createAuth(new AuthData("token", "importer"));
+        positionIndex = new PositionIndex();
+        importService = new ImportService(gameDAO, authDAO, positionIndex, new OpeningTree(), 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        importService.close();
+    }
+
+    @Test
+    void positiveTestImportsManyChunks() throws Exception {
+        int count = ImportService.CHUNK_SIZE * 3 + 7;
+        StringBuilder pgn = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            pgn.append("[White \"W").append(i).append("\"]\n[Black \"B\"]\n\n1. e4 e5 2. Nf3 Nc6 1/2-1/2\n\n");
+        }
+        // One broken game in the middle, found on its own line
+        pgn.append("[White \"Bad\"]\n\n1. e4 e4 0-1\n");
+
+        ImportResult result = importService.importPgn("token", new StringReader(pgn.toString()));
+        assertEquals(count, result.imported(), "Every good game should be imported");
+        assertEquals(1, result.failed(), "The bad game should fail");
+        assertEquals(count * 5L + 1, result.errors().get(0).line(), "The error should point at the game's first line");
+        assertEquals(count, gameDAO.listGames().size(), "Imported games should be stored");
+
+        ListGameData first = gameDAO.listGames().stream().filter(g -> g.gameName().equals("W0 vs B")).findFirst().orElseThrow();
+        assertTrue(gameDAO.getGame(first.gameID()).game().isGameOver(), "A drawn game should be over");
+        assertEquals("1/2-1/2", gameDAO.getGame(first.gameID()).game().getResult(), "The PGN result should be kept");
+        assertNull(first.whiteUsername(), "PGN players aren't users, so seats stay open");
+        assertEquals(count, positionIndex.count(Zobrist.hash(gameDAO.getGame(first.gameID()).game())),
+            "Every imported game should be indexed at its last position");
+    }
+
+    @Test
+    void negativeTestIndexFailureStillImports() throws Exception {
+        importService.close();
+        PositionIndex failing = new PositionIndex() {
+            @Override
+            public void addGame(int gameID, long[] hashes) {
+                throw new IllegalStateException("index is broken");
+            }
+        };
+        MemoryAuthDAO authDAO = new MemoryAuthDAO();
+        authDAO.createAuth(new AuthData("token", "importer"));
+        importService = new ImportService(gameDAO, authDAO, failing, new OpeningTree(), 2);
+
+        ImportResult result = importService.importPgn("token",
+            new StringReader("[White \"A\"]\n\n1. e4 e5 1-0\n\n[White \"B\"]\n\n1. d4 d5 0-1\n"));
+        assertEquals(2, result.imported(), "Games stored before the index failed should count as imported");
+        assertEquals(0, result.failed(), "An index failure shouldn't be reported as a failed game");
+        assertEquals(2, gameDAO.listGames().size(), "Both games should be stored");
+    }
+
+    @Test
+    void negativeTestImportNeedsAuth() {
+        assertThrows(UnauthorizedException.class, () -> importService.importPgn("nope", new StringReader("")),
+            "Importing needs a valid token");
+    }
+}
@@ -0,0 +1,119 @@
+package tracing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+public class TracerTest {
+
+    @BeforeEach
+    void setUp() {
+        TraceSummary.reset();
+    }
+
+    @AfterEach
+    void tearDown() {
+        Tracer.setSampleRate(0);
+        TraceSummary.reset();
+    }
+
+    private static List<String> paths() {
+        return TraceSummary.collapsed().lines().map(line -> line.substring(0, line.lastIndexOf(' '))).toList();
+    }
+
+    @Test
+    void positiveTestOffByDefault() {
+        assertEquals(0.0, Tracer.getSampleRate(), "Tracing should start off");
+        try (Span root = Tracer.startTrace("request")) {
+            assertSame(Span.noop(), root, "No trace should start while sampling is off");
+            assertSame(Span.noop(), Tracer.span("stage"), "Spans outside a trace should be the no-op span");
+        }
+        assertTrue(paths().isEmpty(), "Nothing should be recorded while sampling is off");
+    }
+
+    @Test
+    void positiveTestSpansNest() {
+        Tracer.setSampleRate(1);
+        try (Span root = Tracer.startTrace("request")) {
+            try (Span service = Tracer.span("service")) {
+                assertSame(root, service.parent, "A span should be a child of the open span");
+                try (Span dao = Tracer.span("dao")) {
+                    assertSame(service, dao.parent, "Spans should nest as deep as they are opened");
+                }
+                try (Span nested = Tracer.startTrace("nested")) {
+                    assertSame(service, nested.parent, "startTrace inside a trace should just be a child span");
+                }
+            }
+            try (Span view = Tracer.span("view")) {
+                assertSame(root, view.parent, "Closing a span should make its parent current again");
+            }
+            root.rename("GET /game");
+            assertEquals(2, root.children().size(), "The root should have both of its direct children");
+        }
+
+        assertSame(Span.noop(), Tracer.span("after"), "Closing the root should end the trace");
+        assertEquals(List.of("GET /game", "GET /game;service", "GET /game;service;dao", "GET /game;service;nested",
+            "GET /game;view"), paths(), "Every span should be recorded under its call path, with the root renamed");
+    }
+
+    @Test
+    void positiveTestSelfTimeExcludesChildren() throws Exception {
+        Tracer.setSampleRate(1);
+        Span root = Tracer.startTrace("request");
+        try (Span child = Tracer.span("child")) {
+            Thread.sleep(20);
+        }
+        root.close();
+
+        assertTrue(root.durationNanos() >= root.children().get(0).durationNanos(),
+            "A span should last at least as long as its children");
+        long rootSelfMicros = Long.parseLong(TraceSummary.collapsed().lines().filter(line -> line.startsWith("request "))
+            .findFirst().orElseThrow().split(" ")[1]);
+        assertTrue(rootSelfMicros < 20_000, "The child's time shouldn't count as the root's own time");
+    }
+
+    @Test
+    void positiveTestSampling() {
+        Tracer.setSampleRate(0.25);
+        int sampled = 0;
+        for (int i = 0; i < 4000; i++) {
+            try (Span root = Tracer.startTrace("request"); Span stage = Tracer.span("stage")) {
+                if (root != Span.noop()) {
+                    sampled++;
+                    assertNotSame(Span.noop(), stage, "Every span in a sampled trace should be kept");
+                } else {
+                    assertSame(Span.noop(), stage, "Nothing in an unsampled trace should be kept");
+                }
+            }
+        }
+        // 1000 expected, this is more than 6 standard deviations either way
+        assertTrue(sampled > 800 && sampled < 1200, "About a quarter of traces should be sampled, got " + sampled);
+    }
+
+    @Test
+    void negativeTestOutOfOrderClose() {
+        Tracer.setSampleRate(1);
+        Span root = Tracer.startTrace("request");
+        Span child = Tracer.span("child");
+        root.close();
+        Span grandchild = Tracer.span("grandchild");
+        assertSame(child, grandchild.parent, "Closing a parent early shouldn't change the open span");
+
+        Span.noop().close();
+        grandchild.close();
+        assertTrue(paths().isEmpty(), "The trace shouldn't be recorded while a span is still open");
+        child.close();
+        assertSame(Span.noop(), Tracer.span("after"), "Closing the last open span should end the trace");
+        assertEquals(List.of("request", "request;child", "request;child;grandchild"), paths(),
+            "The trace should be recorded once its last span closes");
+    }
+
+    @Test
+    void negativeTestBadSampleRate() {
+        assertThrows(IllegalArgumentException.class, () -> Tracer.setSampleRate(-0.1), "A negative rate should be rejected");
+        assertThrows(IllegalArgumentException.class, () -> Tracer.setSampleRate(1.5), "A rate over 1 should be rejected");
+    }
+}
@@ -0,0 +1,102 @@
+package websocket;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import chess.ChessMove;
+import chess.ChessPiece.PieceType;
+import chess.ChessPosition;
+import dataaccess.BadRequestException;
+import serialization.Serializer;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.UserGameCommand;
+import websocket.commands.UserGameCommand.CommandType;
+
+public class CommandDecoderTest {
+
+    private final CommandDecoder decoder = new CommandDecoder();
+
+    @Test
+    void positiveTestConnect() throws Exception {
+        UserGameCommand command = decoder.decode("{\"commandType\":\"CONNECT\",\"authToken\":\"token\",\"gameID\":7}");
+        assertEquals(new UserGameCommand(CommandType.CONNECT, "token", 7), command, "CONNECT should be read");
+        assertFalse(command instanceof MakeMoveCommand, "Only MAKE_MOVE should be a MakeMoveCommand");
+    }
+
+    @Test
+    void positiveTestMakeMove() throws Exception {
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        String json = Serializer.GSON.toJson(new MakeMoveCommand("token", 7, move));
+
+        UserGameCommand command = decoder.decode(json);
+        assertInstanceOf(MakeMoveCommand.class, command, "MAKE_MOVE should be a MakeMoveCommand");
+        assertEquals(move, ((MakeMoveCommand) command).getMove(), "The move should be read");
+        assertNull(((MakeMoveCommand) command).getMove().getPromotionPiece(), "A plain move has no promotion");
+        assertEquals("token", command.getAuthToken(), "The authToken should be read");
+        assertEquals(7, command.getGameID(), "The gameID should be read");
+    }
+
+    @Test
+    void positiveTestMakeMoveWithPromotion() throws Exception {
+        ChessMove move = new ChessMove(new ChessPosition(7, 1), new ChessPosition(8, 1), PieceType.KNIGHT);
+        String json = Serializer.GSON.toJson(new MakeMoveCommand("token", 7, move));
+
+        UserGameCommand command = decoder.decode(json);
+        assertEquals(move, ((MakeMoveCommand) command).getMove(), "A promotion should be read with the move");
+    }
+
+    @Test
+    void positiveTestFieldOrderAndUnknownFields() throws Exception {
+        String json = "{\"move\":{\"startPosition\":{\"row\":2,\"col\":5},\"endPosition\":{\"row\":4,\"col\":5}},"
+            + "\"extra\":{\"nested\":[1,2,3]},\"gameID\":7,\"note\":\"ignored\",\"authToken\":\"token\","
+            + "\"commandType\":\"MAKE_MOVE\"}";
+
+        UserGameCommand command = decoder.decode(json);
+        assertEquals(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null),
+            ((MakeMoveCommand) command).getMove(), "The move should be read before commandType and past unknown fields");
+        assertEquals(7, command.getGameID(), "Unknown fields should be skipped");
+    }
+
+    @Test
+    void negativeTestTooLarge() {
+        String padding = "x".repeat(CommandDecoder.MAX_MESSAGE_LENGTH);
+        String json = "{\"commandType\":\"CONNECT\",\"authToken\":\"" + padding + "\",\"gameID\":7}";
+
+        BadRequestException e = assertThrows(BadRequestException.class, () -> decoder.decode(json),
+            "A message over MAX_MESSAGE_LENGTH should be rejected");
+        assertEquals("Error: command is too large", e.getMessage(), "It should be rejected for its size");
+    }
+
+    @Test
+    void negativeTestBadCommandType() {
+        assertThrows(BadRequestException.class,
+            () -> decoder.decode("{\"commandType\":\"CASTLE\",\"authToken\":\"token\",\"gameID\":7}"),
+            "An unknown commandType should be rejected");
+        assertThrows(BadRequestException.class,
+            () -> decoder.decode("{\"commandType\":5,\"authToken\":\"token\",\"gameID\":7}"),
+            "A commandType that isn't a name should be rejected");
+        BadRequestException e = assertThrows(BadRequestException.class,
+            () -> decoder.decode("{\"authToken\":\"token\",\"gameID\":7}"), "A missing commandType should be rejected");
+        assertEquals("Error: missing commandType", e.getMessage(), "It should say the commandType is missing");
+    }
+
+    @Test
+    void negativeTestMakeMoveWithoutMove() {
+        assertThrows(BadRequestException.class,
+            () -> decoder.decode("{\"commandType\":\"MAKE_MOVE\",\"authToken\":\"token\",\"gameID\":7}"),
+            "MAKE_MOVE without a move should be rejected");
+        assertThrows(BadRequestException.class,
+            () -> decoder.decode("{\"commandType\":\"MAKE_MOVE\",\"authToken\":\"token\",\"gameID\":7,"
+                + "\"move\":{\"startPosition\":{\"row\":2,\"col\":5}}}"),
+            "MAKE_MOVE with half a move should be rejected");
+    }
+
+    @Test
+    void negativeTestMalformed() {
+        assertThrows(BadRequestException.class, () -> decoder.decode(""), "An empty message should be rejected");
+        assertThrows(BadRequestException.class, () -> decoder.decode("{\"commandType\":\"CONNECT\""),
+            "A truncated message should be rejected");
+        assertThrows(BadRequestException.class, () -> decoder.decode("{\"commandType\":\"CONNECT\"} {}"),
+            "Trailing content should be rejected");
+    }
+}
@@ -0,0 +1,247 @@
+package websocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.core.CoreSession;
+import org.eclipse.jetty.websocket.core.ExtensionConfig;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
+import org.eclipse.jetty.websocket.core.WebSocketComponents;
+import org.eclipse.jetty.websocket.core.exception.BadPayloadException;
+import org.eclipse.jetty.websocket.core.exception.MessageTooLargeException;
+
+public class ThresholdDeflateExtensionTest {
+
+    private static final WebSocketComponents COMPONENTS = new WebSocketComponents();
+
+    // A board sized message that compresses well
+    private static final String BIG = "{\"serverMessageType\":\"LOAD_GAME\",\"game\":\"" + "rnbqkbnrpppppppp".repeat(64) + "\"}";
+    private static final String SMALL = "{\"serverMessageType\":\"NOTIFICATION\"}";
+
+    // One end of a connection, remembering every frame it passes on in either direction
+    private static class End {
+        final ThresholdDeflateExtension extension = new ThresholdDeflateExtension();
+        final List<Frame> sent = new ArrayList<>();
+        final List<Frame> received = new ArrayList<>();
+        final List<Throwable> failures = new ArrayList<>();
+        final CoreSession.Empty session = new CoreSession.Empty();
+
+        End(String offer) {
+            extension.init(ExtensionConfig.parse(offer), COMPONENTS);
+            extension.setCoreSession(session);
+            extension.setNextOutgoingFrames((frame, callback, batch) -> {
+                sent.add(frame);
+                callback.succeeded();
+            });
+            extension.setNextIncomingFrames((frame, callback) -> {
+                received.add(frame);
+                callback.succeeded();
+            });
+        }
+
+        void send(Frame frame) {
+            extension.sendFrame(frame, Callback.NOOP, false);
+        }
+
+        void receive(Frame frame) {
+            extension.onFrame(frame, Callback.from(() -> { }, failures::add));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        ThresholdDeflateExtension.setThreshold(512);
+    }
+
+    private static Frame text(String text) {
+        return new Frame(OpCode.TEXT, true, text);
+    }
+
+    private static byte[] payload(Frame frame) {
+        if (!frame.hasPayload()) {
+            return new byte[0];
+        }
+        ByteBuffer buffer = frame.getPayload().slice();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static String joined(List<Frame> frames) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Frame frame : frames) {
+            out.writeBytes(payload(frame));
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    // Sends each message from the server and reads it back through a client end
+    private static void assertRoundTrip(End server, End client, String... messages) {
+        for (String message : messages) {
+            server.send(text(message));
+            client.receive(server.sent.get(server.sent.size() - 1));
+            assertEquals(message, joined(client.received.subList(client.received.size() - 1, client.received.size())),
+                "The message should read back as it was sent");
+        }
+    }
+
+    @Test
+    void positiveTestRoundTrip() {
+        End server = new End("permessage-deflate");
+        End client = new End("permessage-deflate");
+        assertRoundTrip(server, client, BIG, BIG, "x".repeat(600));
+
+        Frame compressed = server.sent.get(0);
+        assertTrue(compressed.isRsv1(), "A big message should be marked compressed");
+        assertTrue(compressed.getPayloadLength() < BIG.length() / 4, "A board should compress well");
+        assertFalse(client.received.get(0).isRsv1(), "The inflated message shouldn't keep RSV1");
+
+        // And the other way, a client message read by the server
+        client.send(text(BIG));
+        server.receive(client.sent.get(0));
+        assertEquals(BIG, joined(server.received), "The server should inflate what a client sends");
+        assertTrue(server.failures.isEmpty(), "Nothing should fail");
+    }
+
+    @Test
+    void positiveTestBelowThresholdSkips() {
+        End server = new End("permessage-deflate");
+        End client = new End("permessage-deflate");
+        server.send(text(SMALL));
+        assertFalse(server.sent.get(0).isRsv1(), "A small message should be sent uncompressed");
+        assertEquals(SMALL, joined(server.sent), "A small message should be sent as is");
+
+        // Uncompressed messages pass straight through, in between compressed ones
+        assertRoundTrip(server, client, BIG, SMALL, BIG);
+
+        Frame ping = new Frame(OpCode.PING, true, "x".repeat(100));
+        ThresholdDeflateExtension.setThreshold(0);
+        server.send(ping);
+        assertSame(ping, server.sent.get(server.sent.size() - 1), "Control frames should never be compressed");
+
+        server.send(text(SMALL));
+        assertTrue(server.sent.get(server.sent.size() - 1).isRsv1(), "A threshold of 0 should compress everything");
+    }
+
+    @Test
+    void positiveTestFragmentedMessages() {
+        End server = new End("permessage-deflate");
+        End client = new End("permessage-deflate");
+        ThresholdDeflateExtension.setThreshold(Integer.MAX_VALUE);
+        String[] parts = {"{\"game\":\"", "rnbqkbnr".repeat(40), "\"}"};
+        server.send(new Frame(OpCode.TEXT, false, parts[0]));
+        server.send(new Frame(OpCode.CONTINUATION, false, parts[1]));
+        server.send(new Frame(OpCode.CONTINUATION, true, parts[2]));
+
+        assertEquals(3, server.sent.size(), "Each fragment should go out as one frame");
+        assertTrue(server.sent.get(0).isRsv1(), "A fragmented message should be compressed whatever its size");
+        assertFalse(server.sent.get(1).isRsv1() || server.sent.get(2).isRsv1(), "Only the first frame carries RSV1");
+        assertEquals(OpCode.CONTINUATION, server.sent.get(2).getOpCode(), "Fragments should keep their opcodes");
+        assertTrue(server.sent.get(2).isFin(), "The last fragment should still end the message");
+
+        for (Frame frame : server.sent) {
+            client.receive(frame);
+        }
+        assertEquals(String.join("", parts), joined(client.received), "The fragments should inflate to the message");
+
+        // A compressed message can follow, the stream carries on
+        client.received.clear();
+        assertRoundTrip(server, client, BIG);
+        assertTrue(client.failures.isEmpty(), "Nothing should fail");
+    }
+
+    @Test
+    void positiveTestContextTakeover() {
+        End server = new End("permessage-deflate");
+        End client = new End("permessage-deflate");
+        assertRoundTrip(server, client, BIG, BIG);
+        assertTrue(server.sent.get(1).getPayloadLength() < server.sent.get(0).getPayloadLength(),
+            "The second copy should refer back to the first when the window is kept");
+        assertNull(server.extension.getConfig().getParameter("server_no_context_takeover", null),
+            "Context takeover is the default");
+    }
+
+    @Test
+    void positiveTestServerNoContextTakeover() {
+        End server = new End("permessage-deflate; server_no_context_takeover");
+        End client = new End("permessage-deflate");
+        assertRoundTrip(server, client, BIG, BIG, BIG);
+        assertArrayEquals(payload(server.sent.get(0)), payload(server.sent.get(1)),
+            "Without context takeover each message should compress on its own");
+        assertTrue(server.extension.getConfig().getParameterKeys().contains("server_no_context_takeover"),
+            "The reply should agree to server_no_context_takeover");
+    }
+
+    @Test
+    void positiveTestSupportedOffers() {
+        List<ExtensionConfig> offers = ExtensionConfig.parseList(
+            "permessage-deflate; server_max_window_bits=10, permessage-deflate; server_max_window_bits=15",
+            "permessage-deflate; server_max_window_bits=nine, x-webkit-deflate-frame, permessage-deflate");
+        List<String> kept = ThresholdDeflateExtension.supportedOffers(offers).stream()
+            .map(ExtensionConfig::getParameterizedName).toList();
+        assertEquals(List.of("permessage-deflate;server_max_window_bits=15", "x-webkit-deflate-frame",
+            "permessage-deflate"), kept, "Only deflate offers limiting the server's window should be dropped");
+    }
+
+    @Test
+    void negativeTestSmallWindowNeverCompresses() {
+        End server = new End("permessage-deflate; server_max_window_bits=10");
+        assertEquals(8, server.extension.getConfig().getParameter("server_max_window_bits", 0),
+            "The reply should keep within the offered window");
+        server.send(text(BIG));
+        assertFalse(server.sent.get(0).isRsv1(), "Nothing should be compressed with a window java.util.zip can't use");
+        assertEquals(BIG, joined(server.sent), "The message should go out as is");
+
+        End full = new End("permessage-deflate; server_max_window_bits=15");
+        full.send(text(BIG));
+        assertTrue(full.sent.get(0).isRsv1(), "A 15 bit window is the one the deflater uses");
+    }
+
+    @Test
+    void negativeTestOversizedInflate() {
+        End server = new End("permessage-deflate");
+        End client = new End("permessage-deflate");
+        server.session.setMaxTextMessageSize(1000);
+        client.send(text(BIG));
+        assertTrue(client.sent.get(0).getPayloadLength() < 1000, "The compressed message should be under the limit");
+
+        server.receive(client.sent.get(0));
+        assertTrue(server.received.isEmpty(), "A message that inflates past the limit shouldn't be passed on");
+        assertEquals(1, server.failures.size(), "The frame should fail");
+        assertInstanceOf(MessageTooLargeException.class, server.failures.get(0), "The failure should be the size");
+    }
+
+    @Test
+    void negativeTestOversizedFragments() {
+        End server = new End("permessage-deflate");
+        End client = new End("permessage-deflate");
+        server.session.setMaxTextMessageSize(BIG.length() + 10);
+        client.send(new Frame(OpCode.TEXT, false, BIG));
+        client.send(new Frame(OpCode.CONTINUATION, true, BIG));
+
+        server.receive(client.sent.get(0));
+        assertTrue(server.failures.isEmpty(), "The first fragment is still under the limit");
+        server.receive(client.sent.get(1));
+        assertInstanceOf(MessageTooLargeException.class, server.failures.get(0),
+            "The limit should count the whole message, not each fragment");
+    }
+
+    @Test
+    void negativeTestBadPayload() {
+        End server = new End("permessage-deflate");
+        Frame garbage = new Frame(OpCode.TEXT, true, ByteBuffer.wrap(new byte[] {(byte) 0xFF, 0x12, 0x34}));
+        garbage.setRsv1(true);
+        server.receive(garbage);
+        assertInstanceOf(BadPayloadException.class, server.failures.get(0), "Data that isn't deflate should fail");
+        assertTrue(server.received.isEmpty(), "Nothing should be passed on");
+    }
+}
@@ -15,6 +15,17 @@ public class ChessBoard {
 
     }
 
+    /**
+     * Copies another board. Pieces never change once made, so the copy shares them and only the rows are new.
+     *
+     * @param other the board to copy
+     */
+    public ChessBoard(ChessBoard other) {
+        for (int row = 0; row < 8; row++) {
+            squares[row] = other.squares[row].clone();
+        }
+    }
+
     /**
      * Adds a chess piece to the chessboard
      *
@@ -1,5 +1,6 @@
 package chess;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.ArrayList;
@@ -24,6 +25,26 @@ public class ChessGame {
     private Map<ChessGame.TeamColor, Collection<ChessPosition>> teamPieces;
     private Map<ChessGame.TeamColor, ChessPosition> kingPieces;
 
+    /* The number of halfmoves without a capture or pawn move after which the game is drawn */
+    public static final int FIFTY_MOVE_HALFMOVES = 100;
+
+    /* Repetition and the fifty-move rule: the Zobrist key of the current position, the halfmoves since the last
+       capture or pawn move, and the keys of every position since then, oldest first. No position from before a
+       capture or pawn move can come back, so only that stretch is kept and searched. Transient because they are
+       not part of the game clients are sent; the stores save the clock and history through Serializer.STORAGE. */
+    private transient long positionHash;
+    private transient int halfmoveClock;
+    private transient long[] history = new long[16];
+    private transient int historySize;
+    /* Off when replaying a recorded game, which may have played on past a draw nobody claimed */
+    private transient boolean automaticDraws = true;
+    /* The PGN result once something other than the board has decided the game: a resignation, a draw by rule or a
+       recorded game's result. Mate and stalemate are read off the board. Transient like the history. */
+    private transient String result;
+
+    /* The starting position, built once and never handed out, newGame() copies it */
+    private static final ChessGame INITIAL = new ChessGame();
+
     public ChessGame() {
         this.teamTurn = TeamColor.WHITE;
         this.board = new ChessBoard();
@@ -41,9 +62,62 @@ public class ChessGame {
 
         this.board.resetBoard();
         setTeamPieces();
+        resetHistory(0);
+    }
+
+    /**
+     * Rebuilds a game from previously saved state (used by the serializers). If the piece lists are missing they
+     * are recomputed from the board.
+     */
+    public ChessGame(TeamColor teamTurn, ChessBoard board, Boolean gameOver,
+                     Map<ChessGame.TeamColor, Collection<ChessPosition>> teamPieces,
+                     Map<ChessGame.TeamColor, ChessPosition> kingPieces) {
+        this.teamTurn = teamTurn;
+        this.board = board;
+        this.gameOver = gameOver;
+
+        if (teamPieces == null || kingPieces == null) {
+            setTeamPieces();
+        } else {
+            this.teamPieces = teamPieces;
+            this.kingPieces = kingPieces;
+        }
+        resetHistory(0);
+    }
+
+    /* Copies another game, used by newGame() so new games skip resetBoard and setTeamPieces */
+    private ChessGame(ChessGame other) {
+        this.teamTurn = other.teamTurn;
+        this.board = new ChessBoard(other.board);
+        this.gameOver = other.gameOver;
+        this.teamPieces = copyPiecesFunction(other.teamPieces);
+        this.kingPieces = copyKingsFunction(other.kingPieces);
+        this.positionHash = other.positionHash;
+        this.halfmoveClock = other.halfmoveClock;
+        this.history = Arrays.copyOf(other.history, other.history.length);
+        this.historySize = other.historySize;
+        this.automaticDraws = other.automaticDraws;
+        this.result = other.result;
+    }
+
+    /**
+     * A game at the starting position. Same as new ChessGame(), but copied from a game that was set up once
+     * instead of placing every piece and finding them again each time.
+     *
+     * @return a new game that the caller owns
+     */
+    public static ChessGame newGame() {
+        return new ChessGame(INITIAL);
     }
 
-    
+    /**
+     * A deep copy, for stores that keep games in memory and mustn't hand out (or keep) one a caller can change
+     *
+     * @return a new game that the caller owns
+     */
+    public ChessGame copy() {
+        return new ChessGame(this);
+    }
 
     @Override
     public int hashCode() {
@@ -115,6 +189,7 @@ public class ChessGame {
     public void setTeamTurn(TeamColor team) {
         /* change the team color */
         this.teamTurn = team;
+        resetHistory(0);
 
         if(isInCheckmate(this.teamTurn) || isInStalemate(this.teamTurn)) {
             this.gameOver = true;
@@ -247,6 +322,8 @@ public class ChessGame {
             opTeam = TeamColor.WHITE;
         }
 
+        /* Remember what was taken, if anything, for the position key and the halfmove clock */
+        ChessPiece captured = this.board.getPiece(move.getEndPosition());
  
         if (this.board.getPiece(move.getEndPosition()) == null) {
             /* Change the position of the pieces in the player's list */
@@ -270,14 +347,122 @@ public class ChessGame {
         }
 
         this.board.addPiece(move.getStartPosition(), null);
+        ChessPiece placed = piece;
         if (move.getPromotionPiece() != null) {
-            this.board.addPiece(move.getEndPosition(), new ChessPiece(this.teamTurn, move.getPromotionPiece()));
-        } else {
-            this.board.addPiece(move.getEndPosition(), piece);    
+            placed = new ChessPiece(this.teamTurn, move.getPromotionPiece());
         }
+        this.board.addPiece(move.getEndPosition(), placed);
         
         this.teamTurn = opTeam;
 
+        recordPosition(move, piece, captured, placed);
+    }
+
+    /* Updates the position key for a move that has just been made, a few XORs rather than hashing the whole
+       board, then the clock and history, and ends the game if that makes it a draw */
+    private void recordPosition(ChessMove move, ChessPiece piece, ChessPiece captured, ChessPiece placed) {
+        int from = squareOf(move.getStartPosition());
+        int to = squareOf(move.getEndPosition());
+        this.positionHash ^= Zobrist.key(piece, from) ^ Zobrist.key(placed, to) ^ Zobrist.blackToMove();
+        if (captured != null) {
+            this.positionHash ^= Zobrist.key(captured, to);
+        }
+
+        if (captured != null || piece.getPieceType() == PieceType.PAWN) {
+            /* Nothing before this move can be repeated */
+            this.halfmoveClock = 0;
+            this.historySize = 0;
+        } else {
+            this.halfmoveClock++;
+        }
+        if (this.historySize == this.history.length) {
+            this.history = Arrays.copyOf(this.history, this.historySize * 2);
+        }
+        this.history[this.historySize++] = this.positionHash;
+
+        if (this.automaticDraws && (isDrawByFiftyMoveRule() || isDrawByRepetition())) {
+            this.gameOver = true;
+            this.result = "1/2-1/2";
+        }
+    }
+
+    /* Starts the history over at the current position */
+    private void resetHistory(int halfmoveClock) {
+        this.positionHash = Zobrist.hash(this.board, this.teamTurn);
+        this.halfmoveClock = halfmoveClock;
+        this.history[0] = this.positionHash;
+        this.historySize = 1;
+    }
+
+    private static int squareOf(ChessPosition position) {
+        return (position.getRow() - 1) * 8 + position.getColumn() - 1;
+    }
+
+    /**
+     * Determines if the current position has now come up three times, with the same side to move each time.
+     * Only positions since the last capture or pawn move are looked at, and only every other one of those since
+     * the side to move has to match.
+     *
+     * @return True if the game is drawn by threefold repetition
+     */
+    public boolean isDrawByRepetition() {
+        int count = 1;
+        /* The same position with the same side to move can come back four halfmoves later at the earliest */
+        for (int i = this.historySize - 5; i >= 0; i -= 2) {
+            if (this.history[i] == this.positionHash && ++count == 3) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if there have been FIFTY_MOVE_HALFMOVES halfmoves without a capture or pawn move
+     */
+    public boolean isDrawByFiftyMoveRule() {
+        return this.halfmoveClock >= FIFTY_MOVE_HALFMOVES;
+    }
+
+    /**
+     * @return the number of halfmoves since the last capture or pawn move
+     */
+    public int getHalfmoveClock() {
+        return this.halfmoveClock;
+    }
+
+    /**
+     * @return the Zobrist key of the current position, kept up to date move by move
+     */
+    public long getPositionHash() {
+        return this.positionHash;
+    }
+
+    /**
+     * @return the Zobrist keys of the positions since the last capture or pawn move, oldest first and ending with
+     * the current one
+     */
+    public long[] getPositionHistory() {
+        return Arrays.copyOf(this.history, this.historySize);
+    }
+
+    /**
+     * Puts back a saved halfmove clock and position history (used by the serializers). If the history is missing
+     * or doesn't end at the current position, it starts over from the current position.
+     */
+    public void restoreHistory(int halfmoveClock, long[] positions) {
+        resetHistory(Math.max(halfmoveClock, 0));
+        if (positions != null && positions.length > 0 && positions[positions.length - 1] == this.positionHash) {
+            this.history = Arrays.copyOf(positions, Math.max(positions.length * 2, 16));
+            this.historySize = positions.length;
+        }
+    }
+
+    /**
+     * Whether a draw by repetition or the fifty-move rule ends the game as soon as it happens, which is the
+     * default. Turned off for replaying recorded games, which may have played on past a draw nobody claimed.
+     */
+    public void setAutomaticDraws(boolean automaticDraws) {
+        this.automaticDraws = automaticDraws;
     }
 
     /**
@@ -380,6 +565,7 @@ public class ChessGame {
         this.board.squares = new ChessPiece[8][8];
         this.board = board;
         setTeamPieces();
+        resetHistory(0);
     }
 
         /**
@@ -489,7 +675,58 @@ public class ChessGame {
         this.gameOver = true;
     }
 
+    /**
+     * Ends the game with the given team resigning
+     */
+    public void resign(TeamColor team) {
+        setResult(team == TeamColor.WHITE ? "0-1" : "1-0");
+    }
+
+    /**
+     * Ends the game with a result decided off the board, such as a recorded game's
+     *
+     * @param result 1-0, 0-1 or 1/2-1/2
+     */
+    public void setResult(String result) {
+        if (!result.equals("1-0") && !result.equals("0-1") && !result.equals("1/2-1/2")) {
+            throw new IllegalArgumentException("Not a decided PGN result: " + result);
+        }
+        this.result = result;
+        this.gameOver = true;
+    }
+
+    /**
+     * @return the PGN result: 1-0, 0-1 or 1/2-1/2 once the game is decided, otherwise *. A game ended with the
+     * plain resign() and nothing else to go on is *.
+     */
+    public String getResult() {
+        if (this.result != null) {
+            return this.result;
+        }
+        if (isInCheckmate(this.teamTurn)) {
+            return this.teamTurn == TeamColor.WHITE ? "0-1" : "1-0";
+        }
+        if (isInStalemate(this.teamTurn)) {
+            return "1/2-1/2";
+        }
+        return "*";
+    }
+
     public Boolean isGameOver() {
         return this.gameOver;
     }
+
+    /**
+     * @return the positions of each team's pieces, keyed by team
+     */
+    public Map<ChessGame.TeamColor, Collection<ChessPosition>> getTeamPieces() {
+        return this.teamPieces;
+    }
+
+    /**
+     * @return the position of each team's king, keyed by team
+     */
+    public Map<ChessGame.TeamColor, ChessPosition> getKingPieces() {
+        return this.kingPieces;
+    }
 }
@@ -0,0 +1,64 @@
+package chess;
+
+import java.util.SplittableRandom;
+
+/**
+ * 64-bit Zobrist keys for positions: one random number per piece and square XORed together, plus one more when
+ * black is to move. Two positions with the same pieces on the same squares and the same side to move always get
+ * the same key, and a move changes the key by XORing out the squares it left and in the ones it filled.
+ * <p>
+ * The seed is fixed, so keys are the same in every run and can be stored. These are the only keys: the engine's
+ * Position hashes with them too, so a position has the same key in the search, in ChessGame and in the indexes.
+ */
+public final class Zobrist {
+
+    // [color][type ordinal][row * 8 + col], rows and columns from 0
+    private static final long[][][] PIECE_KEYS = new long[2][ChessPiece.PieceType.values().length][64];
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x2B0B_C4E55L);
+        for (long[][] colorKeys : PIECE_KEYS) {
+            for (long[] keys : colorKeys) {
+                for (int square = 0; square < 64; square++) {
+                    keys[square] = random.nextLong();
+                }
+            }
+        }
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {}
+
+    public static long hash(ChessGame game) {
+        return hash(game.getBoard(), game.getTeamTurn());
+    }
+
+    public static long hash(ChessBoard board, ChessGame.TeamColor toMove) {
+        long hash = toMove == ChessGame.TeamColor.BLACK ? BLACK_TO_MOVE : 0;
+        for (int row = 0; row < 8; row++) {
+            ChessPiece[] rank = board.squares[row];
+            for (int col = 0; col < 8; col++) {
+                if (rank[col] != null) {
+                    hash ^= key(rank[col], row * 8 + col);
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * The key for a piece on a square, with square = (row - 1) * 8 + (column - 1)
+     */
+    public static long key(ChessPiece piece, int square) {
+        return key(piece.getTeamColor(), piece.getPieceType(), square);
+    }
+
+    public static long key(ChessGame.TeamColor color, ChessPiece.PieceType type, int square) {
+        return PIECE_KEYS[color.ordinal()][type.ordinal()][square];
+    }
+
+    public static long blackToMove() {
+        return BLACK_TO_MOVE;
+    }
+}
@@ -0,0 +1,158 @@
+package engine;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import chess.ChessGame;
+
+/**
+ * Picks a move for whoever is to move in a ChessGame. Each call works on its own copy of the position, and the
+ * only thing calls share is a TranspositionTable, which is safe to use from any number of threads at once.
+ * <p>
+ * The budget is a hard limit: the search stops within a few hundred microseconds of it, and gives up early when
+ * the next depth clearly can't finish in the time left.
+ * <p>
+ * With more than one thread the search is Lazy SMP: every thread searches the whole tree on its own copy of the
+ * position, and they speed each other up only through the table, each finding entries the others left. The
+ * calling thread's search decides the move and the others are stopped as soon as it's done. The helpers run on
+ * an executor the caller can pass in, so a server can keep them on its own bounded threads; without one they run
+ * on a shared pool of daemon threads.
+ */
+public final class Engine {
+    private static final ExecutorService HELPERS = Executors.newCachedThreadPool(daemonThreads());
+
+    private Engine() {}
+
+    public static SearchResult search(ChessGame game, Duration budget) {
+        return search(game, budget, Search.MAX_DEPTH, null);
+    }
+
+    /**
+     * @param maxDepth stop after this many plies even if there is time left, at least 1
+     * @param onDepth called with the best move so far after each depth completes, may be null
+     */
+    public static SearchResult search(ChessGame game, Duration budget, int maxDepth, Consumer<SearchResult> onDepth) {
+        return search(game, budget, maxDepth, onDepth, TranspositionTable.shared());
+    }
+
+    /**
+     * @param table where results are remembered between calls, the shared one unless a caller wants its own
+     */
+    public static SearchResult search(ChessGame game, Duration budget, int maxDepth, Consumer<SearchResult> onDepth,
+                                      TranspositionTable table) {
+        return search(game, budget, maxDepth, onDepth, table, 1);
+    }
+
+    /**
+     * @param threads how many threads to search with, the calling thread included. The result's node count covers
+     * all of them, the counts passed to onDepth only the calling thread's.
+     */
+    public static SearchResult search(ChessGame game, Duration budget, int maxDepth, Consumer<SearchResult> onDepth,
+                                      TranspositionTable table, int threads) {
+        return search(game, budget, maxDepth, onDepth, table, threads, HELPERS);
+    }
+
+    /**
+     * @param helpers runs the threads - 1 helper searches. It should have room for all of them at once, a helper
+     * that only starts after the calling thread has finished just stops again.
+     */
+    public static SearchResult search(ChessGame game, Duration budget, int maxDepth, Consumer<SearchResult> onDepth,
+                                      TranspositionTable table, int threads, ExecutorService helpers) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Search needs at least one thread, got " + threads);
+        }
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Search needs a depth of at least one ply, got " + maxDepth);
+        }
+        table.newSearch();
+        long budgetNanos = budget.toNanos();
+        AtomicBoolean stop = new AtomicBoolean();
+        Search main = new Search(Position.from(game), budgetNanos, table, stop, 0);
+        if (threads == 1) {
+            return main.run(maxDepth, onDepth);
+        }
+
+        List<Search> searches = new ArrayList<>();
+        List<Future<?>> running = new ArrayList<>();
+        SearchResult result;
+        try {
+            for (int helper = 1; helper < threads; helper++) {
+                Search search = new Search(Position.from(game), budgetNanos, table, stop, helper);
+                searches.add(search);
+                running.add(helpers.submit(() -> search.run(maxDepth, null)));
+            }
+            result = main.run(maxDepth, onDepth);
+        } finally {
+            stop.set(true);
+            awaitAll(running);
+        }
+        long nodes = main.nodes();
+        for (Search helper : searches) {
+            nodes += helper.nodes();
+        }
+        return new SearchResult(result.bestMove(), result.score(), result.depth(), nodes, result.elapsedNanos());
+    }
+
+    /**
+     * Times a search to a fixed depth on one thread and then on the given number, each with a fresh table of the
+     * given size, so a deployment can see what extra cores are buying before it configures them.
+     */
+    public static Speedup measureSpeedup(ChessGame game, int depth, int threads, int tableMegabytes) {
+        Duration unlimited = Duration.ofHours(1);
+        long start = System.nanoTime();
+        SearchResult single = search(game, unlimited, depth, null, new TranspositionTable(tableMegabytes), 1);
+        long singleNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        SearchResult parallel = search(game, unlimited, depth, null, new TranspositionTable(tableMegabytes), threads);
+        long parallelNanos = System.nanoTime() - start;
+        return new Speedup(threads, depth, singleNanos, parallelNanos, single.nodes(), parallel.nodes());
+    }
+
+    /**
+     * @param threads threads in the parallel run
+     * @param depth the depth both runs searched to
+     * @param singleNanos time to depth on one thread
+     * @param parallelNanos time to depth on all threads
+     * @param singleNodes nodes searched on one thread
+     * @param parallelNodes nodes searched across all threads
+     */
+    public record Speedup(int threads, int depth, long singleNanos, long parallelNanos, long singleNodes,
+                          long parallelNodes) {
+
+        public double speedup() {
+            return parallelNanos == 0 ? 0 : (double) singleNanos / parallelNanos;
+        }
+    }
+
+    private static void awaitAll(List<Future<?>> running) {
+        for (Future<?> future : running) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search helper failed", e.getCause());
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, "engine-helper-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
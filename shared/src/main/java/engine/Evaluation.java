@@ -0,0 +1,132 @@
+package engine;
+
+/**
+ * Material plus piece-square tables. Position keeps the sums up to date as moves are made, so evaluating a node is
+ * a blend of two numbers rather than a walk over the board.
+ * <p>
+ * The king has a middlegame table (stay home) and an endgame table (come to the centre), blended by how much
+ * material is left. The other tables are the same in both. Tables are written the way a board is drawn from
+ * white's side, rank 8 on top, and mirrored for black.
+ */
+final class Evaluation {
+    // Indexed by piece type, 0 for none
+    static final int[] VALUE = {0, 100, 320, 330, 500, 900, 0};
+    static final int[] PHASE = {0, 0, 1, 1, 2, 4, 0};
+    static final int MAX_PHASE = 24;
+
+    private static final int[] PAWN = {
+          0,   0,   0,   0,   0,   0,   0,   0,
+         50,  50,  50,  50,  50,  50,  50,  50,
+         10,  10,  20,  30,  30,  20,  10,  10,
+          5,   5,  10,  25,  25,  10,   5,   5,
+          0,   0,   0,  20,  20,   0,   0,   0,
+          5,  -5, -10,   0,   0, -10,  -5,   5,
+          5,  10,  10, -20, -20,  10,  10,   5,
+          0,   0,   0,   0,   0,   0,   0,   0,
+    };
+
+    private static final int[] KNIGHT = {
+        -50, -40, -30, -30, -30, -30, -40, -50,
+        -40, -20,   0,   0,   0,   0, -20, -40,
+        -30,   0,  10,  15,  15,  10,   0, -30,
+        -30,   5,  15,  20,  20,  15,   5, -30,
+        -30,   0,  15,  20,  20,  15,   0, -30,
+        -30,   5,  10,  15,  15,  10,   5, -30,
+        -40, -20,   0,   5,   5,   0, -20, -40,
+        -50, -40, -30, -30, -30, -30, -40, -50,
+    };
+
+    private static final int[] BISHOP = {
+        -20, -10, -10, -10, -10, -10, -10, -20,
+        -10,   0,   0,   0,   0,   0,   0, -10,
+        -10,   0,   5,  10,  10,   5,   0, -10,
+        -10,   5,   5,  10,  10,   5,   5, -10,
+        -10,   0,  10,  10,  10,  10,   0, -10,
+        -10,  10,  10,  10,  10,  10,  10, -10,
+        -10,   5,   0,   0,   0,   0,   5, -10,
+        -20, -10, -10, -10, -10, -10, -10, -20,
+    };
+
+    private static final int[] ROOK = {
+          0,   0,   0,   0,   0,   0,   0,   0,
+          5,  10,  10,  10,  10,  10,  10,   5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+          0,   0,   0,   5,   5,   0,   0,   0,
+    };
+
+    private static final int[] QUEEN = {
+        -20, -10, -10,  -5,  -5, -10, -10, -20,
+        -10,   0,   0,   0,   0,   0,   0, -10,
+        -10,   0,   5,   5,   5,   5,   0, -10,
+         -5,   0,   5,   5,   5,   5,   0,  -5,
+          0,   0,   5,   5,   5,   5,   0,  -5,
+        -10,   5,   5,   5,   5,   5,   0, -10,
+        -10,   0,   5,   0,   0,   0,   0, -10,
+        -20, -10, -10,  -5,  -5, -10, -10, -20,
+    };
+
+    private static final int[] KING_MIDDLEGAME = {
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -20, -30, -30, -40, -40, -30, -30, -20,
+        -10, -20, -20, -20, -20, -20, -20, -10,
+         20,  20,   0,   0,   0,   0,  20,  20,
+         20,  30,  10,   0,   0,  10,  30,  20,
+    };
+
+    private static final int[] KING_ENDGAME = {
+        -50, -40, -30, -20, -20, -30, -40, -50,
+        -30, -20, -10,   0,   0, -10, -20, -30,
+        -30, -10,  20,  30,  30,  20, -10, -30,
+        -30, -10,  30,  40,  40,  30, -10, -30,
+        -30, -10,  30,  40,  40,  30, -10, -30,
+        -30, -10,  20,  30,  30,  20, -10, -30,
+        -30, -30,   0,   0,   0,   0, -30, -30,
+        -50, -30, -30, -30, -30, -30, -30, -50,
+    };
+
+    // [piece type][square] with material included, from white's side, a1 = 0
+    private static final int[][] MIDDLEGAME = new int[7][64];
+    private static final int[][] ENDGAME = new int[7][64];
+
+    static {
+        int[][] tables = {null, PAWN, KNIGHT, BISHOP, ROOK, QUEEN, KING_MIDDLEGAME};
+        for (int type = 1; type <= 6; type++) {
+            for (int square = 0; square < 64; square++) {
+                // The tables are drawn rank 8 first, so a1 is the first entry of the last line
+                int drawn = (7 - (square >> 3)) * 8 + (square & 7);
+                MIDDLEGAME[type][square] = VALUE[type] + tables[type][drawn];
+                ENDGAME[type][square] = VALUE[type] + (type == Position.KING ? KING_ENDGAME[drawn] : tables[type][drawn]);
+            }
+        }
+    }
+
+    private Evaluation() {}
+
+    static int middlegame(int square, int piece) {
+        return piece > 0 ? MIDDLEGAME[piece][square] : -MIDDLEGAME[-piece][mirror(square)];
+    }
+
+    static int endgame(int square, int piece) {
+        return piece > 0 ? ENDGAME[piece][square] : -ENDGAME[-piece][mirror(square)];
+    }
+
+    /**
+     * @return the score in centipawns for the side to move
+     */
+    static int evaluate(Position position) {
+        int phase = Math.min(position.phase, MAX_PHASE);
+        int score = (position.middlegame * phase + position.endgame * (MAX_PHASE - phase)) / MAX_PHASE;
+        return score * position.side;
+    }
+
+    private static int mirror(int square) {
+        return square ^ 56;
+    }
+}
@@ -0,0 +1,403 @@
+package engine;
+
+import java.util.Arrays;
+
+import chess.ChessBoard;
+import chess.ChessGame;
+import chess.ChessGame.TeamColor;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPiece.PieceType;
+import chess.ChessPosition;
+import chess.Zobrist;
+
+/**
+ * The board the search works on: 64 ints instead of ChessBoard's objects, so a move is made and taken back in
+ * place without copying anything. Squares go a1 = 0, b1 = 1 .. h8 = 63, the same order as PackedGame.
+ * <p>
+ * Pieces are PAWN..KING (1..6), positive for white and negative for black. The rules are the ones ChessGame
+ * plays by: pawns push one or two from their start rank and promote to any of the four pieces, and there is no
+ * castling or en passant.
+ * <p>
+ * Moves are ints: from | to << 6 | promotion << 12 | captured << 15 | piece << 18, with piece types 1..6 and 0
+ * for none. Keeping the captured and moving piece in the move lets unmake and move ordering skip a board lookup.
+ * <p>
+ * hash is the Zobrist key of the position, one random number per piece and square XORed together plus one for
+ * black to move, kept up to date by make and unmake. The numbers are Zobrist's, so hash matches Zobrist.hash of
+ * the same ChessGame.
+ */
+final class Position {
+    static final int PAWN = 1;
+    static final int KNIGHT = 2;
+    static final int BISHOP = 3;
+    static final int ROOK = 4;
+    static final int QUEEN = 5;
+    static final int KING = 6;
+
+    static final int WHITE = 1;
+    static final int BLACK = -1;
+
+    static final int MAX_MOVES = 256;
+
+    private static final int[] KNIGHT_OFFSETS = {-2, -1, -2, 1, -1, -2, -1, 2, 1, -2, 1, 2, 2, -1, 2, 1};
+    private static final int[] KING_OFFSETS = {-1, -1, -1, 0, -1, 1, 0, -1, 0, 1, 1, -1, 1, 0, 1, 1};
+    // Row and column steps, the first four are diagonals (bishop) and the last four are straight (rook)
+    private static final int[] DIRECTIONS = {1, 1, 1, -1, -1, 1, -1, -1, 1, 0, -1, 0, 0, 1, 0, -1};
+
+    static final int[][] KNIGHT_TARGETS = new int[64][];
+    static final int[][] KING_TARGETS = new int[64][];
+    // RAYS[direction][square] is every square in that direction, nearest first
+    static final int[][][] RAYS = new int[8][64][];
+
+    // Zobrist's keys laid out as PIECE_KEYS[piece + KING][square], so make and unmake index them directly
+    private static final long[][] PIECE_KEYS = new long[2 * KING + 1][64];
+    private static final long BLACK_TO_MOVE = Zobrist.blackToMove();
+
+    static {
+        for (int type = PAWN; type <= KING; type++) {
+            for (int square = 0; square < 64; square++) {
+                PIECE_KEYS[type + KING][square] = Zobrist.key(TeamColor.WHITE, pieceType(type), square);
+                PIECE_KEYS[-type + KING][square] = Zobrist.key(TeamColor.BLACK, pieceType(type), square);
+            }
+        }
+
+        for (int square = 0; square < 64; square++) {
+            KNIGHT_TARGETS[square] = jumps(square, KNIGHT_OFFSETS);
+            KING_TARGETS[square] = jumps(square, KING_OFFSETS);
+            for (int direction = 0; direction < 8; direction++) {
+                RAYS[direction][square] = ray(square, DIRECTIONS[direction * 2], DIRECTIONS[direction * 2 + 1]);
+            }
+        }
+    }
+
+    final int[] board = new int[64];
+    int side = WHITE;
+    long hash;
+    // -1 when a side has no king, which custom boards allow
+    final int[] kings = {-1, -1};
+
+    // Incremental evaluation terms, from white's point of view
+    int middlegame;
+    int endgame;
+    int phase;
+
+    static Position from(ChessGame game) {
+        Position position = new Position();
+        ChessBoard chessBoard = game.getBoard();
+        for (int square = 0; square < 64; square++) {
+            ChessPiece piece = chessBoard.getPiece(positionOf(square));
+            if (piece != null) {
+                int type = typeOf(piece.getPieceType());
+                position.put(square, piece.getTeamColor() == TeamColor.WHITE ? type : -type);
+            }
+        }
+        if (game.getTeamTurn() == TeamColor.BLACK) {
+            position.side = BLACK;
+            position.hash ^= BLACK_TO_MOVE;
+        }
+        return position;
+    }
+
+    /**
+     * Makes a move generated for this position. Returns false (with the move already taken back) if it leaves
+     * the mover's own king attacked.
+     */
+    boolean make(int move) {
+        int from = from(move);
+        int to = to(move);
+        int mover = side;
+        int piece = board[from];
+        int captured = board[to];
+
+        if (captured != 0) {
+            remove(to, captured);
+        }
+        remove(from, piece);
+        int promotion = promotion(move);
+        put(to, promotion != 0 ? mover * promotion : piece);
+        side = -mover;
+        hash ^= BLACK_TO_MOVE;
+
+        int king = kings[kingIndex(mover)];
+        if (king >= 0 && isAttacked(king, -mover)) {
+            unmake(move);
+            return false;
+        }
+        return true;
+    }
+
+    void unmake(int move) {
+        int from = from(move);
+        int to = to(move);
+        side = -side;
+        hash ^= BLACK_TO_MOVE;
+        int mover = side;
+
+        remove(to, board[to]);
+        put(from, mover * piece(move));
+        int captured = captured(move);
+        if (captured != 0) {
+            put(to, -mover * captured);
+        }
+    }
+
+    boolean inCheck() {
+        int king = kings[kingIndex(side)];
+        return king >= 0 && isAttacked(king, -side);
+    }
+
+    /**
+     * Writes every pseudo-legal move for the side to move into moves from index start, and returns the new end.
+     * With capturesOnly only captures and promotions are generated, which is what quiescence search wants.
+     */
+    int generate(int[] moves, int start, boolean capturesOnly) {
+        int count = start;
+        for (int from = 0; from < 64; from++) {
+            int piece = board[from] * side;
+            if (piece <= 0) {
+                continue;
+            }
+            switch (piece) {
+                case PAWN -> count = pawnMoves(moves, count, from, capturesOnly);
+                case KNIGHT -> count = jumpMoves(moves, count, from, KNIGHT, KNIGHT_TARGETS[from], capturesOnly);
+                case KING -> count = jumpMoves(moves, count, from, KING, KING_TARGETS[from], capturesOnly);
+                case BISHOP -> count = slideMoves(moves, count, from, BISHOP, 0, 4, capturesOnly);
+                case ROOK -> count = slideMoves(moves, count, from, ROOK, 4, 8, capturesOnly);
+                case QUEEN -> count = slideMoves(moves, count, from, QUEEN, 0, 8, capturesOnly);
+                default -> { }
+            }
+        }
+        return count;
+    }
+
+    boolean isAttacked(int square, int by) {
+        // Pawns attack diagonally forward, so look diagonally backward from the target
+        int row = square >> 3;
+        int col = square & 7;
+        int pawnRow = row - by;
+        if (pawnRow >= 0 && pawnRow < 8) {
+            if (col > 0 && board[pawnRow * 8 + col - 1] == by * PAWN) {
+                return true;
+            }
+            if (col < 7 && board[pawnRow * 8 + col + 1] == by * PAWN) {
+                return true;
+            }
+        }
+        for (int target : KNIGHT_TARGETS[square]) {
+            if (board[target] == by * KNIGHT) {
+                return true;
+            }
+        }
+        for (int target : KING_TARGETS[square]) {
+            if (board[target] == by * KING) {
+                return true;
+            }
+        }
+        for (int direction = 0; direction < 8; direction++) {
+            int slider = direction < 4 ? BISHOP : ROOK;
+            for (int target : RAYS[direction][square]) {
+                int piece = board[target];
+                if (piece == 0) {
+                    continue;
+                }
+                if (piece == by * slider || piece == by * QUEEN) {
+                    return true;
+                }
+                break;
+            }
+        }
+        return false;
+    }
+
+    private int pawnMoves(int[] moves, int count, int from, boolean capturesOnly) {
+        int row = from >> 3;
+        int col = from & 7;
+        int nextRow = row + side;
+        if (nextRow < 0 || nextRow > 7) {
+            return count;
+        }
+        boolean promotes = nextRow == (side == WHITE ? 7 : 0);
+
+        int ahead = nextRow * 8 + col;
+        if (board[ahead] == 0) {
+            if (promotes) {
+                count = promotions(moves, count, from, ahead, 0);
+            } else if (!capturesOnly) {
+                moves[count++] = encode(from, ahead, 0, 0, PAWN);
+                int startRow = side == WHITE ? 1 : 6;
+                int twoAhead = ahead + side * 8;
+                if (row == startRow && board[twoAhead] == 0) {
+                    moves[count++] = encode(from, twoAhead, 0, 0, PAWN);
+                }
+            }
+        }
+
+        for (int step = -1; step <= 1; step += 2) {
+            int captureCol = col + step;
+            if (captureCol < 0 || captureCol > 7) {
+                continue;
+            }
+            int to = nextRow * 8 + captureCol;
+            int target = board[to] * side;
+            if (target < 0) {
+                if (promotes) {
+                    count = promotions(moves, count, from, to, -target);
+                } else {
+                    moves[count++] = encode(from, to, 0, -target, PAWN);
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int promotions(int[] moves, int count, int from, int to, int captured) {
+        moves[count++] = encode(from, to, QUEEN, captured, PAWN);
+        moves[count++] = encode(from, to, KNIGHT, captured, PAWN);
+        moves[count++] = encode(from, to, ROOK, captured, PAWN);
+        moves[count++] = encode(from, to, BISHOP, captured, PAWN);
+        return count;
+    }
+
+    private int jumpMoves(int[] moves, int count, int from, int piece, int[] targets, boolean capturesOnly) {
+        for (int to : targets) {
+            int target = board[to] * side;
+            if (target < 0) {
+                moves[count++] = encode(from, to, 0, -target, piece);
+            } else if (target == 0 && !capturesOnly) {
+                moves[count++] = encode(from, to, 0, 0, piece);
+            }
+        }
+        return count;
+    }
+
+    private int slideMoves(int[] moves, int count, int from, int piece, int firstDirection, int lastDirection,
+                           boolean capturesOnly) {
+        for (int direction = firstDirection; direction < lastDirection; direction++) {
+            for (int to : RAYS[direction][from]) {
+                int target = board[to] * side;
+                if (target == 0) {
+                    if (!capturesOnly) {
+                        moves[count++] = encode(from, to, 0, 0, piece);
+                    }
+                    continue;
+                }
+                if (target < 0) {
+                    moves[count++] = encode(from, to, 0, -target, piece);
+                }
+                break;
+            }
+        }
+        return count;
+    }
+
+    private void put(int square, int piece) {
+        board[square] = piece;
+        hash ^= PIECE_KEYS[piece + KING][square];
+        int type = Math.abs(piece);
+        if (type == KING) {
+            kings[kingIndex(Integer.signum(piece))] = square;
+        }
+        middlegame += Evaluation.middlegame(square, piece);
+        endgame += Evaluation.endgame(square, piece);
+        phase += Evaluation.PHASE[type];
+    }
+
+    private void remove(int square, int piece) {
+        board[square] = 0;
+        hash ^= PIECE_KEYS[piece + KING][square];
+        int type = Math.abs(piece);
+        if (type == KING && kings[kingIndex(Integer.signum(piece))] == square) {
+            kings[kingIndex(Integer.signum(piece))] = -1;
+        }
+        middlegame -= Evaluation.middlegame(square, piece);
+        endgame -= Evaluation.endgame(square, piece);
+        phase -= Evaluation.PHASE[type];
+    }
+
+    static int encode(int from, int to, int promotion, int captured, int piece) {
+        return from | to << 6 | promotion << 12 | captured << 15 | piece << 18;
+    }
+
+    static int from(int move) {
+        return move & 63;
+    }
+
+    static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    static int promotion(int move) {
+        return (move >>> 12) & 7;
+    }
+
+    static int captured(int move) {
+        return (move >>> 15) & 7;
+    }
+
+    static int piece(int move) {
+        return (move >>> 18) & 7;
+    }
+
+    static ChessMove toChessMove(int move) {
+        int promotion = promotion(move);
+        return new ChessMove(positionOf(from(move)), positionOf(to(move)), promotion == 0 ? null : pieceType(promotion));
+    }
+
+    static ChessPosition positionOf(int square) {
+        return new ChessPosition(square / 8 + 1, square % 8 + 1);
+    }
+
+    static int typeOf(PieceType type) {
+        return switch (type) {
+            case PAWN -> PAWN;
+            case KNIGHT -> KNIGHT;
+            case BISHOP -> BISHOP;
+            case ROOK -> ROOK;
+            case QUEEN -> QUEEN;
+            case KING -> KING;
+        };
+    }
+
+    static PieceType pieceType(int type) {
+        return switch (type) {
+            case PAWN -> PieceType.PAWN;
+            case KNIGHT -> PieceType.KNIGHT;
+            case BISHOP -> PieceType.BISHOP;
+            case ROOK -> PieceType.ROOK;
+            case QUEEN -> PieceType.QUEEN;
+            default -> PieceType.KING;
+        };
+    }
+
+    private static int kingIndex(int color) {
+        return color == WHITE ? 0 : 1;
+    }
+
+    private static int[] jumps(int square, int[] offsets) {
+        int row = square >> 3;
+        int col = square & 7;
+        int[] targets = new int[offsets.length / 2];
+        int count = 0;
+        for (int i = 0; i < offsets.length; i += 2) {
+            int r = row + offsets[i];
+            int c = col + offsets[i + 1];
+            if (r >= 0 && r < 8 && c >= 0 && c < 8) {
+                targets[count++] = r * 8 + c;
+            }
+        }
+        return Arrays.copyOf(targets, count);
+    }
+
+    private static int[] ray(int square, int rowStep, int colStep) {
+        int[] squares = new int[7];
+        int count = 0;
+        int r = (square >> 3) + rowStep;
+        int c = (square & 7) + colStep;
+        while (r >= 0 && r < 8 && c >= 0 && c < 8) {
+            squares[count++] = r * 8 + c;
+            r += rowStep;
+            c += colStep;
+        }
+        return Arrays.copyOf(squares, count);
+    }
+}
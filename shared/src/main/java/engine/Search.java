@@ -0,0 +1,381 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * One search: iterative deepening over a principal variation alpha-beta search, with a capture-only quiescence
+ * search at the leaves so the evaluation is never taken in the middle of an exchange.
+ * <p>
+ * Moves are tried best first: the previous iteration's best move at the root or the transposition table's move
+ * below it, then captures by most valuable victim and least valuable attacker, promotions, two killer moves per
+ * ply and finally quiet moves by history. Each iteration reuses the ordering the last one learned, which is what
+ * makes deepening cheaper than searching to the final depth straight away.
+ * <p>
+ * Mate scores go into the table as distance from the node rather than from the root, since the same position
+ * can be reached at different plies.
+ * <p>
+ * The clock is checked every 1024 nodes. An iteration that runs out of time is thrown away, except that depth 1
+ * always finishes so there is always a move to play.
+ * <p>
+ * A helper is one of the extra threads of a parallel search. It runs the same iterations on its own copy of the
+ * position until the main search raises stop, and its only output is what it leaves in the shared table. Half the
+ * helpers start a depth ahead so the threads don't all walk the same tree in step.
+ */
+final class Search {
+    static final int MATE = 30_000;
+    static final int MAX_PLY = 128;
+    static final int MAX_DEPTH = 64;
+
+    private static final int INFINITY = MATE + 1;
+    private static final int HASH_ORDER = 1 << 28;
+    private static final int CAPTURE_ORDER = 1 << 24;
+    private static final int KILLER_ORDER = 1 << 20;
+
+    private final Position position;
+    private final TranspositionTable table;
+    private final AtomicBoolean stop;
+    private final int helper;
+    private final long startNanos;
+    private final long deadline;
+
+    private final int[][] moves = new int[MAX_PLY + 1][Position.MAX_MOVES];
+    private final int[][] order = new int[MAX_PLY + 1][Position.MAX_MOVES];
+    private final int[][] killers = new int[MAX_PLY + 1][2];
+    private final int[] history = new int[64 * 64];
+
+    private long nodes;
+    private long probes;
+    private long hits;
+    private boolean stopped;
+    private boolean mustFinish;
+
+    Search(Position position, long budgetNanos, TranspositionTable table) {
+        this(position, budgetNanos, table, new AtomicBoolean(), 0);
+    }
+
+    /**
+     * @param helper 0 for the main search, 1 and up for helpers
+     */
+    Search(Position position, long budgetNanos, TranspositionTable table, AtomicBoolean stop, int helper) {
+        this.position = position;
+        this.table = table;
+        this.stop = stop;
+        this.helper = helper;
+        this.startNanos = System.nanoTime();
+        this.deadline = startNanos + budgetNanos;
+    }
+
+    SearchResult run(int maxDepth, Consumer<SearchResult> onDepth) {
+        int[] rootMoves = new int[Position.MAX_MOVES];
+        int[] rootScores = new int[Position.MAX_MOVES];
+        int rootCount = legalRootMoves(rootMoves);
+        if (rootCount == 0) {
+            return new SearchResult(null, position.inCheck() ? -MATE : 0, 0, nodes, System.nanoTime() - startNanos);
+        }
+
+        try {
+            return deepen(rootMoves, rootScores, rootCount, maxDepth, onDepth);
+        } finally {
+            table.recordProbes(probes, hits);
+        }
+    }
+
+    private SearchResult deepen(int[] rootMoves, int[] rootScores, int rootCount, int maxDepth,
+                                Consumer<SearchResult> onDepth) {
+        SearchResult result = null;
+        for (int depth = 1 + (helper & 1); depth <= Math.min(maxDepth, MAX_DEPTH); depth++) {
+            mustFinish = depth == 1 && helper == 0;
+            int alpha = -INFINITY;
+            int bestIndex = 0;
+
+            for (int i = 0; i < rootCount; i++) {
+                int move = rootMoves[i];
+                position.make(move);
+                int score;
+                if (i == 0) {
+                    score = -negamax(depth - 1, -INFINITY, -alpha, 1);
+                } else {
+                    score = -negamax(depth - 1, -alpha - 1, -alpha, 1);
+                    if (score > alpha && !stopped) {
+                        score = -negamax(depth - 1, -INFINITY, -alpha, 1);
+                    }
+                }
+                position.unmake(move);
+                if (stopped) {
+                    break;
+                }
+                rootScores[i] = score;
+                if (score > alpha) {
+                    alpha = score;
+                    bestIndex = i;
+                }
+            }
+            if (stopped) {
+                break;
+            }
+
+            // Best move first next time, the rest by how they scored this time
+            sortRoot(rootMoves, rootScores, rootCount, bestIndex);
+            table.store(position.hash, rootMoves[0], toTable(alpha, 0), depth, TranspositionTable.EXACT);
+            result = new SearchResult(Position.toChessMove(rootMoves[0]), alpha, depth, nodes, System.nanoTime() - startNanos);
+            if (onDepth != null) {
+                onDepth.accept(result);
+            }
+
+            if (helper > 0) {
+                // Helpers keep going until the main search is done with them
+                continue;
+            }
+            if (result.isMate() && MATE - Math.abs(alpha) <= depth) {
+                // The shortest mate is already found, deeper won't change it
+                break;
+            }
+            long elapsed = System.nanoTime() - startNanos;
+            if (elapsed > (deadline - startNanos) / 2) {
+                // The next iteration takes several times longer than this one, so it couldn't finish anyway
+                break;
+            }
+        }
+        return result;
+    }
+
+    private int negamax(int depth, int alpha, int beta, int ply) {
+        if ((++nodes & 1023) == 0) {
+            checkTime();
+        }
+        if (stopped) {
+            return 0;
+        }
+
+        boolean inCheck = position.inCheck();
+        if (inCheck) {
+            // Never stop searching with the king in check, a quiet looking leaf might be mate
+            depth++;
+        }
+        if (depth <= 0) {
+            return quiesce(alpha, beta, ply);
+        }
+        if (ply >= MAX_PLY) {
+            return Evaluation.evaluate(position);
+        }
+
+        probes++;
+        long entry = table.probe(position.hash);
+        int hashMove = 0;
+        if (entry != 0) {
+            hits++;
+            hashMove = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                    || bound == TranspositionTable.LOWER && score >= beta
+                    || bound == TranspositionTable.UPPER && score <= alpha) {
+                    return score;
+                }
+            }
+        }
+
+        int[] list = moves[ply];
+        int[] scores = order[ply];
+        int count = position.generate(list, 0, false);
+        scoreMoves(list, scores, count, ply, hashMove);
+
+        int originalAlpha = alpha;
+        int legal = 0;
+        int best = -INFINITY;
+        int bestMove = 0;
+        for (int i = 0; i < count; i++) {
+            int move = pickNext(list, scores, i, count);
+            if (!position.make(move)) {
+                continue;
+            }
+            legal++;
+
+            int score;
+            if (legal == 1) {
+                score = -negamax(depth - 1, -beta, -alpha, ply + 1);
+            } else {
+                score = -negamax(depth - 1, -alpha - 1, -alpha, ply + 1);
+                if (score > alpha && score < beta && !stopped) {
+                    score = -negamax(depth - 1, -beta, -alpha, ply + 1);
+                }
+            }
+            position.unmake(move);
+            if (stopped) {
+                return 0;
+            }
+
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
+                    bestMove = move;
+                    if (alpha >= beta) {
+                        if (Position.captured(move) == 0 && Position.promotion(move) == 0) {
+                            rememberQuiet(move, depth, ply);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (legal == 0) {
+            // Mates closer to the root score higher, so the search goes for the fastest one
+            return inCheck ? -MATE + ply : 0;
+        }
+
+        int bound = best >= beta ? TranspositionTable.LOWER
+            : best > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        table.store(position.hash, bestMove, toTable(best, ply), depth, bound);
+        return best;
+    }
+
+    private int quiesce(int alpha, int beta, int ply) {
+        if ((++nodes & 1023) == 0) {
+            checkTime();
+        }
+        if (stopped) {
+            return 0;
+        }
+
+        int standPat = Evaluation.evaluate(position);
+        if (standPat >= beta || ply >= MAX_PLY) {
+            return standPat;
+        }
+        if (standPat > alpha) {
+            alpha = standPat;
+        }
+
+        int[] list = moves[ply];
+        int[] scores = order[ply];
+        int count = position.generate(list, 0, true);
+        scoreMoves(list, scores, count, ply, 0);
+
+        for (int i = 0; i < count; i++) {
+            int move = pickNext(list, scores, i, count);
+            if (!position.make(move)) {
+                continue;
+            }
+            int score = -quiesce(-beta, -alpha, ply + 1);
+            position.unmake(move);
+            if (stopped) {
+                return 0;
+            }
+            if (score >= beta) {
+                return score;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+        }
+        return alpha;
+    }
+
+    private void scoreMoves(int[] list, int[] scores, int count, int ply, int hashMove) {
+        int firstKiller = killers[ply][0];
+        int secondKiller = killers[ply][1];
+        for (int i = 0; i < count; i++) {
+            int move = list[i];
+            int captured = Position.captured(move);
+            int promotion = Position.promotion(move);
+            if (move == hashMove) {
+                scores[i] = HASH_ORDER;
+            } else if (captured != 0 || promotion != 0) {
+                scores[i] = CAPTURE_ORDER + Evaluation.VALUE[captured] * 16 + Evaluation.VALUE[promotion]
+                    - Position.piece(move);
+            } else if (move == firstKiller) {
+                scores[i] = KILLER_ORDER + 1;
+            } else if (move == secondKiller) {
+                scores[i] = KILLER_ORDER;
+            } else {
+                scores[i] = history[Position.from(move) * 64 + Position.to(move)];
+            }
+        }
+    }
+
+    // Selection sort one step at a time, most nodes cut off after a move or two so sorting the rest is wasted
+    private static int pickNext(int[] list, int[] scores, int index, int count) {
+        int best = index;
+        for (int i = index + 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        int move = list[best];
+        list[best] = list[index];
+        list[index] = move;
+        int score = scores[best];
+        scores[best] = scores[index];
+        scores[index] = score;
+        return move;
+    }
+
+    private void rememberQuiet(int move, int depth, int ply) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int slot = Position.from(move) * 64 + Position.to(move);
+        history[slot] = Math.min(history[slot] + depth * depth, KILLER_ORDER - 1);
+    }
+
+    private int legalRootMoves(int[] rootMoves) {
+        int[] list = new int[Position.MAX_MOVES];
+        int count = position.generate(list, 0, false);
+        int[] scores = new int[Position.MAX_MOVES];
+        long entry = table.probe(position.hash);
+        scoreMoves(list, scores, count, 0, entry != 0 ? TranspositionTable.move(entry) : 0);
+        int legal = 0;
+        for (int i = 0; i < count; i++) {
+            int move = pickNext(list, scores, i, count);
+            if (position.make(move)) {
+                position.unmake(move);
+                rootMoves[legal++] = move;
+            }
+        }
+        return legal;
+    }
+
+    private static void sortRoot(int[] rootMoves, int[] rootScores, int count, int bestIndex) {
+        rootScores[bestIndex] = INFINITY;
+        for (int i = 1; i < count; i++) {
+            int move = rootMoves[i];
+            int score = rootScores[i];
+            int j = i - 1;
+            while (j >= 0 && rootScores[j] < score) {
+                rootMoves[j + 1] = rootMoves[j];
+                rootScores[j + 1] = rootScores[j];
+                j--;
+            }
+            rootMoves[j + 1] = move;
+            rootScores[j + 1] = score;
+        }
+    }
+
+    private static int toTable(int score, int ply) {
+        if (score > MATE - MAX_PLY) {
+            return score + ply;
+        }
+        return score < -MATE + MAX_PLY ? score - ply : score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score > MATE - MAX_PLY) {
+            return score - ply;
+        }
+        return score < -MATE + MAX_PLY ? score + ply : score;
+    }
+
+    long nodes() {
+        return nodes;
+    }
+
+    private void checkTime() {
+        if (!mustFinish && (stop.get() || System.nanoTime() >= deadline)) {
+            stopped = true;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package engine;
+
+import chess.ChessMove;
+
+/**
+ * What a search found, reported after every completed depth and returned at the end.
+ *
+ * @param bestMove the move to play, null when the side to move has no legal moves
+ * @param score centipawns for the side to move, or a mate score (see isMate)
+ * @param depth the deepest iteration that finished
+ * @param nodes positions visited, quiescence included
+ * @param elapsedNanos time spent so far
+ */
+public record SearchResult(ChessMove bestMove, int score, int depth, long nodes, long elapsedNanos) {
+
+    public long nodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1_000_000_000L / elapsedNanos;
+    }
+
+    public boolean isMate() {
+        return Math.abs(score) > Search.MATE - Search.MAX_PLY;
+    }
+
+    /**
+     * @return moves until mate, positive when the side to move mates and negative when it gets mated, 0 when there
+     * is no mate in sight
+     */
+    public int mateIn() {
+        if (!isMate()) {
+            return 0;
+        }
+        int plies = Search.MATE - Math.abs(score);
+        return score > 0 ? (plies + 1) / 2 : -(plies + 1) / 2;
+    }
+}
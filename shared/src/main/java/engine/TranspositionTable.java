@@ -0,0 +1,185 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers what earlier searches found about a position, keyed by its Zobrist hash, so a position reached again
+ * through a different move order is answered from the table or at least searched with its best move first.
+ * <p>
+ * Everything lives in one long[], two longs per entry: the key XORed with the data, then the data. Threads read
+ * and write it with no locks at all. A reader that catches an entry half written by another thread gets a key
+ * that doesn't check out and treats it as a miss, so a race costs a lookup, never a wrong answer.
+ * <p>
+ * Entries come in buckets of two. A new result goes over a matching entry, then over an empty one, then over
+ * whichever of the two is shallower or left over from an older search.
+ * <p>
+ * Data layout: move in bits 0-20, score + 32768 in 21-36, depth in 37-44, bound in 45-46, generation in 47-54.
+ */
+public final class TranspositionTable {
+    public static final int DEFAULT_MEGABYTES = 16;
+
+    static final int EXACT = 1;
+    static final int LOWER = 2;
+    static final int UPPER = 3;
+
+    private static final int ENTRY_BYTES = 16;
+    private static volatile TranspositionTable shared;
+
+    private final long[] table;
+    private final int bucketMask;
+    private final int megabytes;
+    private volatile int generation;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param megabytes the most memory to use, rounded down to a power of two number of entries
+     */
+    public TranspositionTable(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("Transposition table needs at least 1MB, got " + megabytes);
+        }
+        long entries = Long.highestOneBit((long) megabytes * 1024 * 1024 / ENTRY_BYTES);
+        // Java arrays stop at 2^31 elements, two longs per entry
+        entries = Math.min(entries, 1L << 29);
+        this.table = new long[(int) entries * 2];
+        this.bucketMask = (int) (entries / 2 - 1);
+        this.megabytes = (int) (entries * ENTRY_BYTES / (1024 * 1024));
+    }
+
+    /**
+     * The table Engine.search uses when it isn't given one. Sized by -Dchess.engineHashMb, made on first use.
+     */
+    public static TranspositionTable shared() {
+        TranspositionTable table = shared;
+        if (table == null) {
+            synchronized (TranspositionTable.class) {
+                table = shared;
+                if (table == null) {
+                    table = new TranspositionTable(Integer.getInteger("chess.engineHashMb", DEFAULT_MEGABYTES));
+                    shared = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Called at the start of each search, so entries from earlier searches are the first to be replaced
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        probes.reset();
+        hits.reset();
+    }
+
+    public Stats stats() {
+        long probeCount = probes.sum();
+        long hitCount = hits.sum();
+        // Sampling the first thousand buckets is plenty to tell how full the table is
+        int sampled = Math.min(1000, bucketMask + 1);
+        int used = 0;
+        int current = generation;
+        for (int bucket = 0; bucket < sampled; bucket++) {
+            for (int slot = 0; slot < 2; slot++) {
+                long data = table[bucket * 4 + slot * 2 + 1];
+                if (data != 0 && generation(data) == current) {
+                    used++;
+                }
+            }
+        }
+        return new Stats(megabytes, probeCount, hitCount, probeCount == 0 ? 0 : (double) hitCount / probeCount,
+            (double) used / (sampled * 2));
+    }
+
+    /**
+     * @param megabytes memory actually used
+     * @param probes lookups since the table was made or cleared
+     * @param hits lookups that found their position
+     * @param hitRate hits / probes
+     * @param occupancy fraction of entries written by the current search
+     */
+    public record Stats(int megabytes, long probes, long hits, double hitRate, double occupancy) {}
+
+    /**
+     * @return the entry's data, or 0 if the position isn't in the table
+     */
+    long probe(long key) {
+        int base = bucket(key);
+        for (int slot = base; slot < base + 4; slot += 2) {
+            long data = table[slot + 1];
+            if (data != 0 && (table[slot] ^ data) == key) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    void store(long key, int move, int score, int depth, int bound) {
+        int base = bucket(key);
+        int current = generation;
+        int target = -1;
+        int worst = Integer.MAX_VALUE;
+        for (int slot = base; slot < base + 4; slot += 2) {
+            long data = table[slot + 1];
+            if (data == 0 || (table[slot] ^ data) == key) {
+                // Keep the old best move when this search didn't find one
+                if (move == 0 && data != 0) {
+                    move = move(data);
+                }
+                target = slot;
+                break;
+            }
+            // Entries from older searches are worth less than anything from this one
+            int worth = depth(data) + (generation(data) == current ? 256 : 0);
+            if (worth < worst) {
+                worst = worth;
+                target = slot;
+            }
+        }
+
+        long data = (move & 0x1FFFFFL)
+            | ((long) (score + 32768) & 0xFFFF) << 21
+            | ((long) depth & 0xFF) << 37
+            | ((long) bound & 3) << 45
+            | ((long) current & 0xFF) << 47;
+        table[target] = key ^ data;
+        table[target + 1] = data;
+    }
+
+    void recordProbes(long probeCount, long hitCount) {
+        probes.add(probeCount);
+        hits.add(hitCount);
+    }
+
+    static int move(long data) {
+        return (int) (data & 0x1FFFFF);
+    }
+
+    static int score(long data) {
+        return (int) ((data >>> 21) & 0xFFFF) - 32768;
+    }
+
+    static int depth(long data) {
+        return (int) ((data >>> 37) & 0xFF);
+    }
+
+    static int bound(long data) {
+        return (int) ((data >>> 45) & 3);
+    }
+
+    private static int generation(long data) {
+        return (int) ((data >>> 47) & 0xFF);
+    }
+
+    // Index of the bucket's first long
+    private int bucket(long key) {
+        return ((int) key & bucketMask) * 4;
+    }
+}
@@ -0,0 +1,18 @@
+package model;
+
+import chess.ChessMove;
+
+/**
+ * One step of an analysis job: the engine's view of a game's position after another depth, and a last one with
+ * done set when the job is finished. Scores are from white's side whoever is to move.
+ *
+ * @param gameID the game being analyzed
+ * @param bestMove the engine's move, null when there is no legal move
+ * @param score centipawns, positive when white is better
+ * @param mateIn moves to mate, positive when white mates and negative when black does, 0 for none in sight
+ * @param depth plies searched
+ * @param nodes positions searched so far
+ * @param done whether this is the job's final update
+ */
+public record AnalysisUpdate(int gameID, ChessMove bestMove, int score, int mateIn, int depth, long nodes,
+                             boolean done) {}
@@ -1,10 +1,10 @@
 package model;
 
-import com.google.gson.*;
+import serialization.Serializer;
 
 public record AuthData(String authToken, String username) {
     
     public String toString() {
-        return new Gson().toJson(this);
+        return Serializer.GSON.toJson(this);
     }
 }
\ No newline at end of file
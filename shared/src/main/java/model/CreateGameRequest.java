@@ -1,3 +1,12 @@
 package model;
 
-public record CreateGameRequest(String gameName) {}
+/**
+ * @param gameName the name players see in the game list
+ * @param fen the position to start from, or null for the usual starting position
+ */
+public record CreateGameRequest(String gameName, String fen) {
+
+    public CreateGameRequest(String gameName) {
+        this(gameName, null);
+    }
+}
@@ -0,0 +1,6 @@
+package model;
+
+/**
+ * One move of the opening explorer, in SAN, with how the games that played it ended
+ */
+public record ExplorerMove(String san, long games, long whiteWins, long draws, long blackWins) {}
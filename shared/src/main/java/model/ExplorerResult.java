@@ -0,0 +1,8 @@
+package model;
+
+import java.util.List;
+
+/**
+ * The games through a position and the moves they went on with, most played first
+ */
+public record ExplorerResult(long games, long whiteWins, long draws, long blackWins, List<ExplorerMove> moves) {}
@@ -1,12 +1,12 @@
 package model;
 
 import chess.ChessGame;
-import com.google.gson.*;
+import serialization.Serializer;
 
 public record GameData(int gameID, String whiteUsername, String blackUsername, String gameName, ChessGame game) {
     
     public String toString() {
-        return new Gson().toJson(this);
+        return Serializer.GSON.toJson(this);
     }
 
     public GameData updateWhite(String username) {
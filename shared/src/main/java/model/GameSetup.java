@@ -0,0 +1,6 @@
+package model;
+
+/**
+ * One board of a bulk create, either username may be null to leave the seat open
+ */
+public record GameSetup(String gameName, String whiteUsername, String blackUsername) {}
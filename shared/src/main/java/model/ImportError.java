@@ -0,0 +1,6 @@
+package model;
+
+/**
+ * Why one game of an import was skipped, line is where the game starts in the PGN
+ */
+public record ImportError(long line, String message) {}
@@ -0,0 +1,8 @@
+package model;
+
+import java.util.List;
+
+/**
+ * What came of a PGN import. errors only holds the first few failures, failed counts all of them.
+ */
+public record ImportResult(long imported, long failed, double gamesPerSecond, List<ImportError> errors) {}
@@ -0,0 +1,7 @@
+package model;
+
+/**
+ * One time a stored game reached a position. ply is how many moves into the game it was, or -1 if the game was
+ * already stored before the index saw it and the count isn't known.
+ */
+public record PositionHit(int gameID, int ply) {}
@@ -0,0 +1,8 @@
+package model;
+
+import java.util.List;
+
+/**
+ * total counts every time the position was reached, games lists the first of them up to the limit asked for
+ */
+public record PositionSearchResult(long total, List<PositionHit> games) {}
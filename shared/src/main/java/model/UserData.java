@@ -1,11 +1,11 @@
 package model;
 
-import com.google.gson.*;
+import serialization.Serializer;
 
 public record UserData(String username, String password, String email) {
     
     public String toString() {
-        return new Gson().toJson(this);
+        return Serializer.GSON.toJson(this);
     }
 
 }
@@ -0,0 +1,179 @@
+package serialization;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import chess.ChessBoard;
+import chess.ChessGame;
+import chess.ChessGame.TeamColor;
+import chess.ChessPosition;
+
+/**
+ * Writes a game with the same fields, in the same order, that reflection did: teamTurn, board, gameOver,
+ * teamPieces and kingPieces.
+ * <p>
+ * The form stores save (withHistory) adds the halfmove clock and the position keys since the last capture or pawn
+ * move as halfmoveClock and history, so repetition is still found after a game is loaded again, then for a
+ * finished game its PGN result. Clients don't need them and the history grows with every quiet move, so the form
+ * sent over the wire leaves them out. Either form reads both; a game without them reads back with the history
+ * starting over from its position and its result read off the board.
+ */
+public class ChessGameAdapter extends TypeAdapter<ChessGame> {
+
+    private final ChessBoardAdapter boardAdapter = new ChessBoardAdapter();
+    private final ChessPositionAdapter positionAdapter = new ChessPositionAdapter();
+    private final boolean withHistory;
+
+    public ChessGameAdapter() {
+        this(false);
+    }
+
+    public ChessGameAdapter(boolean withHistory) {
+        this.withHistory = withHistory;
+    }
+
+    @Override
+    public void write(JsonWriter out, ChessGame game) throws IOException {
+        if (game == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("teamTurn").value(game.getTeamTurn().name());
+        out.name("board");
+        boardAdapter.write(out, game.getBoard());
+        out.name("gameOver").value(game.isGameOver());
+
+        out.name("teamPieces");
+        out.beginObject();
+        for (TeamColor team : TeamColor.values()) {
+            out.name(team.name());
+            out.beginArray();
+            for (ChessPosition position : game.getTeamPieces().get(team)) {
+                positionAdapter.write(out, position);
+            }
+            out.endArray();
+        }
+        out.endObject();
+
+        out.name("kingPieces");
+        out.beginObject();
+        for (TeamColor team : TeamColor.values()) {
+            out.name(team.name());
+            positionAdapter.write(out, game.getKingPieces().get(team));
+        }
+        out.endObject();
+
+        if (withHistory) {
+            out.name("halfmoveClock").value(game.getHalfmoveClock());
+            out.name("history");
+            out.beginArray();
+            for (long hash : game.getPositionHistory()) {
+                out.value(hash);
+            }
+            out.endArray();
+            if (game.isGameOver()) {
+                String result = game.getResult();
+                if (!result.equals("*")) {
+                    out.name("result").value(result);
+                }
+            }
+        }
+        out.endObject();
+    }
+
+    @Override
+    public ChessGame read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        TeamColor teamTurn = TeamColor.WHITE;
+        ChessBoard board = new ChessBoard();
+        boolean gameOver = false;
+        Map<TeamColor, Collection<ChessPosition>> teamPieces = null;
+        Map<TeamColor, ChessPosition> kingPieces = null;
+        int halfmoveClock = 0;
+        long[] history = null;
+        String result = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "teamTurn" -> teamTurn = TeamColor.valueOf(in.nextString());
+                case "board" -> board = boardAdapter.read(in);
+                case "gameOver" -> gameOver = in.nextBoolean();
+                case "teamPieces" -> teamPieces = readTeamPieces(in);
+                case "kingPieces" -> kingPieces = readKingPieces(in);
+                case "halfmoveClock" -> halfmoveClock = in.nextInt();
+                case "history" -> history = readHistory(in);
+                case "result" -> result = in.nextString();
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        ChessGame game = new ChessGame(teamTurn, board, gameOver, teamPieces, kingPieces);
+        if (halfmoveClock != 0 || history != null) {
+            game.restoreHistory(halfmoveClock, history);
+        }
+        if (result != null) {
+            game.setResult(result);
+        }
+        return game;
+    }
+
+    private long[] readHistory(JsonReader in) throws IOException {
+        long[] history = new long[16];
+        int size = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (size == history.length) {
+                history = Arrays.copyOf(history, size * 2);
+            }
+            history[size++] = in.nextLong();
+        }
+        in.endArray();
+        return Arrays.copyOf(history, size);
+    }
+
+    private Map<TeamColor, Collection<ChessPosition>> readTeamPieces(JsonReader in) throws IOException {
+        Map<TeamColor, Collection<ChessPosition>> teamPieces = new HashMap<>();
+        teamPieces.put(TeamColor.WHITE, new ArrayList<>());
+        teamPieces.put(TeamColor.BLACK, new ArrayList<>());
+
+        in.beginObject();
+        while (in.hasNext()) {
+            Collection<ChessPosition> positions = teamPieces.get(TeamColor.valueOf(in.nextName()));
+            in.beginArray();
+            while (in.hasNext()) {
+                positions.add(positionAdapter.read(in));
+            }
+            in.endArray();
+        }
+        in.endObject();
+        return teamPieces;
+    }
+
+    private Map<TeamColor, ChessPosition> readKingPieces(JsonReader in) throws IOException {
+        Map<TeamColor, ChessPosition> kingPieces = new HashMap<>();
+        kingPieces.put(TeamColor.WHITE, new ChessPosition(0, 0));
+        kingPieces.put(TeamColor.BLACK, new ChessPosition(0, 0));
+
+        in.beginObject();
+        while (in.hasNext()) {
+            kingPieces.put(TeamColor.valueOf(in.nextName()), positionAdapter.read(in));
+        }
+        in.endObject();
+        return kingPieces;
+    }
+}
@@ -0,0 +1,265 @@
+package serialization;
+
+import chess.ChessBoard;
+import chess.ChessGame;
+import chess.ChessGame.TeamColor;
+import chess.ChessPiece;
+import chess.ChessPiece.PieceType;
+import chess.ChessPosition;
+
+/**
+ * Forsyth-Edwards Notation, the usual one line description of a position:
+ * "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1".
+ * <p>
+ * The parser walks the string once with charAt and places shared piece objects, so reading a position costs the
+ * board and nothing else. The last two fields (the move counters) may be left off.
+ * <p>
+ * ChessGame doesn't play castling or en passant and keeps no fullmove number, so those fields are checked for being
+ * well formed and then dropped, and format writes them as "- -" and 1. The halfmove clock is kept. So
+ * format(parse(fen)) gives back the same board, side to move and halfmove clock, but not always the same string.
+ * <p>
+ * A position where the side to move is mated or stalemated parses as a game that is already over, and so does
+ * one whose halfmove clock has already reached the fifty-move rule, unless automatic draws are turned off.
+ */
+public final class Fen {
+
+    public static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // Longer than any real FEN, anything past this is rejected before it is looked at
+    private static final int MAX_LENGTH = 128;
+
+    private static final PieceType[] TYPES = PieceType.values();
+    // [color][type ordinal], pieces never change so every board can share them
+    private static final ChessPiece[][] PIECES = new ChessPiece[2][TYPES.length];
+
+    static {
+        for (PieceType type : TYPES) {
+            PIECES[0][type.ordinal()] = new ChessPiece(TeamColor.WHITE, type);
+            PIECES[1][type.ordinal()] = new ChessPiece(TeamColor.BLACK, type);
+        }
+    }
+
+    private Fen() {}
+
+    /**
+     * @throws IllegalArgumentException if the string is not a FEN for a position ChessGame can play from
+     */
+    public static ChessGame parse(String fen) {
+        return parse(fen, true);
+    }
+
+    /**
+     * @param automaticDraws false for replaying a recorded game, which may play on past a fifty-move draw nobody
+     * claimed; the game is parsed with ChessGame.setAutomaticDraws(false) already applied
+     * @throws IllegalArgumentException if the string is not a FEN for a position ChessGame can play from
+     */
+    public static ChessGame parse(String fen, boolean automaticDraws) {
+        if (fen == null || fen.isEmpty() || fen.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("FEN is empty or too long");
+        }
+
+        ChessBoard board = new ChessBoard();
+        int index = 0;
+        int row = 8;
+        int col = 1;
+        int[] kings = new int[2];
+        while (true) {
+            char c = charAt(fen, index++);
+            if (c == ' ') {
+                break;
+            }
+            if (c == '/') {
+                if (col != 9 || row == 1) {
+                    throw new IllegalArgumentException("FEN rank " + row + " doesn't have 8 squares");
+                }
+                row--;
+                col = 1;
+            } else if (c >= '1' && c <= '8') {
+                col += c - '0';
+            } else {
+                PieceType type = pieceType(Character.toLowerCase(c));
+                int color = Character.isUpperCase(c) ? 0 : 1;
+                if (col > 8) {
+                    throw new IllegalArgumentException("FEN rank " + row + " has more than 8 squares");
+                }
+                if (type == PieceType.PAWN && (row == 1 || row == 8)) {
+                    throw new IllegalArgumentException("FEN has a pawn on rank " + row);
+                }
+                if (type == PieceType.KING) {
+                    kings[color]++;
+                }
+                board.addPiece(new ChessPosition(row, col), PIECES[color][type.ordinal()]);
+                col++;
+            }
+            if (col > 9) {
+                throw new IllegalArgumentException("FEN rank " + row + " has more than 8 squares");
+            }
+        }
+        if (row != 1 || col != 9) {
+            throw new IllegalArgumentException("FEN board doesn't have 8 full ranks");
+        }
+        if (kings[0] != 1 || kings[1] != 1) {
+            throw new IllegalArgumentException("FEN needs exactly one king for each side");
+        }
+
+        TeamColor toMove = switch (charAt(fen, index++)) {
+            case 'w' -> TeamColor.WHITE;
+            case 'b' -> TeamColor.BLACK;
+            default -> throw new IllegalArgumentException("FEN side to move must be w or b");
+        };
+        expectSpace(fen, index++);
+
+        index = skipCastling(fen, index);
+        expectSpace(fen, index++);
+        index = skipEnPassant(fen, index, toMove);
+
+        // The move counters are optional, but if one is there both have to be
+        int halfmoveClock = 0;
+        if (index < fen.length()) {
+            expectSpace(fen, index++);
+            int start = index;
+            index = skipNumber(fen, index, 0);
+            halfmoveClock = Integer.parseInt(fen, start, index, 10);
+            expectSpace(fen, index++);
+            index = skipNumber(fen, index, 1);
+            if (index != fen.length()) {
+                throw new IllegalArgumentException("FEN has text after the move counters");
+            }
+        }
+
+        ChessGame game = new ChessGame(toMove, board, false, null, null);
+        TeamColor waiting = toMove == TeamColor.WHITE ? TeamColor.BLACK : TeamColor.WHITE;
+        if (game.isInCheck(waiting)) {
+            throw new IllegalArgumentException("FEN leaves the side that just moved in check");
+        }
+        if (game.isInCheckmate(toMove) || game.isInStalemate(toMove)) {
+            game = new ChessGame(toMove, board, true, game.getTeamPieces(), game.getKingPieces());
+        }
+        game.setAutomaticDraws(automaticDraws);
+        if (halfmoveClock != 0) {
+            game.restoreHistory(halfmoveClock, null);
+            // Same as a move that brings the clock to the limit
+            if (automaticDraws && game.isDrawByFiftyMoveRule()) {
+                game.setResult("1/2-1/2");
+            }
+        }
+        return game;
+    }
+
+    public static String format(ChessGame game) {
+        ChessBoard board = game.getBoard();
+        StringBuilder fen = new StringBuilder(96);
+        for (int row = 8; row >= 1; row--) {
+            int empty = 0;
+            for (int col = 1; col <= 8; col++) {
+                ChessPiece piece = board.getPiece(new ChessPosition(row, col));
+                if (piece == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append((char) ('0' + empty));
+                    empty = 0;
+                }
+                char letter = letter(piece.getPieceType());
+                fen.append(piece.getTeamColor() == TeamColor.WHITE ? Character.toUpperCase(letter) : letter);
+            }
+            if (empty > 0) {
+                fen.append((char) ('0' + empty));
+            }
+            if (row > 1) {
+                fen.append('/');
+            }
+        }
+        fen.append(game.getTeamTurn() == TeamColor.BLACK ? " b" : " w");
+        fen.append(" - - ").append(game.getHalfmoveClock()).append(" 1");
+        return fen.toString();
+    }
+
+    private static PieceType pieceType(char letter) {
+        return switch (letter) {
+            case 'p' -> PieceType.PAWN;
+            case 'n' -> PieceType.KNIGHT;
+            case 'b' -> PieceType.BISHOP;
+            case 'r' -> PieceType.ROOK;
+            case 'q' -> PieceType.QUEEN;
+            case 'k' -> PieceType.KING;
+            default -> throw new IllegalArgumentException("FEN has an unknown piece '" + letter + "'");
+        };
+    }
+
+    private static char letter(PieceType type) {
+        return switch (type) {
+            case PAWN -> 'p';
+            case KNIGHT -> 'n';
+            case BISHOP -> 'b';
+            case ROOK -> 'r';
+            case QUEEN -> 'q';
+            case KING -> 'k';
+        };
+    }
+
+    // "-" or some of KQkq, in that order and each at most once
+    private static int skipCastling(String fen, int index) {
+        if (charAt(fen, index) == '-') {
+            return index + 1;
+        }
+        String order = "KQkq";
+        int next = 0;
+        int start = index;
+        while (index < fen.length() && fen.charAt(index) != ' ') {
+            int at = order.indexOf(fen.charAt(index), next);
+            if (at < 0) {
+                throw new IllegalArgumentException("FEN castling rights must be - or some of KQkq");
+            }
+            next = at + 1;
+            index++;
+        }
+        if (index == start) {
+            throw new IllegalArgumentException("FEN is missing castling rights");
+        }
+        return index;
+    }
+
+    // "-" or the square a pawn just skipped over, which is on rank 6 when white is to move and rank 3 when black is
+    private static int skipEnPassant(String fen, int index, TeamColor toMove) {
+        char file = charAt(fen, index);
+        if (file == '-') {
+            return index + 1;
+        }
+        char rank = charAt(fen, index + 1);
+        if (file < 'a' || file > 'h' || rank != (toMove == TeamColor.WHITE ? '6' : '3')) {
+            throw new IllegalArgumentException("FEN en passant square must be - or a square behind a pawn");
+        }
+        return index + 2;
+    }
+
+    private static int skipNumber(String fen, int index, int min) {
+        int value = 0;
+        int start = index;
+        while (index < fen.length() && fen.charAt(index) >= '0' && fen.charAt(index) <= '9') {
+            value = value * 10 + fen.charAt(index) - '0';
+            if (value > 100_000) {
+                throw new IllegalArgumentException("FEN move counter is too large");
+            }
+            index++;
+        }
+        if (index == start || value < min) {
+            throw new IllegalArgumentException("FEN move counters must be numbers");
+        }
+        return index;
+    }
+
+    private static void expectSpace(String fen, int index) {
+        if (charAt(fen, index) != ' ') {
+            throw new IllegalArgumentException("FEN fields must be separated by single spaces");
+        }
+    }
+
+    private static char charAt(String fen, int index) {
+        if (index >= fen.length()) {
+            throw new IllegalArgumentException("FEN ends too early");
+        }
+        return fen.charAt(index);
+    }
+}
@@ -0,0 +1,14 @@
+package serialization;
+
+import chess.ChessGame;
+
+/**
+ * The starting position as JSON, encoded once. Every new game is identical until its first move, so the server
+ * stores this string instead of serializing the same board again for every game created.
+ */
+public final class InitialPosition {
+
+    public static final String JSON = Serializer.GSON.toJson(ChessGame.newGame());
+
+    private InitialPosition() {}
+}
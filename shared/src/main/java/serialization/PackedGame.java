@@ -0,0 +1,131 @@
+package serialization;
+
+import java.nio.ByteBuffer;
+
+import chess.ChessBoard;
+import chess.ChessGame;
+import chess.ChessGame.TeamColor;
+import chess.ChessPiece;
+import chess.ChessPiece.PieceType;
+import chess.ChessPosition;
+
+/**
+ * A fixed size binary form of a game: one flags byte followed by the board packed two squares per byte.
+ * <p>
+ * The flags are black to move (bit 0), game over (bit 1) and, for a finished game, its result in bits 2-3: 0 for
+ * none, 1 for 1-0, 2 for 0-1 and 3 for a draw. Games packed before the result was added read with none.
+ * <p>
+ * Each square is a nibble: 0 for empty, otherwise 1 + the PieceType ordinal, plus 8 for a black piece. Squares go
+ * a1, b1 .. h1, a2 .. h8, and the first square of each pair is in the high nibble.
+ */
+public final class PackedGame {
+
+    public static final int BOARD_BYTES = 32;
+    public static final int SIZE = 1 + BOARD_BYTES;
+
+    private static final int BLACK_TO_MOVE = 1;
+    private static final int GAME_OVER = 1 << 1;
+    private static final int RESULT_SHIFT = 2;
+    private static final String[] RESULTS = {null, "1-0", "0-1", "1/2-1/2"};
+
+    private static final PieceType[] TYPES = PieceType.values();
+
+    private PackedGame() {}
+
+    public static byte[] pack(ChessGame game) {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        write(buffer, game);
+        return buffer.array();
+    }
+
+    public static ChessGame unpack(byte[] bytes) {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Writes the game at the buffer's position, advancing it by SIZE bytes
+     */
+    public static void write(ByteBuffer buffer, ChessGame game) {
+        int flags = 0;
+        if (game.getTeamTurn() == TeamColor.BLACK) {
+            flags |= BLACK_TO_MOVE;
+        }
+        if (Boolean.TRUE.equals(game.isGameOver())) {
+            flags |= GAME_OVER;
+            // Only finished games are asked, so games in progress don't pay for the mate check
+            String result = game.getResult();
+            for (int code = 1; code < RESULTS.length; code++) {
+                if (RESULTS[code].equals(result)) {
+                    flags |= code << RESULT_SHIFT;
+                }
+            }
+        }
+        buffer.put((byte) flags);
+        writeBoard(buffer, game.getBoard());
+    }
+
+    /**
+     * Reads a game from the buffer's position, advancing it by SIZE bytes
+     */
+    public static ChessGame read(ByteBuffer buffer) {
+        int flags = buffer.get();
+        TeamColor teamTurn = (flags & BLACK_TO_MOVE) != 0 ? TeamColor.BLACK : TeamColor.WHITE;
+        boolean gameOver = (flags & GAME_OVER) != 0;
+        ChessBoard board = readBoard(buffer);
+        ChessGame game = new ChessGame(teamTurn, board, gameOver, null, null);
+        String result = RESULTS[(flags >>> RESULT_SHIFT) & 3];
+        if (result != null) {
+            game.setResult(result);
+        }
+        return game;
+    }
+
+    public static void writeBoard(ByteBuffer buffer, ChessBoard board) {
+        for (int square = 0; square < 64; square += 2) {
+            int high = pieceCode(board.getPiece(positionOf(square)));
+            int low = pieceCode(board.getPiece(positionOf(square + 1)));
+            buffer.put((byte) ((high << 4) | low));
+        }
+    }
+
+    public static ChessBoard readBoard(ByteBuffer buffer) {
+        ChessBoard board = new ChessBoard();
+        for (int square = 0; square < 64; square += 2) {
+            int pair = buffer.get() & 0xFF;
+            addPiece(board, square, pair >>> 4);
+            addPiece(board, square + 1, pair & 0x0F);
+        }
+        return board;
+    }
+
+    /**
+     * @return 0..63 for a1..h8
+     */
+    public static int squareIndex(ChessPosition position) {
+        return (position.getRow() - 1) * 8 + (position.getColumn() - 1);
+    }
+
+    public static ChessPosition positionOf(int square) {
+        return new ChessPosition(square / 8 + 1, square % 8 + 1);
+    }
+
+    private static int pieceCode(ChessPiece piece) {
+        if (piece == null) {
+            return 0;
+        }
+        int code = 1 + piece.getPieceType().ordinal();
+        return piece.getTeamColor() == TeamColor.BLACK ? code + 8 : code;
+    }
+
+    private static void addPiece(ChessBoard board, int square, int code) {
+        if (code == 0) {
+            return;
+        }
+        int typeIndex = (code & 7) - 1;
+        if (typeIndex < 0 || typeIndex >= TYPES.length) {
+            throw new IllegalArgumentException("Invalid piece code " + code);
+        }
+        TeamColor color = (code & 8) != 0 ? TeamColor.BLACK : TeamColor.WHITE;
+        board.addPiece(positionOf(square), new ChessPiece(color, TYPES[typeIndex]));
+    }
+}
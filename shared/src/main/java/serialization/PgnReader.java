@@ -0,0 +1,199 @@
+package serialization;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads games out of a PGN file one at a time, so a file of any size is read with one game in memory.
+ * <p>
+ * Each game is its tag pairs, its main line as SAN tokens and its result. Comments, variations, NAGs and move
+ * numbers are skipped as they stream past; nothing is checked against the rules here, that is San's job. A game
+ * that runs into the next one's tags without a result is ended there with result "*".
+ */
+public final class PgnReader implements AutoCloseable {
+
+    /**
+     * @param line the line the game starts on, for error messages
+     * @param tags the tag pairs in file order, e.g. White, Black, Result
+     * @param moves the main line in SAN, without move numbers
+     * @param result 1-0, 0-1, 1/2-1/2 or *
+     */
+    public record Game(long line, Map<String, String> tags, List<String> moves, String result) {}
+
+    // A SAN move is at most 7 characters with its marks, anything this long is junk and gets cut off
+    private static final int MAX_TOKEN = 256;
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private long line = 1;
+
+    public PgnReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * @return the next game, or null at the end of the input
+     */
+    public Game next() throws IOException {
+        Map<String, String> tags = new LinkedHashMap<>();
+        List<String> moves = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        long start = -1;
+
+        while (true) {
+            int c = peek();
+            if (c < 0) {
+                return start < 0 ? null : new Game(start, tags, moves, "*");
+            }
+            if (Character.isWhitespace(c)) {
+                read();
+                continue;
+            }
+            if (start < 0) {
+                start = line;
+            }
+            switch (c) {
+                case '[' -> {
+                    if (!moves.isEmpty()) {
+                        // The next game's tags, this one never said how it ended
+                        return new Game(start, tags, moves, "*");
+                    }
+                    readTag(tags, token);
+                }
+                case '{' -> skipPast('}');
+                case ';', '%' -> skipPast('\n');
+                case '(' -> skipVariation();
+                case '$' -> {
+                    read();
+                    readToken(token);
+                }
+                default -> {
+                    readToken(token);
+                    String text = token.toString();
+                    if (isResult(text)) {
+                        return new Game(start, tags, moves, text);
+                    }
+                    String move = stripMoveNumber(text);
+                    if (!move.isEmpty()) {
+                        moves.add(move);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readTag(Map<String, String> tags, StringBuilder token) throws IOException {
+        read();
+        token.setLength(0);
+        int c;
+        while ((c = peek()) >= 0 && !Character.isWhitespace(c) && c != '"' && c != ']') {
+            appendBounded(token, (char) read());
+        }
+        String name = token.toString();
+        while ((c = read()) >= 0 && c != '"' && c != ']') {
+            // Skip to the value
+        }
+        token.setLength(0);
+        if (c == '"') {
+            while ((c = read()) >= 0 && c != '"') {
+                if (c == '\\') {
+                    c = read();
+                }
+                if (c >= 0) {
+                    appendBounded(token, (char) c);
+                }
+            }
+            skipPast(']');
+        }
+        tags.put(name, token.toString());
+    }
+
+    // Reads up to the next whitespace or character that starts something else
+    private void readToken(StringBuilder token) throws IOException {
+        token.setLength(0);
+        int c;
+        while ((c = peek()) >= 0 && !Character.isWhitespace(c) && "{}()[];$".indexOf(c) < 0) {
+            appendBounded(token, (char) read());
+        }
+    }
+
+    private void skipVariation() throws IOException {
+        int depth = 0;
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return;
+            } else if (c == '{') {
+                skipPast('}');
+            }
+        }
+    }
+
+    private void skipPast(char end) throws IOException {
+        int c;
+        while ((c = read()) >= 0 && c != end) {
+            // Skip
+        }
+    }
+
+    private static void appendBounded(StringBuilder token, char c) {
+        if (token.length() < MAX_TOKEN) {
+            token.append(c);
+        }
+    }
+
+    private static boolean isResult(String text) {
+        return text.equals("1-0") || text.equals("0-1") || text.equals("1/2-1/2") || text.equals("*");
+    }
+
+    // "12.e4" and "12...Nf6" are written together sometimes, "12." and "12..." on their own are skipped
+    private static String stripMoveNumber(String text) {
+        int index = 0;
+        while (index < text.length() && Character.isDigit(text.charAt(index))) {
+            index++;
+        }
+        if (index == 0 || index == text.length() || text.charAt(index) != '.') {
+            return text;
+        }
+        while (index < text.length() && text.charAt(index) == '.') {
+            index++;
+        }
+        return text.substring(index);
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c >= 0) {
+            position++;
+            if (c == '\n') {
+                line++;
+            }
+        }
+        return c;
+    }
+}
@@ -0,0 +1,73 @@
+package serialization;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes games as PGN, one at a time and straight to the writer, so an export of any size holds one game in
+ * memory. Tags are written in the order given, then the moves with their numbers, wrapped to lines of at most
+ * 80 characters as the PGN standard asks, then the result.
+ */
+public final class PgnWriter {
+    private static final int LINE_LENGTH = 80;
+
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(LINE_LENGTH + 16);
+
+    public PgnWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * @param tags tag pairs, e.g. Event, White, Black, Result
+     * @param moves the moves in SAN, starting with white's unless blackFirst
+     * @param blackFirst true for a game set up with black to move
+     * @param result 1-0, 0-1, 1/2-1/2 or *
+     */
+    public void write(Map<String, String> tags, List<String> moves, boolean blackFirst, String result)
+        throws IOException {
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            out.write('[');
+            out.write(tag.getKey());
+            out.write(" \"");
+            String value = tag.getValue();
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    out.write('\\');
+                }
+                out.write(c);
+            }
+            out.write("\"]\n");
+        }
+        out.write('\n');
+
+        line.setLength(0);
+        int ply = blackFirst ? 1 : 0;
+        for (int i = 0; i < moves.size(); i++, ply++) {
+            if (ply % 2 == 0) {
+                token((ply / 2 + 1) + ".");
+            } else if (i == 0) {
+                token((ply / 2 + 1) + "...");
+            }
+            token(moves.get(i));
+        }
+        token(result);
+        out.write(line.toString());
+        out.write("\n\n");
+    }
+
+    private void token(String token) throws IOException {
+        if (line.length() > 0 && line.length() + 1 + token.length() > LINE_LENGTH) {
+            out.write(line.toString());
+            out.write('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) {
+            line.append(' ');
+        }
+        line.append(token);
+    }
+}
@@ -0,0 +1,232 @@
+package serialization;
+
+import java.util.Collection;
+import java.util.List;
+
+import chess.ChessBoard;
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPiece.PieceType;
+import chess.ChessPosition;
+import chess.InvalidMoveException;
+
+/**
+ * Standard Algebraic Notation, the move format PGN uses: "e4", "Nbd7", "exd5", "R1e2", "e8=Q+".
+ * <p>
+ * A SAN move only makes sense against a position, so parsing finds the one legal move in the game that matches
+ * the piece, destination, promotion and whatever file or rank the move was disambiguated with. Check, mate and
+ * annotation marks at the end are ignored. ChessGame plays no castling, so O-O and O-O-O are rejected.
+ * <p>
+ * Formatting goes the other way: the piece letter, as much of the starting square as it takes to tell the move
+ * apart from another piece of the same kind, an x for a capture, the destination, the promotion and + or #.
+ */
+public final class San {
+
+    private San() {}
+
+    /**
+     * @throws IllegalArgumentException if the text isn't SAN or no single legal move matches it
+     */
+    public static ChessMove parse(ChessGame game, String san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        if (end == 0) {
+            throw new IllegalArgumentException("Empty move");
+        }
+        if (san.charAt(0) == 'O' || san.charAt(0) == '0') {
+            throw new IllegalArgumentException("Castling isn't supported: " + san);
+        }
+
+        // Promotion comes last: "e8=Q" or "e8Q"
+        PieceType promotion = null;
+        if (Character.isUpperCase(san.charAt(end - 1))) {
+            promotion = pieceType(san.charAt(end - 1), san);
+            end--;
+            if (end > 0 && san.charAt(end - 1) == '=') {
+                end--;
+            }
+        }
+        if (end < 2) {
+            throw new IllegalArgumentException("Move is missing its destination: " + san);
+        }
+
+        ChessPosition to = square(san.charAt(end - 2), san.charAt(end - 1), san);
+        int index = 0;
+        PieceType type = PieceType.PAWN;
+        if (Character.isUpperCase(san.charAt(0))) {
+            type = pieceType(san.charAt(0), san);
+            index = 1;
+        }
+
+        // Anything between the piece and the destination is disambiguation, plus an x for a capture
+        int fromCol = 0;
+        int fromRow = 0;
+        for (; index < end - 2; index++) {
+            char c = san.charAt(index);
+            if (c >= 'a' && c <= 'h') {
+                fromCol = c - 'a' + 1;
+            } else if (c >= '1' && c <= '8') {
+                fromRow = c - '0';
+            } else if (c != 'x') {
+                throw new IllegalArgumentException("Unexpected '" + c + "' in move: " + san);
+            }
+        }
+        if (promotion != null && type != PieceType.PAWN) {
+            throw new IllegalArgumentException("Only pawns promote: " + san);
+        }
+
+        ChessBoard board = game.getBoard();
+        ChessMove found = null;
+        for (int row = 1; row <= 8; row++) {
+            if (fromRow != 0 && row != fromRow) {
+                continue;
+            }
+            for (int col = 1; col <= 8; col++) {
+                if (fromCol != 0 && col != fromCol) {
+                    continue;
+                }
+                ChessPosition from = new ChessPosition(row, col);
+                ChessPiece piece = board.getPiece(from);
+                if (piece == null || piece.getPieceType() != type || piece.getTeamColor() != game.getTeamTurn()) {
+                    continue;
+                }
+                ChessMove move = new ChessMove(from, to, promotion);
+                Collection<ChessMove> legal = game.validMoves(from);
+                if (legal != null && legal.contains(move)) {
+                    if (found != null) {
+                        throw new IllegalArgumentException("Ambiguous move: " + san);
+                    }
+                    found = move;
+                }
+            }
+        }
+        if (found == null) {
+            throw new IllegalArgumentException("Illegal move: " + san);
+        }
+        return found;
+    }
+
+    /**
+     * Formats a legal move of the side to move, working out check and mate by playing it on a copy of the game.
+     * Callers that already know whether the move gives check or mate should use the other overload.
+     */
+    public static String format(ChessGame game, ChessMove move) {
+        ChessGame after = new ChessGame(game.getTeamTurn(), new ChessBoard(game.getBoard()), false,
+            game.copyPiecesFunction(game.getTeamPieces()), game.copyKingsFunction(game.getKingPieces()));
+        try {
+            after.makeMove(move);
+        } catch (InvalidMoveException e) {
+            throw new IllegalArgumentException("Illegal move: " + move, e);
+        }
+        boolean mate = after.isInCheckmate(after.getTeamTurn());
+        return format(game, move, !mate && after.isInCheck(after.getTeamTurn()), mate);
+    }
+
+    /**
+     * Formats a legal move of the side to move, with the game as it was before the move
+     */
+    public static String format(ChessGame game, ChessMove move, boolean check, boolean mate) {
+        ChessBoard board = game.getBoard();
+        ChessPosition from = move.getStartPosition();
+        ChessPosition to = move.getEndPosition();
+        ChessPiece piece = board.getPiece(from);
+        if (piece == null) {
+            throw new IllegalArgumentException("No piece on " + square(from));
+        }
+        boolean capture = board.getPiece(to) != null;
+
+        StringBuilder san = new StringBuilder(8);
+        if (piece.getPieceType() == PieceType.PAWN) {
+            if (capture) {
+                san.append(file(from)).append('x');
+            }
+        } else {
+            san.append(letter(piece.getPieceType()));
+            disambiguate(game, piece, from, to, san);
+            if (capture) {
+                san.append('x');
+            }
+        }
+        san.append(square(to));
+        if (move.getPromotionPiece() != null) {
+            san.append('=').append(letter(move.getPromotionPiece()));
+        }
+        if (mate) {
+            san.append('#');
+        } else if (check) {
+            san.append('+');
+        }
+        return san.toString();
+    }
+
+    // The file if that's enough, else the rank if that's enough, else both
+    private static void disambiguate(ChessGame game, ChessPiece piece, ChessPosition from, ChessPosition to,
+                                     StringBuilder san) {
+        boolean rival = false;
+        boolean sameFile = false;
+        boolean sameRank = false;
+        // validMoves tries moves out on the game, so walk a copy of the piece list
+        for (ChessPosition other : List.copyOf(game.getTeamPieces().get(piece.getTeamColor()))) {
+            if (other.equals(from) || !piece.equals(game.getBoard().getPiece(other))) {
+                continue;
+            }
+            Collection<ChessMove> legal = game.validMoves(other);
+            if (legal == null || !legal.contains(new ChessMove(other, to, null))) {
+                continue;
+            }
+            rival = true;
+            sameFile |= other.getColumn() == from.getColumn();
+            sameRank |= other.getRow() == from.getRow();
+        }
+        if (!rival) {
+            return;
+        }
+        if (!sameFile) {
+            san.append(file(from));
+        } else if (!sameRank) {
+            san.append((char) ('0' + from.getRow()));
+        } else {
+            san.append(square(from));
+        }
+    }
+
+    private static char letter(PieceType type) {
+        return switch (type) {
+            case KNIGHT -> 'N';
+            case BISHOP -> 'B';
+            case ROOK -> 'R';
+            case QUEEN -> 'Q';
+            case KING -> 'K';
+            case PAWN -> 'P';
+        };
+    }
+
+    private static char file(ChessPosition position) {
+        return (char) ('a' + position.getColumn() - 1);
+    }
+
+    private static String square(ChessPosition position) {
+        return "" + file(position) + position.getRow();
+    }
+
+    private static PieceType pieceType(char letter, String san) {
+        return switch (letter) {
+            case 'N' -> PieceType.KNIGHT;
+            case 'B' -> PieceType.BISHOP;
+            case 'R' -> PieceType.ROOK;
+            case 'Q' -> PieceType.QUEEN;
+            case 'K' -> PieceType.KING;
+            default -> throw new IllegalArgumentException("Unknown piece '" + letter + "' in move: " + san);
+        };
+    }
+
+    private static ChessPosition square(char file, char rank, String san) {
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+            throw new IllegalArgumentException("Bad destination square in move: " + san);
+        }
+        return new ChessPosition(rank - '0', file - 'a' + 1);
+    }
+}
@@ -0,0 +1,39 @@
+package serialization;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import chess.ChessBoard;
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+
+/**
+ * The one Gson instance shared by the client, the server and the models. Gson is thread safe once it is built, and
+ * building it (plus the reflection metadata it caches) is the expensive part, so nothing should call new Gson().
+ * <p>
+ * The chess classes get hand written adapters that produce exactly the JSON reflection used to produce, so older
+ * clients and stored games still read and write the same format. STORAGE is for the game stores only: it also
+ * writes each game's halfmove clock and repetition history, which clients aren't sent.
+ */
+public final class Serializer {
+
+    public static final Gson GSON = builder().create();
+    public static final Gson STORAGE = builder()
+        .registerTypeAdapter(ChessGame.class, new ChessGameAdapter(true))
+        .create();
+
+    private Serializer() {}
+
+    /**
+     * @return a builder with the chess adapters already registered, for callers that need extra settings like
+     * serializeNulls
+     */
+    public static GsonBuilder builder() {
+        return new GsonBuilder()
+            .registerTypeAdapter(ChessPosition.class, new ChessPositionAdapter())
+            .registerTypeAdapter(ChessMove.class, new ChessMoveAdapter())
+            .registerTypeAdapter(ChessBoard.class, new ChessBoardAdapter())
+            .registerTypeAdapter(ChessGame.class, new ChessGameAdapter());
+    }
+}
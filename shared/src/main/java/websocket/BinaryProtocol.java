@@ -0,0 +1,215 @@
+package websocket;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece.PieceType;
+import model.AnalysisUpdate;
+import serialization.PackedGame;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.UserGameCommand;
+import websocket.commands.UserGameCommand.CommandType;
+import websocket.messages.AnalysisMessage;
+import websocket.messages.ErrorMessage;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+import websocket.messages.ServerMessage.ServerMessageType;
+
+/**
+ * The opt-in binary websocket sub-protocol. A client asks for it by connecting to /ws?protocol=chess-binary-v1;
+ * everyone else (including the passoff tests) keeps talking JSON text.
+ * <p>
+ * Commands: [type][gameID int, -1 for none][token length short][token UTF-8] and, for MAKE_MOVE,
+ * [start square][end square][promotion: 0 for none, else 1 + PieceType ordinal]. Squares are 0..63 for a1..h8.
+ * <p>
+ * Server messages: [type] then for LOAD_GAME [player color: 0 none, 1 white, 2 black][PackedGame], and for
+ * ERROR and NOTIFICATION [length short][text UTF-8]. ANALYSIS is [gameID int][score short][mateIn byte]
+ * [depth byte][nodes long][done byte][has move byte] and, when there is a move, the same three bytes as MAKE_MOVE.
+ */
+public final class BinaryProtocol {
+
+    public static final String PROTOCOL = "chess-binary-v1";
+    public static final String QUERY_PARAM = "protocol";
+
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+    private static final CommandType[] COMMAND_TYPES = CommandType.values();
+    private static final ServerMessageType[] MESSAGE_TYPES = ServerMessageType.values();
+
+    private BinaryProtocol() {}
+
+    // ---------------------------- COMMANDS ------------------------------------
+
+    public static byte[] encodeCommand(UserGameCommand command) {
+        byte[] token = utf8(command.getAuthToken());
+        boolean isMove = command instanceof MakeMoveCommand;
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + 2 + token.length + (isMove ? 3 : 0));
+
+        buffer.put((byte) command.getCommandType().ordinal());
+        buffer.putInt(command.getGameID() == null ? -1 : command.getGameID());
+        putString(buffer, token);
+        if (isMove) {
+            putMove(buffer, ((MakeMoveCommand) command).getMove());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the frame is not a well formed command
+     */
+    public static UserGameCommand decodeCommand(ByteBuffer buffer) {
+        try {
+            CommandType type = COMMAND_TYPES[checkIndex(buffer.get(), COMMAND_TYPES.length)];
+            int gameID = buffer.getInt();
+            String token = getString(buffer);
+            String authToken = token.isEmpty() ? null : token;
+            Integer id = gameID < 0 ? null : gameID;
+
+            if (type != CommandType.MAKE_MOVE) {
+                return new UserGameCommand(type, authToken, id);
+            }
+            return new MakeMoveCommand(authToken, id, getMove(buffer));
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("Truncated command frame", ex);
+        }
+    }
+
+    // ---------------------------- SERVER MESSAGES ------------------------------------
+
+    public static byte[] encodeMessage(ServerMessage message) {
+        ServerMessageType type = message.getServerMessageType();
+        if (type == ServerMessageType.LOAD_GAME) {
+            LoadGameMessage loadGame = (LoadGameMessage) message;
+            ByteBuffer buffer = ByteBuffer.allocate(2 + PackedGame.SIZE);
+            buffer.put((byte) type.ordinal());
+            buffer.put(colorCode(loadGame.getPlayerColor()));
+            PackedGame.write(buffer, loadGame.getGame());
+            return buffer.array();
+        }
+        if (type == ServerMessageType.ANALYSIS) {
+            AnalysisUpdate analysis = ((AnalysisMessage) message).getAnalysis();
+            ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + 2 + 1 + 1 + 8 + 1 + 1 + 3);
+            buffer.put((byte) type.ordinal());
+            buffer.putInt(analysis.gameID());
+            buffer.putShort((short) analysis.score());
+            buffer.put((byte) analysis.mateIn());
+            buffer.put((byte) analysis.depth());
+            buffer.putLong(analysis.nodes());
+            buffer.put((byte) (analysis.done() ? 1 : 0));
+            buffer.put((byte) (analysis.bestMove() == null ? 0 : 1));
+            if (analysis.bestMove() != null) {
+                putMove(buffer, analysis.bestMove());
+            }
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+
+        String text = type == ServerMessageType.ERROR
+            ? ((ErrorMessage) message).getErrorMessage()
+            : ((NotificationMessage) message).getMessage();
+        byte[] bytes = utf8(text);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 2 + bytes.length);
+        buffer.put((byte) type.ordinal());
+        putString(buffer, bytes);
+        return buffer.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the frame is not a well formed server message
+     */
+    public static ServerMessage decodeMessage(ByteBuffer buffer) {
+        try {
+            ServerMessageType type = MESSAGE_TYPES[checkIndex(buffer.get(), MESSAGE_TYPES.length)];
+            return switch (type) {
+                case LOAD_GAME -> {
+                    String playerColor = colorName(buffer.get());
+                    ChessGame game = PackedGame.read(buffer);
+                    yield new LoadGameMessage(game, playerColor);
+                }
+                case ERROR -> new ErrorMessage(getString(buffer));
+                case NOTIFICATION -> new NotificationMessage(getString(buffer));
+                case ANALYSIS -> {
+                    int gameID = buffer.getInt();
+                    int score = buffer.getShort();
+                    int mateIn = buffer.get();
+                    int depth = buffer.get() & 0xFF;
+                    long nodes = buffer.getLong();
+                    boolean done = buffer.get() != 0;
+                    ChessMove bestMove = buffer.get() != 0 ? getMove(buffer) : null;
+                    yield new AnalysisMessage(new AnalysisUpdate(gameID, bestMove, score, mateIn, depth, nodes, done));
+                }
+            };
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("Truncated server frame", ex);
+        }
+    }
+
+    // ---------------------------- HELPERS ------------------------------------
+
+    private static void putMove(ByteBuffer buffer, ChessMove move) {
+        buffer.put((byte) PackedGame.squareIndex(move.getStartPosition()));
+        buffer.put((byte) PackedGame.squareIndex(move.getEndPosition()));
+        buffer.put((byte) (move.getPromotionPiece() == null ? 0 : 1 + move.getPromotionPiece().ordinal()));
+    }
+
+    private static ChessMove getMove(ByteBuffer buffer) {
+        int start = checkIndex(buffer.get(), 64);
+        int end = checkIndex(buffer.get(), 64);
+        int promotion = checkIndex(buffer.get(), PIECE_TYPES.length + 1);
+        return new ChessMove(PackedGame.positionOf(start), PackedGame.positionOf(end),
+            promotion == 0 ? null : PIECE_TYPES[promotion - 1]);
+    }
+
+    private static byte colorCode(String playerColor) {
+        if ("WHITE".equals(playerColor)) {
+            return 1;
+        } else if ("BLACK".equals(playerColor)) {
+            return 2;
+        }
+        return 0;
+    }
+
+    private static String colorName(byte code) {
+        return switch (code) {
+            case 1 -> "WHITE";
+            case 2 -> "BLACK";
+            default -> null;
+        };
+    }
+
+    private static byte[] utf8(String text) {
+        if (text == null) {
+            return new byte[0];
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String is too long for a binary frame");
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("String runs past the end of the frame");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checkIndex(int value, int bound) {
+        if (value < 0 || value >= bound) {
+            throw new IllegalArgumentException("Value out of range in binary frame: " + value);
+        }
+        return value;
+    }
+}
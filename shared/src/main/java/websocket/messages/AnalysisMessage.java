@@ -0,0 +1,16 @@
+package websocket.messages;
+
+import model.AnalysisUpdate;
+
+public class AnalysisMessage extends ServerMessage {
+    private final AnalysisUpdate analysis;
+
+    public AnalysisMessage(AnalysisUpdate analysis) {
+        super(ServerMessageType.ANALYSIS);
+        this.analysis = analysis;
+    }
+
+    public AnalysisUpdate getAnalysis() {
+        return analysis;
+    }
+}
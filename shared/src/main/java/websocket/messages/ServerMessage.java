@@ -2,7 +2,7 @@ package websocket.messages;
 
 import java.util.Objects;
 
-import com.google.gson.Gson;
+import serialization.Serializer;
 
 /**
  * Represents a Message the server can send through a WebSocket
@@ -16,7 +16,8 @@ public class ServerMessage {
     public enum ServerMessageType {
         LOAD_GAME,
         ERROR,
-        NOTIFICATION
+        NOTIFICATION,
+        ANALYSIS
     }
 
     public ServerMessage(ServerMessageType type) {
@@ -28,7 +29,7 @@ public class ServerMessage {
     }
 
     public String toString() {
-        return new Gson().toJson(this);
+        return Serializer.GSON.toJson(this);
     }
 
     @Override
@@ -0,0 +1,87 @@
+package chess;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import serialization.Fen;
+import serialization.Serializer;
+
+public class DrawRulesTest {
+
+    private static ChessMove move(int fromRow, int fromCol, int toRow, int toCol) {
+        return new ChessMove(new ChessPosition(fromRow, fromCol), new ChessPosition(toRow, toCol), null);
+    }
+
+    // Both knights out and back, which brings the starting position back once
+    private static void shuffleKnights(ChessGame game) throws InvalidMoveException {
+        game.makeMove(move(1, 7, 3, 6));
+        game.makeMove(move(8, 7, 6, 6));
+        game.makeMove(move(3, 6, 1, 7));
+        game.makeMove(move(6, 6, 8, 7));
+    }
+
+    @Test
+    void positiveTestThreefoldRepetition() throws Exception {
+        ChessGame game = ChessGame.newGame();
+        shuffleKnights(game);
+        assertFalse(game.isGameOver(), "Two occurrences of a position should not end the game");
+        assertEquals(4, game.getHalfmoveClock(), "Knight moves should count towards the fifty-move rule");
+
+        shuffleKnights(game);
+        assertTrue(game.isDrawByRepetition(), "The third occurrence of a position should be a draw");
+        assertTrue(game.isGameOver(), "A draw by repetition should end the game");
+        assertThrows(InvalidMoveException.class, () -> game.makeMove(move(2, 5, 4, 5)),
+            "No moves should be allowed once the game is drawn");
+    }
+
+    @Test
+    void positiveTestPawnMoveResetsHistory() throws Exception {
+        ChessGame game = ChessGame.newGame();
+        shuffleKnights(game);
+        game.makeMove(move(2, 5, 4, 5));
+        game.makeMove(move(7, 5, 5, 5));
+        assertEquals(0, game.getHalfmoveClock(), "A pawn move should reset the halfmove clock");
+        assertEquals(1, game.getPositionHistory().length, "A pawn move should start the history over");
+
+        shuffleKnights(game);
+        assertFalse(game.isGameOver(), "Two occurrences of a position should not end the game");
+        shuffleKnights(game);
+        assertTrue(game.isGameOver(), "The third occurrence after the pawn moves should be a draw");
+    }
+
+    @Test
+    void positiveTestFiftyMoveRule() throws Exception {
+        ChessGame game = Fen.parse("4k3/8/8/8/8/8/8/R3K3 w - - 98 1");
+        game.makeMove(move(1, 1, 2, 1));
+        assertFalse(game.isGameOver(), "99 halfmoves should not end the game");
+        game.makeMove(move(8, 5, 8, 4));
+        assertTrue(game.isDrawByFiftyMoveRule(), "100 halfmoves without a capture or pawn move should be a draw");
+        assertTrue(game.isGameOver(), "The fifty-move rule should end the game");
+        assertEquals("1/2-1/2", game.getResult(), "The fifty-move rule should be a draw");
+    }
+
+    @Test
+    void positiveTestIncrementalHash() throws Exception {
+        ChessGame game = Fen.parse("3rk3/4P3/8/8/8/8/8/4K3 w - - 0 1");
+        game.makeMove(new ChessMove(new ChessPosition(7, 5), new ChessPosition(8, 4), ChessPiece.PieceType.QUEEN));
+        assertEquals(Zobrist.hash(game), game.getPositionHash(), "A capturing promotion should update the key");
+        game.makeMove(move(8, 5, 8, 4));
+        assertEquals(Zobrist.hash(game), game.getPositionHash(), "A king capture should update the key");
+    }
+
+    @Test
+    void positiveTestHistorySurvivesSerialization() throws Exception {
+        ChessGame game = ChessGame.newGame();
+        shuffleKnights(game);
+        game.makeMove(move(1, 7, 3, 6));
+        game.makeMove(move(8, 7, 6, 6));
+        game.makeMove(move(3, 6, 1, 7));
+
+        assertFalse(Serializer.GSON.toJson(game).contains("history"), "Clients shouldn't be sent the history");
+        ChessGame copy = Serializer.STORAGE.fromJson(Serializer.STORAGE.toJson(game), ChessGame.class);
+        assertEquals(game.getHalfmoveClock(), copy.getHalfmoveClock(), "The halfmove clock should be saved");
+        assertArrayEquals(game.getPositionHistory(), copy.getPositionHistory(), "The history should be saved");
+        copy.makeMove(move(6, 6, 8, 7));
+        assertTrue(copy.isGameOver(), "Repetition should still be found after a save and load");
+    }
+}
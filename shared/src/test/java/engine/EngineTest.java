@@ -0,0 +1,193 @@
+package engine;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import chess.ChessBoard;
+import chess.ChessGame;
+import chess.ChessGame.TeamColor;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPiece.PieceType;
+import chess.ChessPosition;
+import chess.Zobrist;
+
+public class EngineTest {
+
+    private static ChessGame game(TeamColor toMove, Object... pieces) {
+        ChessBoard board = new ChessBoard();
+        for (int i = 0; i < pieces.length; i += 4) {
+            board.addPiece(new ChessPosition((int) pieces[i], (int) pieces[i + 1]),
+                new ChessPiece((TeamColor) pieces[i + 2], (PieceType) pieces[i + 3]));
+        }
+        return new ChessGame(toMove, board, false, null, null);
+    }
+
+    private static Set<ChessMove> gameMoves(ChessGame game) {
+        Set<ChessMove> moves = new HashSet<>();
+        for (int row = 1; row <= 8; row++) {
+            for (int col = 1; col <= 8; col++) {
+                ChessPosition position = new ChessPosition(row, col);
+                ChessPiece piece = game.getBoard().getPiece(position);
+                if (piece != null && piece.getTeamColor() == game.getTeamTurn()) {
+                    moves.addAll(game.validMoves(position));
+                }
+            }
+        }
+        return moves;
+    }
+
+    private static Set<ChessMove> engineMoves(ChessGame game) {
+        Position position = Position.from(game);
+        int[] moves = new int[Position.MAX_MOVES];
+        int count = position.generate(moves, 0, false);
+        Set<ChessMove> legal = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            if (position.make(moves[i])) {
+                position.unmake(moves[i]);
+                legal.add(Position.toChessMove(moves[i]));
+            }
+        }
+        return legal;
+    }
+
+    @Test
+    void positiveTestMovesMatchChessGame() throws Exception {
+        // Random games from the start, every position has to have exactly the moves ChessGame allows
+        Random random = new Random(42);
+        for (int gameNumber = 0; gameNumber < 20; gameNumber++) {
+            ChessGame game = ChessGame.newGame();
+            for (int ply = 0; ply < 120; ply++) {
+                Set<ChessMove> expected = gameMoves(game);
+                assertEquals(expected, engineMoves(game), "Engine moves should match ChessGame at ply " + ply);
+                if (expected.isEmpty()) {
+                    break;
+                }
+                List<ChessMove> choices = new ArrayList<>(expected);
+                game.makeMove(choices.get(random.nextInt(choices.size())));
+            }
+        }
+    }
+
+    @Test
+    void positiveTestMakeUnmakeRestoresPosition() {
+        Position position = Position.from(ChessGame.newGame());
+        int[] before = position.board.clone();
+        int middlegame = position.middlegame;
+        long hash = position.hash;
+        int[] moves = new int[Position.MAX_MOVES];
+        int count = position.generate(moves, 0, false);
+        for (int i = 0; i < count; i++) {
+            if (position.make(moves[i])) {
+                position.unmake(moves[i]);
+            }
+            assertArrayEquals(before, position.board, "Unmake should put every piece back");
+            assertEquals(middlegame, position.middlegame, "Unmake should restore the evaluation");
+            assertEquals(hash, position.hash, "Unmake should restore the hash");
+        }
+    }
+
+    @Test
+    void positiveTestHashMatchesZobrist() throws Exception {
+        ChessGame game = ChessGame.newGame();
+        assertEquals(Zobrist.hash(game), Position.from(game).hash, "The engine should key the start like ChessGame");
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        game.makeMove(new ChessMove(new ChessPosition(8, 7), new ChessPosition(6, 6), null));
+        assertEquals(game.getPositionHash(), Position.from(game).hash, "The engine should key any position like ChessGame");
+    }
+
+    @Test
+    void positiveTestFindsMateInOne() {
+        ChessGame game = game(TeamColor.WHITE,
+            1, 1, TeamColor.WHITE, PieceType.ROOK,
+            1, 7, TeamColor.WHITE, PieceType.KING,
+            8, 8, TeamColor.BLACK, PieceType.KING,
+            7, 7, TeamColor.BLACK, PieceType.PAWN,
+            7, 8, TeamColor.BLACK, PieceType.PAWN);
+
+        SearchResult result = Engine.search(game, Duration.ofSeconds(2));
+        assertEquals(new ChessMove(new ChessPosition(1, 1), new ChessPosition(8, 1), null), result.bestMove(),
+            "Engine should find the back rank mate");
+        assertEquals(1, result.mateIn(), "Engine should report mate in one");
+    }
+
+    @Test
+    void positiveTestTakesHangingQueen() {
+        ChessGame game = game(TeamColor.WHITE,
+            1, 1, TeamColor.WHITE, PieceType.KING,
+            4, 4, TeamColor.WHITE, PieceType.ROOK,
+            4, 8, TeamColor.BLACK, PieceType.QUEEN,
+            8, 1, TeamColor.BLACK, PieceType.KING);
+
+        SearchResult result = Engine.search(game, Duration.ofSeconds(1));
+        assertEquals(new ChessPosition(4, 8), result.bestMove().getEndPosition(), "Engine should take the free queen");
+        assertTrue(result.score() > 300, "Winning a queen for nothing should score well");
+    }
+
+    @Test
+    void positiveTestStaysInsideBudget() {
+        List<SearchResult> depths = new ArrayList<>();
+        long start = System.nanoTime();
+        SearchResult result = Engine.search(ChessGame.newGame(), Duration.ofMillis(100), 64, depths::add);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 250, "Search should stop close to its budget, took " + elapsedMillis + "ms");
+        assertNotNull(result.bestMove(), "Search should always return a move when there is one");
+        assertEquals(result, depths.getLast(), "The result should be the last completed depth");
+        assertTrue(result.depth() >= 3, "Search should get a few plies deep in 100ms");
+        assertTrue(result.nodesPerSecond() > 0, "Search should report its speed");
+    }
+
+    @Test
+    void positiveTestParallelSearch() {
+        ChessGame game = game(TeamColor.WHITE,
+            1, 1, TeamColor.WHITE, PieceType.ROOK,
+            1, 7, TeamColor.WHITE, PieceType.KING,
+            8, 8, TeamColor.BLACK, PieceType.KING,
+            7, 7, TeamColor.BLACK, PieceType.PAWN,
+            7, 8, TeamColor.BLACK, PieceType.PAWN);
+
+        long start = System.nanoTime();
+        SearchResult result = Engine.search(game, Duration.ofMillis(200), 64, null, new TranspositionTable(4), 4);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(new ChessMove(new ChessPosition(1, 1), new ChessPosition(8, 1), null), result.bestMove(),
+            "Parallel search should find the same mate");
+        assertTrue(elapsedMillis < 350, "Helpers should stop with the main search, took " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void negativeTestParallelSearchNeedsAThread() {
+        assertThrows(IllegalArgumentException.class,
+            () -> Engine.search(ChessGame.newGame(), Duration.ofMillis(10), 1, null, new TranspositionTable(1), 0),
+            "Zero threads can't search");
+    }
+
+    @Test
+    void negativeTestSearchNeedsADepth() {
+        for (int threads : new int[] {1, 2}) {
+            assertThrows(IllegalArgumentException.class,
+                () -> Engine.search(ChessGame.newGame(), Duration.ofMillis(10), 0, null, new TranspositionTable(1), threads),
+                "A depth of 0 can't search on " + threads + " threads");
+        }
+    }
+
+    @Test
+    void negativeTestNoMoveWhenStalemated() {
+        ChessGame game = game(TeamColor.BLACK,
+            8, 1, TeamColor.BLACK, PieceType.KING,
+            6, 2, TeamColor.WHITE, PieceType.QUEEN,
+            6, 3, TeamColor.WHITE, PieceType.KING);
+
+        SearchResult result = Engine.search(game, Duration.ofMillis(100));
+        assertNull(result.bestMove(), "There is no move to return in stalemate");
+        assertEquals(0, result.score(), "Stalemate is a draw");
+    }
+}
@@ -0,0 +1,66 @@
+package engine;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+
+public class TranspositionTableTest {
+
+    @Test
+    void positiveTestStoreAndProbe() {
+        TranspositionTable table = new TranspositionTable(1);
+        int move = Position.encode(12, 28, 0, 0, Position.PAWN);
+        table.store(0x1234_5678_9ABC_DEF0L, move, -Search.MATE + 3, 7, TranspositionTable.UPPER);
+
+        long entry = table.probe(0x1234_5678_9ABC_DEF0L);
+        assertEquals(move, TranspositionTable.move(entry), "The stored move should come back");
+        assertEquals(-Search.MATE + 3, TranspositionTable.score(entry), "Negative scores should survive packing");
+        assertEquals(7, TranspositionTable.depth(entry), "The stored depth should come back");
+        assertEquals(TranspositionTable.UPPER, TranspositionTable.bound(entry), "The stored bound should come back");
+        assertEquals(0, table.probe(0x1234_5678_9ABC_DEF1L), "A different key should miss");
+    }
+
+    @Test
+    void positiveTestKeepsDeepEntryOverShallow() {
+        TranspositionTable table = new TranspositionTable(1);
+        // Same bucket, different keys: the bucket index only looks at the low bits
+        long deep = 1L << 40;
+        long shallow = 2L << 40;
+        long newcomer = 3L << 40;
+        table.store(deep, 0, 10, 12, TranspositionTable.EXACT);
+        table.store(shallow, 0, 20, 2, TranspositionTable.EXACT);
+        table.store(newcomer, 0, 30, 5, TranspositionTable.EXACT);
+
+        assertNotEquals(0, table.probe(deep), "The deepest entry should be kept");
+        assertEquals(0, table.probe(shallow), "The shallowest entry should be replaced");
+        assertNotEquals(0, table.probe(newcomer), "The new entry should be stored");
+    }
+
+    @Test
+    void positiveTestSearchUsesTable() {
+        TranspositionTable table = new TranspositionTable(4);
+        SearchResult result = Engine.search(ChessGame.newGame(), Duration.ofSeconds(1), 6, null, table);
+        TranspositionTable.Stats stats = table.stats();
+
+        assertNotNull(result.bestMove(), "Search should still find a move");
+        assertTrue(stats.probes() > 0, "Search should look positions up");
+        assertTrue(stats.hitRate() > 0, "Transpositions in the opening should hit");
+        assertTrue(stats.occupancy() > 0, "Search should fill some of the table");
+        assertEquals(4, stats.megabytes(), "The table should use the memory it was given");
+
+        table.clear();
+        assertEquals(0, table.stats().probes(), "Clearing should reset the counters");
+        assertEquals(0, table.stats().occupancy(), "Clearing should empty the table");
+    }
+
+    @Test
+    void negativeTestRejectsEmptyBudget() {
+        assertThrows(IllegalArgumentException.class, () -> new TranspositionTable(0),
+            "A table needs some memory");
+    }
+}
@@ -0,0 +1,71 @@
+package serialization;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.google.gson.Gson;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+
+public class ChessGameAdapterTest {
+
+    // What clients and stored games were written with before the adapters
+    private static final Gson REFLECTIVE = new Gson();
+
+    private static ChessGame midGame() throws Exception {
+        ChessGame game = ChessGame.newGame();
+        int[][] moves = {{2, 5, 4, 5}, {7, 4, 5, 4}, {4, 5, 5, 4}, {8, 4, 5, 4}, {1, 2, 3, 3}, {5, 4, 5, 1},
+            {1, 6, 4, 3}, {8, 7, 6, 6}};
+        for (int[] move : moves) {
+            game.makeMove(new ChessMove(new ChessPosition(move[0], move[1]), new ChessPosition(move[2], move[3]), null));
+        }
+        return game;
+    }
+
+    private static void assertSameAsReflection(ChessGame game, String message) {
+        String expected = REFLECTIVE.toJson(game);
+        assertEquals(expected, Serializer.GSON.toJson(game), message);
+        assertEquals(game, Serializer.GSON.fromJson(expected, ChessGame.class), "Reflective JSON should read back");
+        assertEquals(game, REFLECTIVE.fromJson(Serializer.GSON.toJson(game), ChessGame.class),
+            "Reflection should read what the adapter writes");
+    }
+
+    @Test
+    void positiveTestStartPositionMatchesReflection() {
+        assertSameAsReflection(ChessGame.newGame(), "The start position should be written exactly as reflection did");
+    }
+
+    @Test
+    void positiveTestMidGameMatchesReflection() throws Exception {
+        // Captures on both sides and pieces off their starting squares
+        assertSameAsReflection(midGame(), "A game in progress should be written exactly as reflection did");
+    }
+
+    @Test
+    void positiveTestFinishedGameMatchesReflection() {
+        assertSameAsReflection(Fen.parse("R5k1/5ppp/8/8/8/8/8/6K1 b - - 0 1"),
+            "A finished game should be written exactly as reflection did");
+    }
+
+    @Test
+    void positiveTestStorageAddsHistory() throws Exception {
+        ChessGame game = midGame();
+        String stored = Serializer.STORAGE.toJson(game);
+        String wire = Serializer.GSON.toJson(game);
+        assertTrue(stored.startsWith(wire.substring(0, wire.length() - 1) + ",\"halfmoveClock\":4,\"history\":["),
+            "The stored form should be the wire form plus the clock and history");
+        assertEquals(game, Serializer.GSON.fromJson(stored, ChessGame.class), "The wire form should read stored games");
+    }
+
+    @Test
+    void positiveTestStorageKeepsResult() throws Exception {
+        ChessGame game = midGame();
+        game.resign(ChessGame.TeamColor.BLACK);
+        assertFalse(Serializer.GSON.toJson(game).contains("result"), "The wire form should match reflection");
+        assertEquals("1-0", Serializer.STORAGE.fromJson(Serializer.STORAGE.toJson(game), ChessGame.class).getResult(),
+            "A stored game should keep how it ended");
+        assertFalse(Serializer.STORAGE.toJson(midGame()).contains("result"), "A game in progress has no result");
+    }
+}
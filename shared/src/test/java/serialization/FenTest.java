@@ -0,0 +1,78 @@
+package serialization;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import chess.ChessGame;
+import chess.ChessGame.TeamColor;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPiece.PieceType;
+import chess.ChessPosition;
+
+public class FenTest {
+
+    @Test
+    void positiveTestStartPosition() {
+        assertEquals(ChessGame.newGame(), Fen.parse(Fen.START), "The start FEN should be the start position");
+        assertEquals("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - - 0 1", Fen.format(ChessGame.newGame()),
+            "Castling and counters aren't tracked, so they are written as none and the first move");
+    }
+
+    @Test
+    void positiveTestRoundTrip() throws Exception {
+        ChessGame game = ChessGame.newGame();
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        game.makeMove(new ChessMove(new ChessPosition(8, 7), new ChessPosition(6, 6), null));
+
+        String fen = Fen.format(game);
+        assertEquals("rnbqkb1r/pppppppp/5n2/8/4P3/8/PPPP1PPP/RNBQKBNR w - - 1 1", fen, "FEN should match the board");
+        ChessGame parsed = Fen.parse(fen);
+        assertEquals(game.getBoard(), parsed.getBoard(), "Parsing the FEN should give the same board back");
+        assertEquals(game.getTeamTurn(), parsed.getTeamTurn(), "Parsing the FEN should give the same side to move");
+        assertEquals(1, parsed.getHalfmoveClock(), "Parsing the FEN should give the same halfmove clock");
+    }
+
+    @Test
+    void positiveTestAcceptsAllFields() {
+        ChessGame game = Fen.parse("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq e6 0 2");
+        assertEquals(TeamColor.WHITE, game.getTeamTurn(), "Side to move should be read");
+        assertEquals(new ChessPiece(TeamColor.BLACK, PieceType.PAWN), game.getBoard().getPiece(new ChessPosition(5, 5)),
+            "Pieces should land on their squares");
+
+        ChessGame short4 = Fen.parse("4k3/8/8/8/8/8/8/4K3 b - -");
+        assertEquals(TeamColor.BLACK, short4.getTeamTurn(), "The move counters may be left off");
+    }
+
+    @Test
+    void positiveTestFinishedPositions() {
+        assertTrue(Fen.parse("R5k1/5ppp/8/8/8/8/8/6K1 b - - 0 1").isGameOver(), "A mated side to move should be over");
+        assertTrue(Fen.parse("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1").isGameOver(), "A stalemated side should be over");
+        assertFalse(Fen.parse(Fen.START).isGameOver(), "The start position should be playable");
+        assertTrue(Fen.parse("4k3/8/8/8/8/8/8/R3K3 w - - 100 80").isGameOver(),
+            "A clock already at the fifty-move rule should be over");
+        assertFalse(Fen.parse("4k3/8/8/8/8/8/8/R3K3 w - - 99 80").isGameOver(), "One halfmove short should be playable");
+        assertFalse(Fen.parse("4k3/8/8/8/8/8/8/R3K3 w - - 100 80", false).isGameOver(),
+            "A replayed game may play on past an unclaimed draw");
+    }
+
+    @Test
+    void negativeTestRejectsMalformed() {
+        String[] bad = {
+            "",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP w - - 0 1",
+            "rnbqkbnr/pppppppp/9/8/8/8/PPPPPPPP/RNBQKBNR w - - 0 1",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR x - - 0 1",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KK - 0 1",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - e4 0 1",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - - 0",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNX w - - 0 1",
+            "8/8/8/8/8/8/8/4K3 w - - 0 1",
+            "P3k3/8/8/8/8/8/8/4K3 w - - 0 1",
+            "4k2R/8/8/8/8/8/8/4K3 w - - 0 1",
+        };
+        for (String fen : bad) {
+            assertThrows(IllegalArgumentException.class, () -> Fen.parse(fen), "Should reject: " + fen);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package serialization;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+
+import chess.ChessGame;
+import chess.ChessGame.TeamColor;
+import chess.ChessPosition;
+
+public class PackedGameTest {
+
+    @Test
+    void positiveTestStartPositionRoundTrip() {
+        ChessGame game = ChessGame.newGame();
+        byte[] packed = PackedGame.pack(game);
+        assertEquals(PackedGame.SIZE, packed.length, "A packed game should always be SIZE bytes");
+
+        ChessGame unpacked = PackedGame.unpack(packed);
+        assertEquals(game, unpacked, "The start position should unpack to itself");
+        assertFalse(unpacked.isGameOver(), "The start position isn't over");
+    }
+
+    @Test
+    void positiveTestEveryPieceRoundTrip() {
+        // Every piece type of both colors, black to move
+        ChessGame game = Fen.parse("r1bqk2r/pppp1ppp/2n2n2/2b1p3/2B1P3/3P1N2/PPP2PPP/RNBQK2R b - - 0 1");
+        ChessGame unpacked = PackedGame.unpack(PackedGame.pack(game));
+        assertEquals(game.getBoard(), unpacked.getBoard(), "Every piece should come back on its square");
+        assertEquals(TeamColor.BLACK, unpacked.getTeamTurn(), "The side to move should come back");
+    }
+
+    @Test
+    void positiveTestGameOverRoundTrip() {
+        ChessGame game = Fen.parse("R5k1/5ppp/8/8/8/8/8/6K1 b - - 0 1");
+        assertTrue(PackedGame.unpack(PackedGame.pack(game)).isGameOver(), "A finished game should stay finished");
+    }
+
+    @Test
+    void positiveTestResultRoundTrip() {
+        ChessGame resigned = ChessGame.newGame();
+        resigned.resign(TeamColor.WHITE);
+        assertEquals("0-1", PackedGame.unpack(PackedGame.pack(resigned)).getResult(), "A resignation should be kept");
+
+        ChessGame drawn = Fen.parse("4k3/8/8/8/8/8/8/R3K3 w - - 100 80");
+        assertEquals("1/2-1/2", PackedGame.unpack(PackedGame.pack(drawn)).getResult(), "A draw by rule should be kept");
+        assertEquals("1-0", PackedGame.unpack(PackedGame.pack(Fen.parse("R5k1/5ppp/8/8/8/8/8/6K1 b - - 0 1")))
+            .getResult(), "Mate should be read off the board");
+        assertEquals("*", PackedGame.unpack(PackedGame.pack(ChessGame.newGame())).getResult(),
+            "A game in progress has no result");
+    }
+
+    @Test
+    void positiveTestBufferPositions() {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * PackedGame.SIZE);
+        ChessGame start = ChessGame.newGame();
+        ChessGame other = Fen.parse("4k3/8/8/8/8/8/4P3/4K3 w - - 0 1");
+        PackedGame.write(buffer, start);
+        PackedGame.write(buffer, other);
+        assertEquals(2 * PackedGame.SIZE, buffer.position(), "Each write should advance the buffer by SIZE");
+
+        buffer.flip();
+        assertEquals(start, PackedGame.read(buffer), "The first game should read back first");
+        assertEquals(other.getBoard(), PackedGame.read(buffer).getBoard(), "The second game should read back second");
+        assertFalse(buffer.hasRemaining(), "Each read should advance the buffer by SIZE");
+    }
+
+    @Test
+    void positiveTestSquareIndex() {
+        assertEquals(0, PackedGame.squareIndex(new ChessPosition(1, 1)), "a1 should be square 0");
+        assertEquals(63, PackedGame.squareIndex(new ChessPosition(8, 8)), "h8 should be square 63");
+        for (int square = 0; square < 64; square++) {
+            assertEquals(square, PackedGame.squareIndex(PackedGame.positionOf(square)),
+                "positionOf and squareIndex should be inverses");
+        }
+    }
+
+    @Test
+    void negativeTestInvalidPieceCode() {
+        byte[] packed = PackedGame.pack(ChessGame.newGame());
+        // 7 isn't a piece type, in the high nibble of the a3/b3 byte
+        packed[1 + 8] = 0x70;
+        assertThrows(IllegalArgumentException.class, () -> PackedGame.unpack(packed),
+            "An unknown piece code should be rejected");
+    }
+}
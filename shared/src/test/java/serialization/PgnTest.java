@@ -0,0 +1,120 @@
+package serialization;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringReader;
+import java.util.List;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece.PieceType;
+import chess.ChessPosition;
+
+public class PgnTest {
+
+    private static final String TWO_GAMES = """
+        [Event "Club night"]
+        [White "Anna"]
+        [Black "Ben"]
+        [Result "1-0"]
+
+        1. e4 e5 {a comment} 2. Qh5 Nc6 (2... g6 3. Qxe5+) 3. Bc4 Nf6?? 4.Qxf7# 1-0
+
+        [White "Cleo"]
+        [Black "Dev"]
+
+        1. d4 $1 d5 2. c4 *
+        """;
+
+    @Test
+    void positiveTestReadsGames() throws Exception {
+        try (PgnReader reader = new PgnReader(new StringReader(TWO_GAMES))) {
+            PgnReader.Game first = reader.next();
+            assertEquals("Anna", first.tags().get("White"), "Tags should be read");
+            assertEquals(List.of("e4", "e5", "Qh5", "Nc6", "Bc4", "Nf6??", "Qxf7#"), first.moves(),
+                "Comments, variations and move numbers should be skipped");
+            assertEquals("1-0", first.result(), "Result should be read");
+            assertEquals(1, first.line(), "The first game starts on line 1");
+
+            PgnReader.Game second = reader.next();
+            assertEquals(List.of("d4", "d5", "c4"), second.moves(), "NAGs should be skipped");
+            assertEquals("*", second.result(), "An unfinished game has result *");
+            assertNull(reader.next(), "There should be nothing after the last game");
+        }
+    }
+
+    @Test
+    void positiveTestSanPlaysGame() throws Exception {
+        ChessGame game = ChessGame.newGame();
+        for (String san : List.of("e4", "e5", "Qh5", "Nc6", "Bc4", "Nf6??", "Qxf7#")) {
+            game.makeMove(San.parse(game, san));
+        }
+        assertTrue(game.isInCheckmate(ChessGame.TeamColor.BLACK), "Scholar's mate should end in mate");
+    }
+
+    @Test
+    void positiveTestSanDisambiguationAndPromotion() {
+        ChessGame knights = Fen.parse("4k3/8/8/8/8/8/8/1N2KN2 w - - 0 1");
+        assertEquals(new ChessMove(new ChessPosition(1, 2), new ChessPosition(2, 4), null), San.parse(knights, "Nbd2"),
+            "The file should pick the knight");
+
+        ChessGame pawn = Fen.parse("8/4P3/8/8/8/8/k7/4K3 w - - 0 1");
+        ChessMove queen = new ChessMove(new ChessPosition(7, 5), new ChessPosition(8, 5), PieceType.QUEEN);
+        assertEquals(queen, San.parse(pawn, "e8=Q+"), "Promotion with = should parse");
+        assertEquals(queen, San.parse(pawn, "e8Q"), "Promotion without = should parse");
+    }
+
+    @Test
+    void positiveTestSanFormat() throws Exception {
+        ChessGame knights = Fen.parse("4k3/8/8/8/8/8/8/1N2KN2 w - - 0 1");
+        assertEquals("Nbd2", San.format(knights, new ChessMove(new ChessPosition(1, 2), new ChessPosition(2, 4), null)),
+            "Two knights reaching d2 should be told apart by file");
+
+        ChessGame rooks = Fen.parse("7k/8/R7/8/R7/8/8/4K3 w - - 0 1");
+        assertEquals("R6a5", San.format(rooks, new ChessMove(new ChessPosition(6, 1), new ChessPosition(5, 1), null)),
+            "Rooks on one file should be told apart by rank");
+
+        ChessGame pawn = Fen.parse("3r4/4P3/8/8/8/8/k7/4K3 w - - 0 1");
+        assertEquals("exd8=Q", San.format(pawn, new ChessMove(new ChessPosition(7, 5), new ChessPosition(8, 4), PieceType.QUEEN)),
+            "A pawn capture should name its file and the promotion");
+
+        ChessGame game = ChessGame.newGame();
+        List<String> line = List.of("e4", "e5", "Qh5", "Nc6", "Bc4", "Nf6", "Qxf7#");
+        for (String san : line) {
+            ChessMove move = San.parse(game, san);
+            assertEquals(san, San.format(game, move), "Formatting should give back the move that was parsed");
+            game.makeMove(move);
+        }
+    }
+
+    @Test
+    void positiveTestWriterWrapsAndNumbers() throws Exception {
+        java.io.StringWriter out = new java.io.StringWriter();
+        List<String> moves = new java.util.ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            moves.add(i % 2 == 0 ? "Nf3" : "Nf6");
+        }
+        new PgnWriter(out).write(java.util.Map.of("White", "A \"B\""), moves, true, "*");
+
+        String text = out.toString();
+        assertTrue(text.startsWith("[White \"A \\\"B\\\"\"]\n\n1... Nf3 2. Nf6"), "Quotes should be escaped: " + text);
+        for (String row : text.split("\n")) {
+            assertTrue(row.length() <= 80, "Lines should wrap at 80 characters: " + row);
+        }
+        try (PgnReader reader = new PgnReader(new StringReader(text))) {
+            assertEquals(moves, reader.next().moves(), "What is written should read back");
+        }
+    }
+
+    @Test
+    void negativeTestSanRejectsBadMoves() {
+        ChessGame knights = Fen.parse("4k3/8/8/8/8/8/8/1N2KN2 w - - 0 1");
+        assertThrows(IllegalArgumentException.class, () -> San.parse(knights, "Nd2"), "Two knights reach d2");
+        assertThrows(IllegalArgumentException.class, () -> San.parse(knights, "Nd4"), "No knight reaches d4");
+        assertThrows(IllegalArgumentException.class, () -> San.parse(ChessGame.newGame(), "O-O"),
+            "Castling isn't played");
+        assertThrows(IllegalArgumentException.class, () -> San.parse(ChessGame.newGame(), "Zz9"),
+            "Junk should be rejected");
+    }
+}
@@ -0,0 +1,126 @@
+package websocket;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece.PieceType;
+import chess.ChessPosition;
+import model.AnalysisUpdate;
+import serialization.Fen;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.UserGameCommand;
+import websocket.commands.UserGameCommand.CommandType;
+import websocket.messages.AnalysisMessage;
+import websocket.messages.ErrorMessage;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+
+public class BinaryProtocolTest {
+
+    private static UserGameCommand roundTrip(UserGameCommand command) {
+        return BinaryProtocol.decodeCommand(ByteBuffer.wrap(BinaryProtocol.encodeCommand(command)));
+    }
+
+    private static ServerMessage roundTrip(ServerMessage message) {
+        return BinaryProtocol.decodeMessage(ByteBuffer.wrap(BinaryProtocol.encodeMessage(message)));
+    }
+
+    @Test
+    void positiveTestCommandRoundTrip() {
+        for (CommandType type : new CommandType[] {CommandType.CONNECT, CommandType.LEAVE, CommandType.RESIGN,
+            CommandType.ANALYZE}) {
+            UserGameCommand command = new UserGameCommand(type, "d939b2c7-6699-4309-b05a-2c4d42e6108f", 12);
+            assertEquals(command, roundTrip(command), type + " should survive the binary form");
+        }
+        UserGameCommand noToken = new UserGameCommand(CommandType.CONNECT, null, null);
+        assertEquals(noToken, roundTrip(noToken), "A missing token and gameID should stay missing");
+    }
+
+    @Test
+    void positiveTestMakeMoveRoundTrip() {
+        ChessMove move = new ChessMove(new ChessPosition(1, 7), new ChessPosition(3, 6), null);
+        UserGameCommand decoded = roundTrip(new MakeMoveCommand("token", 3, move));
+        assertInstanceOf(MakeMoveCommand.class, decoded, "MAKE_MOVE should decode as a MakeMoveCommand");
+        assertEquals(move, ((MakeMoveCommand) decoded).getMove(), "The move should survive the binary form");
+        assertEquals(3, decoded.getGameID(), "The gameID should survive the binary form");
+
+        ChessMove promotion = new ChessMove(new ChessPosition(2, 8), new ChessPosition(1, 8), PieceType.QUEEN);
+        assertEquals(promotion, ((MakeMoveCommand) roundTrip(new MakeMoveCommand("token", 3, promotion))).getMove(),
+            "A promotion should survive the binary form");
+    }
+
+    @Test
+    void positiveTestLoadGameRoundTrip() throws Exception {
+        ChessGame game = ChessGame.newGame();
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+
+        LoadGameMessage decoded = (LoadGameMessage) roundTrip(new LoadGameMessage(game, "BLACK"));
+        assertEquals(game, decoded.getGame(), "The position should survive the binary form");
+        assertEquals("BLACK", decoded.getPlayerColor(), "The player color should survive the binary form");
+        assertNull(((LoadGameMessage) roundTrip(new LoadGameMessage(game, null))).getPlayerColor(),
+            "An observer should have no player color");
+
+        ChessGame mated = Fen.parse("R5k1/5ppp/8/8/8/8/8/6K1 b - - 0 1");
+        assertTrue(((LoadGameMessage) roundTrip(new LoadGameMessage(mated, "WHITE"))).getGame().isGameOver(),
+            "A finished game should stay finished");
+    }
+
+    @Test
+    void positiveTestTextMessageRoundTrip() {
+        ErrorMessage error = (ErrorMessage) roundTrip(new ErrorMessage("Error: not your turn"));
+        assertEquals("Error: not your turn", error.getErrorMessage(), "An error should survive the binary form");
+        NotificationMessage notification = (NotificationMessage) roundTrip(new NotificationMessage("Zoë joined ♔"));
+        assertEquals("Zoë joined ♔", notification.getMessage(), "Text should be sent as UTF-8");
+    }
+
+    @Test
+    void positiveTestAnalysisRoundTrip() {
+        ChessMove move = new ChessMove(new ChessPosition(7, 1), new ChessPosition(8, 1), PieceType.KNIGHT);
+        AnalysisUpdate update = new AnalysisUpdate(4, move, -35, 0, 12, 1_234_567_890_123L, true);
+        assertEquals(update, ((AnalysisMessage) roundTrip(new AnalysisMessage(update))).getAnalysis(),
+            "An analysis update should survive the binary form");
+
+        AnalysisUpdate noMove = new AnalysisUpdate(4, null, 0, -3, 1, 20, false);
+        assertEquals(noMove, ((AnalysisMessage) roundTrip(new AnalysisMessage(noMove))).getAnalysis(),
+            "An update without a move should survive the binary form");
+    }
+
+    @Test
+    void negativeTestTruncatedFrames() {
+        byte[] command = BinaryProtocol.encodeCommand(new MakeMoveCommand("token", 3,
+            new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null)));
+        for (int length = 0; length < command.length; length++) {
+            ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(command, length));
+            assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeCommand(truncated),
+                "A command cut off at " + length + " bytes should be rejected");
+        }
+
+        byte[] message = BinaryProtocol.encodeMessage(new LoadGameMessage(ChessGame.newGame(), "WHITE"));
+        ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(message, message.length - 1));
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeMessage(truncated),
+            "A truncated LOAD_GAME should be rejected");
+    }
+
+    @Test
+    void negativeTestOutOfRangeValues() {
+        assertThrows(IllegalArgumentException.class,
+            () -> BinaryProtocol.decodeCommand(ByteBuffer.wrap(new byte[] {99, 0, 0, 0, 1, 0, 0})),
+            "An unknown command type should be rejected");
+
+        byte[] command = BinaryProtocol.encodeCommand(new MakeMoveCommand("t", 3,
+            new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null)));
+        command[command.length - 2] = 64;
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeCommand(ByteBuffer.wrap(command)),
+            "A square past h8 should be rejected");
+
+        byte[] tooLong = {(byte) CommandType.CONNECT.ordinal(), 0, 0, 0, 1, 0, 10, 'a'};
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeCommand(ByteBuffer.wrap(tooLong)),
+            "A token longer than the frame should be rejected");
+    }
+}